@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.KeyLocator;
+import net.named_data.jndn.KeyLocatorType;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.Sha256WithRsaSignature;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * BenchmarkCommon has static methods and classes to make the packets and
+ * objects used by the benchmarks.
+ */
+public class BenchmarkCommon {
+  public static final String DATA_URI =
+    "/ndn/ucla.edu/apps/lwndn-test/numbers.txt/%FD%05%05%E8%0C%CE%1D/%00";
+  public static final String INTEREST_URI =
+    "/ndn/ucla.edu/apps/lwndn-test/numbers.txt";
+
+  /**
+   * Make a Data packet with all the fields and a placeholder signature, like
+   * the "complex" Data in the examples' TestEncodeDecodeBenchmark.
+   * @param uri The Data name URI.
+   * @param contentSize The number of bytes of content.
+   * @return The new Data packet.
+   */
+  public static Data
+  makeData(String uri, int contentSize)
+  {
+    Data data = new Data(new Name(uri));
+    byte[] content = new byte[contentSize];
+    for (int i = 0; i < contentSize; ++i)
+      content[i] = (byte)('0' + i % 10);
+    data.setContent(new Blob(content, false));
+    data.getMetaInfo().setFreshnessPeriod(30000);
+    data.getMetaInfo().setFinalBlockId
+      (new Name.Component(new Blob(new byte[] { (byte)0 }, false)));
+
+    KeyLocator keyLocator = new KeyLocator();
+    keyLocator.setType(KeyLocatorType.KEYNAME);
+    keyLocator.setKeyName(new Name("/testname/KEY/123"));
+    Sha256WithRsaSignature signature = (Sha256WithRsaSignature)data.getSignature();
+    signature.setKeyLocator(keyLocator);
+    signature.setSignature(new Blob(new byte[256], false));
+
+    return data;
+  }
+
+  /**
+   * Make an Interest with MustBeFresh, a lifetime and a nonce.
+   * @param uri The Interest name URI.
+   * @return The new Interest.
+   */
+  public static Interest
+  makeInterest(String uri)
+  {
+    Interest interest = new Interest(new Name(uri));
+    interest.setMustBeFresh(true);
+    interest.setInterestLifetimeMilliseconds(4000);
+    interest.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }, false));
+    return interest;
+  }
+
+  /**
+   * A StubTransport is always connected and discards the sent packets so that
+   * a benchmark can use a Face without a forwarder.
+   */
+  public static class StubTransport extends Transport {
+    public boolean
+    isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+    public boolean
+    isAsync() { return false; }
+
+    public void
+    connect
+      (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+       Runnable onConnected)
+    {
+      if (onConnected != null)
+        onConnected.run();
+    }
+
+    public void
+    send(ByteBuffer data) { ++nSent_; }
+
+    public void
+    processEvents() {}
+
+    public boolean
+    getIsConnected() { return true; }
+
+    public long nSent_ = 0;
+  }
+}
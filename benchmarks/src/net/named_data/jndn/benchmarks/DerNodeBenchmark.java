@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.encoding.der.DerDecodingException;
+import net.named_data.jndn.encoding.der.DerNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DerNodeBenchmark measures DerNode.parse for an RSA public key (an X.509
+ * SubjectPublicKeyInfo) and private key (a PKCS #8 PrivateKeyInfo), which the
+ * TPM and certificate code parse for each key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DerNodeBenchmark {
+  @Setup
+  public void
+  setup() throws NoSuchAlgorithmException
+  {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    KeyPair pair = generator.generateKeyPair();
+    publicKeyDer_ = ByteBuffer.wrap(pair.getPublic().getEncoded());
+    privateKeyDer_ = ByteBuffer.wrap(pair.getPrivate().getEncoded());
+  }
+
+  @Benchmark
+  public DerNode
+  parsePublicKey() throws DerDecodingException
+  {
+    return DerNode.parse(publicKeyDer_);
+  }
+
+  @Benchmark
+  public DerNode
+  parsePrivateKey() throws DerDecodingException
+  {
+    return DerNode.parse(privateKeyDer_);
+  }
+
+  private ByteBuffer publicKeyDer_;
+  private ByteBuffer privateKeyDer_;
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.OnDataValidationFailed;
+import net.named_data.jndn.security.OnVerified;
+import net.named_data.jndn.security.SafeBag;
+import net.named_data.jndn.security.SecurityException;
+import net.named_data.jndn.security.pib.Pib;
+import net.named_data.jndn.security.pib.PibImpl;
+import net.named_data.jndn.security.pib.PibMemory;
+import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
+import net.named_data.jndn.security.tpm.TpmBackEnd;
+import net.named_data.jndn.security.tpm.TpmBackEndMemory;
+import net.named_data.jndn.security.v2.CertificateV2;
+import net.named_data.jndn.util.Blob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * KeyChainBenchmark measures KeyChain.sign and KeyChain.verifyData for a Data
+ * packet, using an in-memory PIB and TPM and a SelfVerifyPolicyManager.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyChainBenchmark {
+  @Param({ "ECDSA", "RSA" })
+  public String keyType;
+
+  @Setup
+  public void
+  setup()
+    throws NoSuchAlgorithmException, PibImpl.Error, Pib.Error,
+      TpmBackEnd.Error, KeyChain.Error, CertificateV2.Error, SecurityException
+  {
+    // KeyChain logs each call to verifyData at the INFO level.
+    keyChainLogger_.setLevel(Level.WARNING);
+
+    PibImpl pibImpl = new PibMemory();
+    keyChain_ = new KeyChain
+      (pibImpl, new TpmBackEndMemory(), new SelfVerifyPolicyManager(pibImpl));
+    // TpmBackEndMemory can't generate an EC key, so generate the key pair here
+    // and import it like the examples' TestEncodeDecodeBenchmark. This puts the
+    // public key in the pibImpl used by the SelfVerifyPolicyManager.
+    boolean isRsa = keyType.equals("RSA");
+    KeyPairGenerator generator = KeyPairGenerator.getInstance
+      (isRsa ? "RSA" : "EC");
+    generator.initialize(isRsa ? 2048 : 256);
+    KeyPair pair = generator.generateKeyPair();
+    keyChain_.importSafeBag(new SafeBag
+      (new Name("/benchmark/KEY/123"),
+       new Blob(pair.getPrivate().getEncoded(), false),
+       new Blob(pair.getPublic().getEncoded(), false)));
+
+    data_ = BenchmarkCommon.makeData(BenchmarkCommon.DATA_URI, 1115);
+    signedData_ = BenchmarkCommon.makeData(BenchmarkCommon.DATA_URI, 1115);
+    keyChain_.sign(signedData_);
+
+    // Check that verification succeeds so that the benchmark is meaningful.
+    verifyData();
+    if (nVerified_ != 1)
+      throw new Error("KeyChainBenchmark: The signed Data does not verify");
+  }
+
+  @Benchmark
+  public Data
+  sign()
+    throws SecurityException, PibImpl.Error, TpmBackEnd.Error, KeyChain.Error
+  {
+    keyChain_.sign(data_);
+    return data_;
+  }
+
+  @Benchmark
+  public int
+  verifyData() throws SecurityException
+  {
+    keyChain_.verifyData(signedData_, callbacks_, callbacks_);
+    return nVerified_;
+  }
+
+  private class VerifyCallbacks implements OnVerified, OnDataValidationFailed {
+    public void
+    onVerified(Data data) { ++nVerified_; }
+
+    public void
+    onDataValidationFailed(Data data, String reason)
+    {
+      throw new Error("KeyChainBenchmark: Verification failed: " + reason);
+    }
+  }
+
+  // Keep a reference so that the Logger with the changed level is not
+  // garbage collected.
+  private final Logger keyChainLogger_ =
+    Logger.getLogger(KeyChain.class.getName());
+  private KeyChain keyChain_;
+  private Data data_;
+  private Data signedData_;
+  private int nVerified_ = 0;
+  private final VerifyCallbacks callbacks_ = new VerifyCallbacks();
+}
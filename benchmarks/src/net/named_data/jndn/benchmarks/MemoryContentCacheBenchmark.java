@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.MemoryContentCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MemoryContentCacheBenchmark measures MemoryContentCache.onInterest for a
+ * cache with nEntries Data packets. The Face uses a StubTransport which
+ * discards the sent Data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryContentCacheBenchmark {
+  @Param({ "10", "1000", "100000" })
+  public int nEntries;
+
+  @Setup
+  public void
+  setup()
+  {
+    transport_ = new BenchmarkCommon.StubTransport();
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+    // Use a large cleanup interval and FreshnessPeriod so that the content
+    // doesn't go stale during the benchmark.
+    cache_ = new MemoryContentCache(face_, ONE_HOUR);
+    for (int i = 0; i < nEntries; ++i) {
+      Data data = BenchmarkCommon.makeData(PREFIX, 100);
+      data.setName(new Name(PREFIX).appendSegment(i));
+      data.getMetaInfo().setFreshnessPeriod(ONE_HOUR);
+      cache_.add(data);
+    }
+
+    prefix_ = new Name(PREFIX);
+    filter_ = new InterestFilter(prefix_);
+    exactInterest_ = new Interest(new Name(PREFIX).appendSegment(nEntries / 2));
+    rightmostInterest_ = new Interest(prefix_);
+    rightmostInterest_.setChildSelector(1);
+    missInterest_ = new Interest(new Name(PREFIX).append("missing"));
+  }
+
+  @Benchmark
+  public long
+  onInterestExactName()
+  {
+    cache_.onInterest(prefix_, exactInterest_, face_, 0, filter_);
+    return transport_.nSent_;
+  }
+
+  @Benchmark
+  public long
+  onInterestRightmostChild()
+  {
+    cache_.onInterest(prefix_, rightmostInterest_, face_, 0, filter_);
+    return transport_.nSent_;
+  }
+
+  @Benchmark
+  public long
+  onInterestMiss()
+  {
+    cache_.onInterest(prefix_, missInterest_, face_, 0, filter_);
+    return transport_.nSent_;
+  }
+
+  private static final String PREFIX = "/ndn/ucla.edu/apps/benchmark";
+  private static final double ONE_HOUR = 3600 * 1000.0;
+
+  private BenchmarkCommon.StubTransport transport_;
+  private Face face_;
+  private MemoryContentCache cache_;
+  private Name prefix_;
+  private InterestFilter filter_;
+  private Interest exactInterest_;
+  private Interest rightmostInterest_;
+  private Interest missInterest_;
+}
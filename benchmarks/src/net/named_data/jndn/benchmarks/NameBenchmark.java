@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.CompactName;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NameBenchmark measures parsing, comparing and hashing a Name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameBenchmark {
+  @Setup
+  public void
+  setup()
+  {
+    name_ = new Name(URI);
+    // Same as name_ except for the last component.
+    otherName_ = new Name(URI).getPrefix(-1).appendSegment(1);
+    compactName_ = new CompactName(name_);
+    otherCompactName_ = new CompactName(otherName_);
+    prefix_ = name_.getPrefix(-1);
+  }
+
+  @Benchmark
+  public Name
+  parseUri() { return new Name(URI); }
+
+  @Benchmark
+  public String
+  toUri() { return name_.toUri(); }
+
+  @Benchmark
+  public int
+  compare() { return name_.compare(otherName_); }
+
+  @Benchmark
+  public int
+  compareCompactName() { return compactName_.compare(otherCompactName_); }
+
+  @Benchmark
+  public boolean
+  equals() { return name_.equals(otherName_); }
+
+  @Benchmark
+  public int
+  hashCodeCached() { return name_.hashCode(); }
+
+  /**
+   * Copy the name so that Name does not use its cached hash code.
+   */
+  @Benchmark
+  public int
+  copyAndHashCode() { return new Name(name_).hashCode(); }
+
+  /**
+   * Append a segment component and decode it, as a segmented fetch does for
+   * each segment.
+   */
+  @Benchmark
+  public long
+  appendAndToSegment() throws EncodingException
+  {
+    ++segment_;
+    return new Name(prefix_).appendSegment(segment_).get(-1).toSegment();
+  }
+
+  private static final String URI =
+    "/ndn/ucla.edu/apps/lwndn-test/numbers.txt/%FD%05%05%E8%0C%CE%1D/%00";
+
+  private Name name_;
+  private Name otherName_;
+  private CompactName compactName_;
+  private CompactName otherCompactName_;
+  private Name prefix_;
+  private long segment_ = 0;
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.util.regex.NdnRegexMatcherBase;
+import net.named_data.jndn.util.regex.NdnRegexTopMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NdnRegexBenchmark measures NdnRegexTopMatcher.match with the kind of
+ * patterns used by trust policies to check key and certificate names.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NdnRegexBenchmark {
+  @Setup
+  public void
+  setup() throws NdnRegexMatcherBase.Error
+  {
+    keyMatcher_ = new NdnRegexTopMatcher("^(<>*)<KEY><>$");
+    dnsMatcher_ = new NdnRegexTopMatcher
+      ("^<ndn><(.*)\\.(.*)><DNS>(<>*)<>", "<ndn>\\2\\1\\3");
+    keyName_ = new Name("/ndn/edu/ucla/alice/KEY/%2A%B3%F1");
+    dataName_ = new Name("/ndn/edu/ucla/alice/app/data/%00");
+    dnsName_ = new Name("/ndn/ucla.edu/DNS/yingdi/mac/ksk-1");
+
+    // Check the patterns so that the benchmark is meaningful.
+    if (!keyMatcher_.match(keyName_) || keyMatcher_.match(dataName_) ||
+        !dnsMatcher_.match(dnsName_))
+      throw new Error("NdnRegexBenchmark: Unexpected match result");
+  }
+
+  @Benchmark
+  public boolean
+  matchKeyName() throws NdnRegexMatcherBase.Error
+  {
+    return keyMatcher_.match(keyName_);
+  }
+
+  @Benchmark
+  public boolean
+  noMatch() throws NdnRegexMatcherBase.Error
+  {
+    return keyMatcher_.match(dataName_);
+  }
+
+  @Benchmark
+  public Name
+  matchAndExpand() throws NdnRegexMatcherBase.Error
+  {
+    dnsMatcher_.match(dnsName_);
+    return dnsMatcher_.expand();
+  }
+
+  private NdnRegexTopMatcher keyMatcher_;
+  private NdnRegexTopMatcher dnsMatcher_;
+  private Name keyName_;
+  private Name dataName_;
+  private Name dnsName_;
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.util.Blob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PacketBenchmark measures encoding and decoding Interest and Data packets,
+ * and Interest.matchesData.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+  @Setup
+  public void
+  setup()
+  {
+    data_ = BenchmarkCommon.makeData(BenchmarkCommon.DATA_URI, 1115);
+    dataEncoding_ = data_.wireEncode();
+
+    interest_ = BenchmarkCommon.makeInterest(BenchmarkCommon.INTEREST_URI);
+    interestEncoding_ = interest_.wireEncode();
+
+    batch_ = ByteBuffer.allocate(BATCH_SIZE * dataEncoding_.size());
+    for (int i = 0; i < BATCH_SIZE; ++i)
+      batch_.put(dataEncoding_.buf());
+    batch_.flip();
+    pool_ = new ForkJoinPool();
+  }
+
+  @TearDown
+  public void
+  tearDown() { pool_.shutdown(); }
+
+  /**
+   * Call the wire format directly since Data.wireEncode returns the cached
+   * encoding.
+   */
+  @Benchmark
+  public Blob
+  encodeData()
+  {
+    return TlvWireFormat.get().encodeData(data_, beginOffset_, endOffset_);
+  }
+
+  @Benchmark
+  public Data
+  decodeData() throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecode(dataEncoding_);
+    return data;
+  }
+
+  /**
+   * Decode BATCH_SIZE concatenated Data packets in this thread.
+   */
+  @Benchmark
+  public Object[]
+  decodePackets() throws EncodingException
+  {
+    return TlvWireFormat.get().decodePackets(batch_);
+  }
+
+  /**
+   * Decode BATCH_SIZE concatenated Data packets with a ForkJoinPool.
+   */
+  @Benchmark
+  public Object[]
+  decodePacketsParallel() throws EncodingException
+  {
+    return TlvWireFormat.get().decodePackets(batch_, pool_);
+  }
+
+  @Benchmark
+  public Blob
+  encodeInterest()
+  {
+    return TlvWireFormat.get().encodeInterest
+      (interest_, beginOffset_, endOffset_);
+  }
+
+  @Benchmark
+  public Interest
+  decodeInterest() throws EncodingException
+  {
+    Interest interest = new Interest();
+    interest.wireDecode(interestEncoding_);
+    return interest;
+  }
+
+  @Benchmark
+  public boolean
+  matchesData() throws EncodingException
+  {
+    return interest_.matchesData(data_);
+  }
+
+  private static final int BATCH_SIZE = 1000;
+
+  private Data data_;
+  private Blob dataEncoding_;
+  private Interest interest_;
+  private Blob interestEncoding_;
+  private final int[] beginOffset_ = new int[1];
+  private final int[] endOffset_ = new int[1];
+  private ByteBuffer batch_;
+  private ForkJoinPool pool_;
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.impl.PendingInterestTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PendingInterestTableBenchmark measures dispatching a received Data packet to
+ * the pending interest table which already has nEntries other entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingInterestTableBenchmark {
+  @Param({ "10", "1000" })
+  public int nEntries;
+
+  @Setup
+  public void
+  setup()
+  {
+    table_ = new PendingInterestTable();
+    for (int i = 0; i < nEntries; ++i)
+      table_.add
+        (nextEntryId_++,
+         new Interest(new Name(PREFIX).append("other").appendSegment(i)),
+         null, null, null);
+
+    interest_ = new Interest(new Name(PREFIX).append("target"));
+    data_ = BenchmarkCommon.makeData(PREFIX + "/target/%00", 100);
+    unsolicitedData_ = BenchmarkCommon.makeData(PREFIX + "/unsolicited", 100);
+  }
+
+  /**
+   * Add an entry for the Interest, then find and remove it for the Data.
+   */
+  @Benchmark
+  public int
+  addAndExtract() throws EncodingException
+  {
+    table_.add(nextEntryId_++, interest_, null, null, null);
+    entries_.clear();
+    table_.extractEntriesForExpressedInterest(data_, entries_);
+    return entries_.size();
+  }
+
+  /**
+   * Check for an entry for a Data packet that doesn't match, as Node does
+   * before fully decoding a received Data packet.
+   */
+  @Benchmark
+  public boolean
+  hasEntriesForUnsolicitedData()
+  {
+    return table_.hasEntriesForDataName(unsolicitedData_.getName());
+  }
+
+  private static final String PREFIX = "/ndn/ucla.edu/apps/benchmark";
+
+  private PendingInterestTable table_;
+  private long nextEntryId_ = 1;
+  private Interest interest_;
+  private Data data_;
+  private Data unsolicitedData_;
+  private final ArrayList<PendingInterestTable.Entry> entries_ =
+    new ArrayList<PendingInterestTable.Entry>();
+}
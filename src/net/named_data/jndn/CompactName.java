@@ -0,0 +1,464 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.Tlv0_2WireFormat;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A CompactName is an immutable NDN name which is stored as one byte array
+ * with the NDN-TLV encoding of the name, plus a table of the offset of each
+ * component. This uses much less memory than a Name (which has an object for
+ * each component and its value) when many names are kept, for example as the
+ * keys of a large table. The methods to compare, match and hash work directly
+ * on the bytes of the encoding. Use toName() to get a Name whose cached wire
+ * encoding is the encoding of this CompactName, so that encoding a packet with
+ * the Name copies the bytes instead of encoding each component.
+ * Note that, unlike Name.equals and Name.match, two components are equal only
+ * if they have the same type and the same value.
+ */
+public class CompactName implements Comparable {
+  /**
+   * Create a CompactName with the components of the given Name.
+   * @param name The Name to copy.
+   */
+  public CompactName(Name name)
+  {
+    Blob encoding = name.getDefaultWireEncoding();
+    if (encoding.isNull() ||
+        !(WireFormat.getDefaultWireFormat() instanceof Tlv0_2WireFormat))
+      encoding = TlvWireFormat.get().encodeName(name);
+
+    encoding_ = encoding.getImmutableArray();
+    try {
+      componentOffsets_ = decodeComponentOffsets(encoding_);
+    } catch (EncodingException ex) {
+      // We don't expect this to happen since we encoded it.
+      throw new Error("CompactName: Error decoding the name encoding: " +
+        ex.getMessage());
+    }
+    hashCode_ = computeHashCode();
+  }
+
+  /**
+   * Create a CompactName by decoding the NDN-TLV encoding of a Name.
+   * @param input The input buffer with the Name TLV. This reads from
+   * position() to limit(), but does not change the position. The input is
+   * copied.
+   * @throws EncodingException For invalid encoding, or if the input has extra
+   * bytes after the Name TLV.
+   */
+  public CompactName(ByteBuffer input) throws EncodingException
+  {
+    encoding_ = new byte[input.remaining()];
+    input.duplicate().get(encoding_);
+    componentOffsets_ = decodeComponentOffsets(encoding_);
+    hashCode_ = computeHashCode();
+  }
+
+  /**
+   * Create a CompactName with the given fields, which are not copied.
+   */
+  private CompactName(byte[] encoding, int[] componentOffsets)
+  {
+    encoding_ = encoding;
+    componentOffsets_ = componentOffsets;
+    hashCode_ = computeHashCode();
+  }
+
+  /**
+   * Get the number of components.
+   * @return The number of components.
+   */
+  public final int
+  size() { return componentOffsets_.length - 1; }
+
+  /**
+   * Get the component at the given index. This creates a new Name.Component
+   * whose value shares the bytes of this CompactName.
+   * @param i The index of the component, starting from 0. However, if i is
+   * negative, return the component at size() - (-i).
+   * @return The name component at the index.
+   */
+  public final Name.Component
+  get(int i)
+  {
+    if (i < 0)
+      i = size() - (-i);
+    if (i < 0 || i >= size())
+      throw new IndexOutOfBoundsException
+        ("CompactName.get: Index " + i + " is out of bounds");
+
+    int valueOffset = getValueOffset(i);
+    Blob value = new Blob
+      (ByteBuffer.wrap
+       (encoding_, valueOffset, componentOffsets_[i + 1] - valueOffset).slice(),
+       false);
+    if (getType(i) == Tlv.ImplicitSha256DigestComponent) {
+      try {
+        return Name.Component.fromImplicitSha256Digest(value);
+      } catch (EncodingException ex) {
+        // We don't expect this to happen since it was decoded.
+        throw new Error("CompactName.get: " + ex.getMessage());
+      }
+    }
+    else
+      return new Name.Component(value);
+  }
+
+  /**
+   * Get a new Name with the components of this CompactName. The Name's
+   * getDefaultWireEncoding() shares the encoding of this CompactName (until the
+   * Name is changed), so that it is not encoded again.
+   * @return A new Name.
+   */
+  public final Name
+  toName()
+  {
+    Name name = new Name();
+    for (int i = 0; i < size(); ++i)
+      name.append(get(i));
+
+    if (WireFormat.getDefaultWireFormat() instanceof Tlv0_2WireFormat)
+      name.setDefaultWireEncoding
+        (wireEncode(), WireFormat.getDefaultWireFormat());
+    return name;
+  }
+
+  /**
+   * Get the NDN-TLV encoding of this name, which shares the bytes of this
+   * CompactName.
+   * @return The encoding as a Blob.
+   */
+  public final Blob
+  wireEncode()
+  {
+    return new Blob(ByteBuffer.wrap(encoding_), false);
+  }
+
+  /**
+   * Get a new CompactName with the first nComponents of this name.
+   * @param nComponents The number of prefix components. If nComponents is -N
+   * then return the prefix up to name.size() - N. If nComponents is greater
+   * than size(), return the whole name.
+   * @return A new CompactName.
+   */
+  public final CompactName
+  getPrefix(int nComponents)
+  {
+    if (nComponents < 0)
+      nComponents = size() - (-nComponents);
+    if (nComponents < 0)
+      nComponents = 0;
+    if (nComponents >= size())
+      return this;
+
+    int componentsBegin = componentOffsets_[0];
+    int componentsLength = componentOffsets_[nComponents] - componentsBegin;
+    int headerLength = 1 + TlvEncoder.sizeOfVarNumber(componentsLength);
+    byte[] encoding = new byte[headerLength + componentsLength];
+    encoding[0] = (byte)Tlv.Name;
+    writeVarNumber(componentsLength, encoding, 1);
+    System.arraycopy
+      (encoding_, componentsBegin, encoding, headerLength, componentsLength);
+
+    int[] componentOffsets = new int[nComponents + 1];
+    for (int i = 0; i <= nComponents; ++i)
+      componentOffsets[i] =
+        componentOffsets_[i] - componentsBegin + headerLength;
+    return new CompactName(encoding, componentOffsets);
+  }
+
+  /**
+   * Check if the N components of this name are the same as the first N
+   * components of the given name. This compares the bytes of the encoded
+   * components.
+   * @param name The CompactName to check.
+   * @return True if this matches the given name, otherwise false. This always
+   * returns true if this name is empty.
+   */
+  public final boolean
+  match(CompactName name)
+  {
+    int nComponents = size();
+    if (nComponents > name.size())
+      return false;
+
+    return rangeEquals
+      (encoding_, componentOffsets_[0], componentOffsets_[nComponents],
+       name.encoding_, name.componentOffsets_[0],
+       name.componentOffsets_[nComponents]);
+  }
+
+  /**
+   * Check if the N components of this name are the same as the first N
+   * components of the given name. This is the same as match(name).
+   * @param name The CompactName to check.
+   * @return True if this is a prefix of the given name, otherwise false.
+   */
+  public final boolean
+  isPrefixOf(CompactName name) { return match(name); }
+
+  /**
+   * Compare this to the other name using NDN canonical ordering, the same as
+   * Name.compare.
+   * @param other The other CompactName to compare with.
+   * @return 0 If they compare equal, -1 if this comes before other in the
+   * canonical ordering, or 1 if this comes after other in the canonical
+   * ordering.
+   */
+  public final int
+  compare(CompactName other)
+  {
+    int count = Math.min(size(), other.size());
+    for (int i = 0; i < count; ++i) {
+      int type = getType(i);
+      int otherType = other.getType(i);
+      if (type != otherType)
+        return type < otherType ? -1 : 1;
+
+      int valueOffset = getValueOffset(i);
+      int valueLength = componentOffsets_[i + 1] - valueOffset;
+      int otherValueOffset = other.getValueOffset(i);
+      int otherValueLength = other.componentOffsets_[i + 1] - otherValueOffset;
+      if (valueLength != otherValueLength)
+        return valueLength < otherValueLength ? -1 : 1;
+
+      for (int j = 0; j < valueLength; ++j) {
+        int b = encoding_[valueOffset + j] & 0xff;
+        int otherB = other.encoding_[otherValueOffset + j] & 0xff;
+        if (b != otherB)
+          return b < otherB ? -1 : 1;
+      }
+    }
+
+    // The components up to min(this.size(), other.size()) are equal, so the
+    //   shorter name is less.
+    if (size() < other.size())
+      return -1;
+    else if (size() > other.size())
+      return 1;
+    else
+      return 0;
+  }
+
+  public final int
+  compareTo(Object o) { return this.compare((CompactName)o); }
+
+  /**
+   * Check if this name has the same encoded components as the given name.
+   * @param name The CompactName to check.
+   * @return True if the names are equal, otherwise false.
+   */
+  public final boolean
+  equals(CompactName name)
+  {
+    if (this == name)
+      return true;
+    if (hashCode_ != name.hashCode_ || size() != name.size())
+      return false;
+
+    return rangeEquals
+      (encoding_, componentOffsets_[0], encoding_.length,
+       name.encoding_, name.componentOffsets_[0], name.encoding_.length);
+  }
+
+  public boolean
+  equals(Object other)
+  {
+    if (!(other instanceof CompactName))
+      return false;
+
+    return equals((CompactName)other);
+  }
+
+  public int
+  hashCode() { return hashCode_; }
+
+  /**
+   * Get the URI of this name, the same as toName().toUri().
+   * @return The URI string.
+   */
+  public String
+  toString() { return toName().toUri(); }
+
+  /**
+   * Decode the Name TLV and return the component offsets.
+   * @param encoding The Name TLV.
+   * @return An array where element i is the offset in encoding of the TLV of
+   * component i, and the final element is encoding.length.
+   * @throws EncodingException For invalid encoding.
+   */
+  private static int[]
+  decodeComponentOffsets(byte[] encoding) throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(ByteBuffer.wrap(encoding));
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Name);
+    if (endOffset != encoding.length)
+      throw new EncodingException
+        ("CompactName: The input has extra bytes after the Name TLV");
+
+    // Count the components.
+    int beginOffset = decoder.getOffset();
+    int nComponents = 0;
+    while (decoder.getOffset() < endOffset) {
+      decoder.readVarNumber();
+      int length = decoder.readVarNumber();
+      if (decoder.getOffset() + length > endOffset)
+        throw new EncodingException
+          ("TLV length exceeds the length of the Name TLV");
+      decoder.seek(decoder.getOffset() + length);
+      ++nComponents;
+    }
+
+    int[] componentOffsets = new int[nComponents + 1];
+    decoder.seek(beginOffset);
+    for (int i = 0; i < nComponents; ++i) {
+      componentOffsets[i] = decoder.getOffset();
+      decoder.readVarNumber();
+      int length = decoder.readVarNumber();
+      decoder.seek(decoder.getOffset() + length);
+    }
+    componentOffsets[nComponents] = endOffset;
+
+    return componentOffsets;
+  }
+
+  /**
+   * Get the TLV type of component i.
+   */
+  private int
+  getType(int i)
+  {
+    return readVarNumber(encoding_, componentOffsets_[i]);
+  }
+
+  /**
+   * Get the offset in encoding_ of the value of component i.
+   */
+  private int
+  getValueOffset(int i)
+  {
+    int offset = componentOffsets_[i];
+    // Skip the type and length.
+    offset += sizeOfVarNumberEncoding(encoding_[offset]);
+    offset += sizeOfVarNumberEncoding(encoding_[offset]);
+    return offset;
+  }
+
+  /**
+   * Compute the hash code from the bytes of the encoded components.
+   */
+  private int
+  computeHashCode()
+  {
+    int hashCode = 1;
+    for (int i = componentOffsets_[0]; i < encoding_.length; ++i)
+      hashCode = 31 * hashCode + encoding_[i];
+    return hashCode;
+  }
+
+  /**
+   * Read the VAR-NUMBER at the offset. This only supports up to a 32-bit
+   * VAR-NUMBER, as does TlvDecoder.
+   */
+  private static int
+  readVarNumber(byte[] buffer, int offset)
+  {
+    int firstOctet = buffer[offset] & 0xff;
+    if (firstOctet < 253)
+      return firstOctet;
+
+    int nBytes = sizeOfVarNumberEncoding(buffer[offset]) - 1;
+    int result = 0;
+    for (int i = 1; i <= nBytes; ++i)
+      result = (result << 8) + (buffer[offset + i] & 0xff);
+    return result;
+  }
+
+  /**
+   * Write the VAR-NUMBER at the offset.
+   */
+  private static void
+  writeVarNumber(int varNumber, byte[] buffer, int offset)
+  {
+    if (varNumber < 253)
+      buffer[offset] = (byte)varNumber;
+    else if (varNumber <= 0xffff) {
+      buffer[offset] = (byte)253;
+      buffer[offset + 1] = (byte)((varNumber >> 8) & 0xff);
+      buffer[offset + 2] = (byte)(varNumber & 0xff);
+    }
+    else {
+      buffer[offset] = (byte)254;
+      buffer[offset + 1] = (byte)((varNumber >> 24) & 0xff);
+      buffer[offset + 2] = (byte)((varNumber >> 16) & 0xff);
+      buffer[offset + 3] = (byte)((varNumber >> 8) & 0xff);
+      buffer[offset + 4] = (byte)(varNumber & 0xff);
+    }
+  }
+
+  /**
+   * Get the number of bytes in the VAR-NUMBER encoding from its first octet.
+   */
+  private static int
+  sizeOfVarNumberEncoding(byte firstOctet)
+  {
+    int value = firstOctet & 0xff;
+    if (value < 253)
+      return 1;
+    else if (value == 253)
+      return 3;
+    else if (value == 254)
+      return 5;
+    else
+      return 9;
+  }
+
+  private static boolean
+  rangeEquals
+    (byte[] array1, int begin1, int end1, byte[] array2, int begin2, int end2)
+  {
+    if (end1 - begin1 != end2 - begin2)
+      return false;
+
+    // Check from last to first since the last components are more likely to
+    // differ.
+    for (int i = end1 - begin1 - 1; i >= 0; --i) {
+      if (array1[begin1 + i] != array2[begin2 + i])
+        return false;
+    }
+
+    return true;
+  }
+
+  private final byte[] encoding_; /**< The Name TLV */
+  // Element i is the offset in encoding_ of component i. The final element is
+  // encoding_.length.
+  private final int[] componentOffsets_;
+  private final int hashCode_;
+}
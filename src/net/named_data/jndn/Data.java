@@ -57,6 +57,7 @@ public class Data implements ChangeCountable, SignatureHolder {
    */
   public Data(Data data)
   {
+    data.ensureDecoded();
     try {
       signature_.set(data.signature_ == null ?
         new Sha256WithRsaSignature() : (Signature)data.getSignature().clone());
@@ -71,7 +72,11 @@ public class Data implements ChangeCountable, SignatureHolder {
     metaInfo_.set(new MetaInfo(data.getMetaInfo()));
     content_ = data.content_;
     setDefaultWireEncoding(data.getDefaultWireEncoding(), null);
-    defaultFullName_ = new Name(data.defaultFullName_);
+    if (data.haveFullNameSource())
+      // The fields are the same, so the full name (or the encoding to compute
+      // it) is still valid.
+      setFullNameSource
+        (data.fullName_, data.fullNameEncoding_, data.fullNameWireFormat_);
   }
 
   /**
@@ -88,6 +93,7 @@ public class Data implements ChangeCountable, SignatureHolder {
       // We already have an encoding in the desired format.
       return getDefaultWireEncoding();
 
+    ensureDecoded();
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     Blob encoding = wireFormat.encodeData
@@ -113,6 +119,92 @@ public class Data implements ChangeCountable, SignatureHolder {
     return wireEncode(WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Encode the signed portion of this Data for a particular wire format, to be
+   * signed before calling wireEncodeWithSignatureValue. The signing methods in
+   * KeyChain use this so that the fields are only encoded once, instead of
+   * once to get the signed portion and again to include the signature.
+   * @param wireFormat A WireFormat object used to encode the input.
+   * @return A read-only buffer with the signed portion from position() to
+   * limit().
+   */
+  public final ByteBuffer
+  wireEncodeSignedPortion(WireFormat wireFormat)
+  {
+    ensureDecoded();
+    signedPortion_ = wireFormat.encodeDataSignedPortion(this);
+    signedPortionWireFormat_ = wireFormat;
+    signedPortionChangeCount_ = getChangeCount();
+
+    return signedPortion_.asReadOnlyBuffer();
+  }
+
+  /**
+   * Encode the signed portion of this Data for the default wire format
+   * WireFormat.getDefaultWireFormat(), to be signed before calling
+   * wireEncodeWithSignatureValue.
+   * @return A read-only buffer with the signed portion from position() to
+   * limit().
+   */
+  public final ByteBuffer
+  wireEncodeSignedPortion()
+  {
+    return wireEncodeSignedPortion(WireFormat.getDefaultWireFormat());
+  }
+
+  /**
+   * Set the signature bits in getSignature() to signatureValue and encode this
+   * Data for a particular wire format, using the signed portion from the
+   * previous call to wireEncodeSignedPortion. If there was no previous call
+   * with the same wireFormat or if this Data was changed since, then this
+   * encodes all the fields like wireEncode. If wireFormat is the default wire
+   * format, also set the defaultWireEncoding field to the encoded result.
+   * @param signatureValue The signature bits of the signed portion.
+   * @param wireFormat A WireFormat object used to encode the input.
+   * @return The encoded buffer.
+   */
+  public final SignedBlob
+  wireEncodeWithSignatureValue(Blob signatureValue, WireFormat wireFormat)
+  {
+    ByteBuffer signedPortion = signedPortion_;
+    signedPortion_ = null;
+    boolean haveSignedPortion = signedPortion != null &&
+      signedPortionWireFormat_ == wireFormat &&
+      signedPortionChangeCount_ == getChangeCount();
+
+    getSignature().setSignature(signatureValue);
+    if (!haveSignedPortion)
+      return wireEncode(wireFormat);
+
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    Blob encoding = wireFormat.encodeDataWithSignatureValue
+      (this, signedPortion, signedPortionBeginOffset, signedPortionEndOffset);
+    SignedBlob wireEncoding = new SignedBlob
+      (encoding, signedPortionBeginOffset[0], signedPortionEndOffset[0]);
+
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding(wireEncoding, WireFormat.getDefaultWireFormat());
+
+    return wireEncoding;
+  }
+
+  /**
+   * Set the signature bits in getSignature() to signatureValue and encode this
+   * Data for the default wire format WireFormat.getDefaultWireFormat(), using
+   * the signed portion from the previous call to wireEncodeSignedPortion. Also
+   * set the defaultWireEncoding field to the encoded result.
+   * @param signatureValue The signature bits of the signed portion.
+   * @return The encoded buffer.
+   */
+  public final SignedBlob
+  wireEncodeWithSignatureValue(Blob signatureValue)
+  {
+    return wireEncodeWithSignatureValue
+      (signatureValue, WireFormat.getDefaultWireFormat());
+  }
+
   /**
    * Decode the input using a particular wire format and update this Data. If
    * wireFormat is the default wire format, also set the defaultWireEncoding
@@ -125,6 +217,8 @@ public class Data implements ChangeCountable, SignatureHolder {
   public void
   wireDecode(Blob input, WireFormat wireFormat) throws EncodingException
   {
+    // Cancel a lazy decode since all the fields are replaced.
+    lazyInput_ = null;
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     wireFormat.decodeData
@@ -138,6 +232,8 @@ public class Data implements ChangeCountable, SignatureHolder {
          signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
     else
       setDefaultWireEncoding(new SignedBlob(), null);
+    // getFullName computes the digest of the received input when first needed.
+    setFullNameSource(null, input, wireFormat);
   }
 
   /**
@@ -184,17 +280,102 @@ public class Data implements ChangeCountable, SignatureHolder {
     wireDecode(input, WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Decode only the name in the input and defer decoding the MetaInfo, content
+   * and signature until one of them is first used (or this Data is changed or
+   * copied). This is faster for a received Data packet which may be discarded
+   * after checking its name. If wireFormat is the default wire format, also set
+   * the defaultWireEncoding field to the input so that wireEncode and
+   * getFullName don't need to decode the other fields.
+   * Since the get methods can't throw an EncodingException, an invalid
+   * encoding of the deferred fields makes the get method throw an Error. To
+   * check the encoding, call decodeLazyFields().
+   * @param input The input Blob to decode, which is not copied and must remain
+   * unchanged. This reads from buf().position() to buf().limit(), but does not
+   * change the position.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @throws EncodingException For invalid encoding of the name or of the TLV
+   * structure of the Data packet.
+   */
+  public final void
+  wireDecodeLazy(Blob input, WireFormat wireFormat) throws EncodingException
+  {
+    lazyInput_ = null;
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    wireFormat.decodeDataName
+      (getName(), input.buf(), signedPortionBeginOffset, signedPortionEndOffset,
+       false);
+
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding
+        (new SignedBlob(input, signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+    setFullNameSource(null, input, wireFormat);
+
+    lazyInput_ = input;
+    lazyWireFormat_ = wireFormat;
+  }
+
+  /**
+   * If decoding of the other fields was deferred by wireDecodeLazy, decode them
+   * now. Otherwise do nothing.
+   * @throws EncodingException For invalid encoding of the deferred fields.
+   */
+  public final void
+  decodeLazyFields() throws EncodingException
+  {
+    if (lazyInput_ == null)
+      return;
+
+    Blob input = lazyInput_;
+    lazyInput_ = null;
+    // Decoding the fields updates the change count, so save the default wire
+    // encoding (which is null if the name was changed).
+    SignedBlob defaultWireEncoding = getDefaultWireEncoding();
+    WireFormat defaultWireEncodingFormat = getDefaultWireEncodingFormat();
+    boolean haveFullNameSource = haveFullNameSource();
+
+    try {
+      lazyWireFormat_.decodeDataAfterName(this, input.buf(), false);
+    } catch (EncodingException ex) {
+      // Keep the input so that the next call also throws.
+      lazyInput_ = input;
+      throw ex;
+    }
+
+    if (!defaultWireEncoding.isNull())
+      setDefaultWireEncoding(defaultWireEncoding, defaultWireEncodingFormat);
+    if (haveFullNameSource)
+      fullNameChangeCount_ = getChangeCount();
+  }
+
   public final Signature
-  getSignature() { return (Signature)signature_.get(); }
+  getSignature()
+  {
+    ensureDecoded();
+    return (Signature)signature_.get();
+  }
 
   public final Name
   getName() { return (Name)name_.get(); }
 
   public final MetaInfo
-  getMetaInfo() { return (MetaInfo)metaInfo_.get(); }
+  getMetaInfo()
+  {
+    ensureDecoded();
+    return (MetaInfo)metaInfo_.get();
+  }
 
   public final Blob
-  getContent() { return content_; }
+  getContent()
+  {
+    ensureDecoded();
+    return content_;
+  }
 
   /**
    * Get the incoming face ID according to the incoming packet header.
@@ -211,7 +392,9 @@ public class Data implements ChangeCountable, SignatureHolder {
   /**
    * Get the Data packet's full name, which includes the final
    * ImplicitSha256Digest component based on the wire encoding for a particular
-   * wire format.
+   * wire format. If this Data was decoded with the wireFormat, the digest is of
+   * the received input so that this doesn't need to encode. The full name is
+   * computed once and kept until this Data is changed.
    * @param wireFormat A WireFormat object used to encode the Data packet.
    * @return The full name. You must not change the Name object - if you need
    * to change it then make a copy.
@@ -219,23 +402,20 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Name
   getFullName(WireFormat wireFormat) throws EncodingException
   {
-    // The default full name depends on the default wire encoding.
-    if (!getDefaultWireEncoding().isNull() && defaultFullName_.size() > 0 &&
-        getDefaultWireEncodingFormat() == wireFormat)
-      // We already have a full name. A non-null default wire encoding means
-      // that the Data packet fields have not changed.
-      return defaultFullName_;
-
-    Name fullName = new Name(getName());
-    // wireEncode will use the cached encoding if possible.
-    fullName.appendImplicitSha256Digest
-      (Common.digestSha256(wireEncode(wireFormat).buf()));
-
-    if (wireFormat == WireFormat.getDefaultWireFormat())
-      // wireEncode has already set defaultWireEncodingFormat_.
-      defaultFullName_ = fullName;
+    if (!haveFullNameSource() || fullNameWireFormat_ != wireFormat)
+      // wireEncode will use the cached encoding if possible.
+      setFullNameSource(null, wireEncode(wireFormat), wireFormat);
+
+    if (fullName_ == null) {
+      Name fullName = new Name(getName());
+      fullName.appendImplicitSha256Digest
+        (Common.digestSha256(fullNameEncoding_.buf()));
+      fullName_ = fullName;
+      // We don't need the encoding any more.
+      fullNameEncoding_ = null;
+    }
 
-    return fullName;
+    return fullName_;
   }
 
   /**
@@ -285,6 +465,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setSignature(Signature signature)
   {
+    ensureDecoded();
     try {
       signature_.set(signature == null ?
         new Sha256WithRsaSignature() : (Signature)signature.clone());
@@ -309,6 +490,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public Data
   setName(Name name)
   {
+    ensureDecoded();
     name_.set(name == null ? new Name() : new Name(name));
     ++changeCount_;
     return this;
@@ -322,6 +504,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setMetaInfo(MetaInfo metaInfo)
   {
+    ensureDecoded();
     metaInfo_.set(metaInfo == null ? new MetaInfo() : new MetaInfo(metaInfo));
     ++changeCount_;
     return this;
@@ -330,6 +513,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setContent(Blob content)
   {
+    ensureDecoded();
     content_ = (content == null ? new Blob() : content);
     ++changeCount_;
     return this;
@@ -350,6 +534,42 @@ public class Data implements ChangeCountable, SignatureHolder {
     return this;
   }
 
+  /**
+   * Tell the library not to reuse this Data object after the callback which
+   * received it returns. This only has an effect if the Data was passed to
+   * onData by a Face where setRecycleReceivedPackets(true) was called. In that
+   * case, if the application keeps a reference to this Data (or to its Name or
+   * MetaInfo) after the callback returns, it must call this during the
+   * callback or keep a copy made with new Data(data). Blob values such as
+   * getContent() are never reused.
+   * @return This Data so that you can chain calls.
+   */
+  public final Data
+  retain()
+  {
+    retained_ = true;
+    return this;
+  }
+
+  /**
+   * An internal library method to check if retain() was called since this
+   * Data was recycled.
+   * @return True if retain() was called.
+   */
+  final boolean
+  isRetained() { return retained_; }
+
+  /**
+   * An internal library method to prepare this Data to decode another
+   * received packet. (wireDecodeLazy sets all the fields of the packet.)
+   */
+  final void
+  recycle()
+  {
+    lpPacket_ = null;
+    retained_ = false;
+  }
+
   /**
    * Get the change count, which is incremented each time this object
    * (or a child object) is changed.
@@ -369,6 +589,51 @@ public class Data implements ChangeCountable, SignatureHolder {
     return changeCount_;
   }
 
+  /**
+   * Call decodeLazyFields(), converting an EncodingException to an Error for
+   * the methods which can't throw it.
+   */
+  private void
+  ensureDecoded()
+  {
+    if (lazyInput_ == null)
+      return;
+
+    try {
+      decodeLazyFields();
+    } catch (EncodingException ex) {
+      throw new Error("Data: Error decoding the lazy fields: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Check if fullName_ (or fullNameEncoding_ to compute it) was set for the
+   * current values of the fields.
+   * @return True if fullName_ or fullNameEncoding_ is valid.
+   */
+  private boolean
+  haveFullNameSource()
+  {
+    return fullNameWireFormat_ != null &&
+      fullNameChangeCount_ == getChangeCount();
+  }
+
+  /**
+   * Set the full name, or the encoding to compute it from, for the current
+   * values of the fields.
+   * @param fullName The full name, or null to compute it from encoding.
+   * @param encoding The wire encoding if fullName is null, otherwise ignored.
+   * @param wireFormat The WireFormat of the encoding.
+   */
+  private void
+  setFullNameSource(Name fullName, Blob encoding, WireFormat wireFormat)
+  {
+    fullName_ = fullName;
+    fullNameEncoding_ = fullName == null ? encoding : null;
+    fullNameWireFormat_ = wireFormat;
+    fullNameChangeCount_ = getChangeCount();
+  }
+
   private void
   setDefaultWireEncoding
     (SignedBlob defaultWireEncoding, WireFormat defaultWireEncodingFormat)
@@ -387,9 +652,18 @@ public class Data implements ChangeCountable, SignatureHolder {
     new ChangeCounter(new MetaInfo());
   private Blob content_ = new Blob();
   private LpPacket lpPacket_ = null;
+  private boolean retained_ = false;
   private SignedBlob defaultWireEncoding_ = new SignedBlob();
-  private Name defaultFullName_ = new Name();
+  private Name fullName_ = null; /**< Null if not computed from fullNameEncoding_ */
+  private Blob fullNameEncoding_ = null;
+  private WireFormat fullNameWireFormat_ = null; /**< Null if not set */
+  private long fullNameChangeCount_ = 0;
   private WireFormat defaultWireEncodingFormat_;
   private long getDefaultWireEncodingChangeCount_ = 0;
   private long changeCount_ = 0;
+  private Blob lazyInput_ = null; /**< Not null if wireDecodeLazy deferred decoding */
+  private WireFormat lazyWireFormat_ = null;
+  private ByteBuffer signedPortion_ = null; /**< Null if not encoded */
+  private WireFormat signedPortionWireFormat_ = null;
+  private long signedPortionChangeCount_ = 0;
 }
@@ -1318,6 +1318,15 @@ public class Face {
     putData(data, WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Check if the transport's send keeps the sent buffer after it returns (see
+   * Transport.isSendRetainingBuffer), so that the caller of send must not
+   * change or reuse the bytes of the buffer, for example AsyncTcpTransport.
+   * @return True if send keeps the buffer.
+   */
+  public final boolean
+  isSendRetainingBuffer() { return node_.getTransport().isSendRetainingBuffer(); }
+
   /**
    * Send the encoded packet out through the face.
    * @param encoding The blob with the the encoded packet to send.
@@ -1361,6 +1370,24 @@ public class Face {
     node_.processEvents();
   }
 
+  /**
+   * Set whether to reuse the Interest and Data objects for received packets.
+   * If true, a received Interest or Data is reused for another received packet
+   * after the onInterest or onData callbacks return, which reduces garbage for
+   * a high rate of received packets. In this case, if the application keeps a
+   * received Interest or Data after the callback returns, the callback must
+   * call interest.retain() or data.retain() (or make a copy). KeyChain.verifyData,
+   * ThreadPoolFace and MemoryContentCache call retain() when they keep a packet.
+   * @param recycleReceivedPackets True to reuse the objects for received
+   * packets, false to make new objects for each packet (the default).
+   * @note This is an experimental feature. This API may change in the future.
+   */
+  public void
+  setRecycleReceivedPackets(boolean recycleReceivedPackets)
+  {
+    node_.setRecycleReceivedPackets(recycleReceivedPackets);
+  }
+
   /**
    * Check if the face is local based on the current connection through the
    * Transport; some Transport may cause network IO (e.g. an IP host name lookup).
@@ -1394,7 +1421,9 @@ public class Face {
   /**
    * Call callback.run() after the given delay. Even though this is public,
    * it is not part of the public API of Face. This default implementation just
-   * calls Node.callLater, but a subclass can override.
+   * calls Node.callLater, but a subclass can override. If the callback is a
+   * DelayedCallTable.CancelableCallback (such as an interest timeout), an
+   * override should call its setCanceler so that it can be canceled.
    * @param delayMilliseconds The delay in milliseconds.
    * @param callback This calls callback.run() after the delay.
    */
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.util.Common;
+
+/**
+ * A FaceEventLoop services many Face objects from one thread. It registers the
+ * channel of each Face's transport (such as TcpTransport or UdpTransport) with
+ * one java.nio.channels.Selector and waits until a channel has data to receive
+ * or until the next delayed call (such as an interest timeout), then calls
+ * processEvents for the Faces which are ready. This replaces the application
+ * loop which repeatedly calls Face.processEvents and Thread.sleep.
+ *
+ * A Face whose transport does not have a selectable channel (such as
+ * AsyncTcpTransport, which receives on its own threads) is only processed for
+ * its delayed calls. This is also the case after the peer closes the
+ * connection of a TcpTransport or UnixTransport, which closes its channel.
+ *
+ * As with Face.processEvents, the callbacks are called on the thread which
+ * calls run() or runOnce(), and the application should call expressInterest on
+ * this thread (for example from a callback). If another thread calls a Face
+ * method which adds a delayed call or opens a connection, it should call
+ * wakeup() so that the loop checks the Face again.
+ */
+public class FaceEventLoop {
+  /**
+   * Create a new FaceEventLoop with a new Selector.
+   * @throws IOException For error opening the Selector.
+   */
+  public FaceEventLoop() throws IOException
+  {
+    selector_ = Selector.open();
+  }
+
+  /**
+   * Add the Face to be serviced by this event loop. The Face's transport does
+   * not need to be connected yet. This can be called from any thread.
+   * @param face The Face to add.
+   */
+  public final void
+  addFace(Face face)
+  {
+    addedFaces_.add(face);
+    selector_.wakeup();
+  }
+
+  /**
+   * Remove the Face from this event loop. This does not shut down the Face.
+   * This can be called from any thread.
+   * @param face The Face to remove.
+   */
+  public final void
+  removeFace(Face face)
+  {
+    removedFaces_.add(face);
+    selector_.wakeup();
+  }
+
+  /**
+   * Wait until a Face has data to receive or a delayed call is due, but no
+   * longer than maxWaitMilliseconds, then call processEvents for each Face
+   * which is ready. This logs and ignores exceptions from processEvents.
+   * @param maxWaitMilliseconds The maximum time to wait in milliseconds. If
+   * this is 0, then wait until a Face is ready or wakeup() is called.
+   * @throws IOException For error using the Selector.
+   */
+  public final void
+  runOnce(long maxWaitMilliseconds) throws IOException
+  {
+    updateFaces();
+
+    // Find the earliest delayed call.
+    double now = Common.getNowMilliseconds();
+    double nextCallTime = -1;
+    for (int i = 0; i < faces_.size(); ++i) {
+      double callTime = faces_.get(i).face_.node_.getNextDelayedCallTime();
+      if (callTime >= 0 && (nextCallTime < 0 || callTime < nextCallTime))
+        nextCallTime = callTime;
+    }
+
+    long timeout = maxWaitMilliseconds;
+    if (nextCallTime >= 0) {
+      // Round up so that the call is due when we wake up.
+      long untilNextCall = (long)Math.ceil(nextCallTime - now);
+      if (timeout <= 0 || untilNextCall < timeout)
+        timeout = untilNextCall;
+    }
+
+    if (nextCallTime >= 0 && timeout <= 0)
+      selector_.selectNow();
+    else
+      selector_.select(timeout);
+
+    // Mark the Faces whose channel has data to receive.
+    Iterator<SelectionKey> keys = selector_.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      ((FaceEntry)key.attachment()).isReady_ = true;
+    }
+
+    now = Common.getNowMilliseconds();
+    for (int i = 0; i < faces_.size(); ++i) {
+      FaceEntry entry = faces_.get(i);
+      if (!entry.isReady_) {
+        double callTime = entry.face_.node_.getNextDelayedCallTime();
+        if (callTime >= 0 && callTime <= now)
+          entry.isReady_ = true;
+      }
+
+      if (entry.isReady_) {
+        entry.isReady_ = false;
+        try {
+          entry.face_.processEvents();
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in processEvents", ex);
+        }
+
+        if (entry.key_ != null && !entry.key_.channel().isOpen()) {
+          // The transport closed the channel, for example at the end of the
+          // stream. Stop selecting on it so that the next select waits.
+          entry.key_.cancel();
+          entry.key_ = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Repeatedly call runOnce until stop() is called.
+   * @throws IOException For error using the Selector.
+   */
+  public final void
+  run() throws IOException
+  {
+    isRunning_ = true;
+    while (isRunning_)
+      runOnce(0);
+  }
+
+  /**
+   * Make run() return after the current call to runOnce. This can be called
+   * from any thread, including a callback.
+   */
+  public final void
+  stop()
+  {
+    isRunning_ = false;
+    selector_.wakeup();
+  }
+
+  /**
+   * Make the current or next wait in runOnce return immediately so that it
+   * checks the Faces again. This can be called from any thread.
+   */
+  public final void
+  wakeup() { selector_.wakeup(); }
+
+  /**
+   * Close the Selector. This does not shut down the Faces.
+   * @throws IOException For error closing the Selector.
+   */
+  public final void
+  close() throws IOException
+  {
+    selector_.close();
+  }
+
+  /**
+   * A FaceEntry holds a Face and its registration with the Selector.
+   */
+  private static class FaceEntry {
+    public FaceEntry(Face face)
+    {
+      face_ = face;
+    }
+
+    public final Face face_;
+    public SelectionKey key_ = null;
+    public boolean isReady_ = false;
+  }
+
+  /**
+   * Process the added and removed Faces, and register the channel of each
+   * Face whose transport has connected or reconnected with a new channel.
+   * Cancel the registration of a channel which is closed.
+   */
+  private void
+  updateFaces() throws IOException
+  {
+    Face face;
+    while ((face = addedFaces_.poll()) != null) {
+      if (findFace(face) < 0)
+        faces_.add(new FaceEntry(face));
+    }
+    while ((face = removedFaces_.poll()) != null) {
+      int i = findFace(face);
+      if (i >= 0) {
+        if (faces_.get(i).key_ != null)
+          faces_.get(i).key_.cancel();
+        faces_.remove(i);
+      }
+    }
+
+    boolean canceledKey = false;
+    for (int i = 0; i < faces_.size(); ++i) {
+      FaceEntry entry = faces_.get(i);
+      SelectableChannel channel =
+        entry.face_.node_.getTransport().getSelectableChannel();
+      if (entry.key_ != null && entry.key_.channel() == channel &&
+          entry.key_.isValid() && channel.isOpen())
+        // Already registered.
+        continue;
+
+      if (entry.key_ != null) {
+        entry.key_.cancel();
+        entry.key_ = null;
+        canceledKey = true;
+      }
+      if (channel != null && channel.isOpen()) {
+        if (canceledKey) {
+          // A canceled key is only removed by the next select, so remove it
+          // before registering in case the channel is the same.
+          selector_.selectNow();
+          canceledKey = false;
+        }
+        entry.key_ = channel.register(selector_, SelectionKey.OP_READ, entry);
+      }
+    }
+  }
+
+  /**
+   * Find the index of the Face in faces_.
+   * @param face The Face to find.
+   * @return The index, or -1 if not found.
+   */
+  private int
+  findFace(Face face)
+  {
+    for (int i = 0; i < faces_.size(); ++i) {
+      if (faces_.get(i).face_ == face)
+        return i;
+    }
+
+    return -1;
+  }
+
+  private final Selector selector_;
+  // Only the thread which calls runOnce uses faces_.
+  private final ArrayList<FaceEntry> faces_ = new ArrayList<FaceEntry>();
+  private final ConcurrentLinkedQueue<Face> addedFaces_ =
+    new ConcurrentLinkedQueue<Face>();
+  private final ConcurrentLinkedQueue<Face> removedFaces_ =
+    new ConcurrentLinkedQueue<Face>();
+  private volatile boolean isRunning_ = false;
+  private static final Logger logger_ = Logger.getLogger
+    (FaceEventLoop.class.getName());
+}
@@ -630,6 +630,52 @@ public class Interest implements ChangeCountable {
     return this;
   }
 
+  /**
+   * Tell the library not to reuse this Interest object after the callback
+   * which received it returns. This only has an effect if the Interest was
+   * passed to onInterest by a Face where setRecycleReceivedPackets(true) was
+   * called. In that case, if the application keeps a reference to this
+   * Interest (or to its Name, KeyLocator, Exclude or forwarding hint) after
+   * the callback returns, it must call this during the callback or keep a copy
+   * made with new Interest(interest). Blob values such as getNonce() are never
+   * reused.
+   * @return This Interest so that you can chain calls.
+   */
+  public final Interest
+  retain()
+  {
+    retained_ = true;
+    return this;
+  }
+
+  /**
+   * An internal library method to check if retain() was called since this
+   * Interest was recycled.
+   * @return True if retain() was called.
+   */
+  final boolean
+  isRetained() { return retained_; }
+
+  /**
+   * An internal library method to prepare this Interest to decode another
+   * received packet. This resets the fields which wireDecode does not set if
+   * they are omitted from the encoding, so that the result is the same as
+   * decoding into a new Interest.
+   */
+  final void
+  recycle()
+  {
+    setMinSuffixComponents(-1);
+    setMaxSuffixComponents(-1);
+    getKeyLocator().clear();
+    getExclude().clear();
+    setChildSelector(-1);
+    setMustBeFresh(true);
+    getForwardingHint().clear();
+    lpPacket_ = null;
+    retained_ = false;
+  }
+
   /**
    * Update the bytes of the nonce with new random values. This ensures that the
    * new nonce value is different than the current one. If the current nonce is
@@ -848,6 +894,7 @@ public class Interest implements ChangeCountable {
   private Blob nonce_ = new Blob();
   private long getNonceChangeCount_ = 0;
   private LpPacket lpPacket_ = null;
+  private boolean retained_ = false;
   private Blob linkWireEncoding_ = new Blob();
   private WireFormat linkWireEncodingFormat_ = null;
   private final ChangeCounter forwardingHint_ =
@@ -247,7 +247,8 @@ public class Name implements ChangeCountable, Comparable {
     toNumberWithMarker(int marker) throws EncodingException
     {
       ByteBuffer buffer = value_.buf();
-      if (buffer == null || buffer.remaining() <= 0 || buffer.get(0) != (byte)marker)
+      if (buffer == null || buffer.remaining() <= 0 ||
+          buffer.get(buffer.position()) != (byte)marker)
         throw new EncodingException
           ("Name component does not begin with the expected marker.");
 
@@ -344,9 +345,10 @@ public class Name implements ChangeCountable, Comparable {
       if (number < 0)
         number = 0;
 
-      TlvEncoder encoder = new TlvEncoder(8);
-      encoder.writeNonNegativeInteger(number);
-      return new Component(new Blob(encoder.getOutput(), false));
+      // Encode directly into the value array without a TlvEncoder.
+      byte[] value = new byte[TlvEncoder.sizeOfNonNegativeInteger(number)];
+      TlvEncoder.putNonNegativeInteger(number, value, 0);
+      return new Component(new Blob(value, false));
     }
 
     /**
@@ -362,11 +364,11 @@ public class Name implements ChangeCountable, Comparable {
       if (number < 0)
         number = 0;
 
-      TlvEncoder encoder = new TlvEncoder(9);
-      // Encode backwards.
-      encoder.writeNonNegativeInteger(number);
-      encoder.writeNonNegativeInteger((long)marker);
-      return new Component(new Blob(encoder.getOutput(), false));
+      // Encode directly into the value array without a TlvEncoder.
+      byte[] value = new byte[1 + TlvEncoder.sizeOfNonNegativeInteger(number)];
+      value[0] = (byte)marker;
+      TlvEncoder.putNonNegativeInteger(number, value, 1);
+      return new Component(new Blob(value, false));
     }
 
     /**
@@ -624,6 +626,9 @@ public class Name implements ChangeCountable, Comparable {
   Name(Name name)
   {
     components_ = new ArrayList<Component>(name.components_);
+    // The components are the same, so the cached encoding is still valid.
+    setDefaultWireEncoding
+      (name.getDefaultWireEncoding(), name.defaultWireEncodingFormat_);
   }
 
   /**
@@ -1127,14 +1132,64 @@ public class Name implements ChangeCountable, Comparable {
   isPrefixOf(Name name) { return match(name); }
 
   /**
-   * Encode this Name for a particular wire format.
+   * Encode this Name for a particular wire format. If wireFormat is the default
+   * wire format, also set the defaultWireEncoding field to the encoded result
+   * so that it is reused until this Name is changed.
    * @param wireFormat A WireFormat object used to encode this Name.
    * @return The encoded buffer.
    */
   public final Blob
   wireEncode(WireFormat wireFormat)
   {
-    return wireFormat.encodeName(this);
+    if (wireFormat == WireFormat.getDefaultWireFormat() &&
+        !getDefaultWireEncoding().isNull())
+      // We already have an encoding in the desired format.
+      return getDefaultWireEncoding();
+
+    Blob encoding = wireFormat.encodeName(this);
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding(encoding, WireFormat.getDefaultWireFormat());
+
+    return encoding;
+  }
+
+  /**
+   * Return the encoding which was cached by wireEncode() in the default wire
+   * format. The wire format uses this to copy the cached encoding into the
+   * encoding of a packet instead of encoding each component again.
+   * @return The default wire encoding, or a Blob where isNull() is true if
+   * this Name was not encoded in the default wire format or was changed since
+   * (or if the default wire format was changed).
+   */
+  public final Blob
+  getDefaultWireEncoding()
+  {
+    if (defaultWireEncodingChangeCount_ != changeCount_ ||
+        defaultWireEncodingFormat_ != WireFormat.getDefaultWireFormat()) {
+      // The components or the default wire format have changed, so the default
+      // wire encoding is invalidated.
+      defaultWireEncoding_ = NULL_BLOB;
+      defaultWireEncodingFormat_ = null;
+      defaultWireEncodingChangeCount_ = changeCount_;
+    }
+
+    return defaultWireEncoding_;
+  }
+
+  /**
+   * Set the cached encoding which is returned by getDefaultWireEncoding() until
+   * this Name is changed.
+   * @param defaultWireEncoding The encoding of this Name.
+   * @param defaultWireEncodingFormat The WireFormat of the encoding.
+   */
+  final void
+  setDefaultWireEncoding
+    (Blob defaultWireEncoding, WireFormat defaultWireEncodingFormat)
+  {
+    defaultWireEncoding_ = defaultWireEncoding;
+    defaultWireEncodingFormat_ = defaultWireEncodingFormat;
+    defaultWireEncodingChangeCount_ = changeCount_;
   }
 
   /**
@@ -1557,4 +1612,8 @@ public class Name implements ChangeCountable, Comparable {
   private boolean haveHashCode_ = false;
   private int hashCode_;
   private long hashCodeChangeCount_ = 0;
+  private Blob defaultWireEncoding_ = NULL_BLOB;
+  private WireFormat defaultWireEncodingFormat_ = null;
+  private long defaultWireEncodingChangeCount_ = 0;
+  private static final Blob NULL_BLOB = new Blob();
 }
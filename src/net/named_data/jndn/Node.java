@@ -22,8 +22,11 @@ package net.named_data.jndn;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.encoding.ElementListener;
@@ -75,7 +78,8 @@ public class Node implements ElementListener {
    * @param onTimeout If the interest times out according to the interest
    * lifetime, this calls onTimeout.onTimeout(interest) where interest is the
    * interest given to expressInterest. If onTimeout is null, this does not use
-   * it.
+   * it. This also calls onTimeout right away if another thread was opening the
+   * connection and the connection failed.
    * @param onNetworkNack When a network Nack packet for the interest is
    * received and onNetworkNack is not null, this calls
    * onNetworkNack.onNetworkNack(interest, networkNack) and does not call
@@ -84,7 +88,8 @@ public class Node implements ElementListener {
    * @param wireFormat A WireFormat object used to encode the message.
    * @param face The face which has the callLater method, used for interest
    * timeouts. The callLater method may be overridden in a subclass of Face.
-   * @throws IOException For I/O error in sending the interest.
+   * @throws IOException For I/O error in sending the interest, or if this
+   * thread opens the connection and it fails.
    * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
    */
   public final void
@@ -98,7 +103,7 @@ public class Node implements ElementListener {
     interestCopy.setNonce(nonceTemplate_);
     interestCopy.refreshNonce();
 
-    if (connectStatus_ == ConnectStatus.CONNECT_COMPLETE) {
+    if (connectStatus_.get() == ConnectStatus.CONNECT_COMPLETE) {
       // We are connected. Simply send the interest without synchronizing.
       expressInterestHelper
         (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
@@ -106,82 +111,71 @@ public class Node implements ElementListener {
       return;
     }
 
-    // Wile connecting, use onConnectedCallbacks_ to synchronize
-    // onConnectedCallbacks_ as well as connectStatus_.
-    synchronized(onConnectedCallbacks_) {
-      // TODO: Properly check if we are already connected to the expected host.
-      if (!transport_.isAsync()) {
-        // The simple case: Just do a blocking connect and express.
-        transport_.connect(connectionInfo_, this, null);
-        expressInterestHelper
+    // expressLater is called by callOnConnectedCallbacks when connected.
+    ExpressLater expressLater = new ExpressLater
+      (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
+       wireFormat, face);
+
+    // Only the thread which changes the status from UNCONNECTED opens the
+    // connection.
+    if (!connectStatus_.compareAndSet
+        (ConnectStatus.UNCONNECTED, ConnectStatus.CONNECT_REQUESTED)) {
+      // Still connecting. Add to the interests to express when connected.
+      onConnectedCallbacks_.add(expressLater);
+      // We have to check for CONNECT_COMPLETE again in case the connection
+      // finished before we added to onConnectedCallbacks_.
+      ConnectStatus status = connectStatus_.get();
+      if (status == ConnectStatus.CONNECT_COMPLETE)
+        callOnConnectedCallbacks();
+      else if (status == ConnectStatus.UNCONNECTED &&
+               onConnectedCallbacks_.remove(expressLater))
+        // The connection failed after we added to onConnectedCallbacks_ but
+        // before failOnConnectedCallbacks removed it. Try to connect again.
+        expressInterest
           (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
            wireFormat, face);
-        // Make future calls to expressInterest send directly to the Transport.
-        connectStatus_ = ConnectStatus.CONNECT_COMPLETE;
+      return;
+    }
 
-        return;
+    // TODO: Properly check if we are already connected to the expected host.
+    if (!transport_.isAsync()) {
+      // The simple case: Just do a blocking connect and express.
+      try {
+        transport_.connect(connectionInfo_, this, null);
+      } catch (IOException ex) {
+        // Let the next call to expressInterest try to connect.
+        connectStatus_.set(ConnectStatus.UNCONNECTED);
+        failOnConnectedCallbacks();
+        throw ex;
       }
 
-      // Handle the async case.
-      if (connectStatus_ == ConnectStatus.UNCONNECTED) {
-        connectStatus_ = ConnectStatus.CONNECT_REQUESTED;
-
-        // expressInterestHelper will be called by onConnected.
-        onConnectedCallbacks_.add(new Runnable() {
-          public void run() {
-            try {
-              expressInterestHelper
-                (pendingInterestId, interestCopy, onData, onTimeout, 
-                 onNetworkNack, wireFormat, face);
-            } catch (IOException ex) {
-              logger_.log(Level.SEVERE, null, ex);
-            }
-          }
-        });
-
-        Runnable onConnected = new Runnable() {
-          public void run() {
-            // This is called on a separate thread from the surrounding code
-            // when connected, so synchronize again.
-            synchronized(onConnectedCallbacks_) {
-              // Call each callback added while the connection was opening.
-              for (int i = 0; i < onConnectedCallbacks_.size(); ++i)
-                ((Runnable)onConnectedCallbacks_.get(i)).run();
-              onConnectedCallbacks_.clear();
-
-              // Make future calls to expressInterest send directly to the
-              // Transport.
-              connectStatus_ = ConnectStatus.CONNECT_COMPLETE;
-            }
-          }
-        };
-        transport_.connect(connectionInfo_, this, onConnected);
-      }
-      else if (connectStatus_ == ConnectStatus.CONNECT_REQUESTED) {
-        // Still connecting. add to the interests to express by onConnected.
-        onConnectedCallbacks_.add(new Runnable() {
-          public void run() {
-            try {
-              expressInterestHelper
-                (pendingInterestId, interestCopy, onData, onTimeout,
-                 onNetworkNack, wireFormat, face);
-            } catch (IOException ex) {
-              logger_.log(Level.SEVERE, null, ex);
-            }
-          }
-        });
+      // Make future calls to expressInterest send directly to the Transport.
+      connectStatus_.set(ConnectStatus.CONNECT_COMPLETE);
+      callOnConnectedCallbacks();
+      expressInterestHelper
+        (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
+         wireFormat, face);
+      return;
+    }
+
+    // Handle the async case.
+    onConnectedCallbacks_.add(expressLater);
+    Runnable onConnected = new Runnable() {
+      public void run() {
+        // Make future calls to expressInterest send directly to the Transport.
+        connectStatus_.set(ConnectStatus.CONNECT_COMPLETE);
+        // Call each callback added while the connection was opening.
+        callOnConnectedCallbacks();
       }
-      else if (connectStatus_ == ConnectStatus.CONNECT_COMPLETE)
-        // We have to repeat this check for CONNECT_COMPLETE in case the
-        // onConnected callback was called while we were waiting to enter this
-        // synchronized block.
-        expressInterestHelper
-          (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
-           wireFormat, face);
-      else
-        // Don't expect this to happen.
-        throw new Error
-          ("Node: Unrecognized _connectStatus " + connectStatus_);
+    };
+    try {
+      transport_.connect(connectionInfo_, this, onConnected);
+    } catch (IOException ex) {
+      onConnectedCallbacks_.remove(expressLater);
+      // Let the next call to expressInterest try to connect.
+      connectStatus_.set(ConnectStatus.UNCONNECTED);
+      failOnConnectedCallbacks();
+      throw ex;
     }
   }
 
@@ -375,12 +369,100 @@ public class Node implements ElementListener {
   public final Transport.ConnectionInfo
   getConnectionInfo() { return connectionInfo_; }
 
+  /**
+   * Decode and process received packets on the threads of threadPool instead of
+   * the thread which calls onReceivedElement, and split the pending interest
+   * table into nShards shards by the hash of the first name component. Packets
+   * are dispatched to nShards serial queues by the same hash, so that packets
+   * for different name subtrees are decoded and matched in parallel, while
+   * packets with the same first name component are processed in the order they
+   * were received. The onData, onNetworkNack and onInterest callbacks are
+   * called on the threads of threadPool. This must be called before
+   * expressInterest, registerPrefix or setInterestFilter.
+   * @param threadPool The Executor for processing received packets.
+   * @param nShards The number of shards.
+   */
+  public final void
+  setDispatchThreadPool(Executor threadPool, int nShards)
+  {
+    pendingInterestTable_ = new PendingInterestTable(nShards);
+    DispatchShard[] dispatchShards =
+      new DispatchShard[pendingInterestTable_.getShardCount()];
+    for (int i = 0; i < dispatchShards.length; ++i)
+      dispatchShards[i] = new DispatchShard(threadPool);
+    dispatchShards_ = dispatchShards;
+  }
+
+  /**
+   * Check if setDispatchThreadPool was called.
+   * @return True if received packets are processed on a thread pool.
+   */
+  public final boolean
+  isDispatchOnThreadPool() { return dispatchShards_ != null; }
+
+  /**
+   * Set whether to reuse the Interest, Data and LpPacket objects (and the lists
+   * of matching entries) for received packets. If true, each thread which
+   * processes received packets keeps a small pool of these objects, and a
+   * received Interest or Data is put back in the pool after the onInterest or
+   * onData callbacks return, unless a callback called Interest.retain() or
+   * Data.retain(). This reduces garbage for a high rate of received packets,
+   * but the application must call retain() (or make a copy) for a packet which
+   * it keeps after the callback returns.
+   * @param recycleReceivedPackets True to reuse the objects for received
+   * packets, false to make new objects for each packet (the default).
+   */
+  public final void
+  setRecycleReceivedPackets(boolean recycleReceivedPackets)
+  {
+    recycleReceivedPackets_ = recycleReceivedPackets;
+  }
+
+  /**
+   * Check if setRecycleReceivedPackets(true) was called.
+   * @return True if the objects for received packets are reused.
+   */
+  public final boolean
+  getRecycleReceivedPackets() { return recycleReceivedPackets_; }
+
   public final void onReceivedElement(ByteBuffer element) throws EncodingException
   {
+    DispatchShard[] dispatchShards = dispatchShards_;
+    if (dispatchShards != null) {
+      // Copy the element (unless the transport doesn't reuse its receive
+      // buffer) since it is processed after this returns.
+      ByteBuffer input = element;
+      if (!transport_.isZeroCopyReceive()) {
+        input = ByteBuffer.allocate(element.remaining());
+        input.put(element.duplicate());
+        input.flip();
+      }
+
+      dispatchShards[getDispatchShardIndex(input, dispatchShards.length)]
+        .add(input);
+      return;
+    }
+
+    processReceivedElement(element, !transport_.isZeroCopyReceive());
+  }
+
+  /**
+   * Decode the element as an Interest, Data or Nack, and call the matching
+   * callbacks.
+   * @param element The received element.
+   * @param copy True to copy the element before decoding, false if the element
+   * is not changed after this returns.
+   */
+  private void
+  processReceivedElement(ByteBuffer element, boolean copy)
+    throws EncodingException
+  {
+    ReceivePool pool = recycleReceivedPackets_ ? receivePool_.get() : null;
+
     LpPacket lpPacket = null;
     if (element.get(0) == Tlv.LpPacket_LpPacket) {
       // Decode the LpPacket and replace element with the fragment.
-      lpPacket = new LpPacket();
+      lpPacket = pool != null ? pool.takeLpPacket() : new LpPacket();
       // Set copy false so that the fragment is a slice which will be copied below.
       // The header fields are all integers and don't need to be copied.
       TlvWireFormat.get().decodeLpPacket(lpPacket, element, false);
@@ -391,23 +473,54 @@ public class Node implements ElementListener {
     Interest interest = null;
     Data data = null;
     if (element.get(0) == Tlv.Interest || element.get(0) == Tlv.Data) {
+      // Copy the element once (if needed) and decode without copying so that
+      // the decoded fields are slices of it.
+      Blob input = new Blob(element, copy);
       TlvDecoder decoder = new TlvDecoder(element);
       if (decoder.peekType(Tlv.Interest, element.remaining())) {
-        interest = new Interest();
-        interest.wireDecode(element, TlvWireFormat.get());
+        interest = pool != null ? pool.takeInterest() : new Interest();
+        interest.wireDecode(input, TlvWireFormat.get());
 
         if (lpPacket != null)
           interest.setLpPacket(lpPacket);
       }
       else if (decoder.peekType(Tlv.Data, element.remaining())) {
-        data = new Data();
-        data.wireDecode(element, TlvWireFormat.get());
+        // Decode only the name so that an unsolicited or duplicate Data packet
+        // is dropped without decoding the other fields.
+        data = pool != null ? pool.takeData() : new Data();
+        data.wireDecodeLazy(input, TlvWireFormat.get());
+        if (!pendingInterestTable_.hasEntriesForDataName(data.getName())) {
+          if (pool != null)
+            pool.recycle(null, data, lpPacket);
+          return;
+        }
+        data.decodeLazyFields();
 
         if (lpPacket != null)
           data.setLpPacket(lpPacket);
       }
     }
 
+    processDecodedPacket(interest, data, lpPacket, pool);
+    if (pool != null)
+      pool.recycle(interest, data, lpPacket);
+  }
+
+  /**
+   * Call the callbacks for the Interest, Data or Nack decoded by
+   * processReceivedElement.
+   * @param interest The decoded Interest, or null if not an Interest.
+   * @param data The decoded Data, or null if not a Data.
+   * @param lpPacket The decoded LpPacket, or null if none.
+   * @param pool The ReceivePool for the lists of matching entries, or null to
+   * make new lists.
+   * @throws EncodingException For invalid encoding of the Data name.
+   */
+  private void
+  processDecodedPacket
+    (Interest interest, Data data, LpPacket lpPacket, ReceivePool pool)
+    throws EncodingException
+  {
     if (lpPacket != null) {
       // We have decoded the fragment, so remove the wire encoding to save memory.
       lpPacket.setFragmentWireEncoding(new Blob());
@@ -418,8 +531,8 @@ public class Node implements ElementListener {
           // We got a Nack but not for an Interest, so drop the packet.
           return;
 
-        ArrayList<PendingInterestTable.Entry> pitEntries =
-          new ArrayList<PendingInterestTable.Entry>();
+        ArrayList<PendingInterestTable.Entry> pitEntries = pool != null ?
+          pool.takePitEntryList() : new ArrayList<PendingInterestTable.Entry>();
         pendingInterestTable_.extractEntriesForNackInterest(interest, pitEntries);
         for (int i = 0; i < pitEntries.size(); ++i) {
           PendingInterestTable.Entry pendingInterest = pitEntries.get(i);
@@ -430,6 +543,8 @@ public class Node implements ElementListener {
             logger_.log(Level.SEVERE, "Error in onNack", ex);
           }
         }
+        if (pool != null)
+          pool.recyclePitEntryList(pitEntries);
 
         // We have processed the network Nack packet.
         return;
@@ -439,7 +554,8 @@ public class Node implements ElementListener {
     // Now process as Interest or Data.
     if (interest != null) {
       // Quickly lock and get all interest filter callbacks which match.
-      ArrayList matchedFilters = new ArrayList();
+      ArrayList matchedFilters = pool != null ?
+        pool.takeFilterList() : new ArrayList();
       interestFilterTable_.getMatchedFilters(interest, matchedFilters);
 
       // The lock on interestFilterTable_ is released, so call the callbacks.
@@ -454,10 +570,12 @@ public class Node implements ElementListener {
           logger_.log(Level.SEVERE, "Error in onInterest", ex);
         }
       }
+      if (pool != null)
+        pool.recycleFilterList(matchedFilters);
     }
     else if (data != null) {
-      ArrayList<PendingInterestTable.Entry> pitEntries =
-        new ArrayList<PendingInterestTable.Entry>();
+      ArrayList<PendingInterestTable.Entry> pitEntries = pool != null ?
+        pool.takePitEntryList() : new ArrayList<PendingInterestTable.Entry>();
       pendingInterestTable_.extractEntriesForExpressedInterest(data, pitEntries);
       for (int i = 0; i < pitEntries.size(); ++i) {
         PendingInterestTable.Entry pendingInterest = pitEntries.get(i);
@@ -467,6 +585,8 @@ public class Node implements ElementListener {
           logger_.log(Level.SEVERE, "Error in onData", ex);
         }
       }
+      if (pool != null)
+        pool.recyclePitEntryList(pitEntries);
     }
   }
 
@@ -512,20 +632,54 @@ public class Node implements ElementListener {
     delayedCallTable_.callLater(delayMilliseconds, callback);
   }
 
+  /**
+   * Get the time of the earliest call added by callLater (including interest
+   * timeouts if Face.callLater is not overridden), so that an event loop can
+   * wait until then to call processEvents.
+   * @return The call time in milliseconds, similar to
+   * Common.getNowMilliseconds(), or -1 if there are no delayed calls.
+   */
+  public final double
+  getNextDelayedCallTime() { return delayedCallTable_.getNextCallTime(); }
+
   /**
    * Get the next unique entry ID for the pending interest table, interest
-   * filter table, etc. This uses a synchronized to be thread safe. Most entry
-   * IDs are for the pending interest table (there usually are not many interest
-   * filter table entries) so we use a common pool to only have to do the thread
-   * safe lock in one method which is called by Face.
+   * filter table, etc. This uses an AtomicLong to be thread safe without a
+   * lock. Most entry IDs are for the pending interest table (there usually are
+   * not many interest filter table entries) so we use a common pool for all
+   * the entry IDs.
    * @return The next entry ID.
    */
   public long
   getNextEntryId()
   {
-    synchronized(lastEntryIdLock_) {
-      return ++lastEntryId_;
-    }
+    return lastEntryId_.incrementAndGet();
+  }
+
+  /**
+   * Remove and call each callback in onConnectedCallbacks_. This can be called
+   * by more than one thread at a time, and each callback is only called once.
+   */
+  private void
+  callOnConnectedCallbacks()
+  {
+    ExpressLater callback;
+    while ((callback = onConnectedCallbacks_.poll()) != null)
+      callback.run();
+  }
+
+  /**
+   * Remove each callback in onConnectedCallbacks_ and call the onTimeout of its
+   * Interest. This is called when the connection fails so that the Interests
+   * which other threads expressed while connecting are not left without a
+   * result. The connectStatus_ must already be UNCONNECTED.
+   */
+  private void
+  failOnConnectedCallbacks()
+  {
+    ExpressLater callback;
+    while ((callback = onConnectedCallbacks_.poll()) != null)
+      callback.callTimeout();
   }
 
   /**
@@ -580,11 +734,14 @@ public class Node implements ElementListener {
         // Use a default timeout delay.
         delayMilliseconds = 4000.0;
 
-      face.callLater
-        (delayMilliseconds,
-         new Runnable() {
-           public void run() { processInterestTimeout(pendingInterest); }
-         });
+      // Use a CancelableCallback so that the pending interest table cancels
+      // the timeout when the interest is satisfied or removed.
+      DelayedCallTable.CancelableCallback timeout =
+        new DelayedCallTable.CancelableCallback() {
+          public void run() { processInterestTimeout(pendingInterest); }
+        };
+      pendingInterestTable_.setTimeout(pendingInterest, timeout);
+      face.callLater(delayMilliseconds, timeout);
     }
 
     // Special case: For timeoutPrefix_ we don't actually send the interest.
@@ -597,8 +754,282 @@ public class Node implements ElementListener {
     }
   }
 
+  /**
+   * Get the index of the dispatch shard for the received element, from the
+   * hash of the first component of the Interest or Data name, which is the
+   * same as the PendingInterestTable shard. This only reads the TLV headers.
+   * If the element has no name components or can't be parsed, return 0.
+   * @param element The received element, which may be an LpPacket.
+   * @param nShards The number of shards.
+   * @return The shard index.
+   */
+  private static int
+  getDispatchShardIndex(ByteBuffer element, int nShards)
+  {
+    if (nShards == 1)
+      return 0;
+
+    try {
+      TlvDecoder decoder = new TlvDecoder(element);
+      if (decoder.peekType(Tlv.LpPacket_LpPacket, element.limit())) {
+        // Skip to the fragment.
+        int endOffset = decoder.readNestedTlvsStart(Tlv.LpPacket_LpPacket);
+        while (!decoder.peekType(Tlv.LpPacket_Fragment, endOffset)) {
+          if (decoder.getOffset() >= endOffset)
+            return 0;
+          decoder.readVarNumber();
+          int length = decoder.readVarNumber();
+          decoder.seek(decoder.getOffset() + length);
+        }
+        decoder.readTypeAndLength(Tlv.LpPacket_Fragment);
+      }
+
+      // Skip the Interest or Data type and length.
+      decoder.readVarNumber();
+      decoder.readVarNumber();
+      int nameEndOffset = decoder.readNestedTlvsStart(Tlv.Name);
+      if (decoder.getOffset() >= nameEndOffset)
+        return 0;
+      decoder.readVarNumber();
+      int length = decoder.readVarNumber();
+      ByteBuffer value = decoder.getSlice
+        (decoder.getOffset(), decoder.getOffset() + length);
+      // This is the same as the hashCode() of the component's Blob value.
+      return PendingInterestTable.getShardIndex(value.hashCode(), nShards);
+    } catch (Exception ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * A DispatchShard is a queue of received elements which are processed in
+   * order on the thread pool. At most one thread processes the queue at a time.
+   */
+  private class DispatchShard implements Runnable {
+    public DispatchShard(Executor threadPool)
+    {
+      threadPool_ = threadPool;
+    }
+
+    /**
+     * Add the element to the queue and schedule processing if needed.
+     * @param element The received element, which is not changed later.
+     */
+    public final void
+    add(ByteBuffer element)
+    {
+      elements_.add(element);
+      if (isScheduled_.compareAndSet(false, true))
+        threadPool_.execute(this);
+    }
+
+    public void
+    run()
+    {
+      // Process a limited number so that other shards get a turn.
+      for (int i = 0; i < MAX_DISPATCH_BATCH; ++i) {
+        ByteBuffer element = elements_.poll();
+        if (element == null)
+          break;
+
+        // Need to catch and log exceptions at this async entry point.
+        try {
+          processReceivedElement(element, false);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onReceivedElement", ex);
+        }
+      }
+
+      isScheduled_.set(false);
+      // Reschedule if elements remain or were added after the last poll.
+      if (!elements_.isEmpty() && isScheduled_.compareAndSet(false, true))
+        threadPool_.execute(this);
+    }
+
+    private final Executor threadPool_;
+    private final ConcurrentLinkedQueue<ByteBuffer> elements_ =
+      new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicBoolean isScheduled_ = new AtomicBoolean(false);
+  }
+
+  private static final int MAX_DISPATCH_BATCH = 64;
+
+  /**
+   * A ReceivePool holds the objects which processReceivedElement reuses on one
+   * thread when setRecycleReceivedPackets is true. Each take method removes an
+   * object from the end of its list (or makes a new one), so that a nested
+   * call to processReceivedElement (for example if a callback calls
+   * processEvents) gets different objects. Each list keeps at most
+   * MAX_POOL_SIZE objects.
+   */
+  private static class ReceivePool {
+    public final Interest
+    takeInterest()
+    {
+      Interest interest = take(interests_);
+      if (interest == null)
+        return new Interest();
+      interest.recycle();
+      return interest;
+    }
+
+    public final Data
+    takeData()
+    {
+      Data data = take(data_);
+      if (data == null)
+        return new Data();
+      data.recycle();
+      return data;
+    }
+
+    public final LpPacket
+    takeLpPacket()
+    {
+      LpPacket lpPacket = take(lpPackets_);
+      return lpPacket != null ? lpPacket : new LpPacket();
+    }
+
+    public final ArrayList<PendingInterestTable.Entry>
+    takePitEntryList()
+    {
+      ArrayList<PendingInterestTable.Entry> list = take(pitEntryLists_);
+      return list != null ? list : new ArrayList<PendingInterestTable.Entry>();
+    }
+
+    public final ArrayList
+    takeFilterList()
+    {
+      ArrayList list = take(filterLists_);
+      return list != null ? list : new ArrayList();
+    }
+
+    /**
+     * Put the received interest or data back in the pool, unless the
+     * application called retain(). Also put back the lpPacket, unless it is
+     * set in the retained interest or data.
+     * @param interest The received Interest, or null if none.
+     * @param data The received Data, or null if none.
+     * @param lpPacket The received LpPacket, or null if none.
+     */
+    public final void
+    recycle(Interest interest, Data data, LpPacket lpPacket)
+    {
+      if (interest != null) {
+        if (interest.isRetained())
+          return;
+        put(interests_, interest);
+      }
+      if (data != null) {
+        if (data.isRetained())
+          return;
+        put(data_, data);
+      }
+      if (lpPacket != null)
+        put(lpPackets_, lpPacket);
+    }
+
+    public final void
+    recyclePitEntryList(ArrayList<PendingInterestTable.Entry> list)
+    {
+      list.clear();
+      put(pitEntryLists_, list);
+    }
+
+    public final void
+    recycleFilterList(ArrayList list)
+    {
+      list.clear();
+      put(filterLists_, list);
+    }
+
+    private static <T> T
+    take(ArrayList<T> list)
+    {
+      if (list.isEmpty())
+        return null;
+      return list.remove(list.size() - 1);
+    }
+
+    private static <T> void
+    put(ArrayList<T> list, T object)
+    {
+      if (list.size() < MAX_POOL_SIZE)
+        list.add(object);
+    }
+
+    private static final int MAX_POOL_SIZE = 8;
+
+    private final ArrayList<Interest> interests_ = new ArrayList<Interest>();
+    private final ArrayList<Data> data_ = new ArrayList<Data>();
+    private final ArrayList<LpPacket> lpPackets_ = new ArrayList<LpPacket>();
+    private final ArrayList<ArrayList<PendingInterestTable.Entry>>
+      pitEntryLists_ = new ArrayList<ArrayList<PendingInterestTable.Entry>>();
+    private final ArrayList<ArrayList> filterLists_ =
+      new ArrayList<ArrayList>();
+  }
+
+  private static final ThreadLocal<ReceivePool> receivePool_ =
+    new ThreadLocal<ReceivePool>() {
+      protected ReceivePool
+      initialValue() { return new ReceivePool(); }
+    };
+
   private enum ConnectStatus { UNCONNECTED, CONNECT_REQUESTED, CONNECT_COMPLETE }
 
+  /**
+   * An ExpressLater holds the arguments of an expressInterest which was called
+   * while connecting. run() expresses the Interest when connected, and
+   * callTimeout() reports it if the connection fails.
+   */
+  private class ExpressLater implements Runnable {
+    public ExpressLater
+      (long pendingInterestId, Interest interestCopy, OnData onData,
+       OnTimeout onTimeout, OnNetworkNack onNetworkNack, WireFormat wireFormat,
+       Face face)
+    {
+      pendingInterestId_ = pendingInterestId;
+      interestCopy_ = interestCopy;
+      onData_ = onData;
+      onTimeout_ = onTimeout;
+      onNetworkNack_ = onNetworkNack;
+      wireFormat_ = wireFormat;
+      face_ = face;
+    }
+
+    public void
+    run()
+    {
+      try {
+        expressInterestHelper
+          (pendingInterestId_, interestCopy_, onData_, onTimeout_,
+           onNetworkNack_, wireFormat_, face_);
+      } catch (IOException ex) {
+        logger_.log(Level.SEVERE, null, ex);
+      }
+    }
+
+    public final void
+    callTimeout()
+    {
+      if (onTimeout_ != null) {
+        try {
+          onTimeout_.onTimeout(interestCopy_);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onTimeout", ex);
+        }
+      }
+    }
+
+    private final long pendingInterestId_;
+    private final Interest interestCopy_;
+    private final OnData onData_;
+    private final OnTimeout onTimeout_;
+    private final OnNetworkNack onNetworkNack_;
+    private final WireFormat wireFormat_;
+    private final Face face_;
+  }
+
   private static class RegisterResponse implements OnData, OnTimeout {
     public RegisterResponse(Info info, Node parent)
     {
@@ -826,22 +1257,24 @@ public class Node implements ElementListener {
 
   private final Transport transport_;
   private final Transport.ConnectionInfo connectionInfo_;
-  private final PendingInterestTable pendingInterestTable_ =
+  // This is only replaced by setDispatchThreadPool before the Node is used.
+  private PendingInterestTable pendingInterestTable_ =
     new PendingInterestTable();
+  private DispatchShard[] dispatchShards_ = null;
+  private volatile boolean recycleReceivedPackets_ = false;
   private final InterestFilterTable interestFilterTable_ =
     new InterestFilterTable();
   private final RegisteredPrefixTable registeredPrefixTable_ =
     new RegisteredPrefixTable(interestFilterTable_);
   private final DelayedCallTable delayedCallTable_ = new DelayedCallTable();
-  // Use ArrayList without generics so it works with older Java compilers.
-  private final List onConnectedCallbacks_ =
-    Collections.synchronizedList(new ArrayList()); // Runnable
+  private final ConcurrentLinkedQueue<ExpressLater> onConnectedCallbacks_ =
+    new ConcurrentLinkedQueue<ExpressLater>();
   private final CommandInterestGenerator commandInterestGenerator_ =
     new CommandInterestGenerator();
   private final Name timeoutPrefix_ = new Name("/local/timeout");
-  private long lastEntryId_;
-  private final Object lastEntryIdLock_ = new Object();
-  private ConnectStatus connectStatus_ = ConnectStatus.UNCONNECTED;
+  private final AtomicLong lastEntryId_ = new AtomicLong();
+  private final AtomicReference<ConnectStatus> connectStatus_ =
+    new AtomicReference<ConnectStatus>(ConnectStatus.UNCONNECTED);
   private static Blob nonceTemplate_ = new Blob(new byte[] { 0, 0, 0, 0 });
   private static final Logger logger_ = Logger.getLogger(Node.class.getName());
 }
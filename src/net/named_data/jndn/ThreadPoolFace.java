@@ -21,10 +21,12 @@ package net.named_data.jndn;
 
 import java.io.IOException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.impl.DelayedCallTable;
 import net.named_data.jndn.transport.Transport;
 
 /**
@@ -54,6 +56,34 @@ public class ThreadPoolFace extends Face {
     threadPool_ = threadPool;
   }
 
+  /**
+   * Create a new ThreadPoolFace which also decodes and dispatches received
+   * packets on the thread pool, split into nDispatchShards serial queues by the
+   * hash of the first name component. (See Node.setDispatchThreadPool.) The
+   * pending interest table is split into shards in the same way so that Data
+   * for different name subtrees is matched in parallel, while packets with the
+   * same first name component are processed in the order they are received. In
+   * this mode, the onData, onNetworkNack and onInterest callbacks are called
+   * directly on the dispatching thread (instead of being submitted again) so
+   * that they are called in the same order.
+   * @param threadPool The thread pool used to submit method calls such as
+   * expressInterest and the related callbacks such as onData, to schedule the
+   * interest timeouts, and to process received packets.
+   * @param transport A Transport object used for communication, which should
+   * be an async transport like AsyncTcpTransport.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @param nDispatchShards The number of dispatch queues and pending interest
+   * table shards, for example the number of threads in the thread pool.
+   */
+  public ThreadPoolFace
+    (ScheduledExecutorService threadPool, Transport transport,
+     Transport.ConnectionInfo connectionInfo, int nDispatchShards)
+  {
+    this(threadPool, transport, connectionInfo);
+    node_.setDispatchThreadPool(threadPool, nDispatchShards);
+  }
+
   /**
    * Override to submit a task to use the thread pool given to the constructor.
    * Also wrap the supplied onData, onTimeout and onNetworkNack callbacks in an
@@ -70,8 +100,11 @@ public class ThreadPoolFace extends Face {
 
     // Wrap callbacks to submit to the thread pool.
     final OnData finalOnData = onData;
-    final OnData onDataSubmit = new OnData() {
+    final OnData onDataSubmit = node_.isDispatchOnThreadPool() ? onData :
+        new OnData() {
       public void onData(final Interest localInterest, final Data data) {
+        // The Data is used after this returns.
+        data.retain();
         threadPool_.submit(new Runnable() {
           // Call the passed-in onData.
           public void run() {
@@ -105,7 +138,8 @@ public class ThreadPoolFace extends Face {
 
     final OnNetworkNack finalOnNetworkNack = onNetworkNack;
     final OnNetworkNack onNetworkNackSubmit =
-        onNetworkNack == null ? null : new OnNetworkNack() {
+        onNetworkNack == null || node_.isDispatchOnThreadPool() ?
+        onNetworkNack : new OnNetworkNack() {
       public void onNetworkNack
           (final Interest localInterest, final NetworkNack networkNack) {
         threadPool_.submit(new Runnable() {
@@ -158,8 +192,11 @@ public class ThreadPoolFace extends Face {
 
     // Wrap callbacks to submit to the thread pool.
     final OnData finalOnData = onData;
-    final OnData onDataSubmit = new OnData() {
+    final OnData onDataSubmit = node_.isDispatchOnThreadPool() ? onData :
+        new OnData() {
       public void onData(final Interest localInterest, final Data data) {
+        // The Data is used after this returns.
+        data.retain();
         threadPool_.submit(new Runnable() {
           // Call the passed-in onData.
           public void run() {
@@ -193,7 +230,8 @@ public class ThreadPoolFace extends Face {
 
     final OnNetworkNack finalOnNetworkNack = onNetworkNack;
     final OnNetworkNack onNetworkNackSubmit =
-        onNetworkNack == null ? null : new OnNetworkNack() {
+        onNetworkNack == null || node_.isDispatchOnThreadPool() ?
+        onNetworkNack : new OnNetworkNack() {
       public void onNetworkNack
           (final Interest localInterest, final NetworkNack networkNack) {
         threadPool_.submit(new Runnable() {
@@ -274,9 +312,12 @@ public class ThreadPoolFace extends Face {
     // Wrap callbacks to submit to the thread pool.
     final OnInterestCallback finalOnInterest = onInterest;
     final OnInterestCallback onInterestSubmit =
-        onInterest == null ? null : new OnInterestCallback() {
+        onInterest == null || node_.isDispatchOnThreadPool() ?
+        onInterest : new OnInterestCallback() {
       public void onInterest(final Name localPrefix, final Interest interest,
           final Face face, final long interestFilterId, final InterestFilter filter) {
+        // The Interest is used after this returns.
+        interest.retain();
         threadPool_.submit(new Runnable() {
           // Call the passed-in onInterest.
           public void run() {
@@ -372,9 +413,12 @@ public class ThreadPoolFace extends Face {
 
         // Wrap callbacks to submit to the thread pool.
     final OnInterestCallback finalOnInterest = onInterest;
-    final OnInterestCallback onInterestSubmit = new OnInterestCallback() {
+    final OnInterestCallback onInterestSubmit =
+        node_.isDispatchOnThreadPool() ? onInterest : new OnInterestCallback() {
       public void onInterest(final Name prefix, final Interest interest,
           final Face face, final long interestFilterId, final InterestFilter filter) {
+        // The Interest is used after this returns.
+        interest.retain();
         threadPool_.submit(new Runnable() {
           // Call the passed-in onInterest.
           public void run() {
@@ -409,14 +453,15 @@ public class ThreadPoolFace extends Face {
   /**
    * Override to schedule in the thread pool to call callback.run() after the
    * given delay. Even though this is public, it is not part of the public API
-   * of Face.
+   * of Face. If the callback is a DelayedCallTable.CancelableCallback, calling
+   * its cancel() cancels the scheduled call.
    * @param delayMilliseconds The delay in milliseconds.
    * @param callback This calls callback.run() after the delay.
    */
   public void
   callLater(double delayMilliseconds, final Runnable callback)
   {
-    threadPool_.schedule
+    final ScheduledFuture<?> future = threadPool_.schedule
       (new Runnable() {
         public void run() {
           // Need to catch and log exceptions at this async entry point.
@@ -428,6 +473,12 @@ public class ThreadPoolFace extends Face {
         }
        },
        (long)delayMilliseconds, TimeUnit.MILLISECONDS);
+
+    if (callback instanceof DelayedCallTable.CancelableCallback)
+      ((DelayedCallTable.CancelableCallback)callback).setCanceler
+        (new Runnable() {
+          public void run() { future.cancel(false); }
+        });
   }
 
   private final ScheduledExecutorService threadPool_;
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.encoding;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.encoding.tlv.TlvStructureDecoder;
+import net.named_data.jndn.util.Common;
+
+/**
+ * A ChunkedElementReader is like ElementReader but supplies the buffer which
+ * the transport reads into, so that the element passed to
+ * elementListener.onReceivedElement(element) stays valid after the call. The
+ * transport reads into large chunks which are never overwritten. When a chunk
+ * is full, this allocates a new chunk (moving only the bytes of a partial
+ * element) and the old chunk is reclaimed by the garbage collector when the
+ * last decoded packet which refers to it is no longer used. This lets the
+ * receiver decode Interest and Data packets without copying the element.
+ */
+public class ChunkedElementReader {
+  /**
+   * Create a new ChunkedElementReader with the elementListener.
+   * @param elementListener The ElementListener used by onReceivedData.
+   * @param chunkSize The size of each chunk. If this is less than twice
+   * Common.MAX_NDN_PACKET_SIZE, then use twice Common.MAX_NDN_PACKET_SIZE.
+   */
+  public
+  ChunkedElementReader(ElementListener elementListener, int chunkSize)
+  {
+    elementListener_ = elementListener;
+    chunkSize_ = Math.max(chunkSize, 2 * Common.MAX_NDN_PACKET_SIZE);
+    chunk_ = ByteBuffer.allocate(chunkSize_);
+  }
+
+  /**
+   * Create a new ChunkedElementReader with the elementListener and the
+   * default chunk size.
+   * @param elementListener The ElementListener used by onReceivedData.
+   */
+  public
+  ChunkedElementReader(ElementListener elementListener)
+  {
+    this(elementListener, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Get the buffer for the transport to read into. The transport should read
+   * into the buffer from its position() up to its limit(), which updates the
+   * position, then call onReceivedData(). The buffer has room for at least one
+   * more maximum-size packet.
+   * @return The buffer to read into.
+   */
+  public final ByteBuffer
+  getReadBuffer()
+  {
+    ensureReadSpace();
+    return chunk_;
+  }
+
+  /**
+   * Find each complete element in the bytes which the transport read into
+   * getReadBuffer() and call elementListener.onReceivedElement(element). The
+   * element buffer remains valid after the call and is not changed by later
+   * reads, so the listener can keep a slice of it instead of copying.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  onReceivedData() throws EncodingException
+  {
+    while (true) {
+      int available = chunk_.position() - elementStart_;
+      if (available <= 0)
+        break;
+
+      ByteBuffer data = chunk_.duplicate();
+      data.limit(chunk_.position());
+      data.position(elementStart_);
+      data = data.slice();
+
+      boolean gotElementEnd;
+      try {
+        gotElementEnd = tlvStructureDecoder_.findElementEnd(data);
+      } catch (EncodingException ex) {
+        // Drop the bytes read so far and read a new element on the next call.
+        elementStart_ = chunk_.position();
+        tlvStructureDecoder_ = new TlvStructureDecoder();
+
+        throw ex;
+      }
+
+      if (!gotElementEnd) {
+        if (available >= Common.MAX_NDN_PACKET_SIZE) {
+          // Drop the bytes read so far and read a new element on the next call.
+          elementStart_ = chunk_.position();
+          tlvStructureDecoder_ = new TlvStructureDecoder();
+
+          throw new EncodingException
+            ("The incoming packet exceeds the maximum limit Face.getMaxNdnPacketSize()");
+        }
+
+        // Wait for more data.
+        break;
+      }
+
+      ByteBuffer element = data;
+      element.limit(tlvStructureDecoder_.getOffset());
+      // Reset to read a new object. Do this before calling onReceivedElement
+      // in case it throws an exception.
+      elementStart_ += tlvStructureDecoder_.getOffset();
+      tlvStructureDecoder_ = new TlvStructureDecoder();
+
+      elementListener_.onReceivedElement(element);
+    }
+  }
+
+  /**
+   * If the current chunk doesn't have room for a maximum-size packet after
+   * the partial element (if any), allocate a new chunk and move the partial
+   * element to it. The old chunk is not changed since received elements may
+   * still refer to it.
+   */
+  private void
+  ensureReadSpace()
+  {
+    int partialLength = chunk_.position() - elementStart_;
+    if (chunk_.capacity() - elementStart_ >= Common.MAX_NDN_PACKET_SIZE)
+      // There is room to finish any maximum-size element in this chunk.
+      return;
+
+    ByteBuffer newChunk = ByteBuffer.allocate(chunkSize_);
+    if (partialLength > 0) {
+      ByteBuffer partial = chunk_.duplicate();
+      partial.limit(chunk_.position());
+      partial.position(elementStart_);
+      // tlvStructureDecoder_ continues from the same offset in the new chunk.
+      newChunk.put(partial);
+    }
+
+    chunk_ = newChunk;
+    elementStart_ = 0;
+  }
+
+  public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+  private final ElementListener elementListener_;
+  private final int chunkSize_;
+  private ByteBuffer chunk_;
+  private int elementStart_ = 0;
+  private TlvStructureDecoder tlvStructureDecoder_ = new TlvStructureDecoder();
+}
@@ -19,8 +19,14 @@
 
 package net.named_data.jndn.encoding;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.named_data.jndn.ContentType;
 import net.named_data.jndn.ControlParameters;
@@ -51,6 +57,7 @@ import net.named_data.jndn.NetworkNack;
 import net.named_data.jndn.encrypt.Schedule;
 import net.named_data.jndn.security.ValidityPeriod;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Common;
 
 /**
  * A Tlv0_2WireFormat implements the WireFormat interface for encoding and
@@ -103,7 +110,163 @@ public class Tlv0_2WireFormat extends WireFormat {
   encodeInterest
     (Interest interest, int[] signedPortionBeginOffset, int[] signedPortionEndOffset)
   {
-    TlvEncoder encoder = new TlvEncoder();
+    // Get the exact length first so that the encoding is written once into a
+    // buffer of the exact size without resizing.
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset,
+       lengthEncoder);
+
+    TlvEncoder encoder = new TlvEncoder(lengthEncoder.getLength());
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset, encoder);
+    return new Blob(encoder.getOutput(), false);
+  }
+
+  /**
+   * Encode interest in NDN-TLV into the output buffer at its position(), and
+   * advance the position. This first computes the exact length of the
+   * encoding, then writes it once without allocating. The output may be a
+   * direct buffer.
+   * @param interest The Interest object to encode.
+   * @param output The buffer to write into. This writes at position() and
+   * updates the position to after the encoding.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion. The signed portion starts from the first
+   * name component and ends just before the final name component (which is
+   * assumed to be a signature for a signed interest).
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion. The signed portion starts from the first
+   * name component and ends just before the final name component (which is
+   * assumed to be a signature for a signed interest).
+   * @return The length of the encoding.
+   * @throws BufferOverflowException If output.remaining() is less than the
+   * length of the encoding. In this case, the output is not changed.
+   */
+  public final int
+  encodeInterest
+    (Interest interest, ByteBuffer output, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset)
+  {
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset,
+       lengthEncoder);
+    int length = lengthEncoder.getLength();
+
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset,
+       new TlvEncoder(getRegion(output, length)));
+    output.position(output.position() + length);
+    return length;
+  }
+
+  /**
+   * Encode interest in NDN-TLV into a buffer which is reused by each call from
+   * the same thread, so that sending an Interest does not allocate. This first
+   * computes the exact length of the encoding, then writes it once.
+   * @param interest The Interest object to encode.
+   * @param useDirectBuffer If true, use the thread's direct buffer, otherwise
+   * its heap buffer.
+   * @return A read-only buffer with the encoding. It is only valid until the
+   * next call to encodeInterestToThreadBuffer or encodeDataToThreadBuffer from
+   * the same thread, so you must use it right away or copy it. You can pass it
+   * to Face.send only if Face.isSendRetainingBuffer() is false. Otherwise, such
+   * as with AsyncTcpTransport, the transport queues the buffer and the next
+   * encoding would change the bytes before they are written, so send a copy.
+   */
+  public final ByteBuffer
+  encodeInterestToThreadBuffer(Interest interest, boolean useDirectBuffer)
+  {
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset,
+       lengthEncoder);
+    int length = lengthEncoder.getLength();
+
+    ByteBuffer output = getThreadBuffer(length, useDirectBuffer);
+    encodeInterest
+      (interest, signedPortionBeginOffset, signedPortionEndOffset,
+       new TlvEncoder(output));
+    return output.asReadOnlyBuffer();
+  }
+
+  /**
+   * Encode data in NDN-TLV into the output buffer at its position(), and
+   * advance the position. This first computes the exact length of the
+   * encoding, then writes it once without allocating. The output may be a
+   * direct buffer.
+   * @param data The Data object to encode.
+   * @param output The buffer to write into. This writes at position() and
+   * updates the position to after the encoding.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion by setting signedPortionEndOffset[0].
+   * @return The length of the encoding.
+   * @throws BufferOverflowException If output.remaining() is less than the
+   * length of the encoding. In this case, the output is not changed.
+   */
+  public final int
+  encodeData
+    (Data data, ByteBuffer output, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset)
+  {
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset, lengthEncoder);
+    int length = lengthEncoder.getLength();
+
+    encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset,
+       new TlvEncoder(getRegion(output, length)));
+    output.position(output.position() + length);
+    return length;
+  }
+
+  /**
+   * Encode data in NDN-TLV into a buffer which is reused by each call from the
+   * same thread, so that publishing a Data packet does not allocate. This first
+   * computes the exact length of the encoding, then writes it once. Note that
+   * this does not set the Data object's cached default wire encoding.
+   * @param data The Data object to encode.
+   * @param useDirectBuffer If true, use the thread's direct buffer, otherwise
+   * its heap buffer.
+   * @return A read-only buffer with the encoding. It is only valid until the
+   * next call to encodeDataToThreadBuffer or encodeInterestToThreadBuffer from
+   * the same thread, so you must use it right away or copy it. You can pass it
+   * to Face.send only if Face.isSendRetainingBuffer() is false. Otherwise, such
+   * as with AsyncTcpTransport, the transport queues the buffer and the next
+   * encoding would change the bytes before they are written, so send a copy.
+   */
+  public final ByteBuffer
+  encodeDataToThreadBuffer(Data data, boolean useDirectBuffer)
+  {
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset, lengthEncoder);
+    int length = lengthEncoder.getLength();
+
+    ByteBuffer output = getThreadBuffer(length, useDirectBuffer);
+    encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset,
+       new TlvEncoder(output));
+    return output.asReadOnlyBuffer();
+  }
+
+  /**
+   * Encode the interest backwards to the encoder. This is called once with a
+   * length-only encoder and once to write the encoding.
+   */
+  private void
+  encodeInterest
+    (Interest interest, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, TlvEncoder encoder)
+  {
     int saveLength = encoder.getLength();
 
     // Encode backwards.
@@ -183,8 +346,6 @@ public class Tlv0_2WireFormat extends WireFormat {
       encoder.getLength() - signedPortionBeginOffsetFromBack;
     signedPortionEndOffset[0] =
       encoder.getLength() - signedPortionEndOffsetFromBack;
-
-    return new Blob(encoder.getOutput(), false);
   }
 
   /**
@@ -273,7 +434,26 @@ public class Tlv0_2WireFormat extends WireFormat {
   encodeData
     (Data data, int[] signedPortionBeginOffset, int[] signedPortionEndOffset)
   {
-    TlvEncoder encoder = new TlvEncoder(1500);
+    // Get the exact length first so that the encoding is written once into a
+    // buffer of the exact size without resizing.
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset, lengthEncoder);
+
+    TlvEncoder encoder = new TlvEncoder(lengthEncoder.getLength());
+    encodeData(data, signedPortionBeginOffset, signedPortionEndOffset, encoder);
+    return new Blob(encoder.getOutput(), false);
+  }
+
+  /**
+   * Encode the data backwards to the encoder. This is called once with a
+   * length-only encoder and once to write the encoding.
+   */
+  private void
+  encodeData
+    (Data data, int[] signedPortionBeginOffset, int[] signedPortionEndOffset,
+     TlvEncoder encoder)
+  {
     int saveLength = encoder.getLength();
 
     // Encode backwards.
@@ -281,10 +461,7 @@ public class Tlv0_2WireFormat extends WireFormat {
       (Tlv.SignatureValue, (data.getSignature()).getSignature().buf());
     int signedPortionEndOffsetFromBack = encoder.getLength();
 
-    encodeSignatureInfo(data.getSignature(), encoder);
-    encoder.writeBlobTlv(Tlv.Content, data.getContent().buf());
-    encodeMetaInfo(data.getMetaInfo(), encoder);
-    encodeName(data.getName(), new int[1], new int[1], encoder);
+    encodeDataSignedPortion(data, encoder);
     int signedPortionBeginOffsetFromBack = encoder.getLength();
 
     encoder.writeTypeAndLength(Tlv.Data, encoder.getLength() - saveLength);
@@ -293,7 +470,119 @@ public class Tlv0_2WireFormat extends WireFormat {
       encoder.getLength() - signedPortionBeginOffsetFromBack;
     signedPortionEndOffset[0] =
       encoder.getLength() - signedPortionEndOffsetFromBack;
-    return new Blob(encoder.getOutput(), false);
+  }
+
+  /**
+   * Encode the fields of data from the Name to the SignatureInfo backwards to
+   * the encoder.
+   */
+  private void
+  encodeDataSignedPortion(Data data, TlvEncoder encoder)
+  {
+    encodeSignatureInfo(data.getSignature(), encoder);
+    encoder.writeBlobTlv(Tlv.Content, data.getContent().buf());
+    encodeMetaInfo(data.getMetaInfo(), encoder);
+    encodeName(data.getName(), new int[1], new int[1], encoder);
+  }
+
+  /**
+   * Encode the signed portion of data in NDN-TLV (from the Name to the
+   * SignatureInfo) into a new buffer with room before it for the Data type
+   * and length, and room after it for the SignatureValue with the expected
+   * length for the signature type, so that encodeDataWithSignatureValue can
+   * add them without encoding or copying the signed portion again.
+   * @param data The Data object to encode.
+   * @return The buffer with the signed portion from position() to limit(). This
+   * must only be used to sign and to pass to encodeDataWithSignatureValue.
+   */
+  public ByteBuffer
+  encodeDataSignedPortion(Data data)
+  {
+    TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+    encodeDataSignedPortion(data, lengthEncoder);
+    int signedPortionLength = lengthEncoder.getLength();
+
+    int signatureValueLength = getExpectedSignatureValueLength
+      (data.getSignature());
+    int signatureValueTlvLength =
+      TlvEncoder.sizeOfVarNumber(Tlv.SignatureValue) +
+      TlvEncoder.sizeOfVarNumber(signatureValueLength) + signatureValueLength;
+    // A shorter signature can only make the Data length header shorter.
+    int headerLength = TlvEncoder.sizeOfVarNumber(Tlv.Data) +
+      TlvEncoder.sizeOfVarNumber(signedPortionLength + signatureValueTlvLength);
+
+    ByteBuffer output = ByteBuffer.allocate
+      (headerLength + signedPortionLength + signatureValueTlvLength);
+    output.position(headerLength);
+    encodeDataSignedPortion
+      (data, new TlvEncoder(getRegion(output, signedPortionLength)));
+    output.limit(headerLength + signedPortionLength);
+    return output;
+  }
+
+  /**
+   * Encode data in NDN-TLV where signedPortion is from encodeDataSignedPortion
+   * and data now has the signature bits. This writes the SignatureValue after
+   * the signed portion and the Data type and length before it in the room
+   * which encodeDataSignedPortion left, so that the other fields are only
+   * encoded once. If the signature is longer than expected, this copies the
+   * signed portion to a new buffer.
+   * @param data The Data object to encode.
+   * @param signedPortion The buffer returned by encodeDataSignedPortion, with
+   * the position and limit unchanged. This writes in its unused room, so you
+   * must not call this twice with the same buffer.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion by setting signedPortionEndOffset[0].
+   * @return A Blob containing the encoding.
+   */
+  public Blob
+  encodeDataWithSignatureValue
+    (Data data, ByteBuffer signedPortion, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset)
+  {
+    ByteBuffer signatureValue = data.getSignature().getSignature().buf();
+    int signatureValueTlvLength =
+      TlvEncoder.sizeOfVarNumber(Tlv.SignatureValue) +
+      TlvEncoder.sizeOfVarNumber(signatureValue.remaining()) +
+      signatureValue.remaining();
+    int signedPortionLength = signedPortion.remaining();
+    int valueLength = signedPortionLength + signatureValueTlvLength;
+    int headerLength = TlvEncoder.sizeOfVarNumber(Tlv.Data) +
+      TlvEncoder.sizeOfVarNumber(valueLength);
+
+    ByteBuffer output;
+    if (!signedPortion.isReadOnly() &&
+        signedPortion.position() >= headerLength &&
+        signedPortion.capacity() - signedPortion.limit() >=
+          signatureValueTlvLength) {
+      // Use the room around the signed portion.
+      output = signedPortion.duplicate();
+      output.limit(output.limit() + signatureValueTlvLength);
+      output.position(output.position() - headerLength);
+    }
+    else {
+      output = ByteBuffer.allocate(headerLength + valueLength);
+      output.position(headerLength);
+      output.put(signedPortion.duplicate());
+      output.position(0);
+    }
+    ByteBuffer encoding = output.slice();
+
+    // The TlvEncoder writes backwards in each region.
+    ByteBuffer signatureValueRegion = encoding.duplicate();
+    signatureValueRegion.position(headerLength + signedPortionLength);
+    new TlvEncoder(signatureValueRegion.slice()).writeBlobTlv
+      (Tlv.SignatureValue, signatureValue);
+    ByteBuffer headerRegion = encoding.duplicate();
+    headerRegion.limit(headerLength);
+    new TlvEncoder(headerRegion.slice()).writeTypeAndLength
+      (Tlv.Data, valueLength);
+
+    signedPortionBeginOffset[0] = headerLength;
+    signedPortionEndOffset[0] = headerLength + signedPortionLength;
+    return new Blob(encoding, false);
   }
 
   /**
@@ -326,17 +615,218 @@ public class Tlv0_2WireFormat extends WireFormat {
     signedPortionBeginOffset[0] = decoder.getOffset();
 
     decodeName(data.getName(), new int[1], new int[1], decoder, copy);
-    decodeMetaInfo(data.getMetaInfo(), decoder, copy);
-    data.setContent(new Blob(decoder.readBlobTlv(Tlv.Content), copy));
-    decodeSignatureInfo(data, decoder, copy);
+    signedPortionEndOffset[0] = decodeDataFieldsAfterName(data, decoder, copy);
+
+    decoder.finishNestedTlvs(endOffset);
+  }
+
+  /**
+   * Decode only the name of the data packet in input, and get the offsets of
+   * the signed portion. This checks the TLV structure of the other fields but
+   * does not decode them.
+   * @param name The Name object which is set to the data packet name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws EncodingException For invalid encoding of the name or of the TLV
+   * structure of the other fields.
+   */
+  public void
+  decodeDataName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Data);
+    signedPortionBeginOffset[0] = decoder.getOffset();
 
+    decodeName(name, new int[1], new int[1], decoder, copy);
+
+    // Skip to the SignatureValue, which is the end of the signed portion.
+    while (!decoder.peekType(Tlv.SignatureValue, endOffset)) {
+      if (decoder.getOffset() >= endOffset)
+        throw new EncodingException("The Data packet has no SignatureValue");
+      decoder.readVarNumber();
+      int length = decoder.readVarNumber();
+      if (decoder.getOffset() + length > endOffset)
+        throw new EncodingException
+          ("TLV length exceeds the length of the Data packet");
+      decoder.seek(decoder.getOffset() + length);
+    }
     signedPortionEndOffset[0] = decoder.getOffset();
-    data.getSignature().setSignature
-      (new Blob(decoder.readBlobTlv(Tlv.SignatureValue), copy));
+    decoder.readBlobTlv(Tlv.SignatureValue);
+
+    decoder.finishNestedTlvs(endOffset);
+  }
+
+  /**
+   * Decode input as a data packet in NDN-TLV and set the fields in the data
+   * object, except for the name which is not changed.
+   * @param data The Data object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataAfterName(Data data, ByteBuffer input, boolean copy)
+    throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Data);
+    // Skip the name.
+    int nameEndOffset = decoder.readNestedTlvsStart(Tlv.Name);
+    decoder.seek(nameEndOffset);
+    decodeDataFieldsAfterName(data, decoder, copy);
 
     decoder.finishNestedTlvs(endOffset);
   }
 
+  /**
+   * Decode input as a sequence of concatenated Interest and Data packets in
+   * NDN-TLV, for example a packet capture or a repo dump, and return the
+   * decoded packets. This first finds the packet boundaries by reading only the
+   * type and length of each packet, then decodes the packets.
+   * @param input The input buffer to decode, which may be a direct buffer or a
+   * MappedByteBuffer from FileChannel.map. This reads from position() to
+   * limit(), but does not change the position. The decoded packets share
+   * memory with the input, which must remain unchanged while they are used.
+   * @param executor If not null, use it to decode groups of packets in
+   * parallel (for example a ForkJoinPool). If null, decode in this thread.
+   * @return An array with an Interest or Data object for each packet, in the
+   * order of the input.
+   * @throws EncodingException For invalid encoding of any packet, or if a
+   * packet is not an Interest or Data.
+   */
+  public Object[]
+  decodePackets(ByteBuffer input, ExecutorService executor)
+    throws EncodingException
+  {
+    // Find the packet boundaries. offsets[i] is the beginning of packet i.
+    TlvDecoder decoder = new TlvDecoder(input);
+    int[] offsets = new int[16];
+    int nPackets = 0;
+    while (decoder.getOffset() < input.limit()) {
+      int beginOffset = decoder.getOffset();
+      int type = decoder.readVarNumber();
+      if (type != Tlv.Interest && type != Tlv.Data)
+        throw new EncodingException
+          ("decodePackets: Expected an Interest or Data packet at offset " +
+           beginOffset + ", got TLV type " + type);
+      int length = decoder.readVarNumber();
+      if (length < 0 || length > input.limit() - decoder.getOffset())
+        throw new EncodingException
+          ("decodePackets: The packet at offset " + beginOffset +
+           " is longer than the input");
+      decoder.seek(decoder.getOffset() + length);
+
+      if (nPackets + 1 >= offsets.length) {
+        int[] newOffsets = new int[offsets.length * 2];
+        System.arraycopy(offsets, 0, newOffsets, 0, nPackets + 1);
+        offsets = newOffsets;
+      }
+      offsets[nPackets] = beginOffset;
+      ++nPackets;
+    }
+    offsets[nPackets] = decoder.getOffset();
+
+    Object[] result = new Object[nPackets];
+    if (executor == null || nPackets < 2) {
+      decodePackets(input, offsets, 0, nPackets, result);
+      return result;
+    }
+
+    // Decode groups of packets in parallel. Use more groups than processors so
+    // that a thread which finishes early can take another group.
+    int nGroups = Math.min
+      (nPackets, 4 * Runtime.getRuntime().availableProcessors());
+    ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(nGroups);
+    for (int iGroup = 0; iGroup < nGroups; ++iGroup) {
+      final ByteBuffer finalInput = input;
+      final int[] finalOffsets = offsets;
+      final int beginIndex = (int)((long)nPackets * iGroup / nGroups);
+      final int endIndex = (int)((long)nPackets * (iGroup + 1) / nGroups);
+      final Object[] finalResult = result;
+      futures.add(executor.submit(new Callable<Void>() {
+        public Void call() throws EncodingException
+        {
+          decodePackets
+            (finalInput, finalOffsets, beginIndex, endIndex, finalResult);
+          return null;
+        }
+      }));
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); ++i)
+        futures.get(i).get();
+    } catch (InterruptedException ex) {
+      for (int i = 0; i < futures.size(); ++i)
+        futures.get(i).cancel(true);
+      Thread.currentThread().interrupt();
+      throw new EncodingException("decodePackets: Interrupted");
+    } catch (ExecutionException ex) {
+      for (int i = 0; i < futures.size(); ++i)
+        futures.get(i).cancel(true);
+      Throwable cause = ex.getCause();
+      if (cause instanceof EncodingException)
+        throw (EncodingException)cause;
+      else if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      else if (cause instanceof Error)
+        throw (Error)cause;
+      else
+        throw new EncodingException("decodePackets: " + cause);
+    }
+
+    return result;
+  }
+
+  /**
+   * Decode the packets from beginIndex up to endIndex for decodePackets.
+   * @param input The input buffer.
+   * @param offsets The offset in input of the beginning of each packet, where
+   * offsets[i + 1] is the end of packet i.
+   * @param beginIndex The index of the first packet to decode.
+   * @param endIndex The index after the last packet to decode.
+   * @param result Set result[i] to the decoded Interest or Data.
+   * @throws EncodingException For invalid encoding.
+   */
+  private void
+  decodePackets
+    (ByteBuffer input, int[] offsets, int beginIndex, int endIndex,
+     Object[] result) throws EncodingException
+  {
+    ByteBuffer packet = input.duplicate();
+    for (int i = beginIndex; i < endIndex; ++i) {
+      packet.limit(offsets[i + 1]);
+      packet.position(offsets[i]);
+      // The Blob constructor makes a slice.
+      Blob encoding = new Blob(packet, false);
+
+      if (packet.get(offsets[i]) == (byte)Tlv.Interest) {
+        Interest interest = new Interest();
+        interest.wireDecode(encoding, this);
+        result[i] = interest;
+      }
+      else {
+        Data data = new Data();
+        data.wireDecode(encoding, this);
+        result[i] = data;
+      }
+    }
+  }
+
   /**
    * Encode controlParameters in NDN-TLV and return the encoding.
    * @param controlParameters The ControlParameters object to encode.
@@ -785,16 +1275,47 @@ public class Tlv0_2WireFormat extends WireFormat {
   {
     int saveLength = encoder.getLength();
 
-    // Encode the components backwards.
     int signedPortionEndOffsetFromBack = 0;
-    for (int i = name.size() - 1; i >= 0; --i) {
-      encodeNameComponent(name.get(i), encoder);
-      if (i == name.size() - 1)
-          signedPortionEndOffsetFromBack = encoder.getLength();
+    int signedPortionBeginOffsetFromBack;
+    Blob cachedEncoding = name.getDefaultWireEncoding();
+    if (!cachedEncoding.isNull() &&
+        WireFormat.getDefaultWireFormat() instanceof Tlv0_2WireFormat) {
+      // Copy the cached NDN-TLV encoding of the name instead of encoding each
+      // component.
+      encoder.writeBuffer(cachedEncoding.buf());
+
+      int nameHeaderLength;
+      try {
+        TlvDecoder decoder = new TlvDecoder(cachedEncoding.buf());
+        decoder.readNestedTlvsStart(Tlv.Name);
+        nameHeaderLength = decoder.getOffset();
+      } catch (EncodingException ex) {
+        // We don't expect this to happen since we encoded it.
+        throw new Error("Invalid cached name encoding: " + ex.getMessage());
+      }
+      signedPortionBeginOffsetFromBack =
+        encoder.getLength() - nameHeaderLength;
+      if (name.size() > 0) {
+        Name.Component lastComponent = name.get(-1);
+        int type = lastComponent.isImplicitSha256Digest() ?
+          Tlv.ImplicitSha256DigestComponent : Tlv.NameComponent;
+        int valueLength = lastComponent.getValue().size();
+        signedPortionEndOffsetFromBack = saveLength +
+          TlvEncoder.sizeOfVarNumber(type) +
+          TlvEncoder.sizeOfVarNumber(valueLength) + valueLength;
+      }
     }
+    else {
+      // Encode the components backwards.
+      for (int i = name.size() - 1; i >= 0; --i) {
+        encodeNameComponent(name.get(i), encoder);
+        if (i == name.size() - 1)
+            signedPortionEndOffsetFromBack = encoder.getLength();
+      }
 
-    int signedPortionBeginOffsetFromBack = encoder.getLength();
-    encoder.writeTypeAndLength(Tlv.Name, encoder.getLength() - saveLength);
+      signedPortionBeginOffsetFromBack = encoder.getLength();
+      encoder.writeTypeAndLength(Tlv.Name, encoder.getLength() - saveLength);
+    }
 
     signedPortionBeginOffset[0] =
       encoder.getLength() - signedPortionBeginOffsetFromBack;
@@ -807,6 +1328,30 @@ public class Tlv0_2WireFormat extends WireFormat {
           encoder.getLength() - signedPortionEndOffsetFromBack;
   }
 
+  /**
+   * Decode the MetaInfo, Content, SignatureInfo and SignatureValue of a Data
+   * packet, which follow the name.
+   * @param data The Data object whose fields are updated.
+   * @param decoder The decoder positioned after the name.
+   * @param copy If true, copy from the input when making new Blob values.
+   * @return The offset of the SignatureValue, which is the end of the signed
+   * portion.
+   * @throws EncodingException For invalid encoding.
+   */
+  private static int
+  decodeDataFieldsAfterName(Data data, TlvDecoder decoder, boolean copy)
+    throws EncodingException
+  {
+    decodeMetaInfo(data.getMetaInfo(), decoder, copy);
+    data.setContent(new Blob(decoder.readBlobTlv(Tlv.Content), copy));
+    decodeSignatureInfo(data, decoder, copy);
+
+    int signedPortionEndOffset = decoder.getOffset();
+    data.getSignature().setSignature
+      (new Blob(decoder.readBlobTlv(Tlv.SignatureValue), copy));
+    return signedPortionEndOffset;
+  }
+
   /**
    * Decode the name as NDN-TLV and set the fields in name.
    * @param name The name object whose fields are set.
@@ -1398,6 +1943,79 @@ public class Tlv0_2WireFormat extends WireFormat {
     }
   }
 
+  /**
+   * Get a buffer whose capacity is the length, which shares the bytes of output
+   * from its position().
+   * @param output The output buffer.
+   * @param length The length of the region.
+   * @return The region to pass to the TlvEncoder constructor.
+   * @throws BufferOverflowException If output.remaining() is less than length.
+   */
+  private static ByteBuffer
+  getRegion(ByteBuffer output, int length)
+  {
+    if (output.remaining() < length)
+      throw new BufferOverflowException();
+
+    ByteBuffer region = output.duplicate();
+    region.limit(output.position() + length);
+    return region.slice();
+  }
+
+  /**
+   * Get the length of the signature bits to leave room for in
+   * encodeDataSignedPortion, which is the typical length for the signature
+   * type. A longer signature (for example with a larger RSA key) is still
+   * encoded correctly, but needs a copy.
+   * @param signature The Signature object with the signature type.
+   * @return The expected length of the signature bits.
+   */
+  private static int
+  getExpectedSignatureValueLength(Signature signature)
+  {
+    if (signature instanceof Sha256WithRsaSignature)
+      // A 2048-bit key.
+      return 256;
+    else if (signature instanceof Sha256WithEcdsaSignature)
+      // The maximum DER-encoded signature for a 256-bit key.
+      return 72;
+    else if (signature instanceof HmacWithSha256Signature ||
+             signature instanceof DigestSha256Signature)
+      return 32;
+    else
+      return signature.getSignature().size();
+  }
+
+  /**
+   * Get a region of length bytes in this thread's heap or direct buffer,
+   * allocating a larger buffer if needed.
+   * @param length The length of the region.
+   * @param useDirectBuffer True for the direct buffer.
+   * @return The region to pass to the TlvEncoder constructor.
+   */
+  private static ByteBuffer
+  getThreadBuffer(int length, boolean useDirectBuffer)
+  {
+    ByteBuffer[] buffers = threadBuffers_.get();
+    int index = useDirectBuffer ? 1 : 0;
+    if (buffers[index] == null || buffers[index].capacity() < length) {
+      int capacity = Math.max(length, Common.MAX_NDN_PACKET_SIZE);
+      buffers[index] = useDirectBuffer ?
+        ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    ByteBuffer region = buffers[index].duplicate();
+    region.clear();
+    region.limit(length);
+    return region.slice();
+  }
+
+  // For each thread, the reused heap buffer at index 0 and direct buffer at
+  // index 1.
+  private static final ThreadLocal<ByteBuffer[]> threadBuffers_ =
+    new ThreadLocal<ByteBuffer[]>() {
+      protected ByteBuffer[] initialValue() { return new ByteBuffer[2]; }
+    };
   private static final Random random_ = new Random();
   private static Tlv0_2WireFormat instance_ = new Tlv0_2WireFormat();
 }
@@ -20,6 +20,7 @@
 package net.named_data.jndn.encoding;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
 import net.named_data.jndn.ControlParameters;
 import net.named_data.jndn.ControlResponse;
 import net.named_data.jndn.Data;
@@ -261,6 +262,56 @@ public class WireFormat {
     return encodeData(data, new int[1], new int[1]);
   }
 
+  /**
+   * Encode the signed portion of data (from the Name to the SignatureInfo) so
+   * that it can be signed, and later passed to encodeDataWithSignatureValue.
+   * Data.wireEncodeSignedPortion calls this. This base implementation encodes
+   * the whole Data packet. A derived class can override to encode only the
+   * signed portion with room to add the rest in place.
+   * @param data The Data object to encode.
+   * @return The buffer with the signed portion from position() to limit(). This
+   * must only be used to sign and to pass to encodeDataWithSignatureValue.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override encodeData.
+   */
+  public ByteBuffer
+  encodeDataSignedPortion(Data data)
+  {
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    ByteBuffer encoding = encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset).buf();
+    encoding.limit(encoding.position() + signedPortionEndOffset[0]);
+    encoding.position(encoding.position() + signedPortionBeginOffset[0]);
+    return encoding;
+  }
+
+  /**
+   * Encode data which has the signature bits in its signature, where the
+   * signed portion is from encodeDataSignedPortion and the data has not
+   * otherwise changed. This base implementation encodes the whole Data packet
+   * again. A derived class can override to add the SignatureValue to the
+   * signed portion without encoding it again.
+   * @param data The Data object to encode.
+   * @param signedPortion The buffer returned by encodeDataSignedPortion, with
+   * the position and limit unchanged. A derived class may write in its unused
+   * room, so you must not call this twice with the same buffer.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion by setting signedPortionEndOffset[0].
+   * @return A Blob containing the encoding.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override encodeData.
+   */
+  public Blob
+  encodeDataWithSignatureValue
+    (Data data, ByteBuffer signedPortion, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset)
+  {
+    return encodeData(data, signedPortionBeginOffset, signedPortionEndOffset);
+  }
+
   /**
    * Decode input as a data packet and set the fields in the data object.  Your
    * derived class should override.
@@ -354,6 +405,100 @@ public class WireFormat {
     decodeData(data, input, new int[1], new int[1], true);
   }
 
+  /**
+   * Decode only the name of the data packet in input, and get the offsets of
+   * the signed portion without decoding the other fields. This is used by
+   * Data.wireDecodeLazy. Your derived class should override.
+   * @param name The Name object which is set to the data packet name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding of the name or of the TLV
+   * structure of the other fields.
+   */
+  public void
+  decodeDataName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    throw new UnsupportedOperationException
+      ("decodeDataName is not implemented");
+  }
+
+  /**
+   * Decode input as a data packet and set the fields in the data object,
+   * except for the name which is not changed. This is used by Data after
+   * decodeDataName. Your derived class should override.
+   * @param data The Data object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataAfterName(Data data, ByteBuffer input, boolean copy)
+    throws EncodingException
+  {
+    throw new UnsupportedOperationException
+      ("decodeDataAfterName is not implemented");
+  }
+
+  /**
+   * Decode input as a sequence of concatenated Interest and Data packets, for
+   * example a packet capture or a repo dump, and return the decoded packets.
+   * Your derived class should override.
+   * @param input The input buffer to decode, which may be a direct buffer or a
+   * MappedByteBuffer from FileChannel.map. This reads from position() to
+   * limit(), but does not change the position. The decoded packets share
+   * memory with the input, which must remain unchanged while they are used.
+   * @param executor If not null, use it to decode groups of packets in
+   * parallel (for example a ForkJoinPool). If null, decode in this thread.
+   * @return An array with an Interest or Data object for each packet, in the
+   * order of the input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding of any packet, or if a
+   * packet is not an Interest or Data.
+   */
+  public Object[]
+  decodePackets(ByteBuffer input, ExecutorService executor)
+    throws EncodingException
+  {
+    throw new UnsupportedOperationException
+      ("decodePackets is not implemented");
+  }
+
+  /**
+   * Decode input as a sequence of concatenated Interest and Data packets in
+   * this thread. This calls decodePackets(input, null).
+   * @param input The input buffer to decode. This reads from position() to
+   * limit(), but does not change the position. The decoded packets share
+   * memory with the input, which must remain unchanged while they are used.
+   * @return An array with an Interest or Data object for each packet, in the
+   * order of the input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding of any packet, or if a
+   * packet is not an Interest or Data.
+   */
+  public final Object[]
+  decodePackets(ByteBuffer input) throws EncodingException
+  {
+    return decodePackets(input, null);
+  }
+
   /**
    * Encode controlParameters and return the encoding.
    * Your derived class should override.
@@ -92,6 +92,38 @@ public class TlvDecoder {
     }
   }
 
+  /**
+   * Decode a VAR-NUMBER in NDN-TLV, including the 8-byte form, and return it.
+   * Update the input buffer position. Use this for a number which may not fit
+   * in a Java int, for example a TLV type code from another application.
+   * @return The decoded VAR-NUMBER as a Java 64-bit long.
+   * @throws EncodingException if the VAR-NUMBER doesn't fit in a (signed) Java
+   * long, or read past the end of the input.
+   */
+  public final long
+  readLongVarNumber() throws EncodingException
+  {
+    try {
+      int firstOctet = (int)input_.get() & 0xff;
+      if (firstOctet < 253)
+        return firstOctet;
+      else if (firstOctet == 253)
+        return (((int)input_.get() & 0xff) << 8) +
+                ((int)input_.get() & 0xff);
+      else if (firstOctet == 254)
+        return (long)input_.getInt() & 0xffffffffL;
+      else {
+        long result = input_.getLong();
+        if (result < 0)
+          throw new EncodingException
+            ("Decoding a VAR-NUMBER larger than 63 bits is not supported");
+        return result;
+      }
+    } catch (BufferUnderflowException ex) {
+      throw new EncodingException("Read past the end of the input");
+    }
+  }
+
   /**
    * Decode the type and length from this's input starting at the input buffer
    * position, expecting the type to be expectedType and return the length.
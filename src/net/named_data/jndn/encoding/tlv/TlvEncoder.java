@@ -23,7 +23,10 @@ import java.nio.ByteBuffer;
 import net.named_data.jndn.util.DynamicByteBuffer;
 
 /**
- * A TlvEncoder holds an output buffer and has methods to output NDN-TLV.
+ * A TlvEncoder holds an output buffer and has methods to output NDN-TLV. The
+ * encoding is written backwards from the end of the buffer. To write the
+ * encoding once into a buffer of the exact size, first call the same encoding
+ * methods on a TlvEncoder from createLengthOnly() to get the length.
  */
 public class TlvEncoder {
   /**
@@ -51,6 +54,53 @@ public class TlvEncoder {
     output_.position(output_.limit());
   }
 
+  /**
+   * Create a new TlvEncoder to write backwards into the given buffer (which may
+   * be a direct buffer) from its capacity() to 0. If the encoding is longer
+   * than the capacity, then this allocates a new heap buffer as with
+   * DynamicByteBuffer. To write the encoding without resizing, use
+   * createLengthOnly() to get the length and pass a buffer with that capacity,
+   * for example a slice of a pooled buffer.
+   * When done, you should call getOutput().
+   * @param output The buffer to write into, which is not copied.
+   */
+  public
+  TlvEncoder(ByteBuffer output)
+  {
+    output_ = new DynamicByteBuffer(output);
+    // We will start encoding from the back.
+    output_.position(output_.limit());
+  }
+
+  /**
+   * Create a TlvEncoder for the other constructors.
+   * @param output The output buffer, or null to only count the length.
+   */
+  private
+  TlvEncoder(DynamicByteBuffer output)
+  {
+    output_ = output;
+  }
+
+  /**
+   * Create a new TlvEncoder which does not write any bytes but only counts the
+   * length of the encoding, so that getLength() returns the exact number of
+   * bytes which the same calls would write. Do not call getOutput().
+   * @return A new length-only TlvEncoder.
+   */
+  public static TlvEncoder
+  createLengthOnly()
+  {
+    return new TlvEncoder((DynamicByteBuffer)null);
+  }
+
+  /**
+   * Check if this encoder was created with createLengthOnly().
+   * @return True if this only counts the length.
+   */
+  public final boolean
+  isLengthOnly() { return output_ == null; }
+
   /**
    * Get the number of bytes that have been written to the output.  You can
    * save this number, write sub TLVs, then subtract the new length from this
@@ -60,37 +110,169 @@ public class TlvEncoder {
   public final int
   getLength()
   {
+    if (output_ == null)
+      return length_;
+
     return output_.remaining();
   }
 
+  /**
+   * Get the number of bytes that writeVarNumber writes to encode varNumber.
+   * @param varNumber The non-negative number to encode.
+   * @return The number of bytes of the encoding.
+   */
+  public static int
+  sizeOfVarNumber(int varNumber)
+  {
+    if (varNumber < 253)
+      return 1;
+    else if (varNumber <= 0xffff)
+      return 3;
+    else
+      return 5;
+  }
+
+  /**
+   * Get the number of bytes that writeVarNumber writes to encode the 64-bit
+   * varNumber.
+   * @param varNumber The non-negative number to encode.
+   * @return The number of bytes of the encoding.
+   */
+  public static int
+  sizeOfVarNumber(long varNumber)
+  {
+    if (varNumber < 253)
+      return 1;
+    else if (varNumber <= 0xffffL)
+      return 3;
+    else if (varNumber <= 0xffffffffL)
+      return 5;
+    else
+      return 9;
+  }
+
+  /**
+   * Get the number of bytes that writeNonNegativeInteger writes to encode
+   * value.
+   * @param value The non-negative integer to encode.
+   * @return The number of bytes of the encoding.
+   */
+  public static int
+  sizeOfNonNegativeInteger(long value)
+  {
+    if (value <= 0xffL)
+      return 1;
+    else if (value <= 0xffffL)
+      return 2;
+    else if (value <= 0xffffffffL)
+      return 4;
+    else
+      return 8;
+  }
+
+  /**
+   * Encode value as a non-negative integer into the array, the same as
+   * writeNonNegativeInteger but without a TlvEncoder, for example to make a
+   * name component.
+   * @param value The non-negative integer to encode.
+   * @param output The array to write to.
+   * @param offset The offset in output of the first byte of the encoding.
+   * There must be room for sizeOfNonNegativeInteger(value) bytes.
+   * @return The offset in output just after the encoding.
+   * @throws Error if the value is negative.
+   */
+  public static int
+  putNonNegativeInteger(long value, byte[] output, int offset)
+  {
+    if (value < 0)
+      throw new Error("TLV integer value may not be negative");
+
+    int end = offset + sizeOfNonNegativeInteger(value);
+    for (int i = end - 1; i >= offset; --i) {
+      output[i] = (byte)(value & 0xff);
+      value >>= 8;
+    }
+
+    return end;
+  }
+
   /**
    * Encode varNumber as a VAR-NUMBER in NDN-TLV and write it to the output just
    * before getLength() from the back.  Advance getLength().
    * @param varNumber The non-negative number to encode. This is a Java 32-bit
-   * int, so this does not support encoding a 64-bit VAR-NUMBER.
+   * int. To encode a 64-bit VAR-NUMBER, use writeVarNumber(long).
    */
   public final void
   writeVarNumber(int varNumber)
   {
     if (varNumber < 253) {
-      int position = output_.setRemainingFromBack(output_.remaining() + 1);
+      int position = reserve(1);
+      if (position < 0)
+        return;
       output_.buffer().put(position, (byte)(varNumber & 0xff));
     }
     else if (varNumber <= 0xffff) {
-      int position = output_.setRemainingFromBack(output_.remaining() + 3);
+      int position = reserve(3);
+      if (position < 0)
+        return;
       output_.buffer().put(position, (byte)253);
       output_.buffer().put(position + 1, (byte)((varNumber >> 8) & 0xff));
       output_.buffer().put(position + 2, (byte)(varNumber & 0xff));
     }
     else {
       // A Java int is 32 bits so ignore a 64-bit VAR-NUMBER.
-      int position = output_.setRemainingFromBack(output_.remaining() + 5);
+      int position = reserve(5);
+      if (position < 0)
+        return;
+      output_.buffer().put(position, (byte)254);
+      output_.buffer().put(position + 1, (byte)((varNumber >> 24) & 0xff));
+      output_.buffer().put(position + 2, (byte)((varNumber >> 16) & 0xff));
+      output_.buffer().put(position + 3, (byte)((varNumber >> 8) & 0xff));
+      output_.buffer().put(position + 4, (byte)(varNumber & 0xff));
+    }
+  }
+
+  /**
+   * Encode the 64-bit varNumber as a VAR-NUMBER in NDN-TLV and write it to the
+   * output just before getLength() from the back.  Advance getLength(). This
+   * uses the 8-byte form if varNumber does not fit in 32 bits.
+   * @param varNumber The non-negative number to encode. This is a Java 64-bit
+   * long, so this supports a 64-bit VAR-NUMBER (actually 63-bit because a Java
+   * long is signed).
+   * @throws Error if varNumber is negative.
+   */
+  public final void
+  writeVarNumber(long varNumber)
+  {
+    if (varNumber < 0)
+      throw new Error("TLV VAR-NUMBER may not be negative");
+
+    if (varNumber <= 0xffffL)
+      writeVarNumber((int)varNumber);
+    else if (varNumber <= 0xffffffffL) {
+      int position = reserve(5);
+      if (position < 0)
+        return;
       output_.buffer().put(position, (byte)254);
       output_.buffer().put(position + 1, (byte)((varNumber >> 24) & 0xff));
       output_.buffer().put(position + 2, (byte)((varNumber >> 16) & 0xff));
       output_.buffer().put(position + 3, (byte)((varNumber >> 8) & 0xff));
       output_.buffer().put(position + 4, (byte)(varNumber & 0xff));
     }
+    else {
+      int position = reserve(9);
+      if (position < 0)
+        return;
+      output_.buffer().put(position, (byte)255);
+      output_.buffer().put(position + 1, (byte)((varNumber >> 56) & 0xff));
+      output_.buffer().put(position + 2, (byte)((varNumber >> 48) & 0xff));
+      output_.buffer().put(position + 3, (byte)((varNumber >> 40) & 0xff));
+      output_.buffer().put(position + 4, (byte)((varNumber >> 32) & 0xff));
+      output_.buffer().put(position + 5, (byte)((varNumber >> 24) & 0xff));
+      output_.buffer().put(position + 6, (byte)((varNumber >> 16) & 0xff));
+      output_.buffer().put(position + 7, (byte)((varNumber >> 8) & 0xff));
+      output_.buffer().put(position + 8, (byte)(varNumber & 0xff));
+    }
   }
 
   /**
@@ -126,23 +308,31 @@ public class TlvEncoder {
 
     // Write backwards.
     if (value <= 0xffL) {
-      int position = output_.setRemainingFromBack(output_.remaining() + 1);
+      int position = reserve(1);
+      if (position < 0)
+        return;
       output_.buffer().put(position, (byte)(value & 0xff));
     }
     else if (value <= 0xffffL) {
-      int position = output_.setRemainingFromBack(output_.remaining() + 2);
+      int position = reserve(2);
+      if (position < 0)
+        return;
       output_.buffer().put(position,     (byte)((value >> 8) & 0xff));
       output_.buffer().put(position + 1, (byte)(value & 0xff));
     }
     else if (value <= 0xffffffffL) {
-      int position = output_.setRemainingFromBack(output_.remaining() + 4);
+      int position = reserve(4);
+      if (position < 0)
+        return;
       output_.buffer().put(position,     (byte)((value >> 24) & 0xff));
       output_.buffer().put(position + 1, (byte)((value >> 16) & 0xff));
       output_.buffer().put(position + 2, (byte)((value >> 8) & 0xff));
       output_.buffer().put(position + 3, (byte)(value & 0xff));
     }
     else {
-      int position = output_.setRemainingFromBack(output_.remaining() + 8);
+      int position = reserve(8);
+      if (position < 0)
+        return;
       output_.buffer().put(position,     (byte)((value >> 56) & 0xff));
       output_.buffer().put(position + 1, (byte)((value >> 48) & 0xff));
       output_.buffer().put(position + 2, (byte)((value >> 40) & 0xff));
@@ -169,9 +359,9 @@ public class TlvEncoder {
   writeNonNegativeIntegerTlv(int type, long value)
   {
     // Write backwards.
-    int saveNBytes = output_.remaining();
+    int saveNBytes = getLength();
     writeNonNegativeInteger(value);
-    writeTypeAndLength(type, output_.remaining() - saveNBytes);
+    writeTypeAndLength(type, getLength() - saveNBytes);
   }
 
   /**
@@ -219,8 +409,9 @@ public class TlvEncoder {
       return;
 
     // Write backwards.
-    int position = output_.setRemainingFromBack
-      (output_.remaining() + buffer.remaining());
+    int position = reserve(buffer.remaining());
+    if (position < 0)
+      return;
     int saveBufferValuePosition = buffer.position();
     output_.buffer().put(buffer);
     // Restore positions after put.
@@ -279,5 +470,24 @@ public class TlvEncoder {
     return output_.buffer().slice();
   }
 
-  private final DynamicByteBuffer output_;
+  /**
+   * Make room for nBytes just before getLength() from the back and advance
+   * getLength(). If this is length-only, just add to the length.
+   * @param nBytes The number of bytes to write.
+   * @return The position in output_.buffer() to write the bytes, or -1 if this
+   * is length-only.
+   */
+  private int
+  reserve(int nBytes)
+  {
+    if (output_ == null) {
+      length_ += nBytes;
+      return -1;
+    }
+
+    return output_.setRemainingFromBack(output_.remaining() + nBytes);
+  }
+
+  private final DynamicByteBuffer output_; /**< null if length-only */
+  private int length_ = 0;
 }
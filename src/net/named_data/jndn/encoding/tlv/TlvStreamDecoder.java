@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.encoding.tlv;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import net.named_data.jndn.encoding.EncodingException;
+
+/**
+ * A TlvStreamDecoder decodes a stream of NDN-TLV elements which arrives in
+ * chunks of any size, and calls a Listener for each event as soon as it is
+ * decoded: the start of an element (after its type and length), a chunk of the
+ * value bytes, and the end of the element. Unlike ElementReader, this does not
+ * buffer a whole element, so an application can process a large encoded
+ * structure (for example a status dataset which is the concatenation of many
+ * segments) with memory for only one chunk. Like TlvStructureDecoder, this is a
+ * state machine which keeps the partially read type and length between calls.
+ * The listener decides which elements have nested TLVs in their value.
+ * <p>
+ * This does not use TlvStructureDecoder because TlvStructureDecoder only
+ * finds the end of one top-level element in a buffer which holds the whole
+ * element from offset 0, and it skips the type and length without keeping
+ * them. This needs the type and length of every nested element and must not
+ * keep the bytes of a chunk after the call. To use this with ProtobufTlv,
+ * return false from onElementStart for an element to decode as a message,
+ * copy its value chunks and call ProtobufTlv.decode on the value in
+ * onElementEnd, so that only one such element is buffered at a time.
+ */
+public class TlvStreamDecoder {
+  /**
+   * A TlvStreamDecoder.Listener receives the events from a TlvStreamDecoder.
+   */
+  public interface Listener {
+    /**
+     * This is called after decoding the type and length of an element.
+     * @param type The TLV type.
+     * @param length The length of the TLV value.
+     * @return True to decode the value as nested TLVs, in which case this
+     * Listener receives the events for each nested element followed by
+     * onElementEnd for this element. False to receive the value bytes with
+     * onValueChunk followed by onElementEnd.
+     * @throws EncodingException If the listener finds an invalid encoding. This
+     * is passed through to the caller of onReceivedData.
+     */
+    boolean
+    onElementStart(int type, long length) throws EncodingException;
+
+    /**
+     * This is called with the next chunk of the value bytes of an element
+     * where onElementStart returned false. This is not called for an empty
+     * value.
+     * @param type The TLV type of the element.
+     * @param chunk The buffer with the value bytes from position() to limit().
+     * This is only valid during this call, so you must copy it if you need to
+     * keep it.
+     * @throws EncodingException If the listener finds an invalid encoding.
+     */
+    void
+    onValueChunk(int type, ByteBuffer chunk) throws EncodingException;
+
+    /**
+     * This is called at the end of an element.
+     * @param type The TLV type of the element.
+     * @throws EncodingException If the listener finds an invalid encoding.
+     */
+    void
+    onElementEnd(int type) throws EncodingException;
+  }
+
+  /**
+   * Create a new TlvStreamDecoder to call the listener.
+   * @param listener The Listener for the decoding events.
+   */
+  public TlvStreamDecoder(Listener listener)
+  {
+    listener_ = listener;
+  }
+
+  /**
+   * Continue to decode the stream with the next chunk of data, and call the
+   * listener for each event. The data can have any length, and can end in the
+   * middle of a type, length or value.
+   * @param data The buffer with the next bytes of the stream. This reads from
+   * position() to limit(), but does not change the position.
+   * @throws EncodingException For invalid encoding, such as an element which
+   * is longer than the element which contains it. After this is thrown, you
+   * must call reset() before decoding another stream.
+   */
+  public final void
+  onReceivedData(ByteBuffer data) throws EncodingException
+  {
+    ByteBuffer input = data.duplicate();
+
+    while (input.hasRemaining()) {
+      if (state_ == READ_VALUE) {
+        int nBytes = (int)Math.min(input.remaining(), nValueBytesToRead_);
+        ByteBuffer chunk = input.duplicate();
+        chunk.limit(chunk.position() + nBytes);
+        input.position(input.position() + nBytes);
+        position_ += nBytes;
+        nValueBytesToRead_ -= nBytes;
+
+        listener_.onValueChunk(type_, chunk);
+        if (nValueBytesToRead_ == 0) {
+          state_ = READ_TYPE;
+          listener_.onElementEnd(type_);
+          endFinishedElements();
+        }
+
+        continue;
+      }
+
+      // We are reading a VAR-NUMBER for the type or length.
+      int octet = input.get() & 0xff;
+      ++position_;
+      if (!elements_.isEmpty() &&
+          position_ > elements_.get(elements_.size() - 1).endPosition_)
+        throw new EncodingException
+          ("TLV header exceeds the length of the containing element");
+
+      if (nVarNumberBytesToRead_ == 0) {
+        // This is the first octet.
+        if (octet < 253)
+          varNumber_ = octet;
+        else {
+          varNumber_ = 0;
+          nVarNumberBytesToRead_ = octet == 253 ? 2 : (octet == 254 ? 4 : 8);
+          continue;
+        }
+      }
+      else {
+        varNumber_ = (varNumber_ << 8) + octet;
+        --nVarNumberBytesToRead_;
+        if (nVarNumberBytesToRead_ > 0)
+          continue;
+      }
+
+      // We have the VAR-NUMBER.
+      if (state_ == READ_TYPE) {
+        if (varNumber_ < 0 || varNumber_ > Integer.MAX_VALUE)
+          throw new EncodingException
+            ("The TLV type is larger than a 32-bit integer");
+        type_ = (int)varNumber_;
+        state_ = READ_LENGTH;
+      }
+      else
+        onTypeAndLength(type_, varNumber_);
+    }
+  }
+
+  /**
+   * Reset to decode a new stream, discarding any partially decoded element.
+   */
+  public final void
+  reset()
+  {
+    elements_.clear();
+    state_ = READ_TYPE;
+    nVarNumberBytesToRead_ = 0;
+    nValueBytesToRead_ = 0;
+    position_ = 0;
+  }
+
+  /**
+   * Get the number of nested elements whose start has been decoded but not the
+   * end.
+   * @return The depth, which is 0 between top-level elements.
+   */
+  public final int
+  getDepth() { return elements_.size(); }
+
+  /**
+   * Check if the decoder is between top-level elements so that the stream can
+   * end here.
+   * @return True if no element is partially decoded.
+   */
+  public final boolean
+  isBetweenElements()
+  {
+    return elements_.isEmpty() && state_ == READ_TYPE &&
+      nVarNumberBytesToRead_ == 0;
+  }
+
+  /**
+   * Get the number of bytes in the stream which have been decoded.
+   * @return The number of bytes.
+   */
+  public final long
+  getPosition() { return position_; }
+
+  /**
+   * Process the type and length of the next element and set up to decode its
+   * value.
+   */
+  private void
+  onTypeAndLength(int type, long length) throws EncodingException
+  {
+    if (length < 0)
+      throw new EncodingException
+        ("The TLV length is larger than a 63-bit integer");
+    long endPosition = position_ + length;
+    if (!elements_.isEmpty() &&
+        endPosition > elements_.get(elements_.size() - 1).endPosition_)
+      throw new EncodingException
+        ("TLV length exceeds the length of the containing element");
+
+    boolean isNested = listener_.onElementStart(type, length);
+    state_ = READ_TYPE;
+    if (isNested) {
+      elements_.add(new NestedElement(type, endPosition));
+      endFinishedElements();
+    }
+    else if (length == 0) {
+      listener_.onElementEnd(type);
+      endFinishedElements();
+    }
+    else {
+      state_ = READ_VALUE;
+      nValueBytesToRead_ = length;
+    }
+  }
+
+  /**
+   * Call onElementEnd for each nested element which ends at the current
+   * position, and remove it.
+   */
+  private void
+  endFinishedElements() throws EncodingException
+  {
+    while (!elements_.isEmpty()) {
+      NestedElement element = elements_.get(elements_.size() - 1);
+      if (element.endPosition_ != position_)
+        break;
+
+      elements_.remove(elements_.size() - 1);
+      listener_.onElementEnd(element.type_);
+    }
+  }
+
+  /**
+   * A NestedElement holds the type and end position of an element whose value
+   * is being decoded as nested TLVs.
+   */
+  private static class NestedElement {
+    public NestedElement(int type, long endPosition)
+    {
+      type_ = type;
+      endPosition_ = endPosition;
+    }
+
+    public final int type_;
+    public final long endPosition_;
+  }
+
+  private static final int READ_TYPE =   0;
+  private static final int READ_LENGTH = 1;
+  private static final int READ_VALUE =  2;
+
+  private final Listener listener_;
+  private final ArrayList<NestedElement> elements_ =
+    new ArrayList<NestedElement>();
+  private int state_ = READ_TYPE;
+  // The number of bytes still to read after the first octet of a VAR-NUMBER,
+  // or 0 if the next byte is the first octet.
+  private int nVarNumberBytesToRead_ = 0;
+  private long varNumber_ = 0;
+  private int type_ = 0;
+  private long nValueBytesToRead_ = 0;
+  private long position_ = 0;
+}
@@ -19,67 +19,154 @@
 
 package net.named_data.jndn.impl;
 
-import java.util.ArrayList;
 import net.named_data.jndn.util.Common;
 
 /**
  * DelayedCallTable is an internal class used by the Node implementation of
- * callLater to store callbacks and call them when they time out.
+ * callLater to store callbacks and call them when they time out. The entries
+ * are kept in a binary heap ordered on call time, so that callLater and
+ * canceling a call are O(log n) and checking for timed-out entries only looks
+ * at the front of the heap.
  */
 public class DelayedCallTable {
+  /**
+   * A CancelableCallback is a callback for callLater which the caller can
+   * cancel before it is called, for example the timeout of a pending interest
+   * which has been satisfied. The callLater implementation calls setCanceler
+   * so that cancel() also removes the delayed call from its table.
+   */
+  public abstract static class CancelableCallback implements Runnable {
+    /**
+     * Mark this callback as canceled so that it is not called, and run the
+     * canceler from setCanceler (if any) to remove the delayed call.
+     */
+    public final void
+    cancel()
+    {
+      Runnable canceler;
+      synchronized(this) {
+        if (isCanceled_)
+          return;
+        isCanceled_ = true;
+        canceler = canceler_;
+        canceler_ = null;
+      }
+
+      if (canceler != null)
+        canceler.run();
+    }
+
+    /**
+     * Check if cancel() was called.
+     * @return True if cancel() was called.
+     */
+    public final synchronized boolean
+    getIsCanceled() { return isCanceled_; }
+
+    /**
+     * Set the canceler which cancel() runs to remove the delayed call. If
+     * cancel() was already called, run the canceler now.
+     * @param canceler The Runnable to remove the delayed call from the
+     * implementation of callLater.
+     */
+    public final void
+    setCanceler(Runnable canceler)
+    {
+      synchronized(this) {
+        if (!isCanceled_) {
+          canceler_ = canceler;
+          return;
+        }
+      }
+
+      canceler.run();
+    }
+
+    private boolean isCanceled_ = false;
+    private Runnable canceler_ = null;
+  }
+
   /**
    * Call callback.run() after the given delay. This adds to the delayed call
-   * table which is used by callTimedOut().
+   * table which is used by callTimedOut(). If the callback is a
+   * CancelableCallback, then calling its cancel() removes it from the table.
    * @param delayMilliseconds The delay in milliseconds.
    * @param callback This calls callback.run() after the delay.
    */
-  public synchronized final void
+  public final void
   callLater(double delayMilliseconds, Runnable callback)
   {
-    Entry entry = new Entry(delayMilliseconds, callback);
-    // Insert into table_, sorted on getCallTime().
-    // Search from the back since we expect it to go there.
-    int i = table_.size() - 1;
-    while (i >= 0) {
-      if ((table_.get(i)).getCallTime() <= entry.getCallTime())
-        break;
-      --i;
+    final Entry entry;
+    synchronized(this) {
+      entry = new Entry(delayMilliseconds, callback, nextSequenceNo_++);
+      if (size_ == heap_.length) {
+        Entry[] newHeap = new Entry[heap_.length * 2];
+        System.arraycopy(heap_, 0, newHeap, 0, size_);
+        heap_ = newHeap;
+      }
+
+      heap_[size_] = entry;
+      entry.heapIndex_ = size_;
+      ++size_;
+      siftUp(entry.heapIndex_);
     }
-    // Element i is the greatest less than or equal to
-    // entry.getCallTime(), so insert after it.
-    table_.add(i + 1, entry);
+
+    if (callback instanceof CancelableCallback)
+      ((CancelableCallback)callback).setCanceler(new Runnable() {
+        public void run() { remove(entry); }
+      });
   }
 
   /**
-   * Call and remove timed-out callback entries. Since callLater does a sorted
-   * insert into the delayed call table, the check for timed-out entries is
-   * quick and does not require searching the entire table. This synchronizes on
-   * the delayed call table when checking it, but not when calling the callback.
+   * Call and remove timed-out callback entries. Since the delayed call table is
+   * a heap on the call time, the check for timed-out entries is quick and does
+   * not require searching the entire table. This synchronizes on the delayed
+   * call table when checking it, but not when calling the callback.
    */
   public final void
   callTimedOut()
   {
     double now = Common.getNowMilliseconds();
-    // table_ is sorted on _callTime, so we only need to process the timed-out
+    // heap_ is ordered on callTime_, so we only need to process the timed-out
     // entries at the front, then quit.
     while (true) {
       Entry entry;
       // Lock while we check and maybe pop the element at the front.
       synchronized(this) {
-        if (table_.isEmpty())
+        if (size_ == 0)
           break;
-        entry = table_.get(0);
+        entry = heap_[0];
         if (entry.getCallTime() > now)
-          // It is not time to call the entry at the front of the list, so finish.
+          // It is not time to call the entry at the front of the heap, so finish.
           break;
-        table_.remove(0);
+        removeAt(0);
       }
 
-      // The lock on table_ is removed, so call the callback.
+      // The lock on the table is removed, so call the callback.
       entry.callCallback();
     }
   }
 
+  /**
+   * Get the time of the earliest delayed call in the table.
+   * @return The call time in milliseconds, similar to
+   * Common.getNowMilliseconds(), or -1 if the table is empty.
+   */
+  public final synchronized double
+  getNextCallTime()
+  {
+    if (size_ == 0)
+      return -1;
+    return heap_[0].getCallTime();
+  }
+
+  /**
+   * Get the number of delayed calls in the table.
+   * @return The number of delayed calls.
+   */
+  public final synchronized int
+  size() { return size_; }
+
   /**
    * Entry holds the callback and other fields for an entry in the delayed call
    * table.
@@ -90,11 +177,14 @@ public class DelayedCallTable {
      * current time and the delayMilliseconds.
      * @param delayMilliseconds The delay in milliseconds.
      * @param callback This calls callback.run() after the delay.
+     * @param sequenceNo The sequence number used to call entries with the same
+     * call time in the order they were added.
      */
-    public Entry(double delayMilliseconds, Runnable callback)
+    public Entry(double delayMilliseconds, Runnable callback, long sequenceNo)
     {
       callback_ = callback;
       callTime_ = Common.getNowMilliseconds() + delayMilliseconds;
+      sequenceNo_ = sequenceNo;
     }
 
     /**
@@ -106,17 +196,116 @@ public class DelayedCallTable {
     getCallTime() { return callTime_; }
 
     /**
-     * Call the callback given to the constructor. This does not catch
+     * Check if this entry should be called before the other entry.
+     * @param other The other entry.
+     * @return True if this entry's call time is earlier, or the call times are
+     * the same and this entry was added first.
+     */
+    public final boolean
+    isBefore(Entry other)
+    {
+      if (callTime_ != other.callTime_)
+        return callTime_ < other.callTime_;
+      return sequenceNo_ < other.sequenceNo_;
+    }
+
+    /**
+     * Call the callback given to the constructor, unless it is a
+     * CancelableCallback which has been canceled. This does not catch
      * exceptions.
      */
     public final void
-    callCallback() { callback_.run(); }
+    callCallback()
+    {
+      if (callback_ instanceof CancelableCallback &&
+          ((CancelableCallback)callback_).getIsCanceled())
+        return;
+
+      callback_.run();
+    }
 
     private final Runnable callback_;
     private final double callTime_;
+    private final long sequenceNo_;
+    private int heapIndex_ = -1; /**< The index in heap_, or -1 if removed */
+  }
+
+  /**
+   * Remove the entry from the heap if it is still there.
+   * @param entry The entry to remove.
+   */
+  private synchronized void
+  remove(Entry entry)
+  {
+    if (entry.heapIndex_ >= 0)
+      removeAt(entry.heapIndex_);
+  }
+
+  /**
+   * Remove the entry at index i in the heap and restore the heap order.
+   * @param i The index of the entry to remove.
+   */
+  private void
+  removeAt(int i)
+  {
+    heap_[i].heapIndex_ = -1;
+    --size_;
+    if (i == size_) {
+      heap_[size_] = null;
+      return;
+    }
+
+    // Move the last entry into the hole and restore the heap order.
+    Entry last = heap_[size_];
+    heap_[size_] = null;
+    heap_[i] = last;
+    last.heapIndex_ = i;
+    siftDown(i);
+    if (heap_[i] == last)
+      siftUp(i);
+  }
+
+  private void
+  siftUp(int i)
+  {
+    Entry entry = heap_[i];
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (!entry.isBefore(heap_[parent]))
+        break;
+      heap_[i] = heap_[parent];
+      heap_[i].heapIndex_ = i;
+      i = parent;
+    }
+
+    heap_[i] = entry;
+    entry.heapIndex_ = i;
+  }
+
+  private void
+  siftDown(int i)
+  {
+    Entry entry = heap_[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size_)
+        break;
+      if (child + 1 < size_ && heap_[child + 1].isBefore(heap_[child]))
+        ++child;
+      if (!heap_[child].isBefore(entry))
+        break;
+      heap_[i] = heap_[child];
+      heap_[i].heapIndex_ = i;
+      i = child;
+    }
+
+    heap_[i] = entry;
+    entry.heapIndex_ = i;
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
+  private Entry[] heap_ = new Entry[16];
+  private int size_ = 0;
+  private long nextSequenceNo_ = 0;
   // This is to force an import of net.named_data.jndn.util.
   private static Common dummyCommon_ = new Common();
 }
@@ -20,17 +20,25 @@
 package net.named_data.jndn.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
 import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
 
 /**
  * An InterestFilterTable is an internal class to hold a list of entries with
- * an interest Filter and its OnInterestCallback.
+ * an interest Filter and its OnInterestCallback. The entries whose filter has
+ * no regex are indexed in a tree of prefix name components so that matching an
+ * incoming Interest only visits the entries on the Interest name's prefix path.
+ * The entries with a regex filter are kept in a separate list.
  */
 public class InterestFilterTable {
   /**
@@ -88,6 +96,28 @@ public class InterestFilterTable {
     private final InterestFilter filter_;
     private final OnInterestCallback onInterest_;
     private final Face face_;
+    private long sequenceNo_ = 0; /**< The order in which the entry was added */
+    private PrefixNode node_ = null; /**< The node holding this entry, or null */
+  }
+
+  /**
+   * A PrefixNode is a node in the tree of filter prefix name components. The
+   * path from the root to a node gives a prefix, and the node holds the entries
+   * (without a regex filter) which have that prefix.
+   */
+  private static class PrefixNode {
+    public PrefixNode(PrefixNode parent, Blob key)
+    {
+      parent_ = parent;
+      key_ = key;
+    }
+
+    public final PrefixNode parent_;
+    public final Blob key_;
+    // Keyed on the component value (not the type) to match Name.match.
+    public final HashMap<Blob, PrefixNode> children_ =
+      new HashMap<Blob, PrefixNode>();
+    public final ArrayList<Entry> entries_ = new ArrayList<Entry>();
   }
 
   /**
@@ -102,7 +132,34 @@ public class InterestFilterTable {
   setInterestFilter(long interestFilterId, InterestFilter filter,
        OnInterestCallback onInterest, Face face)
   {
-    table_.add(new Entry(interestFilterId, filter, onInterest, face));
+    Entry entry = new Entry(interestFilterId, filter, onInterest, face);
+    entry.sequenceNo_ = ++lastSequenceNo_;
+
+    if (filter.hasRegexFilter())
+      regexEntries_.add(entry);
+    else {
+      Name prefix = filter.getPrefix();
+      PrefixNode node = root_;
+      for (int i = 0; i < prefix.size(); ++i) {
+        Blob key = prefix.get(i).getValue();
+        PrefixNode child = node.children_.get(key);
+        if (child == null) {
+          child = new PrefixNode(node, key);
+          node.children_.put(key, child);
+        }
+        node = child;
+      }
+
+      node.entries_.add(entry);
+      entry.node_ = node;
+    }
+
+    ArrayList<Entry> idEntries = idToEntries_.get(interestFilterId);
+    if (idEntries == null) {
+      idEntries = new ArrayList<Entry>(1);
+      idToEntries_.put(interestFilterId, idEntries);
+    }
+    idEntries.add(entry);
   }
 
   /**
@@ -110,16 +167,34 @@ public class InterestFilterTable {
    * to the entry's filter, and add to the matchedFilters list.
    * @param interest The interest which may match the filter in multiple entries.
    * @param matchedFilters Add each matching InterestFilterTable.Entry from the
-   * interest filter table.  The caller should pass in an empty ArrayList.
+   * interest filter table, in the order that the entries were added.  The
+   * caller should pass in an empty ArrayList.
    */
   public synchronized final void
   getMatchedFilters(Interest interest, ArrayList matchedFilters)
   {
-    for (int i = 0; i < table_.size(); ++i) {
-      Entry entry = table_.get(i);
-      if (entry.getFilter().doesMatch(interest.getName()))
-        matchedFilters.add(entry);
+    ArrayList<Entry> matched = new ArrayList<Entry>();
+    Name name = interest.getName();
+
+    // Each entry on the Interest name's prefix path matches.
+    PrefixNode node = root_;
+    matched.addAll(node.entries_);
+    for (int i = 0; i < name.size(); ++i) {
+      node = node.children_.get(name.get(i).getValue());
+      if (node == null)
+        break;
+      matched.addAll(node.entries_);
     }
+
+    for (int i = 0; i < regexEntries_.size(); ++i) {
+      Entry entry = regexEntries_.get(i);
+      if (entry.getFilter().doesMatch(name))
+        matched.add(entry);
+    }
+
+    if (matched.size() > 1)
+      Collections.sort(matched, sequenceComparator_);
+    matchedFilters.addAll(matched);
   }
 
   /**
@@ -132,23 +207,61 @@ public class InterestFilterTable {
   public synchronized final void
   unsetInterestFilter(long interestFilterId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
     // Remove all entries even though interestFilterId should be unique.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      if ((table_.get(i)).getInterestFilterId() == interestFilterId) {
-        ++count;
-        table_.remove(i);
-      }
-    }
-
-    if (count == 0)
+    ArrayList<Entry> idEntries = idToEntries_.remove(interestFilterId);
+    if (idEntries == null) {
       logger_.log
         (Level.WARNING, "unsetInterestFilter: Didn't find interestFilterId {0}",
          interestFilterId);
+      return;
+    }
+
+    for (int i = 0; i < idEntries.size(); ++i) {
+      Entry entry = idEntries.get(i);
+      if (entry.node_ == null)
+        regexEntries_.remove(entry);
+      else {
+        PrefixNode node = entry.node_;
+        node.entries_.remove(entry);
+        entry.node_ = null;
+
+        // Remove the node and any ancestor which has become empty.
+        while (node.parent_ != null && node.entries_.isEmpty() &&
+               node.children_.isEmpty()) {
+          node.parent_.children_.remove(node.key_);
+          node = node.parent_;
+        }
+      }
+    }
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
+  /**
+   * Get the number of entries in the table.
+   * @return The number of entries.
+   */
+  public synchronized final int
+  size()
+  {
+    int count = 0;
+    for (ArrayList<Entry> idEntries : idToEntries_.values())
+      count += idEntries.size();
+
+    return count;
+  }
+
+  private static final Comparator<Entry> sequenceComparator_ =
+    new Comparator<Entry>() {
+      public int compare(Entry entry1, Entry entry2) {
+        return entry1.sequenceNo_ < entry2.sequenceNo_ ? -1 :
+          (entry1.sequenceNo_ == entry2.sequenceNo_ ? 0 : 1);
+      }
+    };
+
+  private final PrefixNode root_ = new PrefixNode(null, null);
+  private final ArrayList<Entry> regexEntries_ = new ArrayList<Entry>();
+  private final HashMap<Long, ArrayList<Entry>> idToEntries_ =
+    new HashMap<Long, ArrayList<Entry>>();
+  private long lastSequenceNo_ = 0;
   private static final Logger logger_ = Logger.getLogger
     (InterestFilterTable.class.getName());
   // This is to force an import of net.named_data.jndn.util.
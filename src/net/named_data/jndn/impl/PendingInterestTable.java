@@ -20,22 +20,75 @@
 package net.named_data.jndn.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
 import net.named_data.jndn.OnData;
 import net.named_data.jndn.OnNetworkNack;
 import net.named_data.jndn.OnTimeout;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
 import net.named_data.jndn.util.SignedBlob;
 
 /**
  * A PendingInterestTable is an internal class to hold a list of pending
- * interests with their callbacks.
+ * interests with their callbacks. The entries are indexed in a tree of name
+ * components (keyed on the Interest name) and by pendingInterestId so that
+ * finding the entries for an incoming Data packet only visits the entries on
+ * the Data name's prefix path, and removing an entry does not scan the table.
+ * The tree can be split into shards by the hash of the first name component,
+ * each with its own lock, so that threads which process Data for different
+ * name subtrees do not wait for each other.
  */
 public class PendingInterestTable {
+  /**
+   * Create a new PendingInterestTable with one shard.
+   */
+  public PendingInterestTable()
+  {
+    this(1);
+  }
+
+  /**
+   * Create a new PendingInterestTable which splits the entries into shards by
+   * the hash of the first component of the Interest name.
+   * @param nShards The number of shards. If this is less than 1, use 1.
+   */
+  public PendingInterestTable(int nShards)
+  {
+    if (nShards < 1)
+      nShards = 1;
+
+    shards_ = new Shard[nShards];
+    for (int i = 0; i < nShards; ++i)
+      shards_[i] = new Shard();
+    // An Interest with an empty name can match Data in any shard, so keep
+    // these in a separate shard which is also checked for each Data.
+    emptyNameShard_ = nShards == 1 ? shards_[0] : new Shard();
+  }
+
+  /**
+   * Get the index of the shard for the name, based on the hash of the value of
+   * the first name component. A caller which dispatches packets to threads by
+   * name can use this to keep the packets for a name subtree on one thread.
+   * @param firstComponentHashCode The hashCode() of the Blob value of the first
+   * name component (which is the same as the hashCode() of a ByteBuffer of the
+   * value).
+   * @param nShards The number of shards.
+   * @return The shard index from 0 to nShards - 1.
+   */
+  public static int
+  getShardIndex(int firstComponentHashCode, int nShards)
+  {
+    return (firstComponentHashCode & 0x7fffffff) % nShards;
+  }
   /**
    * Entry holds the callbacks and other fields for an entry in the pending
    * interest table.
@@ -119,7 +172,57 @@ public class PendingInterestTable {
     private final OnData onData_;
     private final OnTimeout onTimeout_;
     private final OnNetworkNack onNetworkNack_;
-    private boolean isRemoved_ = false;
+    private volatile boolean isRemoved_ = false;
+    private NameNode node_ = null; /**< The node holding this entry, or null */
+    private Shard shard_ = null;
+    private DelayedCallTable.CancelableCallback timeout_ = null;
+  }
+
+  /**
+   * A NameNode is a node in the tree of Interest name components. The path from
+   * the root to a node gives a name, and the node holds the entries whose
+   * Interest has that name.
+   */
+  private static class NameNode {
+    /**
+     * Create a new NameNode.
+     * @param parent The parent node, or null if this is the root.
+     * @param key The value of the name component for this node, or null if this
+     * is the root.
+     */
+    public NameNode(NameNode parent, Blob key)
+    {
+      parent_ = parent;
+      key_ = key;
+    }
+
+    /**
+     * Check if this node has no entries and no children so that it can be
+     * removed from its parent.
+     * @return True if this node is empty.
+     */
+    public final boolean
+    isEmpty() { return entries_.isEmpty() && children_.isEmpty(); }
+
+    public final NameNode parent_;
+    public final Blob key_;
+    // Keyed on the component value (not the type) to match Name.match.
+    public final HashMap<Blob, NameNode> children_ =
+      new HashMap<Blob, NameNode>();
+    public final ArrayList<Entry> entries_ = new ArrayList<Entry>();
+    // The number of entries in children whose Interest name ends in an
+    // ImplicitSha256Digest component, so that we only compute the Data full
+    // name when it is needed.
+    public int nImplicitDigestChildEntries_ = 0;
+  }
+
+  /**
+   * A Shard holds the root of a tree of name components. Its methods are
+   * called while synchronized on the Shard.
+   */
+  private static class Shard {
+    public final NameNode root_ = new NameNode(null, null);
+    public volatile int nEntries_ = 0;
   }
 
   /**
@@ -139,47 +242,158 @@ public class PendingInterestTable {
    * @return The new PendingInterestTable.Entry, or null if
    * removePendingInterest was already called with the pendingInterestId.
    */
-  public synchronized final Entry
+  public final Entry
   add(long pendingInterestId, Interest interestCopy, OnData onData,
        OnTimeout onTimeout, OnNetworkNack onNetworkNack)
   {
-    int removeRequestIndex = removeRequests_.indexOf(pendingInterestId);
-    if (removeRequestIndex >= 0) {
+    Entry entry = new Entry
+      (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack);
+    Name name = interestCopy.getName();
+    Shard shard = getShard(name);
+    synchronized (shard) {
+      NameNode node = shard.root_;
+      for (int i = 0; i < name.size(); ++i) {
+        Blob key = name.get(i).getValue();
+        NameNode child = node.children_.get(key);
+        if (child == null) {
+          child = new NameNode(node, key);
+          node.children_.put(key, child);
+        }
+        node = child;
+      }
+
+      node.entries_.add(entry);
+      if (name.size() > 0 && name.get(-1).isImplicitSha256Digest())
+        ++node.parent_.nImplicitDigestChildEntries_;
+      entry.node_ = node;
+      entry.shard_ = shard;
+      ++shard.nEntries_;
+      idToEntry_.put(pendingInterestId, entry);
+    }
+
+    // Check for a removal request after adding to idToEntry_, and
+    // removePendingInterest checks idToEntry_ after adding a removal request,
+    // so that one of them will see the other.
+    if (removeRequests_.remove(pendingInterestId)) {
       // removePendingInterest was called with the pendingInterestId returned by
-      //   expressInterest before we got here, so don't add a PIT entry.
-      removeRequests_.remove(removeRequestIndex);
+      //   expressInterest before we got here, so don't keep the PIT entry.
+      removeEntry(entry);
       return null;
     }
 
-    Entry entry = new Entry
-      (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack);
-    table_.add(entry);
     return entry;
   }
 
+  /**
+   * Set the callback which was given to callLater for the entry's interest
+   * timeout. When the entry is removed from the table, this cancels the
+   * timeout so that it is not called. If the entry was already removed, cancel
+   * the timeout now.
+   * @param pendingInterest The Entry returned by add.
+   * @param timeout The CancelableCallback for the interest timeout.
+   */
+  public final void
+  setTimeout
+    (Entry pendingInterest, DelayedCallTable.CancelableCallback timeout)
+  {
+    synchronized (pendingInterest.shard_) {
+      if (!pendingInterest.getIsRemoved()) {
+        pendingInterest.timeout_ = timeout;
+        return;
+      }
+    }
+
+    timeout.cancel();
+  }
+
   /**
    * Find all entries from the pending interest table where data conforms to
    * the entry's interest selectors, remove the entries from the table, set each
-   * entry's isRemoved flag, and add to the entries list.
+   * entry's isRemoved flag, and add to the entries list. This only checks the
+   * entries whose Interest name is a prefix of the Data name, or is the Data
+   * name plus an ImplicitSha256Digest component. This only locks the shard
+   * for the Data name (and the shard for Interests with an empty name if it
+   * has entries).
    * @param data The incoming Data packet to find the interest for.
    * @param entries Add matching PendingInterestTable.Entry from the pending
    * interest table.  The caller should pass in an empty ArrayList.
    */
-  public synchronized final void
+  public final void
   extractEntriesForExpressedInterest(Data data, ArrayList<Entry> entries)
     throws EncodingException
   {
-    // Go backwards through the list so we can remove entries.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      Entry pendingInterest = table_.get(i);
+    Name dataName = data.getName();
+    Shard shard = getShard(dataName);
+    synchronized (shard) {
+      // The nodes on the Data name's prefix path. Collect them first since
+      // extractMatchingEntries may remove empty nodes.
+      ArrayList<NameNode> nodes = new ArrayList<NameNode>();
+      NameNode node = shard.root_;
+      nodes.add(node);
+      for (int i = 0; i < dataName.size(); ++i) {
+        node = node.children_.get(dataName.get(i).getValue());
+        if (node == null)
+          break;
+        nodes.add(node);
+      }
 
-      if (pendingInterest.getInterest().matchesData(data)) {
-        entries.add(table_.get(i));
-        // We let the callback from callLater call _processInterestTimeout, but
-        // for efficiency, mark this as removed so that it returns right away.
-        table_.remove(i);
-        pendingInterest.setIsRemoved();
+      if (nodes.size() == dataName.size() + 1 &&
+          node.nImplicitDigestChildEntries_ > 0) {
+        // Some Interests have the Data name plus a digest, so check the full
+        // name.
+        NameNode digestNode = node.children_.get
+          (data.getFullName().get(-1).getValue());
+        if (digestNode != null)
+          nodes.add(digestNode);
+      }
+
+      // Check the longest names first.
+      for (int i = nodes.size() - 1; i >= 0; --i)
+        extractMatchingEntries(nodes.get(i), data, entries);
+    }
+
+    if (emptyNameShard_ != shard && emptyNameShard_.nEntries_ > 0) {
+      // Check the Interests with an empty name last since they are shortest.
+      synchronized (emptyNameShard_) {
+        extractMatchingEntries(emptyNameShard_.root_, data, entries);
+      }
+    }
+  }
+
+  /**
+   * Check if the pending interest table may have an entry for a Data packet
+   * with the given name, which is true if an entry's Interest name is a prefix
+   * of the Data name or is the Data name plus an ImplicitSha256Digest
+   * component. This does not check the Interest selectors, so this is only
+   * used to quickly discard an unsolicited or duplicate Data packet before
+   * decoding more than its name.
+   * @param dataName The name of the incoming Data packet.
+   * @return True if extractEntriesForExpressedInterest may find an entry,
+   * false if it will not.
+   */
+  public final boolean
+  hasEntriesForDataName(Name dataName)
+  {
+    Shard shard = getShard(dataName);
+    if (emptyNameShard_ != shard && emptyNameShard_.nEntries_ > 0)
+      // An Interest with an empty name is a prefix of any Data name.
+      return true;
+    if (shard.nEntries_ == 0)
+      return false;
+
+    synchronized (shard) {
+      NameNode node = shard.root_;
+      if (!node.entries_.isEmpty())
+        return true;
+      for (int i = 0; i < dataName.size(); ++i) {
+        node = node.children_.get(dataName.get(i).getValue());
+        if (node == null)
+          return false;
+        if (!node.entries_.isEmpty())
+          return true;
       }
+
+      return node.nImplicitDigestChildEntries_ > 0;
     }
   }
 
@@ -195,25 +409,33 @@ public class PendingInterestTable {
    * @param entries Add matching PendingInterestTable.Entry from the pending
    * interest table. The caller should pass in an empty ArrayList.
    */
-  public synchronized final void
+  public final void
   extractEntriesForNackInterest(Interest interest, ArrayList<Entry> entries)
   {
     SignedBlob encoding = interest.wireEncode();
+    Shard shard = getShard(interest.getName());
+    synchronized (shard) {
+      // Interests with the same encoding have the same name.
+      NameNode node = findNode(shard, interest.getName());
+      if (node == null)
+        return;
 
-    // Go backwards through the list so we can remove entries.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      Entry pendingInterest = table_.get(i);
-      if (pendingInterest.getOnNetworkNack() == null)
-        continue;
-
-      // wireEncode returns the encoding cached when the interest was sent (if
-      // it was the default wire encoding).
-      if (pendingInterest.getInterest().wireEncode().equals(encoding)) {
-        entries.add(table_.get(i));
-        // We let the callback from callLater call _processInterestTimeout, but
-        // for efficiency, mark this as removed so that it returns right away.
-        table_.remove(i);
-        pendingInterest.setIsRemoved();
+      // Go backwards through the list so we can remove entries.
+      for (int i = node.entries_.size() - 1; i >= 0; --i) {
+        Entry pendingInterest = node.entries_.get(i);
+        if (pendingInterest.getOnNetworkNack() == null)
+          continue;
+
+        // wireEncode returns the encoding cached when the interest was sent (if
+        // it was the default wire encoding).
+        if (pendingInterest.getInterest().wireEncode().equals(encoding)) {
+          entries.add(pendingInterest);
+          // We let the callback from callLater call _processInterestTimeout,
+          // but for efficiency, mark this as removed so that it returns right
+          // away.
+          removeFromNode(pendingInterest, i);
+          pendingInterest.setIsRemoved();
+        }
       }
     }
   }
@@ -226,35 +448,30 @@ public class PendingInterestTable {
    * nothing.
    * @param pendingInterestId The ID returned from expressInterest.
    */
-  public synchronized final void
+  public final void
   removePendingInterest(long pendingInterestId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
-    // Remove all entries even though pendingInterestId should be unique.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      if ((table_.get(i)).getPendingInterestId() == pendingInterestId) {
-        ++count;
-        // For efficiency, mark this as removed so that
-        // processInterestTimeout doesn't look for it.
-        (table_.get(i)).setIsRemoved();
-        table_.remove(i);
-      }
+    Entry entry = idToEntry_.get(pendingInterestId);
+    if (entry != null) {
+      // For efficiency, mark this as removed so that
+      // processInterestTimeout doesn't look for it.
+      removeEntry(entry);
+      return;
     }
 
-    if (count == 0)
-      logger_.log
-        (Level.WARNING, "removePendingInterest: Didn't find pendingInterestId {0}",
-         pendingInterestId);
-
-    if (count == 0) {
-      // The pendingInterestId was not found. Perhaps this has been called before
-      //   the callback in expressInterest can add to the PIT. Add this
-      //   removal request which will be checked before adding to the PIT.
-      if (removeRequests_.indexOf(pendingInterestId) < 0)
-        // Not already requested, so add the request.
-        removeRequests_.add(pendingInterestId);
-    }
+    logger_.log
+      (Level.WARNING, "removePendingInterest: Didn't find pendingInterestId {0}",
+       pendingInterestId);
+
+    // The pendingInterestId was not found. Perhaps this has been called before
+    //   the callback in expressInterest can add to the PIT. Add this
+    //   removal request which will be checked after adding to the PIT.
+    removeRequests_.add(pendingInterestId);
+    // Check again in case add was called at the same time. Only remove the
+    // entry if add didn't already take the removal request.
+    entry = idToEntry_.get(pendingInterestId);
+    if (entry != null && removeRequests_.remove(pendingInterestId))
+      removeEntry(entry);
   }
 
   /**
@@ -264,7 +481,7 @@ public class PendingInterestTable {
    * @param pendingInterest The Entry from the pending interest table.
    * @return True if the entry was removed, false if not.
    */
-  public synchronized final boolean
+  public final boolean
   removeEntry(Entry pendingInterest)
   {
     if (pendingInterest.getIsRemoved())
@@ -273,16 +490,131 @@ public class PendingInterestTable {
       // Do nothing.
       return false;
 
-    if (table_.remove(pendingInterest)) {
+    if (pendingInterest.shard_ == null)
+      // Not added to the table.
+      return false;
+
+    synchronized (pendingInterest.shard_) {
+      if (pendingInterest.getIsRemoved() || pendingInterest.node_ == null)
+        return false;
+
+      removeFromNode
+        (pendingInterest, pendingInterest.node_.entries_.indexOf(pendingInterest));
       pendingInterest.setIsRemoved();
       return true;
     }
-    else
-      return false;
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
-  private final ArrayList<Long> removeRequests_ = new ArrayList<Long>();
+  /**
+   * Get the number of entries in the pending interest table.
+   * @return The number of entries.
+   */
+  public final int
+  size() { return idToEntry_.size(); }
+
+  /**
+   * Get the number of shards given to the constructor.
+   * @return The number of shards.
+   */
+  public final int
+  getShardCount() { return shards_.length; }
+
+  /**
+   * Get the shard for the Interest or Data name.
+   * @param name The name.
+   * @return The Shard.
+   */
+  private Shard
+  getShard(Name name)
+  {
+    if (shards_.length == 1)
+      return shards_[0];
+    if (name.size() == 0)
+      return emptyNameShard_;
+
+    return shards_[getShardIndex
+      (name.get(0).getValue().hashCode(), shards_.length)];
+  }
+
+  /**
+   * Find the node in the shard for the given name.
+   * @param shard The Shard for the name.
+   * @param name The Interest name.
+   * @return The NameNode, or null if there is no node for the name.
+   */
+  private static NameNode
+  findNode(Shard shard, Name name)
+  {
+    NameNode node = shard.root_;
+    for (int i = 0; i < name.size() && node != null; ++i)
+      node = node.children_.get(name.get(i).getValue());
+
+    return node;
+  }
+
+  /**
+   * Check each entry in the node for matchesData, and remove and add the
+   * matching entries to the entries list.
+   * @param node The NameNode with the entries to check, whose shard is locked
+   * by the caller.
+   * @param data The incoming Data packet.
+   * @param entries Add matching PendingInterestTable.Entry.
+   */
+  private void
+  extractMatchingEntries(NameNode node, Data data, ArrayList<Entry> entries)
+    throws EncodingException
+  {
+    // Go backwards through the list so we can remove entries.
+    for (int i = node.entries_.size() - 1; i >= 0; --i) {
+      Entry pendingInterest = node.entries_.get(i);
+
+      if (pendingInterest.getInterest().matchesData(data)) {
+        entries.add(pendingInterest);
+        // We let the callback from callLater call _processInterestTimeout, but
+        // for efficiency, mark this as removed so that it returns right away.
+        removeFromNode(pendingInterest, i);
+        pendingInterest.setIsRemoved();
+      }
+    }
+  }
+
+  /**
+   * Remove the entry from its node and from the ID index, then remove the node
+   * and any ancestor which has become empty. Also cancel the entry's timeout.
+   * The caller must lock the entry's shard.
+   * @param entry The entry to remove, whose node_ is not null.
+   * @param index The index of the entry in entry.node_.entries_.
+   */
+  private void
+  removeFromNode(Entry entry, int index)
+  {
+    NameNode node = entry.node_;
+    node.entries_.remove(index);
+    entry.node_ = null;
+    --entry.shard_.nEntries_;
+    idToEntry_.remove(entry.getPendingInterestId(), entry);
+
+    Name name = entry.getInterest().getName();
+    if (name.size() > 0 && name.get(-1).isImplicitSha256Digest())
+      --node.parent_.nImplicitDigestChildEntries_;
+
+    while (node.parent_ != null && node.isEmpty()) {
+      node.parent_.children_.remove(node.key_);
+      node = node.parent_;
+    }
+
+    if (entry.timeout_ != null) {
+      entry.timeout_.cancel();
+      entry.timeout_ = null;
+    }
+  }
+
+  private final Shard[] shards_;
+  private final Shard emptyNameShard_;
+  private final ConcurrentHashMap<Long, Entry> idToEntry_ =
+    new ConcurrentHashMap<Long, Entry>();
+  private final Set<Long> removeRequests_ = Collections.newSetFromMap
+    (new ConcurrentHashMap<Long, Boolean>());
   private static final Logger logger_ = Logger.getLogger
     (PendingInterestTable.class.getName());
   // This is to force an import of net.named_data.jndn.util.
@@ -505,15 +505,11 @@ public class KeyChain {
 
     data.setSignature(signatureInfo);
 
-    // Encode once to get the signed portion.
-    SignedBlob encoding = data.wireEncode(wireFormat);
-
+    // Encode the signed portion once, and add the signature to it.
     Blob signatureBytes = sign
-      (encoding.signedBuf(), keyName[0], params.getDigestAlgorithm());
-    data.getSignature().setSignature(signatureBytes);
-
-    // Encode again to include the signature.
-    data.wireEncode(wireFormat);
+      (data.wireEncodeSignedPortion(wireFormat), keyName[0],
+       params.getDigestAlgorithm());
+    data.wireEncodeWithSignatureValue(signatureBytes, wireFormat);
   }
 
   /**
@@ -1666,6 +1662,9 @@ public class KeyChain {
       ValidationRequest nextStep = policyManager_.checkVerificationPolicy
         (data, stepCount, onVerified, onValidationFailed);
       if (nextStep != null) {
+        // Verification continues after this returns, so don't let the Face
+        // reuse a received Data.
+        data.retain();
         VerifyCallbacks callbacks = new VerifyCallbacks
           (nextStep, nextStep.retry_, onValidationFailed, data);
         try {
@@ -1774,6 +1773,9 @@ public class KeyChain {
       ValidationRequest nextStep = policyManager_.checkVerificationPolicy
         (interest, stepCount, onVerified, onValidationFailed);
       if (nextStep != null) {
+        // Verification continues after this returns, so don't let the Face
+        // reuse a received Interest.
+        interest.retain();
         VerifyCallbacksForVerifyInterest callbacks = new VerifyCallbacksForVerifyInterest
           (nextStep, nextStep.retry_, onValidationFailed, interest);
         try {
@@ -1885,11 +1887,11 @@ public class KeyChain {
   public static void
   signWithHmacWithSha256(Data data, Blob key, WireFormat wireFormat)
   {
-    // Encode once to get the signed portion.
-    SignedBlob encoding = data.wireEncode(wireFormat);
+    // Encode the signed portion once, and add the signature to it.
     byte[] signatureBytes = Common.computeHmacWithSha256
-      (key.getImmutableArray(), encoding.signedBuf());
-    data.getSignature().setSignature(new Blob(signatureBytes, false));
+      (key.getImmutableArray(), data.wireEncodeSignedPortion(wireFormat));
+    data.wireEncodeWithSignatureValue
+      (new Blob(signatureBytes, false), wireFormat);
   }
 
   /**
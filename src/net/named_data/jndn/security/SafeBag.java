@@ -38,7 +38,6 @@ import net.named_data.jndn.security.tpm.TpmBackEndMemory;
 import net.named_data.jndn.security.v2.CertificateV2;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
-import net.named_data.jndn.util.SignedBlob;
 
 /**
  * A SafeBag represents a container for sensitive related information such as a
@@ -227,13 +226,11 @@ public class SafeBag {
     ValidityPeriod.getFromSignature(signatureInfo).setPeriod
       (now, now + 20 * 365 * 24 * 3600 * 1000.0);
 
-    // Encode once to get the signed portion.
-    SignedBlob encoding = certificate.wireEncode(wireFormat);
-    Blob signatureBytes = tpm.sign(encoding.signedBuf(), keyName, digestAlgorithm);
-    signatureInfo.setSignature(signatureBytes);
-
-    // Encode again to include the signature.
-    certificate.wireEncode(wireFormat);
+    // Encode the signed portion once, and add the signature to it.
+    Blob signatureBytes = tpm.sign
+      (certificate.wireEncodeSignedPortion(wireFormat), keyName,
+       digestAlgorithm);
+    certificate.wireEncodeWithSignatureValue(signatureBytes, wireFormat);
 
     return certificate;
   }
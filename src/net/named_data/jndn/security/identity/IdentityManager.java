@@ -937,16 +937,12 @@ public class IdentityManager {
       (certificateName, digestAlgorithm);
 
     data.setSignature(signature);
-    // Encode once to get the signed portion.
-    SignedBlob encoding = data.wireEncode(wireFormat);
-
-    data.getSignature().setSignature
-      (privateKeyStorage_.sign(encoding.signedBuf(),
+    // Encode the signed portion once, and add the signature to it.
+    data.wireEncodeWithSignatureValue
+      (privateKeyStorage_.sign(data.wireEncodeSignedPortion(wireFormat),
        IdentityCertificate.certificateNameToPublicKeyName(certificateName),
-       digestAlgorithm[0]));
-
-    // Encode again to include the signature.
-    data.wireEncode(wireFormat);
+       digestAlgorithm[0]),
+       wireFormat);
   }
 
   /**
@@ -994,15 +990,11 @@ public class IdentityManager {
   {
     data.setSignature(new DigestSha256Signature());
 
-    // Encode once to get the signed portion.
-    SignedBlob encoding = data.wireEncode(wireFormat);
-
-    // Digest and set the signature.
-    byte[] signedPortionDigest = Common.digestSha256(encoding.signedBuf());
-    data.getSignature().setSignature(new Blob(signedPortionDigest, false));
-
-    // Encode again to include the signature.
-    data.wireEncode(wireFormat);
+    // Encode the signed portion once, digest it and add the signature.
+    byte[] signedPortionDigest = Common.digestSha256
+      (data.wireEncodeSignedPortion(wireFormat));
+    data.wireEncodeWithSignatureValue
+      (new Blob(signedPortionDigest, false), wireFormat);
   }
 
   /**
@@ -26,13 +26,19 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.nio.channels.ShutdownChannelGroupException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.named_data.jndn.encoding.ChunkedElementReader;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
@@ -78,8 +84,12 @@ public class AsyncTcpTransport extends Transport
         // Need to catch and log exceptions at this async entry point.
         try {
           if (bytesRead > 0) {
-            inputBuffer_.flip();
-            elementReader_.onReceivedData(inputBuffer_);
+            if (chunkedElementReader_ != null)
+              chunkedElementReader_.onReceivedData();
+            else {
+              inputBuffer_.flip();
+              elementReader_.onReceivedData(inputBuffer_);
+            }
           }
 
           // Repeatedly do async read.
@@ -90,6 +100,9 @@ public class AsyncTcpTransport extends Transport
       }
 
       public void failed(Throwable ex, Void attachment) {
+        if (ex instanceof AsynchronousCloseException)
+          // close() was called, so don't reconnect.
+          return;
         logger_.log(Level.SEVERE, "Failed to read from transport", ex);
         if(connectionInfo_.shouldAttemptReconnection() && acquireReconnectLock()) {
           scheduleReconnect();
@@ -97,24 +110,25 @@ public class AsyncTcpTransport extends Transport
       }
     };
 
-    // This is the CompletionHandler for send().
-    writeCompletionHandler_ = new CompletionHandler<Integer, ByteBuffer>() {
-      public void completed(Integer bytesRead, ByteBuffer data) {
+    // This is the CompletionHandler for the gathering write in writeQueued().
+    writeCompletionHandler_ = new CompletionHandler<Long, Void>() {
+      public void completed(Long bytesWritten, Void attachment) {
         // Need to catch and log exceptions at this async entry point.
         try {
-          if (data.hasRemaining()) {
-            channel_.write(data, data, writeCompletionHandler_);
-          } else {
-            writeLock_.release();
-          }
+          onWriteCompleted(bytesWritten);
         } catch (Throwable ex) {
           logger_.log(Level.SEVERE, null, ex);
         }
       }
 
-      public void failed(Throwable ex, ByteBuffer data) {
+      public void failed(Throwable ex, Void attachment) {
+        // Drop the queued packets since the connection is broken.
+        dropQueued();
+        if (ex instanceof AsynchronousCloseException)
+          // close() was called, so don't reconnect.
+          return;
         logger_.log(Level.SEVERE, "Failed to write to transport", ex);
-        writeLock_.release();
+
         if(connectionInfo_.shouldAttemptReconnection() && acquireReconnectLock()) {
           scheduleReconnect();
         }
@@ -122,6 +136,22 @@ public class AsyncTcpTransport extends Transport
     };
   }
 
+  /**
+   * An OnHighWatermark is called by send when the number of queued bytes
+   * reaches the high watermark.
+   */
+  public interface OnHighWatermark {
+    void onHighWatermark(AsyncTcpTransport transport, long queuedBytes);
+  }
+
+  /**
+   * An OnLowWatermark is called when the number of queued bytes drops to the
+   * low watermark after reaching the high watermark.
+   */
+  public interface OnLowWatermark {
+    void onLowWatermark(AsyncTcpTransport transport, long queuedBytes);
+  }
+
   /**
    * AsyncTcpTransport.ConnectionInfo extends Transport.ConnectionInfo to hold
    * the host and port info for the TCP connection. The reconnection logic is
@@ -225,6 +255,38 @@ public class AsyncTcpTransport extends Transport
     return true;
   }
 
+  /**
+   * Override to return the value given to setZeroCopyReceive.
+   * @return True if the received elements remain valid after the call to
+   * onReceivedElement.
+   */
+  public boolean
+  isZeroCopyReceive() {
+    return zeroCopyReceive_;
+  }
+
+  /**
+   * Override to return true since send queues the buffer without copying it.
+   * @return True.
+   */
+  public boolean
+  isSendRetainingBuffer() {
+    return true;
+  }
+
+  /**
+   * Set whether to read into chunks which are not reused (see
+   * ChunkedElementReader) so that Face can decode received Interest and Data
+   * packets without copying. The decoded packets refer to the chunk, so an
+   * application which keeps many received packets also keeps their chunks in
+   * memory. This takes effect on the next call to connect.
+   * @param zeroCopyReceive True to enable zero-copy receive.
+   */
+  public final void
+  setZeroCopyReceive(boolean zeroCopyReceive) {
+    zeroCopyReceive_ = zeroCopyReceive;
+  }
+
   /**
    * Connect according to the info in ConnectionInfo, and use elementListener.
    * @param connectionInfo An AsyncTcpTransport.ConnectionInfo.
@@ -277,7 +339,7 @@ public class AsyncTcpTransport extends Transport
               }
             });
 
-    elementReader_ = new ElementReader(elementListener);
+    createElementReader(elementListener);
   }
 
   /**
@@ -315,7 +377,24 @@ public class AsyncTcpTransport extends Transport
               }
             });
 
-    elementReader_ = new ElementReader(elementListener_);
+    createElementReader(elementListener_);
+  }
+
+  /**
+   * Create elementReader_ or chunkedElementReader_, depending on
+   * zeroCopyReceive_.
+   * @param elementListener The ElementListener for the reader.
+   */
+  private void
+  createElementReader(ElementListener elementListener) {
+    if (zeroCopyReceive_) {
+      chunkedElementReader_ = new ChunkedElementReader(elementListener);
+      elementReader_ = null;
+    }
+    else {
+      elementReader_ = new ElementReader(elementListener);
+      chunkedElementReader_ = null;
+    }
   }
 
   /**
@@ -355,6 +434,12 @@ public class AsyncTcpTransport extends Transport
 
   private void
   asyncRead() {
+    if (chunkedElementReader_ != null) {
+      channel_.read
+        (chunkedElementReader_.getReadBuffer(), null, readCompletionHandler_);
+      return;
+    }
+
     inputBuffer_.limit(inputBuffer_.capacity());
     inputBuffer_.position(0);
     // We only call asyncRead after a previous call, so no need to dispatch.
@@ -362,7 +447,48 @@ public class AsyncTcpTransport extends Transport
   }
 
   /**
-   * Send data to the host.
+   * Set the high and low watermarks for the number of bytes queued by send
+   * but not yet written. When the queued bytes reach highWatermark, send calls
+   * onHighWatermark. Then when the queued bytes drop to lowWatermark, this
+   * calls onLowWatermark. A producer can use these to stop and resume sending.
+   * send does not block or refuse data when above the high watermark.
+   * @param lowWatermark The low watermark in bytes.
+   * @param highWatermark The high watermark in bytes. If this is 0 (the
+   * default), don't call the callbacks.
+   * @param onHighWatermark This calls
+   * onHighWatermark.onHighWatermark(transport, queuedBytes). If null, this
+   * does not use it.
+   * @param onLowWatermark This calls
+   * onLowWatermark.onLowWatermark(transport, queuedBytes). If null, this does
+   * not use it.
+   */
+  public final void
+  setWriteWatermarks
+    (long lowWatermark, long highWatermark, OnHighWatermark onHighWatermark,
+     OnLowWatermark onLowWatermark) {
+    if (lowWatermark < 0 || highWatermark < 0 || lowWatermark > highWatermark)
+      throw new IllegalArgumentException
+        ("setWriteWatermarks: The watermarks must satisfy 0 <= low <= high");
+
+    lowWatermark_ = lowWatermark;
+    highWatermark_ = highWatermark;
+    onHighWatermark_ = onHighWatermark;
+    onLowWatermark_ = onLowWatermark;
+  }
+
+  /**
+   * Get the number of bytes queued by send which are not yet written.
+   * @return The number of queued bytes.
+   */
+  public final long
+  getQueuedBytes() {
+    return queuedBytes_.get();
+  }
+
+  /**
+   * Send data to the host. This adds the data to the outbound queue and
+   * returns without waiting for other writes to finish. Queued packets are
+   * written together with gathering writes.
    * @param data The buffer of data to send.  This reads from position() to
    * limit(), but does not change the position.
    * @throws IOException For I/O error.
@@ -382,30 +508,128 @@ public class AsyncTcpTransport extends Transport
     // the buffer during send, so that we can avoid a costly copy operation.
     data = data.duplicate();
 
-    // The completion handler will call write again if needed, or will notify
-    // to release the wait when finished writing.
-    try {
-      sendDataSequentially(data);
-    } catch (InterruptedException e) {
-      throw new IOException(e);
+    long queuedBytes = queuedBytes_.addAndGet(data.remaining());
+    outQueue_.add(data);
+    if (highWatermark_ > 0 && queuedBytes >= highWatermark_ &&
+        isAboveHighWatermark_.compareAndSet(false, true) &&
+        onHighWatermark_ != null) {
+      try {
+        onHighWatermark_.onHighWatermark(this, queuedBytes);
+      } catch (Throwable ex) {
+        logger_.log(Level.SEVERE, "Error in onHighWatermark", ex);
+      }
     }
+
+    writeQueued();
   }
 
   /**
-   * Send data buffers one-by-one; this is necessary because async IO writes
-   * cannot overlap without a WritePendingException (see
+   * If a write is not already in progress, start a gathering write of the
+   * queued buffers. Async IO writes cannot overlap without a
+   * WritePendingException (see
    * https://docs.oracle.com/javase/7/docs/api/java/nio/channels/AsynchronousSocketChannel.html#write(java.nio.ByteBuffer))
-   * @param data the buffer to send
-   * @throws InterruptedException if an external agent interrupts the thread; usually this means that someone is trying
-   * to close the
-   * @throws IOException if the channel write fails
+   * so isWriting_ makes sure that only one thread writes at a time.
+   */
+  private void
+  writeQueued() throws IOException {
+    while (isWriting_.compareAndSet(false, true)) {
+      writeEnd_ = 0;
+      ByteBuffer data;
+      while (writeEnd_ < writeBuffers_.length &&
+             (data = outQueue_.poll()) != null)
+        writeBuffers_[writeEnd_++] = data;
+
+      if (writeEnd_ > 0) {
+        writeOffset_ = 0;
+        // The completion handler calls writeQueued again when finished.
+        startWrite();
+        return;
+      }
+
+      isWriting_.set(false);
+      // Loop to check again in case another thread queued a buffer after poll
+      // returned null but before we cleared isWriting_.
+      if (outQueue_.isEmpty())
+        return;
+    }
+  }
+
+  /**
+   * This is called by the completion handler for the gathering write. Continue
+   * writing the current buffers if needed, or else write more queued buffers.
+   * @param bytesWritten The number of bytes written.
+   * @throws IOException If the channel throws an exception when starting the
+   * next write.
    */
-  private void sendDataSequentially(ByteBuffer data) throws InterruptedException, IOException {
-    if (!writeLock_.tryAcquire(DEFAULT_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
-      throw new IOException("Failed to acquire lock on channel to write buffer");
+  private void
+  onWriteCompleted(long bytesWritten) throws IOException {
+    checkLowWatermark(queuedBytes_.addAndGet(-bytesWritten));
+
+    while (writeOffset_ < writeEnd_ && !writeBuffers_[writeOffset_].hasRemaining())
+      writeBuffers_[writeOffset_++] = null;
+
+    if (writeOffset_ < writeEnd_) {
+      // A partial write, so write the rest.
+      startWrite();
+      return;
     }
 
-    channel_.write(data, data, writeCompletionHandler_);
+    isWriting_.set(false);
+    writeQueued();
+  }
+
+  /**
+   * Start a gathering write of writeBuffers_ from writeOffset_ to writeEnd_.
+   * The caller must have set isWriting_. If the channel throws an exception
+   * instead of calling the completion handler (for example if the channel
+   * group is shut down), drop the queued packets and clear isWriting_ so that
+   * later calls to send do not only queue.
+   * @throws IOException If the channel throws an exception.
+   */
+  private void
+  startWrite() throws IOException {
+    try {
+      channel_.write
+        (writeBuffers_, writeOffset_, writeEnd_ - writeOffset_, 0,
+         TimeUnit.MILLISECONDS, null, writeCompletionHandler_);
+    } catch (RuntimeException ex) {
+      dropQueued();
+      throw new IOException("Cannot write to the socket: " + ex, ex);
+    }
+  }
+
+  /**
+   * Drop the packets in writeBuffers_ and the outbound queue, for example
+   * because the connection is broken, and clear isWriting_. The caller must
+   * have set isWriting_.
+   */
+  private void
+  dropQueued() {
+    for (int i = writeOffset_; i < writeEnd_; ++i)
+      writeBuffers_[i] = null;
+    writeOffset_ = writeEnd_ = 0;
+    outQueue_.clear();
+    queuedBytes_.set(0);
+    checkLowWatermark(0);
+    isWriting_.set(false);
+  }
+
+  /**
+   * If the high watermark was reached and the queuedBytes is now at or below
+   * the low watermark, call onLowWatermark_.
+   * @param queuedBytes The number of queued bytes.
+   */
+  private void
+  checkLowWatermark(long queuedBytes) {
+    if (queuedBytes <= lowWatermark_ &&
+        isAboveHighWatermark_.compareAndSet(true, false) &&
+        onLowWatermark_ != null) {
+      try {
+        onLowWatermark_.onLowWatermark(this, queuedBytes);
+      } catch (Throwable ex) {
+        logger_.log(Level.SEVERE, "Error in onLowWatermark", ex);
+      }
+    }
   }
 
   /**
@@ -415,6 +639,24 @@ public class AsyncTcpTransport extends Transport
   processEvents() throws IOException, EncodingException {
   }
 
+  /**
+   * Close the connection. The pending read and write fail, the queued packets
+   * are dropped, and this does not attempt reconnection.
+   * @throws IOException For I/O error.
+   */
+  public void
+  close() throws IOException {
+    if (channel_ == null)
+      return;
+
+    try {
+      channel_.close();
+    } catch (ShutdownChannelGroupException ex) {
+      // The thread pool is shut down so the channel can't call the completion
+      // handler of the pending read, but the channel is closed.
+    }
+  }
+
   /**
    * Check if the transport is connected.
    * @return True if connected.
@@ -426,17 +668,32 @@ public class AsyncTcpTransport extends Transport
 
   private AsynchronousSocketChannel channel_;
   private final CompletionHandler<Integer, Void> readCompletionHandler_;
-  private final CompletionHandler<Integer, ByteBuffer> writeCompletionHandler_;
+  private final CompletionHandler<Long, Void> writeCompletionHandler_;
   private final ScheduledExecutorService threadPool_;
   private ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
   private ElementReader elementReader_;
+  private ChunkedElementReader chunkedElementReader_;
+  private boolean zeroCopyReceive_ = false;
   private ConnectionInfo connectionInfo_;
   private boolean isLocal_;
   private final Object isLocalLock_ = new Object();
-  private final Semaphore writeLock_ = new Semaphore(1);
+  private final ConcurrentLinkedQueue<ByteBuffer> outQueue_ =
+    new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicBoolean isWriting_ = new AtomicBoolean(false);
+  private final AtomicLong queuedBytes_ = new AtomicLong(0);
+  // Only the thread which set isWriting_ uses these.
+  private final ByteBuffer[] writeBuffers_ = new ByteBuffer[MAX_GATHER_BUFFERS];
+  private int writeOffset_ = 0;
+  private int writeEnd_ = 0;
+  private final AtomicBoolean isAboveHighWatermark_ = new AtomicBoolean(false);
+  private volatile long lowWatermark_ = 0;
+  private volatile long highWatermark_ = 0;
+  private volatile OnHighWatermark onHighWatermark_ = null;
+  private volatile OnLowWatermark onLowWatermark_ = null;
   private static final Logger logger_ = Logger.getLogger
       (AsyncTcpTransport.class.getName());
   public static final int DEFAULT_LOCK_TIMEOUT_MS = 10000;
+  public static final int MAX_GATHER_BUFFERS = 64;
   public static final int DEFAULT_RECONNECT_TRY_DELAY_MS = 5000;
   private AsynchronousChannelGroup channelGroup_;
   private ElementListener elementListener_;
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.TlvStructureDecoder;
+import net.named_data.jndn.util.Common;
+
+/**
+ * BatchUdpTransport extends UdpTransport to treat each UDP datagram as exactly
+ * one TLV element, as NFD does for UDP faces. Instead of passing the datagrams
+ * through the stream-oriented ElementReader, processEvents receives a batch of
+ * datagrams into a reusable pool of direct buffers and then calls
+ * onReceivedElement for each one. A datagram which is not exactly one complete
+ * TLV element is dropped. sendBatch sends a list of encodings in one call.
+ * send and sendBatch can be called from any thread. Since each received
+ * element is in a reused buffer, isZeroCopyReceive() is false.
+ */
+public class BatchUdpTransport extends UdpTransport {
+  /**
+   * Create a BatchUdpTransport which receives up to batchSize datagrams for
+   * each batch in processEvents.
+   * @param batchSize The number of receive buffers in the pool.
+   */
+  public BatchUdpTransport(int batchSize)
+  {
+    if (batchSize < 1)
+      batchSize = 1;
+
+    receiveBuffers_ = new ByteBuffer[batchSize];
+    for (int i = 0; i < batchSize; ++i)
+      receiveBuffers_[i] = ByteBuffer.allocateDirect(Common.MAX_NDN_PACKET_SIZE);
+  }
+
+  /**
+   * Create a BatchUdpTransport with the default batch size.
+   */
+  public BatchUdpTransport()
+  {
+    this(DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Connect according to the info in ConnectionInfo, and use elementListener.
+   * @param connectionInfo A UdpTransport.ConnectionInfo.
+   * @param elementListener The ElementListener must remain valid during the
+   * life of this object.
+   * @param onConnected If not null, this calls onConnected.run() when the
+   * connection is established.
+   * @throws IOException For I/O error.
+   */
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     Runnable onConnected)
+    throws IOException
+  {
+    close();
+
+    channel_ = DatagramChannel.open();
+    channel_.connect(new InetSocketAddress
+      (((ConnectionInfo)connectionInfo).getHost(),
+       ((ConnectionInfo)connectionInfo).getPort()));
+    channel_.configureBlocking(false);
+
+    elementListener_ = elementListener;
+
+    if (onConnected != null)
+      onConnected.run();
+  }
+
+  /**
+   * Send the data as one datagram.
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    if (channel_ == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    sendDatagram(data);
+  }
+
+  /**
+   * Send each encoding in the list as one datagram, in order.
+   * @param encodings The list of buffers to send. This reads each from
+   * position() to limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public final void
+  sendBatch(List<ByteBuffer> encodings) throws IOException
+  {
+    if (channel_ == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    for (int i = 0; i < encodings.size(); ++i)
+      sendDatagram(encodings.get(i));
+  }
+
+  /**
+   * Receive the available datagrams in batches. For each datagram which is
+   * one complete TLV element, call elementListener.onReceivedElement. Drop
+   * other datagrams and add them to getDroppedCount().
+   * This is non-blocking and will return immediately if there is no data to
+   * receive. You should normally not call this directly since it is called by
+   * Face.processEvents.
+   * @throws IOException For I/O error.
+   * @throws EncodingException This does not throw an EncodingException since
+   * an invalid datagram is dropped, but the exception is declared by the base
+   * class.
+   */
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    if (!getIsConnected())
+      return;
+
+    while (true) {
+      // Receive a batch of datagrams.
+      int nReceived = 0;
+      while (nReceived < receiveBuffers_.length) {
+        ByteBuffer buffer = receiveBuffers_[nReceived];
+        buffer.clear();
+        if (channel_.read(buffer) <= 0)
+          break;
+
+        buffer.flip();
+        ++nReceived;
+      }
+
+      int nDropped = 0;
+      for (int i = 0; i < nReceived; ++i) {
+        ByteBuffer element = receiveBuffers_[i];
+        if (!isOneElement(element)) {
+          ++nDropped;
+          continue;
+        }
+
+        elementListener_.onReceivedElement(element);
+      }
+
+      if (nDropped > 0) {
+        // Log once per batch since there can be many drops under high load.
+        droppedCount_.addAndGet(nDropped);
+        logger_.log(Level.FINE,
+          "BatchUdpTransport: Dropped {0} datagrams which are not one TLV element",
+          nDropped);
+      }
+
+      if (nReceived < receiveBuffers_.length)
+        // No more datagrams are available.
+        return;
+    }
+  }
+
+  /**
+   * Get the number of received datagrams which processEvents dropped because
+   * they are not one complete TLV element, including a datagram which is
+   * larger than the receive buffer.
+   * @return The number of dropped datagrams.
+   */
+  public final long
+  getDroppedCount() { return droppedCount_.get(); }
+
+  public static final int DEFAULT_BATCH_SIZE = 32;
+
+  /**
+   * Send the data as one datagram without changing the position of data.
+   * This doesn't copy a heap buffer to a shared direct buffer since send can be
+   * called from multiple threads, and DatagramChannel already copies a heap
+   * buffer to its own per-thread direct buffer.
+   * @param data The buffer of data to send.
+   */
+  private void
+  sendDatagram(ByteBuffer data) throws IOException
+  {
+    ByteBuffer datagram = data.duplicate();
+
+    // A datagram is sent all at once, or not at all if the socket buffer is
+    // full.
+    while (datagram.hasRemaining())
+      channel_.write(datagram);
+  }
+
+  /**
+   * Check if the buffer from position() to limit() is exactly one complete
+   * TLV element.
+   * @param buffer The received datagram.
+   * @return True if the datagram is one element.
+   */
+  private static boolean
+  isOneElement(ByteBuffer buffer)
+  {
+    if (!buffer.hasRemaining())
+      return false;
+
+    TlvStructureDecoder decoder = new TlvStructureDecoder();
+    try {
+      return decoder.findElementEnd(buffer) &&
+             decoder.getOffset() == buffer.remaining();
+    } catch (EncodingException ex) {
+      return false;
+    }
+  }
+
+  private final ByteBuffer[] receiveBuffers_;
+  private ElementListener elementListener_;
+  private final AtomicLong droppedCount_ = new AtomicLong();
+  private static final Logger logger_ = Logger.getLogger
+    (BatchUdpTransport.class.getName());
+}
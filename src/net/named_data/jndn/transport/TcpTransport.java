@@ -19,11 +19,13 @@
 
 package net.named_data.jndn.transport;
 
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.net.InetSocketAddress;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import net.named_data.jndn.encoding.ChunkedElementReader;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
@@ -112,6 +114,35 @@ public class TcpTransport extends Transport {
   public boolean
   isAsync() { return false; }
 
+  /**
+   * Override to return the value given to setZeroCopyReceive.
+   * @return True if the received elements remain valid after the call to
+   * onReceivedElement.
+   */
+  public boolean
+  isZeroCopyReceive() { return zeroCopyReceive_; }
+
+  /**
+   * Set whether to read into chunks which are not reused (see
+   * ChunkedElementReader) so that Face can decode received Interest and Data
+   * packets without copying. The decoded packets refer to the chunk, so an
+   * application which keeps many received packets also keeps their chunks in
+   * memory. This takes effect on the next call to connect.
+   * @param zeroCopyReceive True to enable zero-copy receive.
+   */
+  public final void
+  setZeroCopyReceive(boolean zeroCopyReceive)
+  {
+    zeroCopyReceive_ = zeroCopyReceive;
+  }
+
+  /**
+   * Override to return the non-blocking channel opened by connect.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return channel_; }
+
   /**
    * Connect according to the info in ConnectionInfo, and use elementListener.
    * @param connectionInfo A TcpTransport.ConnectionInfo.
@@ -134,7 +165,14 @@ public class TcpTransport extends Transport {
        ((ConnectionInfo)connectionInfo).getPort()));
     channel_.configureBlocking(false);
 
-    elementReader_ = new ElementReader(elementListener);
+    if (zeroCopyReceive_) {
+      chunkedElementReader_ = new ChunkedElementReader(elementListener);
+      elementReader_ = null;
+    }
+    else {
+      elementReader_ = new ElementReader(elementListener);
+      chunkedElementReader_ = null;
+    }
 
     if (onConnected != null)
       onConnected.run();
@@ -169,7 +207,10 @@ public class TcpTransport extends Transport {
    * elementListener.onReceivedElement.
    * This is non-blocking and will return immediately if there is no data to
    * receive. You should normally not call this directly since it is called by
-   * Face.processEvents.
+   * Face.processEvents. If the peer closed the connection or the connection is
+   * broken, this closes the channel so that getIsConnected() returns false and
+   * an event loop which selects on the channel does not keep finding it
+   * readable at the end of the stream.
    * If you call this from an main event loop, you may want to catch and
    * log/disregard all exceptions.
    * @throws IOException For I/O error.
@@ -181,15 +222,39 @@ public class TcpTransport extends Transport {
     if (!getIsConnected())
       return;
 
-    while (true) {
-      inputBuffer_.limit(inputBuffer_.capacity());
-      inputBuffer_.position(0);
-      int bytesRead = channel_.read(inputBuffer_);
-      if (bytesRead <= 0)
-        return;
+    try {
+      if (chunkedElementReader_ != null) {
+        while (true) {
+          int bytesRead = channel_.read(chunkedElementReader_.getReadBuffer());
+          if (bytesRead <= 0) {
+            if (bytesRead < 0)
+              // The peer closed the connection.
+              channel_.close();
+            return;
+          }
+
+          chunkedElementReader_.onReceivedData();
+        }
+      }
+
+      while (true) {
+        inputBuffer_.limit(inputBuffer_.capacity());
+        inputBuffer_.position(0);
+        int bytesRead = channel_.read(inputBuffer_);
+        if (bytesRead <= 0) {
+          if (bytesRead < 0)
+            // The peer closed the connection.
+            channel_.close();
+          return;
+        }
 
-      inputBuffer_.flip();
-      elementReader_.onReceivedData(inputBuffer_);
+        inputBuffer_.flip();
+        elementReader_.onReceivedData(inputBuffer_);
+      }
+    } catch (IOException ex) {
+      // The connection is broken, for example reset by the peer.
+      channel_.close();
+      throw ex;
     }
   }
 
@@ -243,6 +308,8 @@ public class TcpTransport extends Transport {
   ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
   // TODO: This belongs in the socket listener.
   private ElementReader elementReader_;
+  private ChunkedElementReader chunkedElementReader_;
+  private boolean zeroCopyReceive_ = false;
   private ConnectionInfo connectionInfo_;
   private boolean isLocal_;
 }
@@ -21,6 +21,7 @@ package net.named_data.jndn.transport;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.util.Common;
@@ -57,6 +58,42 @@ public abstract class Transport {
    */
   public abstract boolean isAsync();
 
+  /**
+   * Check if this transport reads into buffers which are not reused, so that
+   * the element given to ElementListener.onReceivedElement remains valid after
+   * the call and the listener can decode it without copying. This base class
+   * implementation returns false, but your derived class can override.
+   * @return True if the received elements remain valid, false if the listener
+   * must copy them.
+   */
+  public boolean
+  isZeroCopyReceive() { return false; }
+
+  /**
+   * Check if send keeps the given buffer after it returns, for example in a
+   * queue to write later, so that the caller must not change or reuse the
+   * bytes of the buffer after calling send. This base class implementation
+   * returns false, but your derived class can override.
+   * @return True if send keeps the buffer, false if send is finished with the
+   * buffer when it returns.
+   */
+  public boolean
+  isSendRetainingBuffer() { return false; }
+
+  /**
+   * Get the channel which an event loop can register with a Selector to wait
+   * until there is data to receive, in which case it calls processEvents.
+   * When processEvents reads the end of the stream, it should close the
+   * channel, since a channel at the end of the stream is always selected as
+   * readable. The event loop stops selecting on a closed channel.
+   * This base class implementation returns null, but your derived class can
+   * override.
+   * @return The non-blocking channel, or null if not connected or if this
+   * transport doesn't use a SelectableChannel.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return null; }
+
   /**
    * Connect according to the info in ConnectionInfo, and use elementListener.
    * @param connectionInfo An object of a subclass of ConnectionInfo.
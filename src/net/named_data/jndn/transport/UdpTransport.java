@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
@@ -99,6 +100,13 @@ public class UdpTransport extends Transport {
   public boolean
   isAsync() { return false; }
 
+  /**
+   * Override to return the non-blocking channel opened by connect.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return channel_; }
+
   /**
    * Connect according to the info in ConnectionInfo, and use elementListener.
    * @param connectionInfo A UdpTransport.ConnectionInfo.
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SocketChannel;
+import net.named_data.jndn.encoding.ChunkedElementReader;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Common;
+
+/**
+ * UnixTransport extends the Transport interface to implement communication
+ * over a Unix domain socket, which is faster than TCP to a forwarder on the
+ * local host. This needs the Unix domain socket support of Java 16 or later,
+ * which is accessed by reflection so that the library still builds for older
+ * Java versions. On an older Java runtime, connect throws an IOException.
+ */
+public class UnixTransport extends Transport {
+  /**
+   * A UnixTransport.ConnectionInfo extends Transport.ConnectionInfo to hold
+   * the socket file path for the Unix domain socket connection.
+   */
+  public static class ConnectionInfo extends Transport.ConnectionInfo {
+    /**
+     * Create a ConnectionInfo with the given socket file path.
+     * @param filePath The file path of the Unix domain socket, for example
+     * "/var/run/nfd.sock".
+     */
+    public
+    ConnectionInfo(String filePath)
+    {
+      filePath_ = filePath;
+    }
+
+    /**
+     * Get the file path given to the constructor.
+     * @return The file path.
+     */
+    public final String
+    getFilePath() { return filePath_; }
+
+    private final String filePath_;
+  }
+
+  /**
+   * Determine whether this transport connecting according to connectionInfo is
+   * to a node on the current machine. Unix domain sockets are always local.
+   * @param connectionInfo This is ignored.
+   * @return True because Unix domain sockets are always local.
+   */
+  public boolean isLocal(Transport.ConnectionInfo connectionInfo)
+  {
+    return true;
+  }
+
+  /**
+   * Override to return false since connect does not need to use the onConnected
+   * callback.
+   * @return False.
+   */
+  public boolean
+  isAsync() { return false; }
+
+  /**
+   * Override to return the value given to setZeroCopyReceive.
+   * @return True if the received elements remain valid after the call to
+   * onReceivedElement.
+   */
+  public boolean
+  isZeroCopyReceive() { return zeroCopyReceive_; }
+
+  /**
+   * Set whether to read into chunks which are not reused (see
+   * ChunkedElementReader) so that Face can decode received Interest and Data
+   * packets without copying. This takes effect on the next call to connect.
+   * @param zeroCopyReceive True to enable zero-copy receive.
+   */
+  public final void
+  setZeroCopyReceive(boolean zeroCopyReceive)
+  {
+    zeroCopyReceive_ = zeroCopyReceive;
+  }
+
+  /**
+   * Override to return the non-blocking channel opened by connect.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return channel_; }
+
+  /**
+   * Connect according to the info in ConnectionInfo, and use elementListener.
+   * @param connectionInfo A UnixTransport.ConnectionInfo.
+   * @param elementListener The ElementListener must remain valid during the
+   * life of this object.
+   * @param onConnected If not null, this calls onConnected.run() when the
+   * connection is established.
+   * @throws IOException For I/O error, or if the Java runtime does not
+   * support Unix domain sockets.
+   */
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     Runnable onConnected)
+    throws IOException
+  {
+    close();
+
+    channel_ = openChannel(((ConnectionInfo)connectionInfo).getFilePath());
+    channel_.configureBlocking(false);
+
+    if (zeroCopyReceive_) {
+      chunkedElementReader_ = new ChunkedElementReader(elementListener);
+      elementReader_ = null;
+    }
+    else {
+      elementReader_ = new ElementReader(elementListener);
+      chunkedElementReader_ = null;
+    }
+
+    if (onConnected != null)
+      onConnected.run();
+  }
+
+  /**
+   * Send data to the host
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    if (channel_ == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    // Save and restore the position.
+    int savePosition = data.position();
+    try {
+      while(data.hasRemaining())
+        channel_.write(data);
+    }
+    finally {
+      data.position(savePosition);
+    }
+  }
+
+  /**
+   * Process any data to receive.  For each element received, call
+   * elementListener.onReceivedElement.
+   * This is non-blocking and will return immediately if there is no data to
+   * receive. You should normally not call this directly since it is called by
+   * Face.processEvents. If the peer closed the connection or the connection is
+   * broken, this closes the channel so that getIsConnected() returns false and
+   * an event loop which selects on the channel does not keep finding it
+   * readable at the end of the stream.
+   * If you call this from an main event loop, you may want to catch and
+   * log/disregard all exceptions.
+   * @throws IOException For I/O error.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    if (!getIsConnected())
+      return;
+
+    try {
+      if (chunkedElementReader_ != null) {
+        while (true) {
+          int bytesRead = channel_.read(chunkedElementReader_.getReadBuffer());
+          if (bytesRead <= 0) {
+            if (bytesRead < 0)
+              // The peer closed the connection.
+              channel_.close();
+            return;
+          }
+
+          chunkedElementReader_.onReceivedData();
+        }
+      }
+
+      while (true) {
+        inputBuffer_.limit(inputBuffer_.capacity());
+        inputBuffer_.position(0);
+        int bytesRead = channel_.read(inputBuffer_);
+        if (bytesRead <= 0) {
+          if (bytesRead < 0)
+            // The peer closed the connection.
+            channel_.close();
+          return;
+        }
+
+        inputBuffer_.flip();
+        elementReader_.onReceivedData(inputBuffer_);
+      }
+    } catch (IOException ex) {
+      // The connection is broken, for example reset by the peer.
+      channel_.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Check if the transport is connected.
+   * @return True if connected.
+   */
+  public boolean
+  getIsConnected() throws IOException
+  {
+    if (channel_ == null)
+      return false;
+
+    return channel_.isConnected();
+  }
+
+  /**
+   * Close the connection.  If not connected, this does nothing.
+   * @throws IOException For I/O error.
+   */
+  public void
+  close() throws IOException
+  {
+    if (channel_ != null) {
+      if (channel_.isConnected())
+        channel_.close();
+      channel_ = null;
+    }
+  }
+
+  /**
+   * Check if the Java runtime supports Unix domain socket channels.
+   * @return True if Unix domain sockets are supported.
+   */
+  public static boolean
+  isSupported()
+  {
+    try {
+      Class.forName("java.net.UnixDomainSocketAddress");
+      StandardProtocolFamily.valueOf("UNIX");
+      return true;
+    } catch (ClassNotFoundException ex) {
+      return false;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Open a blocking SocketChannel connected to the Unix domain socket.
+   * @param filePath The file path of the Unix domain socket.
+   * @return The connected SocketChannel.
+   * @throws IOException For I/O error, or if the Java runtime does not
+   * support Unix domain sockets.
+   */
+  private static SocketChannel
+  openChannel(String filePath) throws IOException
+  {
+    SocketAddress address;
+    SocketChannel channel;
+    try {
+      Method of = Class.forName("java.net.UnixDomainSocketAddress").getMethod
+        ("of", String.class);
+      address = (SocketAddress)of.invoke(null, filePath);
+      Method open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      channel = (SocketChannel)open.invoke
+        (null, StandardProtocolFamily.valueOf("UNIX"));
+    } catch (InvocationTargetException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException)ex.getCause();
+      throw new IOException
+        ("UnixTransport: Error opening the Unix domain socket: " + ex.getCause());
+    } catch (Exception ex) {
+      throw new IOException
+        ("UnixTransport: This Java runtime does not support Unix domain sockets: " +
+         ex);
+    }
+
+    try {
+      channel.connect(address);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+
+    return channel;
+  }
+
+  SocketChannel channel_;
+  ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
+  private ElementReader elementReader_;
+  private ChunkedElementReader chunkedElementReader_;
+  private boolean zeroCopyReceive_ = false;
+}
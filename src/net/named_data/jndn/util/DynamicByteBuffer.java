@@ -36,6 +36,20 @@ public class DynamicByteBuffer {
     buffer_ = ByteBuffer.allocate(initialCapacity);
   }
 
+  /**
+   * Create a new DynamicByteBuffer which uses the given buffer (which may be a
+   * direct buffer) until more capacity is needed. The writable region is from 0
+   * to buffer.capacity(). If more capacity is needed, this allocates a new heap
+   * buffer as usual and the given buffer is no longer used.
+   * @param buffer The buffer to use, which is not copied.
+   */
+  public
+  DynamicByteBuffer(ByteBuffer buffer)
+  {
+    buffer_ = buffer;
+    buffer_.limit(buffer_.capacity());
+  }
+
   /**
    * Ensure that buffer().capacity() is greater than or equal to capacity.  If
    * it is, just set the limit to the capacity.
@@ -20,8 +20,18 @@
 package net.named_data.jndn.util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Data;
@@ -40,10 +50,37 @@ import net.named_data.jndn.security.SecurityException;
  * A MemoryContentCache holds a set of Data packets and answers an Interest to
  * return the correct Data packet. The cache is periodically cleaned up to
  * remove each stale Data packet based on its FreshnessPeriod (if it has one).
+ * The Data packets are indexed by name in the NDN canonical order, so that
+ * answering an Interest only checks the cached names which have the Interest
+ * name as a prefix. By default the cache size is not limited, but you can call
+ * setMaxSize to limit the total size of the Data packet encodings, in which
+ * case the EvictionPolicy selects which Data packets to remove. To keep the
+ * Data packet encodings outside of the Java heap, call setStorage.
+ * The cache is thread-safe, so that the application can call add from its own
+ * threads while the Face calls onInterest from transport threads. onInterest
+ * searches the name index without locking, while add and other changes to the
+ * cache are done with a lock. (However, registerPrefix, setInterestFilter and
+ * unregisterAll should not be called at the same time from multiple threads.)
  * @note This class is an experimental feature.  See the API docs for more detail at
  * http://named-data.net/doc/ndn-ccl-api/memory-content-cache.html .
  */
 public class MemoryContentCache implements OnInterestCallback {
+  /**
+   * An EvictionPolicy selects which Data packet to remove when the cache is
+   * over the size from setMaxSize.
+   * LRU removes the least recently used Data packet.
+   * LFU removes the least frequently used Data packet (and the least recently
+   * used if there is a tie).
+   * TINY_LFU removes the least recently used Data packet, but only adds a new
+   * Data packet if its name has been added or requested at least as often as
+   * the name of the Data packet it would replace, as estimated by a frequency
+   * sketch. This keeps Data packets which are added once and never requested
+   * from replacing popular Data packets.
+   */
+  public enum EvictionPolicy {
+    LRU, LFU, TINY_LFU
+  }
+
   /**
    * Create a new MemoryContentCache to use the given Face.
    * @param face The Face to use to call registerPrefix and setInterestFilter,
@@ -518,69 +555,191 @@ public class MemoryContentCache implements OnInterestCallback {
     onDataNotFoundForPrefix_.clear();
   }
 
+  /**
+   * Set the maximum total size of the Data packet encodings in the cache. If
+   * adding a Data packet would exceed the maximum size, first remove Data
+   * packets according to getEvictionPolicy(). If this is less than the current
+   * size, this immediately removes Data packets to fit.
+   * @param maxSize The maximum size in bytes, or -1 for no maximum.
+   */
+  public final void
+  setMaxSize(long maxSize)
+  {
+    lock_.lock();
+    try {
+      maxSize_ = maxSize;
+      if (maxSize_ < 0)
+        // We don't need the eviction order.
+        evictionOrder_ = null;
+      else {
+        if (evictionOrder_ == null)
+          resetEvictionOrder();
+        while (size_ > maxSize_)
+          evict(evictionOrder_.first());
+      }
+    } finally {
+      lock_.unlock();
+    }
+  }
+
+  /**
+   * Get the maximum total size of the Data packet encodings in the cache.
+   * @return The maximum size in bytes, or -1 for no maximum.
+   */
+  public final long
+  getMaxSize() { return maxSize_; }
+
+  /**
+   * Set the policy to select which Data packet to remove when the cache is
+   * over the maximum size. This only has an effect if you also call
+   * setMaxSize. The default is EvictionPolicy.LRU.
+   * @param evictionPolicy The EvictionPolicy.
+   */
+  public final void
+  setEvictionPolicy(EvictionPolicy evictionPolicy)
+  {
+    lock_.lock();
+    try {
+      evictionPolicy_ = evictionPolicy;
+      if (evictionPolicy_ == EvictionPolicy.TINY_LFU) {
+        if (frequencySketch_ == null)
+          frequencySketch_ = new FrequencySketch();
+      }
+      else
+        frequencySketch_ = null;
+
+      if (evictionOrder_ != null)
+        resetEvictionOrder();
+    } finally {
+      lock_.unlock();
+    }
+  }
+
+  /**
+   * Get the policy to select which Data packet to remove when the cache is
+   * over the maximum size.
+   * @return The EvictionPolicy.
+   */
+  public final EvictionPolicy
+  getEvictionPolicy() { return evictionPolicy_; }
+
+  /**
+   * Set the storage for the encodings of Data packets which are added after
+   * this, so that they are stored off-heap in direct buffers or in a
+   * memory-mapped file, and sent from there without copying. Data packets
+   * which were already added stay in their current storage. If a Data packet
+   * encoding is larger than the storage's slab size, it is kept on the heap.
+   * When a Data packet is removed from the cache, its region of the storage is
+   * reused. So if the Face's transport keeps the sent buffer after send returns
+   * (see Face.isSendRetainingBuffer), such as AsyncTcpTransport, onInterest
+   * sends a heap copy of the encoding instead.
+   * @param storage The SlabStorage, or null to store encodings on the Java heap
+   * (the default). This does not take ownership of the storage, so you should
+   * close it when it is no longer used.
+   */
+  public final void
+  setStorage(SlabStorage storage)
+  {
+    lock_.lock();
+    try {
+      storage_ = storage;
+    } finally {
+      lock_.unlock();
+    }
+  }
+
+  /**
+   * Get the storage for the encodings of added Data packets.
+   * @return The SlabStorage, or null if using the Java heap.
+   */
+  public final SlabStorage
+  getStorage() { return storage_; }
+
+  /**
+   * Get the total size of the Data packet encodings in the cache.
+   * @return The size in bytes.
+   */
+  public final long
+  getSize() { return size_; }
+
+  /**
+   * Get the number of times that onInterest found a Data packet in the cache.
+   * @return The number of hits.
+   */
+  public final long
+  getHitCount() { return hitCount_.get(); }
+
+  /**
+   * Get the number of times that onInterest did not find a Data packet in the
+   * cache.
+   * @return The number of misses.
+   */
+  public final long
+  getMissCount() { return missCount_.get(); }
+
+  /**
+   * Get the number of Data packets which were removed from the cache to stay
+   * under the maximum size. This does not count stale Data packets which were
+   * removed or Data packets which were replaced by one with the same name.
+   * @return The number of evictions.
+   */
+  public final long
+  getEvictionCount() { return evictionCount_; }
+
   /**
    * Add the Data packet to the cache so that it is available to use to
-   * answer interests. If data.getMetaInfo().getFreshnessPeriod() is not
+   * answer interests. If a Data packet with the same name is already in the
+   * cache, this replaces it. If the cache has a maximum size from setMaxSize,
+   * this may remove other Data packets according to the EvictionPolicy, or may
+   * not add this Data packet if it is larger than the maximum size or if the
+   * EvictionPolicy doesn't admit it. If data.getMetaInfo().getFreshnessPeriod() is not
    * negative, set the staleness time to now plus
    * data.getMetaInfo().getFreshnessPeriod(), which is checked during cleanup to
    * remove stale content. This also checks if cleanupIntervalMilliseconds
-   * milliseconds have passed and removes stale content from the cache. After
-   * removing stale content, remove timed-out pending interests from
-   * storePendingInterest(), then if the added Data packet satisfies any
-   * interest, send it through the face and remove the interest from the pending
-   * interest table.
+   * milliseconds have passed and removes stale content and timed-out pending
+   * interests from the cache. Then if the added Data packet satisfies any
+   * interest from storePendingInterest(), send it through the face and remove
+   * the interest from the pending interest table.
    * @param data The Data packet object to put in the cache. This copies the
    * fields from the object.
    */
   public final void
   add(Data data)
   {
-    doCleanup();
-
-    if (data.getMetaInfo().getFreshnessPeriod() >= 0.0) {
-      // The content will go stale, so use staleTimeCache_.
-      StaleTimeContent content = new StaleTimeContent(data);
-      // Insert into staleTimeCache, sorted on content.staleTimeMilliseconds.
-      // Search from the back since we expect it to go there.
-      int i = staleTimeCache_.size() - 1;
-      while (i >= 0) {
-        if (staleTimeCache_.get(i).getStaleTimeMilliseconds() <=
-            content.getStaleTimeMilliseconds())
-          break;
-        --i;
-      }
-      // Element i is the greatest less than or equal to
-      // content.staleTimeMilliseconds, so insert after it.
-      staleTimeCache_.add(i + 1, content);
-    }
+    // Encode outside of the lock.
+    Content content;
+    if (data.getMetaInfo().getFreshnessPeriod() >= 0.0)
+      content = new StaleTimeContent(data);
     else
-      // The data does not go stale, so use noStaleTimeCache_.
-      noStaleTimeCache_.add(new Content(data));
+      content = new Content(data);
+    // Get the heap encoding before insertContent may move it to the storage.
+    // We send this to pending interests, even if the content is not admitted.
+    Blob encoding = content.getDataEncoding();
+    ArrayList<Face> faces = null;
 
-    // Remove timed-out interests and check if the data packet matches any
-    // pending interest.
-    // Go backwards through the list so we can erase entries.
-    double nowMilliseconds = Common.getNowMilliseconds();
-    for (int i = pendingInterestTable_.size() - 1; i >= 0; --i) {
-      PendingInterest pendingInterest = pendingInterestTable_.get(i);
-      if (pendingInterest.isTimedOut(nowMilliseconds)) {
-        pendingInterestTable_.remove(i);
-        continue;
-      }
+    lock_.lock();
+    try {
+      doCleanup();
+      if (frequencySketch_ != null)
+        frequencySketch_.increment(content.getName());
+      insertContent(content);
+
+      if (!pendingInterestTable_.isEmpty())
+        faces = extractPendingInterestFaces(content.getName());
+    } finally {
+      lock_.unlock();
+    }
 
-      if (pendingInterest.getInterest().matchesName(data.getName())) {
+    if (faces != null) {
+      for (int i = 0; i < faces.size(); ++i) {
         try {
           // Send to the same face from the original call to onInterest.
-          // wireEncode returns the cached encoding if available.
-          pendingInterest.getFace().send(data.wireEncode());
+          faces.get(i).send(encoding);
         } catch (IOException ex) {
           Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE,
             ex.getMessage());
           return;
         }
-
-        // The pending interest is satisfied, so remove it.
-        pendingInterestTable_.remove(i);
       }
     }
   }
@@ -598,7 +757,21 @@ public class MemoryContentCache implements OnInterestCallback {
   public final void
   storePendingInterest(Interest interest, Face face)
   {
-    pendingInterestTable_.add(new PendingInterest(interest, face));
+    // The Face may reuse a received Interest unless we retain it.
+    PendingInterest pendingInterest = new PendingInterest
+      (interest.retain(), face);
+    lock_.lock();
+    try {
+      ArrayList<PendingInterest> pendingInterests = pendingInterestTable_.get
+        (interest.getName());
+      if (pendingInterests == null) {
+        pendingInterests = new ArrayList<PendingInterest>();
+        pendingInterestTable_.put(interest.getName(), pendingInterests);
+      }
+      pendingInterests.add(pendingInterest);
+    } finally {
+      lock_.unlock();
+    }
   }
 
   /**
@@ -621,75 +794,80 @@ public class MemoryContentCache implements OnInterestCallback {
   {
     doCleanup();
 
-    Name.Component selectedComponent = null;
-    Blob selectedEncoding = null;
-    // We need to iterate over both arrays.
-    int totalSize = staleTimeCache_.size() + noStaleTimeCache_.size();
-    for (int i = 0; i < totalSize; ++i) {
-      Content content;
-      if (i < staleTimeCache_.size())
-        content = staleTimeCache_.get(i);
+    // Search the cached names which have the interest name as a prefix. The
+    // index is in canonical order, so these names are together starting at the
+    // interest name. The first match in ascending order has the leftmost child
+    // and the first match in descending order has the rightmost child. Without
+    // a child selector, any match will do.
+    Name interestName = interest.getName();
+    Content selectedContent = null;
+    Iterator<Content> iterator;
+    if (interest.getChildSelector() <= 0) {
+      // The content with the exact interest name is first in ascending order,
+      // so first try to get it directly, which is faster than a range search.
+      Content content = contentIndex_.get(interestName);
+      if (content != null && interest.matchesName(content.getName()) &&
+          !content.isReleased()) {
+        selectedContent = content;
+        iterator = null;
+      }
       else
-        // We have iterated over the first array. Get from the second.
-        content = noStaleTimeCache_.get(i - staleTimeCache_.size());
-
-      if (interest.matchesName(content.getName())) {
-        if (interest.getChildSelector() < 0) {
-          // No child selector, so send the first match that we have found.
-          try {
-            face.send(content.getDataEncoding());
-          } catch (IOException ex) {
-            Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE, null, ex);
-          }
-          return;
-        }
-        else {
-          // Update selectedEncoding based on the child selector.
-          Name.Component component;
-          if (content.getName().size() > interest.getName().size())
-            component = content.getName().get(interest.getName().size());
-          else
-            component = emptyComponent_;
-
-          boolean gotBetterMatch = false;
-          if (selectedEncoding == null)
-            // Save the first match.
-            gotBetterMatch = true;
-          else {
-            if (interest.getChildSelector() == 0) {
-              // Leftmost child.
-              if (component.compare(selectedComponent) < 0)
-                gotBetterMatch = true;
-            }
-            else {
-              // Rightmost child.
-              if (component.compare(selectedComponent) > 0)
-                gotBetterMatch = true;
-            }
-          }
-
-          if (gotBetterMatch) {
-            selectedComponent = component;
-            selectedEncoding = content.getDataEncoding();
-          }
-        }
+        iterator = contentIndex_.tailMap(interestName, true).values().iterator();
+    }
+    else {
+      if (interestName.size() == 0)
+        iterator = contentIndex_.descendingMap().values().iterator();
+      else
+        // The names with the prefix are before the prefix's successor.
+        iterator = contentIndex_.subMap
+          (interestName, true, interestName.getSuccessor(), false)
+          .descendingMap().values().iterator();
+    }
+
+    while (iterator != null && iterator.hasNext()) {
+      Content content = iterator.next();
+      if (!interestName.match(content.getName()))
+        // We are past the names with the prefix.
+        break;
+      // Another thread may have removed the content after we got it.
+      if (interest.matchesName(content.getName()) && !content.isReleased()) {
+        selectedContent = content;
+        break;
       }
     }
 
-    if (selectedEncoding != null) {
-      // We found the leftmost or rightmost child.
+    boolean isSent = false;
+    // Pin the content so that if another thread removes it while we send, its
+    // region of the SlabStorage is not reused until we unpin. This fails if
+    // another thread already removed it.
+    if (selectedContent != null && selectedContent.pin()) {
       try {
-        face.send(selectedEncoding);
-      } catch (IOException ex) {
-        Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE, null, ex);
+        Blob encoding = selectedContent.getDataEncoding();
+        // If the transport queues the buffer, the region could be reused after
+        // we unpin but before it is written, so send a copy.
+        if (selectedContent.isInStorage() && face.isSendRetainingBuffer())
+          encoding = new Blob(encoding.buf(), true);
+        send(face, encoding);
+        isSent = true;
+      } finally {
+        selectedContent.unpin();
       }
     }
+
+    if (isSent) {
+      hitCount_.incrementAndGet();
+      recordRequest(selectedContent.getName(), selectedContent);
+    }
     else {
+      missCount_.incrementAndGet();
+      recordRequest(interestName, null);
+
       // Call the onDataNotFound callback (if defined).
-      Object onDataNotFound = onDataNotFoundForPrefix_.get(prefix.toUri());
+      OnInterestCallback onDataNotFound = onDataNotFoundForPrefix_.get
+        (prefix.toUri());
       if (onDataNotFound != null) {
         try {
-          ((OnInterestCallback)onDataNotFound).onInterest
+          onDataNotFound.onInterest
             (prefix, interest, face, interestFilterId, filter);
         } catch (Throwable ex) {
           logger_.log(Level.SEVERE, "Error in onDataNotFound", ex);
@@ -698,6 +876,21 @@ public class MemoryContentCache implements OnInterestCallback {
     }
   }
 
+  /**
+   * Send the encoding through the face, logging any IOException.
+   * @param face The Face to send through.
+   * @param encoding The encoding to send.
+   */
+  private static void
+  send(Face face, Blob encoding)
+  {
+    try {
+      face.send(encoding);
+    } catch (IOException ex) {
+      Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
   /**
    * Content is a private class to hold the name and encoding for each entry
    * in the cache. This base class is for a Data packet without a
@@ -710,19 +903,173 @@ public class MemoryContentCache implements OnInterestCallback {
      */
     public Content(Data data)
     {
+      // Copy the name since it is a key in contentIndex_ and the caller may
+      // change or reuse the Data.
+      name_ = new Name(data.getName());
       // wireEncode returns the cached encoding if available.
-      name_ = data.getName();
       dataEncoding_ = data.wireEncode();
+      encodingSize_ = dataEncoding_.size();
     }
 
     public final Name
     getName() { return name_; }
 
+    /**
+     * Get the data encoding, either from the heap or as a read-only view of
+     * the SlabStorage. Another thread can remove the content at any time, so
+     * call this between pin() and unpin(), except when holding lock_.
+     * @return The data encoding.
+     */
     public final Blob
-    getDataEncoding() { return dataEncoding_; }
+    getDataEncoding()
+    {
+      ByteBuffer storageBuffer = storageBuffer_;
+      if (storageBuffer != null)
+        return new Blob(storageBuffer.duplicate(), false);
+      else
+        return dataEncoding_;
+    }
+
+    /**
+     * Check if the data encoding is in a SlabStorage.
+     * @return True if in a SlabStorage.
+     */
+    public final boolean
+    isInStorage() { return storageBuffer_ != null; }
+
+    /**
+     * Check if release() was called because the content was removed.
+     * @return True if released.
+     */
+    public final boolean
+    isReleased() { return isReleased_; }
+
+    /**
+     * Get the size of the data encoding.
+     * @return The size in bytes.
+     */
+    public final int
+    getSize() { return encodingSize_; }
+
+    /**
+     * Copy the data encoding into the storage and release the heap copy. If
+     * the encoding doesn't fit in a slab, keep it on the heap.
+     * @param storage The SlabStorage.
+     * @throws IOException For an error allocating a slab in the storage.
+     */
+    public final void
+    moveToStorage(SlabStorage storage) throws IOException
+    {
+      long position = storage.store(dataEncoding_.buf());
+      if (position >= 0) {
+        slabStorage_ = storage;
+        storagePosition_ = position;
+        // Get the view now so that onInterest doesn't use the storage, which is
+        // not thread-safe, without the lock.
+        storageBuffer_ = storage.get(position, encodingSize_);
+        dataEncoding_ = null;
+      }
+    }
+
+    /**
+     * Prevent the data encoding from being freed until unpin() is called, so
+     * that it can be used without holding lock_.
+     * @return True if pinned, or false if the content was already released
+     * and its encoding freed, in which case don't call unpin().
+     */
+    public final boolean
+    pin()
+    {
+      while (true) {
+        int referenceCount = referenceCount_.get();
+        if (referenceCount == 0)
+          return false;
+        if (referenceCount_.compareAndSet(referenceCount, referenceCount + 1))
+          return true;
+      }
+    }
+
+    /**
+     * Undo pin(). If the content was released while pinned, and this is the
+     * last pin, free the data encoding.
+     */
+    public final void
+    unpin()
+    {
+      if (referenceCount_.decrementAndGet() == 0)
+        freeDataEncoding();
+    }
+
+    /**
+     * Release the data encoding. This is called while holding lock_ when the
+     * entry is removed from contentIndex_ so that it doesn't keep the encoding
+     * in memory if it is still in staleTimeQueue_, and frees its region of the
+     * SlabStorage. If another thread has pinned the content, the encoding is
+     * freed when the last thread calls unpin().
+     */
+    public final void
+    release()
+    {
+      if (isReleased_)
+        return;
+
+      isReleased_ = true;
+      // Remove the reference from the cache.
+      unpin();
+    }
+
+    /**
+     * Free the data encoding, including its region of the SlabStorage. This
+     * takes lock_ to use the SlabStorage.
+     */
+    private void
+    freeDataEncoding()
+    {
+      storageBuffer_ = null;
+      dataEncoding_ = null;
+      lock_.lock();
+      try {
+        if (slabStorage_ != null) {
+          slabStorage_.free(storagePosition_, encodingSize_);
+          slabStorage_ = null;
+        }
+      } finally {
+        lock_.unlock();
+      }
+    }
+
+    /**
+     * Increment the access count and set the last access.
+     * @param lastAccess The value of accessSequence_ for this access.
+     */
+    public final void
+    recordAccess(long lastAccess)
+    {
+      ++accessCount_;
+      lastAccess_ = lastAccess;
+    }
+
+    public final long
+    getAccessCount() { return accessCount_; }
+
+    public final long
+    getLastAccess() { return lastAccess_; }
 
     private final Name name_;
-    private final Blob dataEncoding_;
+    // These are volatile because onInterest reads them without the lock.
+    private volatile Blob dataEncoding_; /**< null if in slabStorage_ or
+      * released. */
+    private volatile ByteBuffer storageBuffer_ = null; /**< The read-only view
+      * of the encoding in slabStorage_, or null if not in storage. */
+    private volatile boolean isReleased_ = false;
+    private final int encodingSize_;
+    // The cache holds one reference until release(), and each pin() holds one.
+    private final AtomicInteger referenceCount_ = new AtomicInteger(1);
+    // These are only used while holding lock_.
+    private SlabStorage slabStorage_ = null;
+    private long storagePosition_ = 0;
+    private long accessCount_ = 0;
+    private long lastAccess_ = 0;
   }
 
   /**
@@ -824,43 +1171,341 @@ public class MemoryContentCache implements OnInterestCallback {
       * or -1 for no timeout. */
   }
 
+  /**
+   * A FrequencySketch is a count-min sketch which estimates how often each name
+   * is added or requested, for the TINY_LFU EvictionPolicy. The counters are
+   * periodically halved so that the estimate follows changes in popularity.
+   */
+  private static class FrequencySketch {
+    /**
+     * Increment the counters for the name.
+     * @param name The name.
+     */
+    public final void
+    increment(Name name)
+    {
+      int hash = name.hashCode();
+      for (int i = 0; i < N_ROWS; ++i) {
+        int index = getIndex(hash, i);
+        if (counters_[i][index] < MAX_COUNT)
+          ++counters_[i][index];
+      }
+
+      if (++nIncrements_ >= RESET_INTERVAL) {
+        for (int i = 0; i < N_ROWS; ++i) {
+          for (int j = 0; j < WIDTH; ++j)
+            counters_[i][j] >>= 1;
+        }
+        nIncrements_ = 0;
+      }
+    }
+
+    /**
+     * Get the estimated frequency of the name.
+     * @param name The name.
+     * @return The estimated frequency, which is the minimum of the counters for
+     * the name.
+     */
+    public final int
+    getFrequency(Name name)
+    {
+      int hash = name.hashCode();
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < N_ROWS; ++i)
+        frequency = Math.min(frequency, counters_[i][getIndex(hash, i)]);
+      return frequency;
+    }
+
+    private static int
+    getIndex(int hash, int row)
+    {
+      int h = hash * SEEDS[row];
+      return (h ^ (h >>> 16)) & (WIDTH - 1);
+    }
+
+    private static final int N_ROWS = 4;
+    private static final int WIDTH = 4096;
+    private static final int MAX_COUNT = 15;
+    private static final int RESET_INTERVAL = 10 * WIDTH;
+    private static final int[] SEEDS =
+      { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F };
+
+    private final int[][] counters_ = new int[N_ROWS][WIDTH];
+    private int nIncrements_ = 0;
+  }
+
+  /**
+   * Remove the pending interests which are satisfied by the data name, and
+   * timed-out pending interests for the data name's prefixes. This must be
+   * called while holding lock_.
+   * @param dataName The name of the added Data packet.
+   * @return The list of the faces of the satisfied pending interests, to send
+   * the Data packet to. This may be empty.
+   */
+  private ArrayList<Face>
+  extractPendingInterestFaces(Name dataName)
+  {
+    ArrayList<Face> faces = new ArrayList<Face>();
+    // The name of a matching interest is a prefix of the data name, so we only
+    // need to check the pending interests for each prefix.
+    double nowMilliseconds = Common.getNowMilliseconds();
+    for (int i = 0; i <= dataName.size(); ++i) {
+      Name prefix = dataName.getPrefix(i);
+      ArrayList<PendingInterest> pendingInterests =
+        pendingInterestTable_.get(prefix);
+      if (pendingInterests == null)
+        continue;
+
+      // Go backwards through the list so we can erase entries.
+      for (int j = pendingInterests.size() - 1; j >= 0; --j) {
+        PendingInterest pendingInterest = pendingInterests.get(j);
+        if (pendingInterest.isTimedOut(nowMilliseconds)) {
+          pendingInterests.remove(j);
+          continue;
+        }
+
+        if (pendingInterest.getInterest().matchesName(dataName)) {
+          faces.add(pendingInterest.getFace());
+          // The pending interest is satisfied, so remove it.
+          pendingInterests.remove(j);
+        }
+      }
+
+      if (pendingInterests.isEmpty())
+        pendingInterestTable_.remove(prefix);
+    }
+
+    return faces;
+  }
+
+  /**
+   * Record a request for the name in the frequency sketch and, if the content
+   * is not null and not removed, record an access to it. If another thread
+   * holds lock_, skip this since it is only used to choose what to evict.
+   * @param name The name of the found content, or the interest name if not
+   * found.
+   * @param content The found content, or null if not found.
+   */
+  private void
+  recordRequest(Name name, Content content)
+  {
+    if (!lock_.tryLock())
+      return;
+    try {
+      if (frequencySketch_ != null)
+        frequencySketch_.increment(name);
+      if (content != null && !content.isReleased())
+        touch(content);
+    } finally {
+      lock_.unlock();
+    }
+  }
+
+  /**
+   * Add the content to contentIndex_ (and to staleTimeQueue_ if it is a
+   * StaleTimeContent), replacing an entry with the same name. If there is a
+   * maximum size, first evict entries to make room.
+   * @param content The new content.
+   */
+  private void
+  insertContent(Content content)
+  {
+    Content oldContent = contentIndex_.get(content.getName());
+    if (oldContent != null)
+      removeContent(oldContent);
+
+    long contentSize = content.getSize();
+    if (maxSize_ >= 0) {
+      if (contentSize > maxSize_)
+        return;
+
+      if (size_ + contentSize > maxSize_ && frequencySketch_ != null &&
+          oldContent == null) {
+        // Only admit the new content if it is as popular as the first entry to
+        // evict. We don't check a replacement of an existing name.
+        if (frequencySketch_.getFrequency(content.getName()) <
+            frequencySketch_.getFrequency(evictionOrder_.first().getName()))
+          return;
+      }
+
+      while (size_ + contentSize > maxSize_)
+        evict(evictionOrder_.first());
+    }
+
+    if (storage_ != null) {
+      try {
+        content.moveToStorage(storage_);
+      } catch (IOException ex) {
+        logger_.log(Level.SEVERE, "Error storing the Data encoding", ex);
+        // Keep the encoding on the heap.
+      }
+    }
+
+    contentIndex_.put(content.getName(), content);
+    size_ += contentSize;
+    touch(content);
+    if (content instanceof StaleTimeContent)
+      staleTimeQueue_.add((StaleTimeContent)content);
+  }
+
+  /**
+   * Remove the content from contentIndex_ and evictionOrder_ and release its
+   * encoding, including its region of the SlabStorage. If the content is in staleTimeQueue_, doCleanup will skip it.
+   * @param content The content, which must be in contentIndex_.
+   */
+  private void
+  removeContent(Content content)
+  {
+    contentIndex_.remove(content.getName());
+    if (evictionOrder_ != null)
+      evictionOrder_.remove(content);
+    size_ -= content.getSize();
+    content.release();
+  }
+
+  /**
+   * Remove the content to stay under the maximum size, and count the eviction.
+   * @param content The content, which must be in contentIndex_.
+   */
+  private void
+  evict(Content content)
+  {
+    removeContent(content);
+    ++evictionCount_;
+  }
+
+  /**
+   * Record an access of the content, updating its position in evictionOrder_
+   * if it is used.
+   * @param content The content, which must be in contentIndex_.
+   */
+  private void
+  touch(Content content)
+  {
+    // Remove before changing the fields which the comparator uses.
+    if (evictionOrder_ != null)
+      evictionOrder_.remove(content);
+    content.recordAccess(++accessSequence_);
+    if (evictionOrder_ != null)
+      evictionOrder_.add(content);
+  }
+
+  /**
+   * Create evictionOrder_ for the evictionPolicy_ and add all the entries in
+   * contentIndex_. The first entry in evictionOrder_ is the next to evict.
+   */
+  private void
+  resetEvictionOrder()
+  {
+    final boolean isLfu = (evictionPolicy_ == EvictionPolicy.LFU);
+    evictionOrder_ = new TreeSet<Content>(new Comparator<Content>() {
+      public int
+      compare(Content content1, Content content2)
+      {
+        if (isLfu && content1.getAccessCount() != content2.getAccessCount())
+          return content1.getAccessCount() < content2.getAccessCount() ? -1 : 1;
+        // Each access has a unique lastAccess, so this is a total order.
+        if (content1.getLastAccess() != content2.getLastAccess())
+          return content1.getLastAccess() < content2.getLastAccess() ? -1 : 1;
+        return 0;
+      }
+    });
+    evictionOrder_.addAll(contentIndex_.values());
+  }
+
   /**
    * Check if now is greater than nextCleanupTime_ and, if so, remove stale
-   * content from staleTimeCache_ and reset nextCleanupTime_ based on
-   * cleanupIntervalMilliseconds_. Since add(Data) does a sorted insert into
-   * staleTimeCache_, the check for stale data is quick and does not require
-   * searching the entire staleTimeCache_.
+   * content from contentIndex_ and timed-out interests from
+   * pendingInterestTable_, and reset nextCleanupTime_ based on
+   * cleanupIntervalMilliseconds_. Since staleTimeQueue_ is ordered by stale
+   * time, the check for stale data is quick and does not require searching the
+   * entire cache. This uses lock_, but skips cleanup if another thread holds
+   * it.
    */
   private void
   doCleanup()
   {
     double now = Common.getNowMilliseconds();
-    if (now >= nextCleanupTime_) {
-      // staleTimeCache_ is sorted on staleTimeMilliseconds_, so we only need to
-      // erase the stale entries at the front, then quit.
-      while (staleTimeCache_.size() > 0 && staleTimeCache_.get(0).isStale(now))
-        staleTimeCache_.remove(0);
+    if (now < nextCleanupTime_)
+      return;
+    // If another thread holds the lock, we'll clean up on a later call.
+    if (!lock_.tryLock())
+      return;
+    try {
+      if (now < nextCleanupTime_)
+        // Another thread already did the cleanup.
+        return;
+
+      // staleTimeQueue_ is ordered on staleTimeMilliseconds_, so we only need to
+      // remove the stale entries at the head, then quit.
+      while (staleTimeQueue_.size() > 0 && staleTimeQueue_.peek().isStale(now)) {
+        StaleTimeContent content = staleTimeQueue_.poll();
+        // Skip an entry which was already removed, and don't remove a newer
+        // entry with the same name which replaced this.
+        if (contentIndex_.get(content.getName()) == content)
+          removeContent(content);
+      }
+
+      Iterator<ArrayList<PendingInterest>> pendingIterator =
+        pendingInterestTable_.values().iterator();
+      while (pendingIterator.hasNext()) {
+        ArrayList<PendingInterest> pendingInterests = pendingIterator.next();
+        // Go backwards through the list so we can erase entries.
+        for (int i = pendingInterests.size() - 1; i >= 0; --i) {
+          if (pendingInterests.get(i).isTimedOut(now))
+            pendingInterests.remove(i);
+        }
+        if (pendingInterests.isEmpty())
+          pendingIterator.remove();
+      }
 
       nextCleanupTime_ = now + cleanupIntervalMilliseconds_;
+    } finally {
+      lock_.unlock();
     }
   }
 
   private final Face face_;
   private final double cleanupIntervalMilliseconds_;
-  private double nextCleanupTime_;
-  // Use HashMap without generics so it works with older Java compilers.
-  private final HashMap onDataNotFoundForPrefix_ =
-    new HashMap(); /**< The map key is the prefix.toUri().
-                    * The value is the OnInterest callback. */
+  private volatile double nextCleanupTime_;
+  private final ConcurrentHashMap<String, OnInterestCallback>
+    onDataNotFoundForPrefix_ =
+      new ConcurrentHashMap<String, OnInterestCallback>(); /**< The map key is
+      * the prefix.toUri(). The value is the OnInterest callback. */
   // Use ArrayList without generics so it works with older Java compilers.
   private final ArrayList<Long> interestFilterIdList_ = new ArrayList<Long>();
   private final ArrayList<Long> registeredPrefixIdList_ = new ArrayList<Long>();
-  private final ArrayList<Content> noStaleTimeCache_ = new ArrayList<Content>();
-  private final ArrayList<StaleTimeContent> staleTimeCache_ =
-    new ArrayList<StaleTimeContent>();
-  private final Name.Component emptyComponent_ = new Name.Component();
-  private final ArrayList<PendingInterest> pendingInterestTable_ =
-    new ArrayList<PendingInterest>();
+  // onInterest reads contentIndex_ without the lock. The other fields below
+  // are only used while holding lock_, or are volatile or atomic.
+  private final ConcurrentSkipListMap<Name, Content> contentIndex_ =
+    new ConcurrentSkipListMap<Name, Content>(); /**< The key is the Content
+    * name. */
+  private final PriorityQueue<StaleTimeContent> staleTimeQueue_ =
+    new PriorityQueue<StaleTimeContent>(11, new Comparator<StaleTimeContent>() {
+      public int
+      compare(StaleTimeContent content1, StaleTimeContent content2)
+      {
+        return Double.compare
+          (content1.getStaleTimeMilliseconds(),
+           content2.getStaleTimeMilliseconds());
+      }
+    });
+  private final HashMap<Name, ArrayList<PendingInterest>> pendingInterestTable_ =
+    new HashMap<Name, ArrayList<PendingInterest>>(); /**< The key is the
+    * interest name. */
   private OnInterestCallback storePendingInterestCallback_;
+  private final ReentrantLock lock_ = new ReentrantLock();
+  private volatile long maxSize_ = -1;
+  private volatile SlabStorage storage_ = null;
+  private volatile long size_ = 0;
+  private volatile EvictionPolicy evictionPolicy_ = EvictionPolicy.LRU;
+  private TreeSet<Content> evictionOrder_ = null; /**< Only used if there is a
+    * maxSize_. */
+  private FrequencySketch frequencySketch_ = null; /**< Only used for
+    * EvictionPolicy.TINY_LFU. */
+  private long accessSequence_ = 0;
+  private final AtomicLong hitCount_ = new AtomicLong();
+  private final AtomicLong missCount_ = new AtomicLong();
+  private volatile long evictionCount_ = 0;
   private static final Logger logger_ = Logger.getLogger(MemoryContentCache.class.getName());
 }
@@ -22,7 +22,10 @@ package net.named_data.jndn.util;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Data;
@@ -78,6 +81,18 @@ import net.named_data.jndn.security.OnDataValidationFailed;
  *   the user-provided VerifySegment callback or KeyChain verifyData.
  * - `IO_ERROR`: for I/O errors when sending an Interest.
  *
+ * The fetch methods which take an Options object use a pipelined mode instead
+ * of steps 4 and 5. After the first Data packet gives the version, this keeps
+ * a window of Interests for the segments outstanding at once. The window grows
+ * for each received segment (slow start, then additive increase, or CUBIC
+ * growth if Options.setUseCubic is true, which never grows slower than
+ * additive increase) and is decreased at most once per round trip when an
+ * Interest times out. The lifetime of each Interest is the
+ * retransmission timeout from an RFC 6298 round-trip time estimate. A segment
+ * whose Interest times out is requested again, up to Options.getMaxRetries
+ * times, and the segments may arrive in any order. In this mode, the last
+ * segment must have a FinalBlockId.
+ *
  * In order to validate individual segments, a KeyChain needs to be supplied.
  * If verifyData fails, the fetching process is aborted with
  * SEGMENT_VERIFICATION_FAILED. If data validation is not required, pass
@@ -117,6 +132,290 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     void onError(ErrorCode errorCode, String message);
   }
 
+  /**
+   * A Clock gives the current time which the pipelined mode uses for the
+   * round-trip time and the CUBIC window growth. See Options.setClock.
+   */
+  public interface Clock {
+    /**
+     * Get the current time.
+     * @return The current time in milliseconds.
+     */
+    double getNowMilliseconds();
+  }
+
+  /**
+   * SystemClock is the default Clock which uses Common.getNowMilliseconds().
+   */
+  public static final Clock SystemClock = new Clock() {
+    public double getNowMilliseconds() {
+      return Common.getNowMilliseconds();
+    }};
+
+  /**
+   * Options holds the parameters for the pipelined mode of fetch. The
+   * defaults are those of ndn-cxx SegmentFetcher and its RttEstimator.
+   */
+  public static class Options {
+    /**
+     * Get the initial window size, which is the number of Interests to send at
+     * once after the first Data packet.
+     * @return The initial window size.
+     */
+    public final double
+    getInitialWindowSize() { return initialWindowSize_; }
+
+    /**
+     * Get the maximum window size.
+     * @return The maximum window size.
+     */
+    public final double
+    getMaxWindowSize() { return maxWindowSize_; }
+
+    /**
+     * Get the initial slow start threshold. While the window size is less than
+     * the slow start threshold, the window grows by the additive increase for
+     * each received segment.
+     * @return The initial slow start threshold.
+     */
+    public final double
+    getInitialSlowStartThreshold() { return initialSlowStartThreshold_; }
+
+    /**
+     * Get the additive increase of the window size in congestion avoidance,
+     * per window of received segments.
+     * @return The additive increase.
+     */
+    public final double
+    getAdditiveIncrease() { return additiveIncrease_; }
+
+    /**
+     * Get the multiplicative decrease factor of the window size on a timeout,
+     * when not using CUBIC.
+     * @return The multiplicative decrease factor.
+     */
+    public final double
+    getMultiplicativeDecrease() { return multiplicativeDecrease_; }
+
+    /**
+     * Get whether to use CUBIC window growth in congestion avoidance, instead
+     * of additive increase.
+     * @return True to use CUBIC.
+     */
+    public final boolean
+    getUseCubic() { return useCubic_; }
+
+    /**
+     * Get the CUBIC multiplicative decrease factor of the window size on a
+     * timeout.
+     * @return The CUBIC beta.
+     */
+    public final double
+    getCubicBeta() { return cubicBeta_; }
+
+    /**
+     * Get the maximum number of times to retransmit the Interest for a segment
+     * before calling onError with INTEREST_TIMEOUT.
+     * @return The maximum number of retries.
+     */
+    public final int
+    getMaxRetries() { return maxRetries_; }
+
+    /**
+     * Get the retransmission timeout to use before there is a round-trip time
+     * measurement.
+     * @return The initial retransmission timeout in milliseconds.
+     */
+    public final double
+    getInitialRtoMilliseconds() { return initialRtoMilliseconds_; }
+
+    /**
+     * Get the minimum retransmission timeout.
+     * @return The minimum retransmission timeout in milliseconds.
+     */
+    public final double
+    getMinRtoMilliseconds() { return minRtoMilliseconds_; }
+
+    /**
+     * Get the maximum retransmission timeout.
+     * @return The maximum retransmission timeout in milliseconds.
+     */
+    public final double
+    getMaxRtoMilliseconds() { return maxRtoMilliseconds_; }
+
+    /**
+     * Get the Clock for the current time.
+     * @return The Clock.
+     */
+    public final Clock
+    getClock() { return clock_; }
+
+    /**
+     * Set the initial window size. See getInitialWindowSize.
+     * @param initialWindowSize The initial window size. The default is 1.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setInitialWindowSize(double initialWindowSize)
+    {
+      initialWindowSize_ = initialWindowSize;
+      return this;
+    }
+
+    /**
+     * Set the maximum window size. See getMaxWindowSize.
+     * @param maxWindowSize The maximum window size. The default is
+     * Double.MAX_VALUE for no limit.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxWindowSize(double maxWindowSize)
+    {
+      maxWindowSize_ = maxWindowSize;
+      return this;
+    }
+
+    /**
+     * Set the initial slow start threshold. See getInitialSlowStartThreshold.
+     * @param initialSlowStartThreshold The initial slow start threshold. The
+     * default is Double.MAX_VALUE so that slow start continues until the first
+     * timeout.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setInitialSlowStartThreshold(double initialSlowStartThreshold)
+    {
+      initialSlowStartThreshold_ = initialSlowStartThreshold;
+      return this;
+    }
+
+    /**
+     * Set the additive increase. See getAdditiveIncrease.
+     * @param additiveIncrease The additive increase. The default is 1.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setAdditiveIncrease(double additiveIncrease)
+    {
+      additiveIncrease_ = additiveIncrease;
+      return this;
+    }
+
+    /**
+     * Set the multiplicative decrease factor. See getMultiplicativeDecrease.
+     * @param multiplicativeDecrease The multiplicative decrease factor. The
+     * default is 0.5.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMultiplicativeDecrease(double multiplicativeDecrease)
+    {
+      multiplicativeDecrease_ = multiplicativeDecrease;
+      return this;
+    }
+
+    /**
+     * Set whether to use CUBIC window growth. See getUseCubic.
+     * @param useCubic True to use CUBIC. The default is false.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setUseCubic(boolean useCubic)
+    {
+      useCubic_ = useCubic;
+      return this;
+    }
+
+    /**
+     * Set the CUBIC multiplicative decrease factor. See getCubicBeta.
+     * @param cubicBeta The CUBIC beta. The default is 0.7.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setCubicBeta(double cubicBeta)
+    {
+      cubicBeta_ = cubicBeta;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of retries. See getMaxRetries.
+     * @param maxRetries The maximum number of retries. The default is 15.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxRetries(int maxRetries)
+    {
+      maxRetries_ = maxRetries;
+      return this;
+    }
+
+    /**
+     * Set the initial retransmission timeout. See getInitialRtoMilliseconds.
+     * @param initialRtoMilliseconds The initial retransmission timeout in
+     * milliseconds. The default is 1000.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setInitialRtoMilliseconds(double initialRtoMilliseconds)
+    {
+      initialRtoMilliseconds_ = initialRtoMilliseconds;
+      return this;
+    }
+
+    /**
+     * Set the minimum retransmission timeout. See getMinRtoMilliseconds.
+     * @param minRtoMilliseconds The minimum retransmission timeout in
+     * milliseconds. The default is 200.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMinRtoMilliseconds(double minRtoMilliseconds)
+    {
+      minRtoMilliseconds_ = minRtoMilliseconds;
+      return this;
+    }
+
+    /**
+     * Set the maximum retransmission timeout. See getMaxRtoMilliseconds.
+     * @param maxRtoMilliseconds The maximum retransmission timeout in
+     * milliseconds. The default is 60000.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxRtoMilliseconds(double maxRtoMilliseconds)
+    {
+      maxRtoMilliseconds_ = maxRtoMilliseconds;
+      return this;
+    }
+
+    /**
+     * Set the Clock for the current time. See getClock. An application can
+     * use this to run the fetcher in simulated time.
+     * @param clock The Clock. The default is SystemClock.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setClock(Clock clock)
+    {
+      clock_ = clock;
+      return this;
+    }
+
+    private double initialWindowSize_ = 1.0;
+    private double maxWindowSize_ = Double.MAX_VALUE;
+    private double initialSlowStartThreshold_ = Double.MAX_VALUE;
+    private double additiveIncrease_ = 1.0;
+    private double multiplicativeDecrease_ = 0.5;
+    private boolean useCubic_ = false;
+    private double cubicBeta_ = 0.7;
+    private int maxRetries_ = 15;
+    private double initialRtoMilliseconds_ = 1000.0;
+    private double minRtoMilliseconds_ = 200.0;
+    private double maxRtoMilliseconds_ = 60000.0;
+    private Clock clock_ = SystemClock;
+  }
+
   /**
    * DontVerifySegment may be used in fetch to skip validation of Data packets.
    */
@@ -159,7 +458,32 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     (Face face, Interest baseInterest, VerifySegment verifySegment,
      OnComplete onComplete, OnError onError)
   {
-    new SegmentFetcher(face, null, verifySegment, onComplete, onError)
+    new SegmentFetcher(face, null, verifySegment, onComplete, onError, null)
+      .fetchFirstSegment(baseInterest);
+  }
+
+  /**
+   * Initiate segment fetching in the pipelined mode. This is the same as
+   * fetch(face, baseInterest, verifySegment, onComplete, onError), except that
+   * it keeps a window of Interests outstanding according to options. For more
+   * details, see the documentation for the class.
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data. See the other fetch method. The InterestLifetime of the Interests for
+   * the segments is set from the round-trip time estimate.
+   * @param verifySegment See the other fetch method.
+   * @param onComplete See the other fetch method.
+   * @param onError See the other fetch method.
+   * @param options The Options for the pipelined mode. This does not copy the
+   * object, so you should not change it while fetching.
+   */
+  public static void
+  fetch
+    (Face face, Interest baseInterest, VerifySegment verifySegment,
+     OnComplete onComplete, OnError onError, Options options)
+  {
+    new SegmentFetcher
+      (face, null, verifySegment, onComplete, onError, options)
       .fetchFirstSegment(baseInterest);
   }
 
@@ -196,7 +520,32 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
      OnComplete onComplete, OnError onError)
   {
     new SegmentFetcher
-      (face, validatorKeyChain, DontVerifySegment, onComplete, onError)
+      (face, validatorKeyChain, DontVerifySegment, onComplete, onError, null)
+      .fetchFirstSegment(baseInterest);
+  }
+
+  /**
+   * Initiate segment fetching in the pipelined mode. This is the same as
+   * fetch(face, baseInterest, validatorKeyChain, onComplete, onError), except
+   * that it keeps a window of Interests outstanding according to options. For
+   * more details, see the documentation for the class.
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data. See the other fetch method. The InterestLifetime of the Interests for
+   * the segments is set from the round-trip time estimate.
+   * @param validatorKeyChain See the other fetch method.
+   * @param onComplete See the other fetch method.
+   * @param onError See the other fetch method.
+   * @param options The Options for the pipelined mode. This does not copy the
+   * object, so you should not change it while fetching.
+   */
+  public static void
+  fetch
+    (Face face, Interest baseInterest, KeyChain validatorKeyChain,
+     OnComplete onComplete, OnError onError, Options options)
+  {
+    new SegmentFetcher
+      (face, validatorKeyChain, DontVerifySegment, onComplete, onError, options)
       .fetchFirstSegment(baseInterest);
   }
 
@@ -215,34 +564,44 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
    * content of all the segments.
    * @param onError Call onError.onError(errorCode, message) for timeout or an
    * error processing segments.
+   * @param options The Options for the pipelined mode, or null to fetch one
+   * segment at a time.
    */
   private SegmentFetcher
     (Face face, KeyChain validatorKeyChain, VerifySegment verifySegment,
-     OnComplete onComplete, OnError onError)
+     OnComplete onComplete, OnError onError, Options options)
   {
     face_ = face;
     validatorKeyChain_ = validatorKeyChain;
     verifySegment_ = verifySegment;
     onComplete_ = onComplete;
     onError_ = onError;
+    options_ = options;
+    if (options_ != null) {
+      rttEstimator_ = new RttEstimator(options_);
+      windowSize_ = options_.getInitialWindowSize();
+      slowStartThreshold_ = options_.getInitialSlowStartThreshold();
+      lastDecreaseTime_ = options_.getClock().getNowMilliseconds();
+    }
+    else
+      rttEstimator_ = null;
   }
 
   private void
   fetchFirstSegment(Interest baseInterest)
   {
+    baseInterest_ = baseInterest;
     Interest interest = new Interest(baseInterest);
     interest.setChildSelector(1);
     interest.setMustBeFresh(true);
+    if (options_ != null)
+      firstInterestSendTime_ = options_.getClock().getNowMilliseconds();
 
     try {
       face_.expressInterest(interest, this, this);
     } catch (IOException ex) {
-      try {
-        onError_.onError
-          (ErrorCode.IO_ERROR, "I/O error fetching the first segment " + ex);
-      } catch (Throwable exception) {
-        logger_.log(Level.SEVERE, "Error in onError", exception);
-      }
+      reportError
+        (ErrorCode.IO_ERROR, "I/O error fetching the first segment " + ex);
     }
   }
 
@@ -258,18 +617,20 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     try {
       face_.expressInterest(interest, this, this);
     } catch (IOException ex) {
-      try {
-        onError_.onError
-          (ErrorCode.IO_ERROR, "I/O error fetching the next segment " + ex);
-      } catch (Throwable exception) {
-        logger_.log(Level.SEVERE, "Error in onError", exception);
-      }
+      reportError
+        (ErrorCode.IO_ERROR, "I/O error fetching the next segment " + ex);
     }
   }
 
   public void
   onData(final Interest originalInterest, Data data)
   {
+    if (isStopped_)
+      return;
+    if (options_ != null)
+      // Update the window before the verification which may take a while.
+      onSegmentArrived(originalInterest);
+
     if (validatorKeyChain_ != null) {
       try {
         final SegmentFetcher thisSegmentFetcher = this;
@@ -282,13 +643,9 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
            },
            this);
       } catch (Throwable ex) {
-        try {
-          onError_.onError
-            (ErrorCode.SEGMENT_VERIFICATION_FAILED,
-             "Error in KeyChain.verifyData " + ex.getMessage());
-        } catch (Throwable ex2) {
-          logger_.log(Level.SEVERE, "Error in onError", ex2);
-        }
+        reportError
+          (ErrorCode.SEGMENT_VERIFICATION_FAILED,
+           "Error in KeyChain.verifyData " + ex.getMessage());
       }
     }
     else {
@@ -299,12 +656,8 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         logger_.log(Level.SEVERE, "Error in verifySegment", ex);
       }
       if (!verified) {
-        try {
-          onError_.onError
-            (ErrorCode.SEGMENT_VERIFICATION_FAILED, "Segment verification failed");
-        } catch (Throwable ex) {
-          logger_.log(Level.SEVERE, "Error in onError", ex);
-        }
+        reportError
+          (ErrorCode.SEGMENT_VERIFICATION_FAILED, "Segment verification failed");
         return;
       }
 
@@ -315,15 +668,13 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
   public void
   onVerified(Data data, Interest originalInterest)
   {
+    if (isStopped_)
+      return;
     if (!endsWithSegmentNumber(data.getName())) {
       // We don't expect a name without a segment number.  Treat it as a bad packet.
-      try {
-        onError_.onError
-          (ErrorCode.DATA_HAS_NO_SEGMENT,
-           "Got an unexpected packet without a segment number: " + data.getName().toUri());
-      } catch (Throwable ex) {
-        logger_.log(Level.SEVERE, "Error in onError", ex);
-      }
+      reportError
+        (ErrorCode.DATA_HAS_NO_SEGMENT,
+         "Got an unexpected packet without a segment number: " + data.getName().toUri());
     }
     else {
       long currentSegment;
@@ -331,14 +682,15 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         currentSegment = data.getName().get(-1).toSegment();
       }
       catch (EncodingException ex) {
-        try {
-          onError_.onError
-            (ErrorCode.DATA_HAS_NO_SEGMENT,
-             "Error decoding the name segment number " +
-             data.getName().get(-1).toEscapedString() + ": " + ex);
-        } catch (Throwable exception) {
-          logger_.log(Level.SEVERE, "Error in onError", exception);
-        }
+        reportError
+          (ErrorCode.DATA_HAS_NO_SEGMENT,
+           "Error decoding the name segment number " +
+           data.getName().get(-1).toEscapedString() + ": " + ex);
+        return;
+      }
+
+      if (options_ != null) {
+        onVerifiedPipelined(data, currentSegment);
         return;
       }
 
@@ -358,14 +710,10 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
             finalSegmentNumber = data.getMetaInfo().getFinalBlockId().toSegment();
           }
           catch (EncodingException ex) {
-            try {
-              onError_.onError
-                (ErrorCode.DATA_HAS_NO_SEGMENT,
-                 "Error decoding the FinalBlockId segment number " +
-                 data.getMetaInfo().getFinalBlockId().toEscapedString() + ": " + ex);
-            } catch (Throwable exception) {
-              logger_.log(Level.SEVERE, "Error in onError", exception);
-            }
+            reportError
+              (ErrorCode.DATA_HAS_NO_SEGMENT,
+               "Error decoding the FinalBlockId segment number " +
+               data.getMetaInfo().getFinalBlockId().toEscapedString() + ": " + ex);
             return;
           }
 
@@ -399,23 +747,394 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
   public void
   onDataValidationFailed(Data data, String reason)
   {
-    try {
-      onError_.onError
-        (ErrorCode.SEGMENT_VERIFICATION_FAILED,
-         "Segment verification failed for " + data.getName().toUri() +
-         " . Reason: " + reason);
-    } catch (Throwable ex) {
-      logger_.log(Level.SEVERE, "Error in onError", ex);
-    }
+    reportError
+      (ErrorCode.SEGMENT_VERIFICATION_FAILED,
+       "Segment verification failed for " + data.getName().toUri() +
+       " . Reason: " + reason);
   }
 
   public void
   onTimeout(Interest interest)
   {
-    try {
-      onError_.onError
+    if (isStopped_)
+      return;
+    if (options_ != null) {
+      onTimeoutPipelined(interest);
+      return;
+    }
+
+    reportError
+      (ErrorCode.INTEREST_TIMEOUT,
+       "Time out for interest " + interest.getName().toUri());
+  }
+
+  /**
+   * SegmentState holds the state of a segment which has been requested but not
+   * received in the pipelined mode.
+   */
+  private static class SegmentState {
+    public SegmentState(long segment)
+    {
+      segment_ = segment;
+    }
+
+    public final long segment_;
+    public double sendTime_ = 0;
+    public int nRetries_ = 0;
+    public boolean isInFlight_ = false;
+  }
+
+  /**
+   * RttEstimator computes the retransmission timeout from round-trip time
+   * measurements as in RFC 6298.
+   */
+  private static class RttEstimator {
+    public RttEstimator(Options options)
+    {
+      options_ = options;
+      rto_ = options.getInitialRtoMilliseconds();
+    }
+
+    /**
+     * Update the estimate with a round-trip time measurement.
+     * @param rtt The round-trip time in milliseconds.
+     */
+    public final void
+    addMeasurement(double rtt)
+    {
+      if (!hasMeasurement_) {
+        smoothedRtt_ = rtt;
+        rttVariation_ = rtt / 2;
+        hasMeasurement_ = true;
+      }
+      else {
+        rttVariation_ = 0.75 * rttVariation_ + 0.25 * Math.abs(smoothedRtt_ - rtt);
+        smoothedRtt_ = 0.875 * smoothedRtt_ + 0.125 * rtt;
+      }
+
+      rto_ = clamp(smoothedRtt_ + 4 * rttVariation_);
+    }
+
+    /**
+     * Get the smoothed round-trip time.
+     * @return The smoothed round-trip time in milliseconds, or 0 if there is
+     * no measurement yet.
+     */
+    public final double
+    getSmoothedRtt() { return smoothedRtt_; }
+
+    /**
+     * Double the retransmission timeout after a timeout.
+     */
+    public final void
+    backoff() { rto_ = clamp(rto_ * 2); }
+
+    /**
+     * Get the retransmission timeout.
+     * @return The retransmission timeout in milliseconds.
+     */
+    public final double
+    getRto() { return rto_; }
+
+    private double
+    clamp(double rto)
+    {
+      return Math.max(options_.getMinRtoMilliseconds(),
+                      Math.min(options_.getMaxRtoMilliseconds(), rto));
+    }
+
+    private final Options options_;
+    private boolean hasMeasurement_ = false;
+    private double smoothedRtt_ = 0;
+    private double rttVariation_ = 0;
+    private double rto_;
+  }
+
+  /**
+   * In the pipelined mode, process the arrival of a Data packet for the
+   * Interest: update the round-trip time estimate and increase the window.
+   * @param originalInterest The Interest given to expressInterest.
+   */
+  private void
+  onSegmentArrived(Interest originalInterest)
+  {
+    double now = options_.getClock().getNowMilliseconds();
+    if (versionedPrefix_ == null) {
+      // This is the Data for the first Interest, which also starts slow start.
+      if (nFirstInterestRetries_ == 0)
+        rttEstimator_.addMeasurement(now - firstInterestSendTime_);
+      increaseWindow(now);
+      return;
+    }
+
+    SegmentState state = getSegmentState(originalInterest);
+    if (state == null)
+      // A segment which was already received.
+      return;
+
+    state.isInFlight_ = false;
+    --nInFlight_;
+    segments_.remove(state.segment_);
+    // Don't measure the round-trip time of a retransmitted Interest since we
+    // don't know which Interest the Data answers.
+    if (state.nRetries_ == 0)
+      rttEstimator_.addMeasurement(now - state.sendTime_);
+
+    increaseWindow(now);
+  }
+
+  /**
+   * In the pipelined mode, increase the window for one received segment.
+   * @param now The current time in milliseconds.
+   */
+  private void
+  increaseWindow(double now)
+  {
+    if (windowSize_ < slowStartThreshold_)
+      windowSize_ += options_.getAdditiveIncrease();
+    else if (options_.getUseCubic()) {
+      // This follows RFC 8312 with the times in seconds.
+      if (cubicEpochStart_ < 0) {
+        // Start a new epoch of congestion avoidance.
+        cubicEpochStart_ = now;
+        renoWindowEstimate_ = windowSize_;
+        if (windowSize_ < maxWindowBeforeDecrease_) {
+          cubicK_ = Math.cbrt
+            ((maxWindowBeforeDecrease_ - windowSize_) / CUBIC_C);
+          cubicOriginWindow_ = maxWindowBeforeDecrease_;
+        }
+        else {
+          cubicK_ = 0;
+          cubicOriginWindow_ = windowSize_;
+        }
+      }
+
+      // The window that AIMD with the same average throughput would reach,
+      // so that CUBIC never grows slower than standard TCP.
+      double beta = options_.getCubicBeta();
+      renoWindowEstimate_ += 3 * (1 - beta) / (1 + beta) / windowSize_;
+
+      double t = (now - cubicEpochStart_ + rttEstimator_.getSmoothedRtt()) /
+        1000.0;
+      double target = cubicOriginWindow_ + CUBIC_C * Math.pow(t - cubicK_, 3);
+      if (target < renoWindowEstimate_)
+        // The TCP-friendly region.
+        windowSize_ = Math.max(windowSize_, renoWindowEstimate_);
+      else if (target > windowSize_)
+        windowSize_ += (target - windowSize_) / windowSize_;
+    }
+    else
+      windowSize_ += options_.getAdditiveIncrease() / windowSize_;
+
+    windowSize_ = Math.min(windowSize_, options_.getMaxWindowSize());
+  }
+
+  /**
+   * In the pipelined mode, save the content of the verified Data packet. If all
+   * segments are received, call onComplete. Otherwise send more Interests.
+   * @param data The verified Data packet.
+   * @param segment The segment number of the Data packet.
+   */
+  private void
+  onVerifiedPipelined(Data data, long segment)
+  {
+    if (versionedPrefix_ == null)
+      // This is the Data for the first Interest.
+      versionedPrefix_ = data.getName().getPrefix(-1);
+
+    if (finalSegment_ < 0 &&
+        data.getMetaInfo().getFinalBlockId().getValue().size() > 0) {
+      try {
+        finalSegment_ = data.getMetaInfo().getFinalBlockId().toSegment();
+      }
+      catch (EncodingException ex) {
+        reportError
+          (ErrorCode.DATA_HAS_NO_SEGMENT,
+           "Error decoding the FinalBlockId segment number " +
+           data.getMetaInfo().getFinalBlockId().toEscapedString() + ": " + ex);
+        return;
+      }
+
+      // Discard segments past the end which we fetched before knowing it.
+      Iterator<Long> iterator = receivedSegments_.keySet().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next() > finalSegment_)
+          iterator.remove();
+      }
+    }
+
+    if (finalSegment_ < 0 || segment <= finalSegment_)
+      receivedSegments_.put(segment, data.getContent());
+
+    if (finalSegment_ >= 0 && receivedSegments_.size() == finalSegment_ + 1) {
+      // We are finished. Get the total size and concatenate in order.
+      isStopped_ = true;
+      int totalSize = 0;
+      for (long i = 0; i <= finalSegment_; ++i)
+        totalSize += receivedSegments_.get(i).size();
+      ByteBuffer content = ByteBuffer.allocate(totalSize);
+      for (long i = 0; i <= finalSegment_; ++i)
+        content.put(receivedSegments_.get(i).buf());
+      content.flip();
+
+      try {
+        onComplete_.onComplete(new Blob(content, false));
+      } catch (Throwable ex) {
+        logger_.log(Level.SEVERE, "Error in onComplete", ex);
+      }
+      return;
+    }
+
+    sendInterests();
+  }
+
+  /**
+   * In the pipelined mode, process the timeout of an Interest: decrease the
+   * window if this is the first timeout since the last decrease, and request
+   * the segment again.
+   * @param interest The Interest which timed out.
+   */
+  private void
+  onTimeoutPipelined(Interest interest)
+  {
+    if (versionedPrefix_ == null) {
+      // The first Interest timed out.
+      if (++nFirstInterestRetries_ > options_.getMaxRetries())
+        reportError
+          (ErrorCode.INTEREST_TIMEOUT,
+           "Time out for interest " + interest.getName().toUri());
+      else
+        fetchFirstSegment(baseInterest_);
+      return;
+    }
+
+    SegmentState state = getSegmentState(interest);
+    if (state == null)
+      return;
+    state.isInFlight_ = false;
+    --nInFlight_;
+
+    if (finalSegment_ >= 0 && state.segment_ > finalSegment_) {
+      // We don't need a segment past the end.
+      segments_.remove(state.segment_);
+      sendInterests();
+      return;
+    }
+
+    if (++state.nRetries_ > options_.getMaxRetries()) {
+      reportError
         (ErrorCode.INTEREST_TIMEOUT,
          "Time out for interest " + interest.getName().toUri());
+      return;
+    }
+
+    rttEstimator_.backoff();
+    // Only decrease once for the Interests which were sent before the last
+    // decrease, since they were sent with the larger window.
+    if (state.sendTime_ > lastDecreaseTime_) {
+      if (options_.getUseCubic()) {
+        maxWindowBeforeDecrease_ = windowSize_;
+        cubicEpochStart_ = -1;
+        slowStartThreshold_ = Math.max
+          (MIN_SLOW_START_THRESHOLD, windowSize_ * options_.getCubicBeta());
+      }
+      else
+        slowStartThreshold_ = Math.max
+          (MIN_SLOW_START_THRESHOLD,
+           windowSize_ * options_.getMultiplicativeDecrease());
+      windowSize_ = slowStartThreshold_;
+      lastDecreaseTime_ = options_.getClock().getNowMilliseconds();
+    }
+
+    retransmitQueue_.add(state);
+    sendInterests();
+  }
+
+  /**
+   * In the pipelined mode, send Interests for retransmitted and new segments
+   * while the number of Interests in flight is less than the window size.
+   */
+  private void
+  sendInterests()
+  {
+    while (!isStopped_ && nInFlight_ < Math.max(1, (int)windowSize_)) {
+      SegmentState state;
+      if (!retransmitQueue_.isEmpty()) {
+        state = retransmitQueue_.poll();
+        if (finalSegment_ >= 0 && state.segment_ > finalSegment_) {
+          // We learned the final segment after queuing the retransmission.
+          segments_.remove(state.segment_);
+          continue;
+        }
+      }
+      else {
+        if (finalSegment_ >= 0 && nextSegment_ > finalSegment_)
+          // There are no more segments to request.
+          return;
+        long segment = nextSegment_++;
+        if (receivedSegments_.containsKey(segment))
+          // We already have the segment from the first Interest.
+          continue;
+        state = new SegmentState(segment);
+        segments_.put(segment, state);
+      }
+
+      // Start with the base Interest to preserve any special selectors.
+      Interest interest = new Interest(baseInterest_);
+      interest.setChildSelector(0);
+      interest.setMustBeFresh(false);
+      interest.setName(new Name(versionedPrefix_).appendSegment(state.segment_));
+      interest.setInterestLifetimeMilliseconds(rttEstimator_.getRto());
+      state.sendTime_ = options_.getClock().getNowMilliseconds();
+      state.isInFlight_ = true;
+      ++nInFlight_;
+      try {
+        face_.expressInterest(interest, this, this);
+      } catch (IOException ex) {
+        reportError
+          (ErrorCode.IO_ERROR, "I/O error fetching segment " + state.segment_ +
+           " " + ex);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Get the SegmentState for the segment requested by the Interest.
+   * @param interest The Interest given to expressInterest.
+   * @return The SegmentState, or null if the Interest is not for a segment or
+   * the segment is not in flight.
+   */
+  private SegmentState
+  getSegmentState(Interest interest)
+  {
+    if (versionedPrefix_ == null || !endsWithSegmentNumber(interest.getName()))
+      return null;
+    long segment;
+    try {
+      segment = interest.getName().get(-1).toSegment();
+    } catch (EncodingException ex) {
+      return null;
+    }
+
+    SegmentState state = segments_.get(segment);
+    if (state == null || !state.isInFlight_)
+      return null;
+    return state;
+  }
+
+  /**
+   * Stop fetching and call onError.onError(errorCode, message), logging any
+   * exception it throws.
+   * @param errorCode The error code.
+   * @param message The error message.
+   */
+  private void
+  reportError(ErrorCode errorCode, String message)
+  {
+    isStopped_ = true;
+    try {
+      onError_.onError(errorCode, message);
     } catch (Throwable ex) {
       logger_.log(Level.SEVERE, "Error in onError", ex);
     }
@@ -439,5 +1158,36 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
   private final VerifySegment verifySegment_;
   private final OnComplete onComplete_;
   private final OnError onError_;
+  private boolean isStopped_ = false;
+
+  // These are for the pipelined mode.
+  private final Options options_;
+  private final RttEstimator rttEstimator_;
+  private Interest baseInterest_ = null;
+  private Name versionedPrefix_ = null;
+  private long finalSegment_ = -1;
+  private long nextSegment_ = 0;
+  private int nInFlight_ = 0;
+  private int nFirstInterestRetries_ = 0;
+  private double windowSize_ = 0;
+  private double slowStartThreshold_ = 0;
+  private double maxWindowBeforeDecrease_ = 0;
+  private double lastDecreaseTime_ = 0;
+  private double firstInterestSendTime_ = 0;
+  // These are for CUBIC. cubicEpochStart_ is -1 until congestion avoidance
+  // starts after a decrease.
+  private double cubicEpochStart_ = -1;
+  private double cubicK_ = 0;
+  private double cubicOriginWindow_ = 0;
+  private double renoWindowEstimate_ = 0;
+  // The key is the segment number of a requested segment not yet received.
+  private final HashMap<Long, SegmentState> segments_ =
+    new HashMap<Long, SegmentState>();
+  private final HashMap<Long, Blob> receivedSegments_ =
+    new HashMap<Long, Blob>();
+  private final ArrayDeque<SegmentState> retransmitQueue_ =
+    new ArrayDeque<SegmentState>();
+  private static final double CUBIC_C = 0.4;
+  private static final double MIN_SLOW_START_THRESHOLD = 2.0;
   private static final Logger logger_ = Logger.getLogger(SegmentFetcher.class.getName());
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A SlabStorage stores byte buffers outside of the Java heap, either in direct
+ * ByteBuffer slabs or in slabs of a memory-mapped file. Each stored buffer is
+ * identified by its position in the storage and its size, so that the caller
+ * only needs to keep these numbers instead of a heap object. Stored buffers are
+ * appended to the current slab, and a slab is reused when all of its stored
+ * buffers are freed. (A slab is not compacted, so a long-lived buffer keeps its
+ * slab in use.)
+ * This is used by MemoryContentCache.setStorage. A SlabStorage is not
+ * thread-safe.
+ */
+public class SlabStorage {
+  /**
+   * Create a SlabStorage which allocates each slab as a direct ByteBuffer.
+   * @param slabSize The size of each slab in bytes. This is the maximum size of
+   * a stored buffer.
+   */
+  public SlabStorage(int slabSize)
+  {
+    slabSize_ = slabSize;
+    channel_ = null;
+  }
+
+  /**
+   * Create a SlabStorage which allocates each slab as a region of the file,
+   * mapped into memory. This replaces the contents of the file. The file only
+   * holds data while this is used, so it should be a temporary file.
+   * @param slabSize The size of each slab in bytes. This is the maximum size of
+   * a stored buffer.
+   * @param file The file for the memory-mapped slabs.
+   * @throws IOException For an error opening the file.
+   */
+  public SlabStorage(int slabSize, File file) throws IOException
+  {
+    slabSize_ = slabSize;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    randomAccessFile.setLength(0);
+    channel_ = randomAccessFile.getChannel();
+  }
+
+  /**
+   * Copy the buffer into the storage.
+   * @param buffer The buffer to store, from its position to limit. This does
+   * not change the buffer's position.
+   * @return The position of the stored buffer, to use in get() and free(), or
+   * -1 if the buffer is empty or larger than the slab size. (An empty buffer
+   * is not stored since it would not use any of its slab, so freeing it could
+   * add the slab to the free slabs a second time.)
+   * @throws IOException For an error mapping a new slab of the file.
+   */
+  public final long
+  store(ByteBuffer buffer) throws IOException
+  {
+    int size = buffer.remaining();
+    if (size == 0 || size > slabSize_)
+      return -1;
+
+    if (currentSlab_ < 0 || slabSize_ - slabOffset_ < size) {
+      // Start a new slab. Use a slab with no stored buffers if there is one.
+      Integer freeSlab = freeSlabs_.poll();
+      if (freeSlab != null)
+        currentSlab_ = freeSlab;
+      else {
+        ByteBuffer slab;
+        if (channel_ != null)
+          slab = channel_.map
+            (FileChannel.MapMode.READ_WRITE, (long)slabs_.size() * slabSize_,
+             slabSize_);
+        else
+          slab = ByteBuffer.allocateDirect(slabSize_);
+        slabs_.add(slab);
+        slabUsedSizes_.add(0);
+        currentSlab_ = slabs_.size() - 1;
+      }
+      slabOffset_ = 0;
+    }
+
+    ByteBuffer slab = slabs_.get(currentSlab_).duplicate();
+    slab.position(slabOffset_);
+    slab.put(buffer.duplicate());
+    long position = (long)currentSlab_ * slabSize_ + slabOffset_;
+    slabOffset_ += size;
+    slabUsedSizes_.set(currentSlab_, slabUsedSizes_.get(currentSlab_) + size);
+    usedSize_ += size;
+
+    return position;
+  }
+
+  /**
+   * Get a read-only buffer for the stored bytes. This does not copy the bytes.
+   * @param position The position returned by store().
+   * @param size The size of the stored buffer.
+   * @return A new read-only ByteBuffer of the stored bytes, which is only valid
+   * until free(position, size) is called.
+   */
+  public final ByteBuffer
+  get(long position, int size)
+  {
+    ByteBuffer result = slabs_.get((int)(position / slabSize_))
+      .asReadOnlyBuffer();
+    int offset = (int)(position % slabSize_);
+    result.limit(offset + size);
+    result.position(offset);
+    return result;
+  }
+
+  /**
+   * Free the stored buffer. When all of the stored buffers in a slab are
+   * freed, the slab is reused.
+   * @param position The position returned by store(), which must not be -1.
+   * @param size The size of the stored buffer, which is greater than 0.
+   */
+  public final void
+  free(long position, int size)
+  {
+    int slabIndex = (int)(position / slabSize_);
+    int slabUsedSize = slabUsedSizes_.get(slabIndex) - size;
+    slabUsedSizes_.set(slabIndex, slabUsedSize);
+    usedSize_ -= size;
+
+    if (slabUsedSize == 0) {
+      if (slabIndex == currentSlab_)
+        // Just start over at the beginning of the current slab.
+        slabOffset_ = 0;
+      else
+        freeSlabs_.add(slabIndex);
+    }
+  }
+
+  /**
+   * Get the total size of the stored buffers which have not been freed.
+   * @return The size in bytes.
+   */
+  public final long
+  getUsedSize() { return usedSize_; }
+
+  /**
+   * Get the total size of the allocated slabs.
+   * @return The size in bytes.
+   */
+  public final long
+  getAllocatedSize() { return (long)slabs_.size() * slabSize_; }
+
+  /**
+   * Close the file of a memory-mapped SlabStorage. (The memory mappings remain
+   * until they are garbage collected.) After this, you should not use this
+   * SlabStorage.
+   * @throws IOException For an error closing the file.
+   */
+  public final void
+  close() throws IOException
+  {
+    if (channel_ != null)
+      channel_.close();
+  }
+
+  private final int slabSize_;
+  private final FileChannel channel_;
+  private final ArrayList<ByteBuffer> slabs_ = new ArrayList<ByteBuffer>();
+  private final ArrayList<Integer> slabUsedSizes_ = new ArrayList<Integer>();
+  private final ArrayDeque<Integer> freeSlabs_ = new ArrayDeque<Integer>();
+  private int currentSlab_ = -1;
+  private int slabOffset_ = 0;
+  private long usedSize_ = 0;
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A StubTransport is a Transport for unit tests which doesn't use the network.
+ * connect calls onConnected right away and keeps the ElementListener so that
+ * the test can supply received packets with receive. send keeps a copy of
+ * each sent packet, or keeps the buffer itself like a transport which queues
+ * it. The methods can be called from any thread.
+ */
+public class StubTransport extends Transport {
+  /**
+   * Create a StubTransport where send keeps a copy of each sent packet.
+   */
+  public StubTransport()
+  {
+    this(false);
+  }
+
+  /**
+   * Create a StubTransport.
+   * @param isSendRetainingBuffer If true, send keeps the given buffer without
+   * copying (and isSendRetainingBuffer() returns true), so that getSentPackets
+   * shows if the caller changed the bytes after send. If false, send keeps a
+   * copy.
+   */
+  public StubTransport(boolean isSendRetainingBuffer)
+  {
+    isSendRetainingBuffer_ = isSendRetainingBuffer;
+  }
+
+  public boolean
+  isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+  public boolean
+  isAsync() { return false; }
+
+  public boolean
+  isSendRetainingBuffer() { return isSendRetainingBuffer_; }
+
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     Runnable onConnected)
+  {
+    elementListener_ = elementListener;
+    if (onConnected != null)
+      onConnected.run();
+  }
+
+  public void
+  send(ByteBuffer data)
+  {
+    Blob packet = new Blob(data, !isSendRetainingBuffer_);
+    synchronized (sentPackets_) {
+      sentPackets_.add(packet);
+    }
+  }
+
+  public void
+  processEvents() { nProcessEvents_.incrementAndGet(); }
+
+  public boolean
+  getIsConnected() { return elementListener_ != null; }
+
+  /**
+   * Call onReceivedElement of the ElementListener given to connect, as if the
+   * element were received from the network.
+   * @param element The received element.
+   * @throws EncodingException For error decoding the element.
+   */
+  public final void
+  receive(ByteBuffer element) throws EncodingException
+  {
+    elementListener_.onReceivedElement(element);
+  }
+
+  /**
+   * Get the number of packets given to send.
+   * @return The number of sent packets.
+   */
+  public final int
+  getSentCount()
+  {
+    synchronized (sentPackets_) {
+      return sentPackets_.size();
+    }
+  }
+
+  /**
+   * Get a copy of the list of packets given to send.
+   * @return A new list of the sent packets.
+   */
+  public final ArrayList<Blob>
+  getSentPackets()
+  {
+    synchronized (sentPackets_) {
+      return new ArrayList<Blob>(sentPackets_);
+    }
+  }
+
+  /**
+   * Get the number of calls to processEvents.
+   * @return The number of calls.
+   */
+  public final int
+  getProcessEventsCount() { return nProcessEvents_.get(); }
+
+  private final boolean isSendRetainingBuffer_;
+  private volatile ElementListener elementListener_ = null;
+  private final ArrayList<Blob> sentPackets_ = new ArrayList<Blob>();
+  private final AtomicInteger nProcessEvents_ = new AtomicInteger();
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.transport.AsyncTcpTransport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncTcpTransport {
+  private static class NullElementListener implements ElementListener {
+    public void
+    onReceivedElement(ByteBuffer element) {}
+  }
+
+  private static class WatermarkCounter
+    implements AsyncTcpTransport.OnHighWatermark,
+      AsyncTcpTransport.OnLowWatermark {
+    public void
+    onHighWatermark(AsyncTcpTransport transport, long queuedBytes)
+    {
+      nHigh_.incrementAndGet();
+    }
+
+    public void
+    onLowWatermark(AsyncTcpTransport transport, long queuedBytes)
+    {
+      nLow_.incrementAndGet();
+    }
+
+    public final AtomicInteger nHigh_ = new AtomicInteger();
+    public final AtomicInteger nLow_ = new AtomicInteger();
+  }
+
+  // Each packet has the sender number, the sequence number and padding.
+  private static final int PACKET_SIZE = 16;
+
+  ScheduledExecutorService threadPool_;
+  ServerSocketChannel server_;
+  SocketChannel peer_;
+  AsyncTcpTransport transport_;
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    server_ = ServerSocketChannel.open();
+    server_.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)server_.getLocalAddress()).getPort();
+
+    threadPool_ = Executors.newScheduledThreadPool(2);
+    transport_ = new AsyncTcpTransport(threadPool_);
+    final CountDownLatch connected = new CountDownLatch(1);
+    transport_.connect
+      (new AsyncTcpTransport.ConnectionInfo("127.0.0.1", port, false),
+       new NullElementListener(),
+       new Runnable() {
+         public void run() { connected.countDown(); }
+       });
+    peer_ = server_.accept();
+    assertTrue(connected.await(5, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    transport_.close();
+    threadPool_.shutdown();
+    threadPool_.awaitTermination(5, TimeUnit.SECONDS);
+    peer_.close();
+    server_.close();
+  }
+
+  private static ByteBuffer
+  makePacket(int sender, int sequenceNo)
+  {
+    ByteBuffer packet = ByteBuffer.allocate(PACKET_SIZE);
+    packet.putInt(sender);
+    packet.putInt(sequenceNo);
+    packet.position(0);
+    return packet;
+  }
+
+  /**
+   * Read from peer_ into a new buffer until it has nBytes.
+   */
+  private ByteBuffer
+  readFromPeer(int nBytes) throws IOException
+  {
+    ByteBuffer input = ByteBuffer.allocate(nBytes);
+    while (input.hasRemaining()) {
+      if (peer_.read(input) < 0)
+        break;
+    }
+    input.flip();
+    return input;
+  }
+
+  @Test
+  public void
+  testWatermarks() throws Exception
+  {
+    final long lowWatermark = 64 * 1024;
+    final long highWatermark = 1024 * 1024;
+    WatermarkCounter counter = new WatermarkCounter();
+    transport_.setWriteWatermarks
+      (lowWatermark, highWatermark, counter, counter);
+
+    // The peer doesn't read, so the socket buffers fill and the queue grows.
+    ByteBuffer packet = ByteBuffer.allocate(8192);
+    long nSentBytes = 0;
+    while (counter.nHigh_.get() == 0 && nSentBytes < 512L * 1024 * 1024) {
+      transport_.send(packet);
+      nSentBytes += packet.remaining();
+    }
+    assertEquals("onHighWatermark was not called", 1, counter.nHigh_.get());
+    assertTrue(transport_.getQueuedBytes() >= highWatermark);
+
+    // Sending more while above the high watermark doesn't call it again.
+    for (int i = 0; i < 10; ++i) {
+      transport_.send(packet);
+      nSentBytes += packet.remaining();
+    }
+    assertEquals(1, counter.nHigh_.get());
+    assertEquals(0, counter.nLow_.get());
+
+    // Drain everything.
+    ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+    long nReadBytes = 0;
+    while (nReadBytes < nSentBytes) {
+      input.clear();
+      int nBytes = peer_.read(input);
+      if (nBytes < 0)
+        break;
+      nReadBytes += nBytes;
+    }
+    assertEquals(nSentBytes, nReadBytes);
+
+    for (int i = 0; i < 200 && counter.nLow_.get() == 0; ++i)
+      Thread.sleep(5);
+    assertEquals("onLowWatermark was not called", 1, counter.nLow_.get());
+    assertEquals(1, counter.nHigh_.get());
+    assertEquals(0, transport_.getQueuedBytes());
+  }
+
+  @Test
+  public void
+  testMoreThanMaxGatherBuffers() throws Exception
+  {
+    // Queue many more buffers than one gathering write can take while the
+    // peer is not reading.
+    int nPackets = AsyncTcpTransport.MAX_GATHER_BUFFERS * 5 + 3;
+    ByteBuffer filler = ByteBuffer.allocate(4 * 1024 * 1024);
+    transport_.send(filler);
+    for (int i = 0; i < nPackets; ++i)
+      transport_.send(makePacket(0, i));
+
+    ByteBuffer received = readFromPeer(filler.remaining());
+    assertEquals(filler.remaining(), received.remaining());
+    received = readFromPeer(nPackets * PACKET_SIZE);
+    assertEquals(nPackets * PACKET_SIZE, received.remaining());
+    for (int i = 0; i < nPackets; ++i) {
+      assertEquals(0, received.getInt(i * PACKET_SIZE));
+      assertEquals(i, received.getInt(i * PACKET_SIZE + 4));
+    }
+
+    for (int i = 0; i < 200 && transport_.getQueuedBytes() > 0; ++i)
+      Thread.sleep(5);
+    assertEquals(0, transport_.getQueuedBytes());
+  }
+
+  @Test
+  public void
+  testConcurrentSendOrder() throws Exception
+  {
+    final int nThreads = 8;
+    final int nPackets = 2000;
+    final AtomicInteger nErrors = new AtomicInteger();
+
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int sender = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < nPackets; ++i) {
+            try {
+              transport_.send(makePacket(sender, i));
+            } catch (IOException ex) {
+              nErrors.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+
+    ByteBuffer received = readFromPeer(nThreads * nPackets * PACKET_SIZE);
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+    assertEquals(0, nErrors.get());
+    assertEquals(nThreads * nPackets * PACKET_SIZE, received.remaining());
+
+    // The packets from different senders interleave, but the packets from
+    // each sender are in order.
+    int[] expectedSequenceNo = new int[nThreads];
+    while (received.hasRemaining()) {
+      int sender = received.getInt();
+      int sequenceNo = received.getInt();
+      received.position(received.position() + PACKET_SIZE - 8);
+      assertEquals(expectedSequenceNo[sender]++, sequenceNo);
+    }
+    for (int t = 0; t < nThreads; ++t)
+      assertEquals(nPackets, expectedSequenceNo[t]);
+  }
+
+  @Test
+  public void
+  testWriteThrows() throws Exception
+  {
+    // After the channel group is shut down, the channel throws
+    // ShutdownChannelGroupException when starting a write.
+    threadPool_.shutdown();
+
+    for (int i = 0; i < 2; ++i) {
+      // Each send must report the error, not only queue the packet.
+      try {
+        transport_.send(makePacket(0, i));
+        fail("send did not throw an IOException");
+      } catch (IOException ex) {}
+      assertEquals(0, transport_.getQueuedBytes());
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.transport.BatchUdpTransport;
+import net.named_data.jndn.transport.UdpTransport;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBatchUdpTransport {
+  private static class ElementCollector implements ElementListener {
+    public void
+    onReceivedElement(ByteBuffer element)
+    {
+      // The transport reuses the buffer, so copy.
+      elements_.add(new Blob(element, true));
+    }
+
+    public final ArrayList<Blob> elements_ = new ArrayList<Blob>();
+  }
+
+  DatagramChannel peer_;
+  BatchUdpTransport transport_;
+  ElementCollector collector_;
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    peer_ = DatagramChannel.open();
+    peer_.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)peer_.getLocalAddress()).getPort();
+
+    // Use a small batch size to test more than one batch.
+    transport_ = new BatchUdpTransport(4);
+    collector_ = new ElementCollector();
+    transport_.connect
+      (new UdpTransport.ConnectionInfo("127.0.0.1", port), collector_, null);
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    transport_.close();
+    peer_.close();
+  }
+
+  private static Blob
+  makeEncoding(int i)
+  {
+    Data data = new Data(new Name("/test/udp").appendSegment(i));
+    data.setContent(new Blob(new byte[100 + i]));
+    return data.wireEncode();
+  }
+
+  @Test
+  public void
+  testBatchSendAndReceive() throws Exception
+  {
+    ArrayList<ByteBuffer> encodings = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < 10; ++i)
+      encodings.add(makeEncoding(i).buf());
+    transport_.sendBatch(encodings);
+
+    // The peer receives each encoding as one datagram and echoes it back.
+    ByteBuffer buffer = ByteBuffer.allocate(8800);
+    SocketAddress transportAddress = null;
+    for (int i = 0; i < encodings.size(); ++i) {
+      buffer.clear();
+      transportAddress = peer_.receive(buffer);
+      buffer.flip();
+      assertTrue("Datagram " + i + " is not the encoding",
+                 new Blob(buffer, true).equals(new Blob(encodings.get(i), true)));
+      peer_.send(buffer, transportAddress);
+    }
+
+    for (int i = 0; i < 100 && collector_.elements_.size() < encodings.size();
+         ++i) {
+      transport_.processEvents();
+      Thread.sleep(5);
+    }
+
+    assertEquals(encodings.size(), collector_.elements_.size());
+    for (int i = 0; i < encodings.size(); ++i)
+      assertTrue(collector_.elements_.get(i).equals
+        (new Blob(encodings.get(i), true)));
+  }
+
+  @Test
+  public void
+  testDropInvalidDatagram() throws Exception
+  {
+    // Send one datagram so that the peer knows the transport address.
+    transport_.send(makeEncoding(0).buf());
+    ByteBuffer buffer = ByteBuffer.allocate(8800);
+    SocketAddress transportAddress = peer_.receive(buffer);
+
+    Blob encoding = makeEncoding(1);
+    // A truncated element.
+    ByteBuffer truncated = encoding.buf();
+    truncated.limit(truncated.limit() - 1);
+    peer_.send(truncated, transportAddress);
+    // Two elements in one datagram.
+    ByteBuffer two = ByteBuffer.allocate(2 * encoding.size());
+    two.put(encoding.buf());
+    two.put(encoding.buf());
+    two.flip();
+    peer_.send(two, transportAddress);
+    // A valid element. With the ElementReader, this would be merged with the
+    // truncated element.
+    peer_.send(encoding.buf(), transportAddress);
+
+    for (int i = 0; i < 100 && collector_.elements_.size() < 1; ++i) {
+      transport_.processEvents();
+      Thread.sleep(5);
+    }
+
+    assertEquals(1, collector_.elements_.size());
+    assertTrue(collector_.elements_.get(0).equals(encoding));
+    assertEquals(2, transport_.getDroppedCount());
+  }
+
+  @Test
+  public void
+  testConcurrentSend() throws Exception
+  {
+    // Two threads send heap buffers of different sizes through one transport.
+    final int nPackets = 2000;
+    final ByteBuffer[] encodings = new ByteBuffer[2];
+    for (int t = 0; t < 2; ++t) {
+      Data data = new Data(new Name("/test/udp").appendSegment(t));
+      data.setContent(new Blob(new byte[t == 0 ? 1000 : 600]));
+      Blob encoding = data.wireEncode();
+      encodings[t] = ByteBuffer.allocate(encoding.size());
+      encodings[t].put(encoding.buf());
+      encodings[t].flip();
+    }
+
+    final AtomicInteger nErrors = new AtomicInteger();
+    Thread[] threads = new Thread[2];
+    for (int t = 0; t < 2; ++t) {
+      final ByteBuffer encoding = encodings[t];
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < nPackets; ++i) {
+            try {
+              transport_.send(encoding);
+            } catch (Throwable ex) {
+              nErrors.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+
+    // UDP may drop datagrams, so receive until the senders are done and no
+    // more datagrams arrive. Each received datagram must be one of the
+    // encodings.
+    peer_.configureBlocking(false);
+    ByteBuffer buffer = ByteBuffer.allocate(8800);
+    int nReceived = 0;
+    long lastReceiveTime = System.currentTimeMillis();
+    while (System.currentTimeMillis() - lastReceiveTime < 200) {
+      buffer.clear();
+      if (peer_.receive(buffer) == null) {
+        Thread.sleep(1);
+        continue;
+      }
+
+      lastReceiveTime = System.currentTimeMillis();
+      buffer.flip();
+      Blob datagram = new Blob(buffer, true);
+      assertTrue("Received a corrupted datagram",
+                 datagram.equals(new Blob(encodings[0], true)) ||
+                 datagram.equals(new Blob(encodings[1], true)));
+      ++nReceived;
+    }
+
+    for (int t = 0; t < 2; ++t)
+      threads[t].join();
+    assertEquals(0, nErrors.get());
+    assertTrue(nReceived > 0);
+  }
+}
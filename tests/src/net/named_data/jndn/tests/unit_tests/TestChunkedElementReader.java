@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ChunkedElementReader;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestChunkedElementReader {
+  private static class ElementCollector implements ElementListener {
+    public void
+    onReceivedElement(ByteBuffer element)
+    {
+      // Keep the element without copying.
+      elements_.add(new Blob(element, false));
+    }
+
+    public final ArrayList<Blob> elements_ = new ArrayList<Blob>();
+  }
+
+  @Test
+  public void
+  testSplitReads() throws EncodingException
+  {
+    // Make enough packets to fill more than one chunk.
+    ArrayList<Blob> encodings = new ArrayList<Blob>();
+    ByteBuffer stream = ByteBuffer.allocate(200000);
+    for (int i = 0; i < 100; ++i) {
+      Data data = new Data(new Name("/test/chunked").appendSegment(i));
+      data.setContent(new Blob(new byte[1000 + i]));
+      Blob encoding = data.wireEncode();
+      encodings.add(encoding);
+      stream.put(encoding.buf());
+    }
+    stream.flip();
+
+    ElementCollector collector = new ElementCollector();
+    ChunkedElementReader reader = new ChunkedElementReader(collector, 0);
+    // Simulate reads of an odd size which split the elements.
+    while (stream.hasRemaining()) {
+      ByteBuffer readBuffer = reader.getReadBuffer();
+      int readSize = Math.min
+        (Math.min(777, stream.remaining()), readBuffer.remaining());
+      ByteBuffer read = stream.duplicate();
+      read.limit(read.position() + readSize);
+      readBuffer.put(read);
+      stream.position(stream.position() + readSize);
+
+      reader.onReceivedData();
+    }
+
+    // Check the elements after all reads to make sure they were not changed.
+    assertEquals(encodings.size(), collector.elements_.size());
+    for (int i = 0; i < encodings.size(); ++i)
+      assertTrue("Element " + i + " is not the same as the encoding",
+                 encodings.get(i).equals(collector.elements_.get(i)));
+  }
+}
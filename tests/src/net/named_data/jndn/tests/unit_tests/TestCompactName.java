@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import net.named_data.jndn.CompactName;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestCompactName {
+  private static final String[] URIS = new String[] {
+    "/", "/a", "/a/b", "/a/b/cc", "/a/b/d", "/bb", "/c", "/c/a",
+    "/a/%00%01%02", "/a/b/sha256digest=" +
+      "28bad4b5275bd392dbb670c75cf0b66f13f7942b21e80f55c0e86b374753a548"
+  };
+
+  @Test
+  public void
+  testEncodeDecode() throws EncodingException
+  {
+    for (int i = 0; i < URIS.length; ++i) {
+      Name name = new Name(URIS[i]);
+      CompactName compactName = new CompactName(name);
+      assertEquals(name.size(), compactName.size());
+      assertTrue(compactName.wireEncode().equals(name.wireEncode()));
+      assertEquals(name, compactName.toName());
+      for (int j = 0; j < name.size(); ++j)
+        assertTrue(name.get(j).equals(compactName.get(j)));
+      assertEquals(name.toUri(), compactName.toString());
+
+      CompactName decoded = new CompactName(name.wireEncode().buf());
+      assertTrue(decoded.equals(compactName));
+      assertEquals(compactName.hashCode(), decoded.hashCode());
+    }
+  }
+
+  @Test
+  public void
+  testCompareAndMatch()
+  {
+    for (int i = 0; i < URIS.length; ++i) {
+      Name name1 = new Name(URIS[i]);
+      CompactName compactName1 = new CompactName(name1);
+      for (int j = 0; j < URIS.length; ++j) {
+        Name name2 = new Name(URIS[j]);
+        CompactName compactName2 = new CompactName(name2);
+        assertEquals(URIS[i] + " compare " + URIS[j],
+          name1.compare(name2), compactName1.compare(compactName2));
+        assertEquals(URIS[i] + " match " + URIS[j],
+          name1.match(name2), compactName1.match(compactName2));
+        assertEquals(name1.equals(name2), compactName1.equals(compactName2));
+      }
+    }
+  }
+
+  @Test
+  public void
+  testGetPrefix()
+  {
+    CompactName compactName = new CompactName(new Name("/a/b/cc/d"));
+    CompactName prefix = compactName.getPrefix(2);
+    assertTrue(prefix.equals(new CompactName(new Name("/a/b"))));
+    assertTrue(prefix.wireEncode().equals(new Name("/a/b").wireEncode()));
+    assertTrue(prefix.isPrefixOf(compactName));
+    assertFalse(compactName.isPrefixOf(prefix));
+    assertTrue(compactName.getPrefix(-1).equals
+      (new CompactName(new Name("/a/b/cc"))));
+    assertEquals(0, compactName.getPrefix(0).size());
+  }
+
+  @Test
+  public void
+  testCachedEncoding()
+  {
+    Name name = new Name("/a/b");
+    Blob encoding = name.wireEncode();
+    assertTrue(name.getDefaultWireEncoding() == encoding);
+    assertTrue(new Name(name).getDefaultWireEncoding() == encoding);
+
+    // Changing the name clears the cached encoding.
+    name.append("c");
+    assertTrue(name.getDefaultWireEncoding().isNull());
+
+    // A Name from a CompactName has the cached encoding, and the packet
+    // encoding with the cached name encoding is the same.
+    Name fromCompactName = new CompactName(new Name("/a/b/c")).toName();
+    assertFalse(fromCompactName.getDefaultWireEncoding().isNull());
+    Interest interest1 = new Interest(fromCompactName);
+    interest1.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    Interest interest2 = new Interest(new Name("/a/b/c"));
+    interest2.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    int[] beginOffset1 = new int[1];
+    int[] endOffset1 = new int[1];
+    int[] beginOffset2 = new int[1];
+    int[] endOffset2 = new int[1];
+    assertTrue(TlvWireFormat.get().encodeInterest
+      (interest1, beginOffset1, endOffset1).equals
+      (TlvWireFormat.get().encodeInterest
+       (interest2, beginOffset2, endOffset2)));
+    assertEquals(beginOffset2[0], beginOffset1[0]);
+    assertEquals(endOffset2[0], endOffset1[0]);
+
+    Data data1 = new Data(fromCompactName);
+    Data data2 = new Data(new Name("/a/b/c"));
+    assertTrue(data1.wireEncode().equals(data2.wireEncode()));
+    assertTrue(new Blob(data1.wireEncode().signedBuf(), false).equals
+      (new Blob(data2.wireEncode().signedBuf(), false)));
+  }
+}
@@ -20,6 +20,7 @@
 
 package net.named_data.jndn.tests.unit_tests;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +33,8 @@ import net.named_data.jndn.KeyLocatorType;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.Sha256WithRsaSignature;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.Tlv0_2WireFormat;
+import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.KeyType;
 import net.named_data.jndn.security.OnVerified;
@@ -43,10 +46,12 @@ import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
 import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
+import net.named_data.jndn.util.SignedBlob;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
@@ -472,6 +477,99 @@ public class TestDataMethods {
                  initialDump.toArray(), dumpData(reDecodedData).toArray());
   }
 
+  @Test
+  public void
+  testEncodeToBuffer() throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecode(codedData);
+    Tlv0_2WireFormat wireFormat = Tlv0_2WireFormat.get();
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    Blob encoding = wireFormat.encodeData
+      (data, signedPortionBeginOffset, signedPortionEndOffset);
+    // The test vector has extra bytes after the TLV element.
+    ByteBuffer expected = codedData.duplicate();
+    expected.limit(encoding.size());
+    assertTrue("The exact-length encoding does not match the original",
+               encoding.equals(new Blob(expected, true)));
+
+    // Encode into a direct buffer after some existing bytes.
+    ByteBuffer output = ByteBuffer.allocateDirect(encoding.size() + 10);
+    output.position(3);
+    int[] bufferBeginOffset = new int[1];
+    int[] bufferEndOffset = new int[1];
+    int length = wireFormat.encodeData
+      (data, output, bufferBeginOffset, bufferEndOffset);
+    assertEquals(encoding.size(), length);
+    assertEquals(3 + length, output.position());
+    output.flip();
+    output.position(3);
+    assertTrue("The buffer encoding does not match",
+               encoding.equals(new Blob(output, true)));
+    assertEquals(signedPortionBeginOffset[0], bufferBeginOffset[0]);
+    assertEquals(signedPortionEndOffset[0], bufferEndOffset[0]);
+
+    assertTrue("The thread buffer encoding does not match",
+               encoding.equals(new Blob
+                 (wireFormat.encodeDataToThreadBuffer(data, true), true)));
+    assertTrue("The thread buffer encoding does not match",
+               encoding.equals(new Blob
+                 (wireFormat.encodeDataToThreadBuffer(data, false), true)));
+
+    // A buffer which is too small is not changed.
+    output = ByteBuffer.allocate(encoding.size() - 1);
+    try {
+      wireFormat.encodeData(data, output, bufferBeginOffset, bufferEndOffset);
+      fail("Expected BufferOverflowException");
+    } catch (BufferOverflowException ex) {}
+    assertEquals(0, output.position());
+  }
+
+  @Test
+  public void
+  testWireDecodeLazy() throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecodeLazy
+      (new Blob(codedData, false), WireFormat.getDefaultWireFormat());
+    assertEquals(new Name("/ndn/abc"), data.getName());
+    // The full name only needs the wire encoding.
+    assertEquals
+      ("/ndn/abc/sha256digest=" +
+         "96556d685dcb1af04be4ae57f0e7223457d4055ea9b3d07c0d337bef4a8b3ee9",
+       data.getFullName().toUri());
+
+    // The other fields are decoded when used.
+    assertArrayEquals("Lazily decoded data does not match original dump",
+                      initialDump.toArray(), dumpData(data).toArray());
+    // Decoding the fields doesn't change the wire encoding.
+    ByteBuffer expected = codedData.duplicate();
+    expected.limit(data.wireEncode().size());
+    assertTrue(data.wireEncode().equals(new Blob(expected, true)));
+
+    // Changing the name before the fields are decoded keeps the new name.
+    data = new Data();
+    data.wireDecodeLazy
+      (new Blob(codedData, false), WireFormat.getDefaultWireFormat());
+    data.getName().append("x");
+    assertEquals("SUCCESS!", data.getContent().toString());
+    assertEquals(new Name("/ndn/abc/x"), data.getName());
+
+    // The MetaInfo is not a valid MetaInfo TLV, which is only detected when
+    // decoding the fields.
+    Blob badEncoding = new Blob(toBuffer(new int[] {
+      0x06, 0x09, 0x07, 0x03, 0x08, 0x01, 0x61, 0x99, 0x00, 0x17, 0x00
+    }), false);
+    data = new Data();
+    data.wireDecodeLazy(badEncoding, WireFormat.getDefaultWireFormat());
+    assertEquals(new Name("/a"), data.getName());
+    try {
+      data.decodeLazyFields();
+      fail("Expected an EncodingException for the invalid MetaInfo");
+    } catch (EncodingException ex) {}
+  }
+
   @Test
   public void
   testEmptySignature()
@@ -639,4 +737,92 @@ public class TestDataMethods {
     data.setContent(new Blob());
     assertFalse(data.getFullName().get(-1).equals(saveFullName.get(-1)));
   }
+
+  @Test
+  public void
+  testFullNameCache() throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecode(codedData);
+    Name fullName = data.getFullName();
+    // The full name is computed once, and a copy of the Data keeps it.
+    assertSame(fullName, data.getFullName());
+    assertSame(fullName, new Data(data).getFullName());
+
+    // Decoding another packet into the same Data replaces the full name.
+    Blob otherEncoding = new Data(new Name("/other")).wireEncode();
+    data.wireDecode(otherEncoding);
+    assertEquals(new Name("/other").appendImplicitSha256Digest
+      (Common.digestSha256(otherEncoding.buf())), data.getFullName());
+
+    // The digest is of the input decoded with a non-default wire format.
+    data.wireDecode(codedData, Tlv0_2WireFormat.get());
+    fullName = data.getFullName(Tlv0_2WireFormat.get());
+    assertTrue(new Blob(Common.digestSha256(codedData)).equals
+      (fullName.get(-1).getValue()));
+    assertSame(fullName, data.getFullName(Tlv0_2WireFormat.get()));
+
+    // Decoding the deferred fields doesn't change the Data packet.
+    Data lazyData = new Data();
+    lazyData.wireDecodeLazy
+      (new Blob(codedData, false), WireFormat.getDefaultWireFormat());
+    fullName = lazyData.getFullName();
+    lazyData.decodeLazyFields();
+    assertSame(fullName, lazyData.getFullName());
+
+    // Changing the name changes the full name.
+    lazyData.getName().append("x");
+    assertEquals(lazyData.getName(), lazyData.getFullName().getPrefix(-1));
+  }
+
+  @Test
+  public void
+  testSignedPortionEncoding() throws EncodingException
+  {
+    // Use signature values of the expected length (encoded in place) and
+    // longer (copied), and a Data packet with a long length header.
+    int[] signatureLengths = { 256, 512 };
+    int[] contentLengths = { 10, 70000 };
+    for (int i = 0; i < signatureLengths.length; ++i) {
+      for (int j = 0; j < contentLengths.length; ++j) {
+        Data data = new Data();
+        data.wireDecode(codedData);
+        data.setContent(new Blob(new byte[contentLengths[j]], false));
+        byte[] signatureBits = new byte[signatureLengths[i]];
+        Arrays.fill(signatureBits, (byte)0x5a);
+
+        ByteBuffer signedPortion = data.wireEncodeSignedPortion();
+        Blob signedPortionCopy = new Blob(signedPortion, true);
+        Blob encoding = data.wireEncodeWithSignatureValue
+          (new Blob(signatureBits, false));
+
+        // Compare with encoding all the fields.
+        Data expectedData = new Data(data);
+        int[] signedPortionBeginOffset = new int[1];
+        int[] signedPortionEndOffset = new int[1];
+        Blob expectedEncoding = WireFormat.getDefaultWireFormat().encodeData
+          (expectedData, signedPortionBeginOffset, signedPortionEndOffset);
+        assertTrue(expectedEncoding.equals(encoding));
+        assertTrue(encoding.equals(data.wireEncode()));
+        SignedBlob expectedSignedBlob = new SignedBlob
+          (expectedEncoding, signedPortionBeginOffset[0],
+           signedPortionEndOffset[0]);
+        assertTrue(signedPortionCopy.equals
+          (new Blob(expectedSignedBlob.signedBuf(), false)));
+        assertTrue(signedPortionCopy.equals
+          (new Blob(data.wireEncode().signedBuf(), false)));
+      }
+    }
+
+    // Changing the Data after encoding the signed portion encodes all fields.
+    Data data = new Data();
+    data.wireDecode(codedData);
+    data.wireEncodeSignedPortion();
+    data.getName().append("x");
+    Blob encoding = data.wireEncodeWithSignatureValue
+      (new Blob(new byte[256], false));
+    Data decodedData = new Data();
+    decodedData.wireDecode(encoding);
+    assertEquals(data.getName(), decodedData.getName());
+  }
 }
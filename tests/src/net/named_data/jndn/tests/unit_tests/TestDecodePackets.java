@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDecodePackets {
+  private static final int N_PACKETS = 100;
+
+  private ByteBuffer input_;
+
+  @Before
+  public void
+  setUp()
+  {
+    // Concatenate Data and Interest packets, with some leading bytes so that
+    // the input position is not zero.
+    ByteBuffer input = ByteBuffer.allocate(100000);
+    input.put(new byte[3]);
+    for (int i = 0; i < N_PACKETS; ++i)
+      input.put(makePacket(i).buf());
+    input.flip();
+    input.position(3);
+    input_ = input;
+  }
+
+  private static Blob
+  makePacket(int i)
+  {
+    Name name = new Name("/test/packet").appendSegment(i);
+    if (i % 3 == 0)
+      return new Interest(name).wireEncode();
+    else {
+      Data data = new Data(name);
+      data.setContent(new Blob("content " + i));
+      return data.wireEncode();
+    }
+  }
+
+  private static void
+  checkPackets(Object[] packets)
+  {
+    assertEquals(N_PACKETS, packets.length);
+    for (int i = 0; i < N_PACKETS; ++i) {
+      Name name = new Name("/test/packet").appendSegment(i);
+      if (i % 3 == 0) {
+        assertTrue(packets[i] instanceof Interest);
+        assertEquals(name, ((Interest)packets[i]).getName());
+      }
+      else {
+        assertTrue(packets[i] instanceof Data);
+        Data data = (Data)packets[i];
+        assertEquals(name, data.getName());
+        assertEquals("content " + i, data.getContent().toString());
+        // The default wire encoding is the packet from the input.
+        assertTrue(makePacket(i).equals(data.getDefaultWireEncoding()));
+      }
+    }
+  }
+
+  @Test
+  public void
+  testDecode() throws EncodingException
+  {
+    checkPackets(TlvWireFormat.get().decodePackets(input_));
+    // The input position is not changed.
+    assertEquals(3, input_.position());
+
+    assertEquals(0, TlvWireFormat.get().decodePackets
+      (ByteBuffer.allocate(0)).length);
+  }
+
+  @Test
+  public void
+  testParallelDecode() throws EncodingException
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      checkPackets(TlvWireFormat.get().decodePackets(input_, executor));
+
+      // An error in one group is thrown to the caller.
+      ByteBuffer badInput = ByteBuffer.allocate(input_.remaining() + 2);
+      badInput.put(input_.duplicate());
+      // A Data packet with an empty value is missing the Name.
+      badInput.put((byte)6).put((byte)0);
+      badInput.flip();
+      try {
+        TlvWireFormat.get().decodePackets(badInput, executor);
+        fail("decodePackets did not throw an exception for an invalid Data");
+      } catch (EncodingException ex) {}
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void
+  testInvalidInput()
+  {
+    // Truncate the last packet.
+    ByteBuffer truncated = input_.duplicate();
+    truncated.limit(truncated.limit() - 1);
+    try {
+      TlvWireFormat.get().decodePackets(truncated);
+      fail("decodePackets did not throw an exception for a truncated packet");
+    } catch (EncodingException ex) {}
+
+    // A TLV which is not an Interest or Data.
+    try {
+      TlvWireFormat.get().decodePackets
+        (ByteBuffer.wrap(new byte[] { 7, 0 }));
+      fail("decodePackets did not throw an exception for a Name TLV");
+    } catch (EncodingException ex) {}
+  }
+}
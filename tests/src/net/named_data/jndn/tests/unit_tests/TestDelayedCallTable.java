@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.impl.DelayedCallTable;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TestDelayedCallTable {
+  private static class RecordCall extends DelayedCallTable.CancelableCallback {
+    public RecordCall(int id, ArrayList<Integer> calls)
+    {
+      id_ = id;
+      calls_ = calls;
+    }
+
+    public void
+    run() { calls_.add(id_); }
+
+    private final int id_;
+    private final ArrayList<Integer> calls_;
+  }
+
+  @Test
+  public void
+  testCallOrder()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+    table.callLater(-30, new RecordCall(3, calls));
+    table.callLater(-50, new RecordCall(1, calls));
+    table.callLater(-40, new RecordCall(2, calls));
+    // Same call time as the first, so it is called after it.
+    table.callLater(-30, new RecordCall(4, calls));
+    table.callLater(100000, new RecordCall(5, calls));
+
+    table.callTimedOut();
+    assertEquals(4, calls.size());
+    for (int i = 0; i < calls.size(); ++i)
+      assertEquals(i + 1, (int)calls.get(i));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void
+  testCancel()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+    ArrayList<RecordCall> callbacks = new ArrayList<RecordCall>();
+    for (int i = 0; i < 100; ++i) {
+      RecordCall callback = new RecordCall(i, calls);
+      callbacks.add(callback);
+      table.callLater(-100 + (i * 7) % 50, callback);
+    }
+
+    // Cancel the odd callbacks.
+    for (int i = 1; i < 100; i += 2)
+      callbacks.get(i).cancel();
+    assertEquals(50, table.size());
+
+    // Canceling before callLater removes it right away.
+    RecordCall canceled = new RecordCall(1000, calls);
+    canceled.cancel();
+    table.callLater(-100, canceled);
+    assertEquals(50, table.size());
+
+    table.callTimedOut();
+    assertEquals(50, calls.size());
+    for (int i = 0; i < calls.size(); ++i)
+      assertEquals(0, calls.get(i) % 2);
+    assertEquals(0, table.size());
+  }
+}
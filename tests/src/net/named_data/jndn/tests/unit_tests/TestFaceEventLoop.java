@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.FaceEventLoop;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.transport.UdpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFaceEventLoop {
+  private static class DataCounter implements OnData {
+    public void
+    onData(Interest interest, Data data) { nData_.incrementAndGet(); }
+
+    public final AtomicInteger nData_ = new AtomicInteger();
+  }
+
+  private static class CallCounter implements Runnable {
+    public void
+    run() { nCalls_.incrementAndGet(); }
+
+    public final AtomicInteger nCalls_ = new AtomicInteger();
+  }
+
+  // The maximum wait for runOnce, longer than any test should take.
+  private static final long MAX_WAIT_MILLISECONDS = 10000;
+
+  DatagramChannel forwarder_;
+  UdpTransport transport_;
+  Face face_;
+  FaceEventLoop loop_;
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    // The forwarder_ acts as the forwarder for face_.
+    forwarder_ = DatagramChannel.open();
+    forwarder_.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)forwarder_.getLocalAddress()).getPort();
+    transport_ = new UdpTransport();
+    face_ = new Face
+      (transport_, new UdpTransport.ConnectionInfo("127.0.0.1", port));
+    loop_ = new FaceEventLoop();
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    loop_.close();
+    face_.shutdown();
+    forwarder_.close();
+  }
+
+  /**
+   * Receive an Interest at forwarder_ and send a Data with its name back.
+   */
+  private void
+  answerInterest() throws Exception
+  {
+    ByteBuffer input = ByteBuffer.allocate(8800);
+    SocketAddress sender = forwarder_.receive(input);
+    input.flip();
+    Interest interest = new Interest();
+    interest.wireDecode(input);
+
+    Data data = new Data(interest.getName());
+    data.setContent(new Blob("hello"));
+    forwarder_.send(data.wireEncode().buf(), sender);
+  }
+
+  @Test
+  public void
+  testDelayedCallWithoutIo() throws Exception
+  {
+    // The transport is not connected, so there is no channel to select.
+    CallCounter counter = new CallCounter();
+    face_.callLater(30, counter);
+    loop_.addFace(face_);
+
+    double startTime = Common.getNowMilliseconds();
+    while (counter.nCalls_.get() == 0 &&
+           Common.getNowMilliseconds() - startTime < MAX_WAIT_MILLISECONDS)
+      loop_.runOnce(MAX_WAIT_MILLISECONDS);
+
+    assertEquals(1, counter.nCalls_.get());
+    // The loop woke up for the delayed call, not after the maximum wait.
+    assertTrue(Common.getNowMilliseconds() - startTime < MAX_WAIT_MILLISECONDS);
+  }
+
+  @Test
+  public void
+  testReceiveAndRemoveFace() throws Exception
+  {
+    DataCounter counter = new DataCounter();
+    face_.expressInterest(new Name("/test/1"), counter);
+    loop_.addFace(face_);
+    answerInterest();
+
+    double startTime = Common.getNowMilliseconds();
+    while (counter.nData_.get() == 0 &&
+           Common.getNowMilliseconds() - startTime < MAX_WAIT_MILLISECONDS)
+      loop_.runOnce(MAX_WAIT_MILLISECONDS);
+    assertEquals(1, counter.nData_.get());
+
+    // The connected transport's channel is registered with the Selector.
+    SelectableChannel channel = transport_.getSelectableChannel();
+    assertNotNull(channel);
+    assertTrue(channel.isRegistered());
+
+    // The next select deregisters the canceled key.
+    loop_.removeFace(face_);
+    loop_.runOnce(10);
+    assertFalse(channel.isRegistered());
+
+    // The loop no longer calls processEvents for the removed Face.
+    face_.expressInterest(new Name("/test/2"), counter);
+    answerInterest();
+    for (int i = 0; i < 5; ++i)
+      loop_.runOnce(10);
+    assertEquals(1, counter.nData_.get());
+
+    // The Data was waiting for the application to call processEvents.
+    face_.processEvents();
+    assertEquals(2, counter.nData_.get());
+  }
+
+  /**
+   * Connect a TcpTransport Face with a pending Interest to a server which
+   * closes the connection, and check that runOnce waits instead of spinning on
+   * the channel.
+   * @param readInterest If true, the server reads the Interest before closing
+   * so that the transport reads the end of the stream. If false, the server
+   * closes with unread data so that the transport's read throws a reset.
+   */
+  private void
+  checkPeerCloses(boolean readInterest) throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+    TcpTransport transport = new TcpTransport();
+    Face face = new Face
+      (transport, new TcpTransport.ConnectionInfo("127.0.0.1", port));
+    try {
+      // This connects. The Interest timeout is after the end of the test.
+      Interest interest = new Interest(new Name("/test"));
+      interest.setInterestLifetimeMilliseconds(4000);
+      face.expressInterest(interest, new DataCounter());
+      SocketChannel peer = server.accept();
+      if (readInterest) {
+        int size = interest.wireEncode().size();
+        ByteBuffer input = ByteBuffer.allocate(size);
+        while (input.hasRemaining() && peer.read(input) >= 0) {}
+      }
+      peer.close();
+      loop_.addFace(face);
+
+      int nIterations = 0;
+      double startTime = Common.getNowMilliseconds();
+      while (Common.getNowMilliseconds() - startTime < 500) {
+        loop_.runOnce(100);
+        ++nIterations;
+      }
+      assertTrue("runOnce did not wait: " + nIterations + " iterations",
+                 nIterations <= 10);
+
+      SelectableChannel channel = transport.getSelectableChannel();
+      assertFalse(channel.isOpen());
+      assertFalse(channel.isRegistered());
+      assertFalse(transport.getIsConnected());
+    }
+    finally {
+      face.shutdown();
+      server.close();
+    }
+  }
+
+  @Test
+  public void
+  testPeerClosesConnection() throws Exception
+  {
+    checkPeerCloses(true);
+  }
+
+  @Test
+  public void
+  testPeerResetsConnection() throws Exception
+  {
+    checkPeerCloses(false);
+  }
+
+  @Test
+  public void
+  testStopFromAnotherThread() throws Exception
+  {
+    loop_.addFace(face_);
+    final ArrayList<Throwable> errors = new ArrayList<Throwable>();
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          loop_.run();
+        } catch (Throwable ex) {
+          errors.add(ex);
+        }
+      }
+    });
+    thread.start();
+
+    Thread.sleep(50);
+    assertTrue("run() returned before stop()", thread.isAlive());
+    loop_.stop();
+    thread.join(MAX_WAIT_MILLISECONDS);
+    assertFalse("stop() did not end run()", thread.isAlive());
+    assertEquals(0, errors.size());
+  }
+
+  @Test
+  public void
+  testWakeupFromAnotherThread() throws Exception
+  {
+    loop_.addFace(face_);
+    // Process the added Face, which also uses the wakeup from addFace.
+    loop_.runOnce(MAX_WAIT_MILLISECONDS);
+
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          // Wait until a Face is ready or wakeup() is called.
+          loop_.runOnce(0);
+        } catch (Exception ex) {}
+      }
+    });
+    thread.start();
+
+    Thread.sleep(50);
+    assertTrue("runOnce returned before wakeup()", thread.isAlive());
+    loop_.wakeup();
+    thread.join(MAX_WAIT_MILLISECONDS);
+    assertFalse("wakeup() did not end runOnce", thread.isAlive());
+  }
+
+  @Test
+  public void
+  testNullSelectableChannel() throws Exception
+  {
+    StubTransport transport = new StubTransport();
+    Face face = new Face(transport, new Transport.ConnectionInfo());
+    try {
+      // This connects the transport, which still has no selectable channel.
+      face.expressInterest(new Name("/test"), new DataCounter());
+      assertNull(transport.getSelectableChannel());
+
+      CallCounter counter = new CallCounter();
+      face.callLater(20, counter);
+      loop_.addFace(face);
+
+      double startTime = Common.getNowMilliseconds();
+      while (counter.nCalls_.get() == 0 &&
+             Common.getNowMilliseconds() - startTime < MAX_WAIT_MILLISECONDS)
+        loop_.runOnce(MAX_WAIT_MILLISECONDS);
+      assertEquals(1, counter.nCalls_.get());
+      assertTrue(transport.getProcessEventsCount() > 0);
+
+      // The Interest timeout is not due yet, so the loop doesn't call
+      // processEvents.
+      int nProcessEvents = transport.getProcessEventsCount();
+      loop_.runOnce(20);
+      assertEquals(nProcessEvents, transport.getProcessEventsCount());
+    }
+    finally {
+      face.shutdown();
+    }
+  }
+}
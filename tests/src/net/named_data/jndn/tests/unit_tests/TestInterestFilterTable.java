@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.impl.InterestFilterTable;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TestInterestFilterTable {
+  private static ArrayList<Long>
+  getMatchedIds(InterestFilterTable table, String uri)
+  {
+    ArrayList matchedFilters = new ArrayList();
+    table.getMatchedFilters(new Interest(new Name(uri)), matchedFilters);
+    ArrayList<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < matchedFilters.size(); ++i)
+      result.add(((InterestFilterTable.Entry)matchedFilters.get(i))
+        .getInterestFilterId());
+
+    return result;
+  }
+
+  @Test
+  public void
+  testPrefixMatch()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a"), null, null);
+    table.setInterestFilter(3, new InterestFilter("/a/c"), null, null);
+    table.setInterestFilter(4, new InterestFilter("/"), null, null);
+    table.setInterestFilter(5, new InterestFilter("/a/b/c/d"), null, null);
+
+    ArrayList<Long> ids = getMatchedIds(table, "/a/b/c");
+    // The matched entries are in the order they were added.
+    assertEquals(3, ids.size());
+    assertEquals(1, (long)ids.get(0));
+    assertEquals(2, (long)ids.get(1));
+    assertEquals(4, (long)ids.get(2));
+
+    assertEquals(1, getMatchedIds(table, "/x").size());
+    assertEquals(5, table.size());
+  }
+
+  @Test
+  public void
+  testRegexFilter()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a", "<b><>"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a/b"), null, null);
+
+    ArrayList<Long> ids = getMatchedIds(table, "/a/b/c");
+    assertEquals(2, ids.size());
+    assertEquals(1, (long)ids.get(0));
+    assertEquals(2, (long)ids.get(1));
+
+    ids = getMatchedIds(table, "/a/b/c/d");
+    assertEquals(1, ids.size());
+    assertEquals(2, (long)ids.get(0));
+  }
+
+  @Test
+  public void
+  testUnset()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(3, new InterestFilter("/a", "<b>"), null, null);
+
+    table.unsetInterestFilter(1);
+    table.unsetInterestFilter(3);
+    ArrayList<Long> ids = getMatchedIds(table, "/a/b");
+    assertEquals(1, ids.size());
+    assertEquals(2, (long)ids.get(0));
+
+    table.unsetInterestFilter(2);
+    assertEquals(0, getMatchedIds(table, "/a/b").size());
+    assertEquals(0, table.size());
+  }
+}
@@ -35,6 +35,7 @@ import net.named_data.jndn.KeyLocatorType;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.Sha256WithRsaSignature;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.Tlv0_2WireFormat;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.OnVerifiedInterest;
 import net.named_data.jndn.security.OnInterestValidationFailed;
@@ -256,6 +257,31 @@ public class TestInterestMethods {
                       initialDump.toArray(), redecodedDump.toArray());
   }
 
+  @Test
+  public void
+  testEncodeToBuffer()
+  {
+    Tlv0_2WireFormat wireFormat = Tlv0_2WireFormat.get();
+    Blob encoding = wireFormat.encodeInterest
+      (referenceInterest, new int[1], new int[1]);
+    // The test vector has extra bytes after the TLV element.
+    ByteBuffer expected = codedInterest.duplicate();
+    expected.limit(encoding.size());
+    assertTrue("The exact-length encoding does not match the original",
+               encoding.equals(new Blob(expected, true)));
+
+    ByteBuffer output = ByteBuffer.allocateDirect(encoding.size());
+    assertEquals(encoding.size(), wireFormat.encodeInterest
+      (referenceInterest, output, new int[1], new int[1]));
+    output.flip();
+    assertTrue("The buffer encoding does not match",
+               encoding.equals(new Blob(output, true)));
+
+    assertTrue("The thread buffer encoding does not match",
+               encoding.equals(new Blob(wireFormat.encodeInterestToThreadBuffer
+                 (referenceInterest, true), true)));
+  }
+
   @Test
   public void
   testRedecodeImplicitDigestExclude()
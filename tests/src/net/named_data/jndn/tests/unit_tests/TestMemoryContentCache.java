@@ -0,0 +1,487 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.MemoryContentCache;
+import net.named_data.jndn.util.SlabStorage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoryContentCache {
+  private static final Name PREFIX = new Name("/test");
+
+  private StubTransport transport_;
+  private Face face_;
+  private MemoryContentCache cache_;
+  private int nDataNotFound_;
+
+  @Before
+  public void
+  setUp()
+  {
+    transport_ = new StubTransport();
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+    cache_ = new MemoryContentCache(face_, 0.0);
+    nDataNotFound_ = 0;
+    cache_.setInterestFilter(PREFIX, new OnInterestCallback() {
+      public void
+      onInterest
+        (Name prefix, Interest interest, Face face, long interestFilterId,
+         InterestFilter filter)
+      {
+        ++nDataNotFound_;
+      }
+    });
+  }
+
+  private static Data
+  makeData(String uri, double freshnessPeriod)
+  {
+    Data data = new Data(new Name(uri));
+    data.setContent(new Blob(uri));
+    data.getMetaInfo().setFreshnessPeriod(freshnessPeriod);
+    return data;
+  }
+
+  private void
+  add(String uri, double freshnessPeriod)
+  {
+    cache_.add(makeData(uri, freshnessPeriod));
+  }
+
+  /**
+   * Decode each packet sent by transport_ as a Data and return the names.
+   * @return A new list of the names of the sent Data packets.
+   */
+  private ArrayList<Name>
+  getSentNames()
+  {
+    ArrayList<Name> names = new ArrayList<Name>();
+    for (Blob encoding : transport_.getSentPackets()) {
+      Data sentData = new Data();
+      try {
+        sentData.wireDecode(encoding);
+      } catch (EncodingException ex) {
+        throw new Error("Error decoding the sent Data: " + ex);
+      }
+      names.add(sentData.getName());
+    }
+
+    return names;
+  }
+
+  /**
+   * Call cache_.onInterest and return the name of the sent Data, or null if
+   * nothing was sent.
+   */
+  private Name
+  answer(Interest interest)
+  {
+    int nSent = transport_.getSentCount();
+    cache_.onInterest(PREFIX, interest, face_, 0, new InterestFilter(PREFIX));
+    ArrayList<Name> sentNames = getSentNames();
+    if (sentNames.size() == nSent)
+      return null;
+    return sentNames.get(sentNames.size() - 1);
+  }
+
+  private Name
+  answer(String uri, int childSelector)
+  {
+    Interest interest = new Interest(new Name(uri));
+    interest.setChildSelector(childSelector);
+    return answer(interest);
+  }
+
+  @Test
+  public void
+  testPrefixMatch()
+  {
+    add("/test/b/1", -1);
+    add("/test/a/2", -1);
+    add("/test/a/1", 1000000);
+    add("/test/c", -1);
+    add("/testing", -1);
+
+    assertEquals(new Name("/test/a/2"), answer("/test/a/2", -1));
+    assertEquals(new Name("/test/b/1"), answer("/test/b", -1));
+    assertEquals(new Name("/test/a/1"), answer("/test/a", 0));
+    assertEquals(new Name("/test/a/2"), answer("/test/a", 1));
+    assertEquals(new Name("/test/a/1"), answer("/test", 0));
+    assertEquals(new Name("/test/c"), answer("/test", 1));
+
+    // A prefix of a component doesn't match.
+    assertEquals(null, answer("/tes", 1));
+    assertEquals(1, nDataNotFound_);
+    assertEquals(null, answer("/test/d", -1));
+    assertEquals(2, nDataNotFound_);
+
+    // The rightmost child which is not excluded.
+    Interest interest = new Interest(new Name("/test"));
+    interest.setChildSelector(1);
+    interest.getExclude().appendComponent(new Name.Component("c"));
+    assertEquals(new Name("/test/b/1"), answer(interest));
+  }
+
+  @Test
+  public void
+  testStaleContent() throws InterruptedException
+  {
+    add("/test/a", 0);
+    // Replace the stale entry with one that doesn't go stale.
+    add("/test/b", 0);
+    add("/test/b", -1);
+    Thread.sleep(10);
+    // Trigger cleanup.
+    add("/test/c", -1);
+
+    assertEquals(null, answer("/test/a", -1));
+    assertEquals(new Name("/test/b"), answer("/test/b", -1));
+  }
+
+  @Test
+  public void
+  testPendingInterest()
+  {
+    cache_.storePendingInterest(new Interest(new Name("/test/a")), face_);
+    cache_.storePendingInterest(new Interest(new Name("/test/a/1")), face_);
+    Interest timedOut = new Interest(new Name("/test"));
+    timedOut.setInterestLifetimeMilliseconds(0);
+    cache_.storePendingInterest(timedOut, face_);
+
+    add("/test/b", -1);
+    assertEquals(0, transport_.getSentCount());
+
+    add("/test/a/1", -1);
+    // The Data satisfies both /test/a and /test/a/1.
+    ArrayList<Name> sentNames = getSentNames();
+    assertEquals(2, sentNames.size());
+    assertEquals(new Name("/test/a/1"), sentNames.get(0));
+    assertEquals(new Name("/test/a/1"), sentNames.get(1));
+
+    // The pending interests are removed.
+    add("/test/a/1", -1);
+    assertEquals(2, transport_.getSentCount());
+  }
+
+  @Test
+  public void
+  testLruEviction()
+  {
+    // All the Data packets have the same encoding size.
+    long dataSize = makeData("/test/a", -1).wireEncode().size();
+    cache_.setMaxSize(3 * dataSize);
+    add("/test/a", -1);
+    add("/test/b", -1);
+    add("/test/c", -1);
+    assertEquals(3 * dataSize, cache_.getSize());
+
+    answer("/test/a", -1);
+    answer("/test/a", -1);
+    answer("/test/c", -1);
+    answer("/test/c", -1);
+    answer("/test/b", -1);
+    // /test/a is the least recently used.
+    add("/test/d", -1);
+    assertEquals(1, cache_.getEvictionCount());
+    assertEquals(3 * dataSize, cache_.getSize());
+    assertEquals(null, answer("/test/a", -1));
+    assertEquals(new Name("/test/b"), answer("/test/b", -1));
+    assertEquals(5 + 1, cache_.getHitCount());
+    assertEquals(1, cache_.getMissCount());
+
+    // Replacing the same name doesn't evict.
+    add("/test/d", -1);
+    assertEquals(1, cache_.getEvictionCount());
+
+    // Reducing the max size evicts immediately. /test/c is now the least
+    // recently used.
+    cache_.setMaxSize(2 * dataSize);
+    assertEquals(2, cache_.getEvictionCount());
+    assertEquals(null, answer("/test/c", -1));
+
+    // A Data packet larger than the max size is not added.
+    cache_.setMaxSize(dataSize - 1);
+    add("/test/e", -1);
+    assertEquals(0, cache_.getSize());
+    assertEquals(null, answer("/test/e", -1));
+  }
+
+  @Test
+  public void
+  testLfuEviction()
+  {
+    long dataSize = makeData("/test/a", -1).wireEncode().size();
+    cache_.setEvictionPolicy(MemoryContentCache.EvictionPolicy.LFU);
+    cache_.setMaxSize(3 * dataSize);
+    add("/test/a", -1);
+    add("/test/b", -1);
+    add("/test/c", -1);
+
+    answer("/test/a", -1);
+    answer("/test/a", -1);
+    answer("/test/c", -1);
+    answer("/test/c", -1);
+    answer("/test/b", -1);
+    // /test/b is the least frequently used, though /test/a is the least
+    // recently used.
+    add("/test/d", -1);
+    assertEquals(1, cache_.getEvictionCount());
+    assertEquals(null, answer("/test/b", -1));
+    assertEquals(new Name("/test/a"), answer("/test/a", -1));
+  }
+
+  @Test
+  public void
+  testTinyLfuAdmission()
+  {
+    long dataSize = makeData("/test/a", -1).wireEncode().size();
+    cache_.setEvictionPolicy(MemoryContentCache.EvictionPolicy.TINY_LFU);
+    cache_.setMaxSize(2 * dataSize);
+    add("/test/a", -1);
+    add("/test/b", -1);
+    for (int i = 0; i < 3; ++i) {
+      answer("/test/a", -1);
+      answer("/test/b", -1);
+    }
+
+    // /test/c is less popular than /test/a, so it is not admitted.
+    add("/test/c", -1);
+    assertEquals(0, cache_.getEvictionCount());
+    assertEquals(null, answer("/test/c", -1));
+
+    // After more requests for /test/c, it is admitted and replaces the least
+    // recently used.
+    for (int i = 0; i < 3; ++i)
+      answer("/test/c", -1);
+    add("/test/c", -1);
+    assertEquals(1, cache_.getEvictionCount());
+    assertEquals(new Name("/test/c"), answer("/test/c", -1));
+    assertEquals(null, answer("/test/a", -1));
+    assertEquals(new Name("/test/b"), answer("/test/b", -1));
+  }
+
+  private void
+  checkStorage(SlabStorage storage, int slabSize)
+  {
+    // All the Data packets have the same encoding size.
+    long dataSize = makeData("/test/a0", -1).wireEncode().size();
+    cache_.setStorage(storage);
+    cache_.setMaxSize(4 * dataSize);
+    String[] prefixes = { "/test/a", "/test/b", "/test/c", "/test/d" };
+    for (int i = 0; i < prefixes.length; ++i)
+      add(prefixes[i] + 0, -1);
+    assertEquals(4 * dataSize, storage.getUsedSize());
+    for (int i = 0; i < prefixes.length; ++i)
+      assertEquals(new Name(prefixes[i] + 0), answer(prefixes[i] + 0, -1));
+
+    // Replace all the Data packets many times. The slabs are reused, so there
+    // is only one more slab.
+    for (int j = 1; j < 10; ++j) {
+      for (int i = 0; i < prefixes.length; ++i)
+        add(prefixes[i] + j, -1);
+    }
+    assertEquals(4 * dataSize, storage.getUsedSize());
+    assertEquals(3 * slabSize, storage.getAllocatedSize());
+    assertEquals(new Name("/test/c9"), answer("/test/c9", -1));
+    assertEquals(null, answer("/test/c8", -1));
+  }
+
+  @Test
+  public void
+  testDirectStorage()
+  {
+    // Each slab holds two Data packets.
+    int slabSize = 2 * makeData("/test/a0", -1).wireEncode().size() + 1;
+    checkStorage(new SlabStorage(slabSize), slabSize);
+  }
+
+  @Test
+  public void
+  testMappedFileStorage() throws IOException
+  {
+    int slabSize = 2 * makeData("/test/a0", -1).wireEncode().size() + 1;
+    File file = File.createTempFile("jndn-slabs", null);
+    file.deleteOnExit();
+    SlabStorage storage = new SlabStorage(slabSize, file);
+    try {
+      checkStorage(storage, slabSize);
+    } finally {
+      storage.close();
+    }
+  }
+
+  @Test
+  public void
+  testStorageWithRetainingTransport()
+  {
+    // The transport queues the sent buffer, like AsyncTcpTransport.
+    transport_ = new StubTransport(true);
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+    cache_ = new MemoryContentCache(face_, 0.0);
+
+    // Each slab holds one Data packet, so an evicted packet's slab is reused.
+    long dataSize = makeData("/test/a", -1).wireEncode().size();
+    SlabStorage storage = new SlabStorage((int)dataSize + 1);
+    cache_.setStorage(storage);
+    cache_.setMaxSize(dataSize);
+    add("/test/a", -1);
+    assertEquals(new Name("/test/a"), answer("/test/a", -1));
+
+    // Evict /test/a and store /test/b in the same slab. The queued packet is
+    // not changed.
+    add("/test/b", -1);
+    assertEquals(1, cache_.getEvictionCount());
+    assertEquals(dataSize + 1, storage.getAllocatedSize());
+    assertEquals(new Name("/test/a"), getSentNames().get(0));
+  }
+
+  @Test
+  public void
+  testStorageSendWithoutLock() throws Exception
+  {
+    // The first send blocks until released, like a write to a full socket.
+    final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    transport_ = new StubTransport() {
+      public void
+      send(ByteBuffer data)
+      {
+        if (sending.getCount() > 0) {
+          sending.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {}
+        }
+        super.send(data);
+      }
+    };
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+    cache_ = new MemoryContentCache(face_, 0.0);
+
+    // Each slab holds one Data packet.
+    long dataSize = makeData("/test/a", -1).wireEncode().size();
+    SlabStorage storage = new SlabStorage((int)dataSize + 1);
+    cache_.setStorage(storage);
+    cache_.setMaxSize(dataSize);
+    add("/test/a", -1);
+
+    Thread answerThread = new Thread(new Runnable() {
+      public void run() { answer("/test/a", -1); }
+    });
+    Thread addThread = new Thread(new Runnable() {
+      public void run() { add("/test/b", -1); }
+    });
+    try {
+      answerThread.start();
+      assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+      // Adding doesn't wait for the send. This evicts /test/a, but doesn't
+      // free its slab while it is being sent, so /test/b is in a new slab.
+      addThread.start();
+      addThread.join(5000);
+      assertFalse("add waited for the send", addThread.isAlive());
+      assertEquals(1, cache_.getEvictionCount());
+      assertEquals(2 * (dataSize + 1), storage.getAllocatedSize());
+      assertEquals(2 * dataSize, storage.getUsedSize());
+    } finally {
+      release.countDown();
+      answerThread.join();
+      addThread.join();
+    }
+
+    // The sent packet is not changed, and its slab is freed after the send.
+    assertEquals(new Name("/test/a"), getSentNames().get(0));
+    assertEquals(dataSize, storage.getUsedSize());
+    add("/test/c", -1);
+    assertEquals(2 * (dataSize + 1), storage.getAllocatedSize());
+    assertEquals(new Name("/test/c"), answer("/test/c", -1));
+  }
+
+  @Test
+  public void
+  testConcurrentAddAndServe() throws InterruptedException
+  {
+    final int nThreads = 4;
+    final int nPackets = 300;
+    long dataSize = makeData("/test/0/000", -1).wireEncode().size();
+    // Evict while the other threads are serving.
+    final long maxSize = 100 * dataSize;
+    cache_.setMaxSize(maxSize);
+    final ArrayList<Throwable> errors = new ArrayList<Throwable>();
+    final InterestFilter filter = new InterestFilter(PREFIX);
+
+    Thread[] threads = new Thread[nThreads];
+    for (int i = 0; i < nThreads; ++i) {
+      final int threadIndex = i;
+      threads[i] = new Thread(new Runnable() {
+        public void
+        run()
+        {
+          try {
+            for (int j = 0; j < nPackets; ++j) {
+              cache_.add(makeData
+                ("/test/" + threadIndex + "/" + (100 + j), -1));
+              // Request a Data packet added by another thread.
+              cache_.onInterest
+                (PREFIX, new Interest(new Name
+                   ("/test/" + ((threadIndex + 1) % nThreads) + "/" + (100 + j))),
+                 face_, 0, filter);
+            }
+          } catch (Throwable ex) {
+            synchronized (errors) {
+              errors.add(ex);
+            }
+          }
+        }
+      });
+    }
+    for (int i = 0; i < nThreads; ++i)
+      threads[i].start();
+    for (int i = 0; i < nThreads; ++i)
+      threads[i].join();
+
+    assertEquals(0, errors.size());
+    // Each sent Data packet decodes correctly.
+    assertEquals(cache_.getHitCount(), getSentNames().size());
+    assertEquals(nThreads * nPackets, cache_.getHitCount() + cache_.getMissCount());
+    assertTrue(cache_.getSize() <= maxSize);
+    assertEquals(nThreads * nPackets - maxSize / dataSize,
+                 cache_.getEvictionCount());
+  }
+}
@@ -133,6 +133,28 @@ public class TestNameConventions {
     }
   }
 
+  @Test
+  public void
+  testNumberSizes() throws EncodingException
+  {
+    // Check the boundary of each nonNegativeInteger length.
+    long[] numbers = { 0, 0xffL, 0x100L, 0xffffL, 0x10000L, 0xffffffffL,
+      0x100000000L, Long.MAX_VALUE };
+    int[] expectedSizes = { 1, 1, 2, 2, 4, 4, 8, 8 };
+    for (int i = 0; i < numbers.length; ++i) {
+      Name.Component component = Name.Component.fromNumber(numbers[i]);
+      assertEquals(expectedSizes[i], component.getValue().size());
+      assertEquals(numbers[i], component.toNumber());
+
+      Name name = new Name("/a").appendSegment(numbers[i]);
+      assertTrue(name.get(-1).isSegment());
+      assertEquals(1 + expectedSizes[i], name.get(-1).getValue().size());
+      assertEquals(numbers[i], name.get(-1).toSegment());
+      // The encoding is the same as a URI with the escaped value.
+      assertEquals(name, new Name(name.toUri()));
+    }
+  }
+
   // This is to force an import of net.named_data.jndn.util.
   private static Common dummyCommon_ = new Common();
 }
\ No newline at end of file
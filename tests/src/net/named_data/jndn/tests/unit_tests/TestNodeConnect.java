@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.Node;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.transport.Transport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestNodeConnect {
+  /**
+   * An AsyncStubTransport calls onConnected on another thread after a delay
+   * and counts the sent packets.
+   */
+  private static class AsyncStubTransport extends Transport {
+    public boolean
+    isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+    public boolean
+    isAsync() { return true; }
+
+    public void
+    connect
+      (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+       final Runnable onConnected)
+    {
+      nConnects_.incrementAndGet();
+      new Thread(new Runnable() {
+        public void run() {
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException ex) {}
+          onConnected.run();
+        }
+      }).start();
+    }
+
+    public void
+    send(ByteBuffer data) { nSent_.incrementAndGet(); }
+
+    public void
+    processEvents() {}
+
+    public boolean
+    getIsConnected() { return true; }
+
+    public final AtomicInteger nConnects_ = new AtomicInteger();
+    public final AtomicInteger nSent_ = new AtomicInteger();
+  }
+
+  /**
+   * A FailingStubTransport blocks in connect until the test releases it, then
+   * throws an IOException.
+   */
+  private static class FailingStubTransport extends Transport {
+    public boolean
+    isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+    public boolean
+    isAsync() { return false; }
+
+    public void
+    connect
+      (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+       Runnable onConnected) throws IOException
+    {
+      connecting_.countDown();
+      try {
+        release_.await();
+      } catch (InterruptedException ex) {}
+      throw new IOException("Connect failed");
+    }
+
+    public void
+    send(ByteBuffer data) { nSent_.incrementAndGet(); }
+
+    public void
+    processEvents() {}
+
+    public boolean
+    getIsConnected() { return false; }
+
+    public final CountDownLatch connecting_ = new CountDownLatch(1);
+    public final CountDownLatch release_ = new CountDownLatch(1);
+    public final AtomicInteger nSent_ = new AtomicInteger();
+  }
+
+  @Test
+  public void
+  testConnectFailureTimesOutQueuedInterests() throws Exception
+  {
+    final FailingStubTransport transport = new FailingStubTransport();
+    final Face face = new Face(transport, new Transport.ConnectionInfo());
+    final Node node = new Node(transport, new Transport.ConnectionInfo());
+    final int nQueued = 10;
+    final AtomicInteger nTimeouts = new AtomicInteger();
+    final OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        nTimeouts.incrementAndGet();
+      }
+    };
+
+    final AtomicInteger nConnectErrors = new AtomicInteger();
+    Thread connectThread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          node.expressInterest
+            (node.getNextEntryId(), new Interest(new Name("/connect")), null,
+             onTimeout, null, WireFormat.getDefaultWireFormat(), face);
+        } catch (IOException ex) {
+          nConnectErrors.incrementAndGet();
+        }
+      }
+    });
+    connectThread.start();
+    assertTrue(transport.connecting_.await(5, TimeUnit.SECONDS));
+
+    // While connecting, these are queued until the connection is complete.
+    for (int i = 0; i < nQueued; ++i)
+      node.expressInterest
+        (node.getNextEntryId(), new Interest(new Name("/queued").appendSegment(i)),
+         null, onTimeout, null, WireFormat.getDefaultWireFormat(), face);
+    assertEquals(0, nTimeouts.get());
+
+    transport.release_.countDown();
+    connectThread.join();
+
+    // The connecting thread gets the exception. Each queued Interest times out.
+    assertEquals(1, nConnectErrors.get());
+    assertEquals(nQueued, nTimeouts.get());
+    assertEquals(0, transport.nSent_.get());
+  }
+
+  @Test
+  public void
+  testConcurrentExpressInterest() throws Exception
+  {
+    final AsyncStubTransport transport = new AsyncStubTransport();
+    final Face face = new Face(transport, new Transport.ConnectionInfo());
+    final Node node = new Node(transport, new Transport.ConnectionInfo());
+    final int nThreads = 8;
+    final int nInterests = 200;
+    final HashSet<Long> ids = new HashSet<Long>();
+    final AtomicInteger nErrors = new AtomicInteger();
+
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int threadNumber = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < nInterests; ++i) {
+            long id = node.getNextEntryId();
+            synchronized (ids) {
+              ids.add(id);
+            }
+
+            try {
+              node.expressInterest
+                (id, new Interest(new Name("/T" + threadNumber).appendSegment(i)),
+                 null, null, null, WireFormat.getDefaultWireFormat(), face);
+            } catch (Exception ex) {
+              nErrors.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+
+    // Wait for the interests queued while connecting to be sent.
+    for (int i = 0; i < 200 && transport.nSent_.get() < nThreads * nInterests;
+         ++i)
+      Thread.sleep(5);
+
+    assertEquals(0, nErrors.get());
+    assertEquals("Expected unique entry IDs", nThreads * nInterests, ids.size());
+    assertEquals("Expected one connect", 1, transport.nConnects_.get());
+    assertEquals(nThreads * nInterests, transport.nSent_.get());
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.impl.PendingInterestTable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestPendingInterestTable {
+  @Test
+  public void
+  testExtractByPrefix() throws EncodingException
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    PendingInterestTable.Entry entryA = table.add
+      (1, new Interest(new Name("/A")), null, null, null);
+    PendingInterestTable.Entry entryAB = table.add
+      (2, new Interest(new Name("/A/B")), null, null, null);
+    table.add(3, new Interest(new Name("/A/C")), null, null, null);
+    Interest interestMax = new Interest(new Name("/A/B"));
+    interestMax.setMaxSuffixComponents(1);
+    table.add(4, interestMax, null, null, null);
+    assertEquals(4, table.size());
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    table.extractEntriesForExpressedInterest
+      (new Data(new Name("/A/B/1")), entries);
+    assertEquals("Expected the entries for /A and /A/B", 2, entries.size());
+    assertTrue(entries.contains(entryA));
+    assertTrue(entries.contains(entryAB));
+    assertTrue(entryA.getIsRemoved());
+    assertEquals(2, table.size());
+
+    // The entries are removed, so they don't match again.
+    entries.clear();
+    table.extractEntriesForExpressedInterest
+      (new Data(new Name("/A/B/2")), entries);
+    assertEquals(0, entries.size());
+  }
+
+  @Test
+  public void
+  testImplicitDigest() throws EncodingException
+  {
+    Data data = new Data(new Name("/A/B"));
+    Name fullName = data.getFullName();
+
+    PendingInterestTable table = new PendingInterestTable();
+    PendingInterestTable.Entry entry = table.add
+      (1, new Interest(fullName), null, null, null);
+    Name otherFullName = new Name("/A/B").appendImplicitSha256Digest
+      (new byte[32]);
+    table.add(2, new Interest(otherFullName), null, null, null);
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    table.extractEntriesForExpressedInterest(data, entries);
+    assertEquals(1, entries.size());
+    assertSame(entry, entries.get(0));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void
+  testHasEntriesForDataName() throws EncodingException
+  {
+    PendingInterestTable table = new PendingInterestTable(4);
+    assertFalse(table.hasEntriesForDataName(new Name("/A/B")));
+
+    table.add(1, new Interest(new Name("/A/B")), null, null, null);
+    assertTrue(table.hasEntriesForDataName(new Name("/A/B")));
+    assertTrue(table.hasEntriesForDataName(new Name("/A/B/C")));
+    assertFalse(table.hasEntriesForDataName(new Name("/A")));
+    assertFalse(table.hasEntriesForDataName(new Name("/A/C")));
+
+    // An Interest with the Data full name.
+    Data data = new Data(new Name("/X/Y"));
+    table.add(2, new Interest(data.getFullName()), null, null, null);
+    assertTrue(table.hasEntriesForDataName(new Name("/X/Y")));
+    assertFalse(table.hasEntriesForDataName(new Name("/X")));
+
+    // An Interest with an empty name matches any Data name.
+    table.add(3, new Interest(new Name()), null, null, null);
+    assertTrue(table.hasEntriesForDataName(new Name("/Z")));
+  }
+
+  @Test
+  public void
+  testRemove() throws EncodingException
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    PendingInterestTable.Entry entry1 = table.add
+      (1, new Interest(new Name("/A")), null, null, null);
+    PendingInterestTable.Entry entry2 = table.add
+      (2, new Interest(new Name("/A")), null, null, null);
+
+    table.removePendingInterest(1);
+    assertTrue(entry1.getIsRemoved());
+    assertFalse(table.removeEntry(entry1));
+    assertTrue(table.removeEntry(entry2));
+    assertEquals(0, table.size());
+
+    // Removing before adding prevents the add.
+    table.removePendingInterest(3);
+    assertNull(table.add(3, new Interest(new Name("/A")), null, null, null));
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void
+  testShards() throws EncodingException
+  {
+    PendingInterestTable table = new PendingInterestTable(8);
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    for (int i = 0; i < 100; ++i)
+      entries.add(table.add
+        (i, new Interest(new Name("/P" + i + "/A")), null, null, null));
+    // An empty name matches Data in every shard.
+    PendingInterestTable.Entry entryEmpty = table.add
+      (100, new Interest(new Name()), null, null, null);
+    assertEquals(101, table.size());
+
+    ArrayList<PendingInterestTable.Entry> extracted =
+      new ArrayList<PendingInterestTable.Entry>();
+    table.extractEntriesForExpressedInterest
+      (new Data(new Name("/P7/A/1")), extracted);
+    assertEquals(2, extracted.size());
+    assertSame(entries.get(7), extracted.get(0));
+    assertSame(entryEmpty, extracted.get(1));
+
+    for (int i = 0; i < 100; ++i) {
+      if (i == 7)
+        continue;
+      extracted.clear();
+      table.extractEntriesForExpressedInterest
+        (new Data(new Name("/P" + i + "/A/1")), extracted);
+      assertEquals(1, extracted.size());
+      assertSame(entries.get(i), extracted.get(0));
+    }
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void
+  testConcurrentShards() throws Exception
+  {
+    final PendingInterestTable table = new PendingInterestTable(4);
+    final int nThreads = 4;
+    final int nEntries = 2000;
+    final ArrayList<Throwable> errors = new ArrayList<Throwable>();
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int threadNumber = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            ArrayList<PendingInterestTable.Entry> extracted =
+              new ArrayList<PendingInterestTable.Entry>();
+            for (int i = 0; i < nEntries; ++i) {
+              long id = threadNumber * nEntries + i;
+              Name name = new Name("/T" + threadNumber).append("" + i);
+              table.add(id, new Interest(name), null, null, null);
+              if (i % 2 == 0)
+                table.removePendingInterest(id);
+              else {
+                extracted.clear();
+                table.extractEntriesForExpressedInterest
+                  (new Data(name), extracted);
+                if (extracted.size() != 1)
+                  throw new Error("Expected one entry for " + name.toUri());
+              }
+            }
+          } catch (Throwable ex) {
+            synchronized (errors) {
+              errors.add(ex);
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+
+    assertEquals(0, errors.size());
+    assertEquals(0, table.size());
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRecycleReceivedPackets {
+  /**
+   * A DataCollector keeps each received Data and its name and content when
+   * received, and calls retain() if retain_ is true.
+   */
+  private static class DataCollector implements OnData {
+    public void
+    onData(Interest interest, Data data)
+    {
+      if (retain_)
+        data.retain();
+      data_.add(data);
+      names_.add(new Name(data.getName()));
+      contents_.add(data.getContent());
+    }
+
+    public boolean retain_ = false;
+    public final ArrayList<Data> data_ = new ArrayList<Data>();
+    public final ArrayList<Name> names_ = new ArrayList<Name>();
+    public final ArrayList<Blob> contents_ = new ArrayList<Blob>();
+  }
+
+  private StubTransport transport_;
+  private Face face_;
+
+  @Before
+  public void
+  setUp()
+  {
+    transport_ = new StubTransport();
+    face_ = new Face(transport_, null);
+  }
+
+  private void
+  receive(Blob encoding) throws Exception
+  {
+    transport_.receive(encoding.buf());
+  }
+
+  private void
+  expressAndReceive(String uri, DataCollector collector) throws Exception
+  {
+    face_.expressInterest(new Name(uri), collector);
+    Data data = new Data(new Name(uri));
+    data.setContent(new Blob(uri));
+    receive(data.wireEncode());
+  }
+
+  @Test
+  public void
+  testRecycleData() throws Exception
+  {
+    face_.setRecycleReceivedPackets(true);
+    DataCollector collector = new DataCollector();
+    expressAndReceive("/test/a", collector);
+    expressAndReceive("/test/b", collector);
+
+    assertEquals(2, collector.data_.size());
+    // The second Data reuses the first Data object.
+    assertSame(collector.data_.get(0), collector.data_.get(1));
+    assertEquals(new Name("/test/a"), collector.names_.get(0));
+    assertEquals(new Name("/test/b"), collector.names_.get(1));
+    // Content Blobs are not reused.
+    assertEquals("/test/a", collector.contents_.get(0).toString());
+    assertEquals("/test/b", collector.data_.get(1).getContent().toString());
+  }
+
+  @Test
+  public void
+  testRetainData() throws Exception
+  {
+    face_.setRecycleReceivedPackets(true);
+    DataCollector collector = new DataCollector();
+    collector.retain_ = true;
+    expressAndReceive("/test/a", collector);
+    expressAndReceive("/test/b", collector);
+
+    assertNotSame(collector.data_.get(0), collector.data_.get(1));
+    // The retained Data is unchanged.
+    assertEquals(new Name("/test/a"), collector.data_.get(0).getName());
+    assertEquals("/test/a", collector.data_.get(0).getContent().toString());
+  }
+
+  @Test
+  public void
+  testDefaultNoRecycle() throws Exception
+  {
+    DataCollector collector = new DataCollector();
+    expressAndReceive("/test/a", collector);
+    expressAndReceive("/test/b", collector);
+
+    assertNotSame(collector.data_.get(0), collector.data_.get(1));
+    assertEquals(new Name("/test/a"), collector.data_.get(0).getName());
+  }
+
+  @Test
+  public void
+  testRecycleInterest() throws Exception
+  {
+    face_.setRecycleReceivedPackets(true);
+    // Connect the transport.
+    face_.expressInterest(new Name("/connect"), new DataCollector());
+
+    final ArrayList<Interest> interests = new ArrayList<Interest>();
+    final ArrayList<Interest> copies = new ArrayList<Interest>();
+    face_.setInterestFilter(new Name("/test"), new OnInterestCallback() {
+      public void
+      onInterest
+        (Name prefix, Interest interest, Face face, long interestFilterId,
+         InterestFilter filter)
+      {
+        interests.add(interest);
+        copies.add(new Interest(interest));
+      }
+    });
+
+    Interest withSelectors = new Interest(new Name("/test/a"));
+    withSelectors.setChildSelector(1);
+    withSelectors.setMustBeFresh(false);
+    withSelectors.getExclude().appendAny();
+    receive(withSelectors.wireEncode());
+    Interest withoutSelectors = new Interest(new Name("/test/b"));
+    Blob encoding = withoutSelectors.wireEncode();
+    receive(encoding);
+
+    assertEquals(2, interests.size());
+    assertSame(interests.get(0), interests.get(1));
+    assertEquals(1, copies.get(0).getChildSelector());
+    assertFalse(copies.get(0).getMustBeFresh());
+
+    // The recycled Interest has the same fields as decoding a new Interest.
+    Interest expected = new Interest();
+    expected.wireDecode(encoding);
+    Interest recycled = copies.get(1);
+    assertEquals(expected.getName(), recycled.getName());
+    assertEquals(expected.getChildSelector(), recycled.getChildSelector());
+    assertEquals(expected.getMustBeFresh(), recycled.getMustBeFresh());
+    assertEquals(0, recycled.getExclude().size());
+    assertTrue(expected.getNonce().equals(recycled.getNonce()));
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.SegmentFetcher;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSegmentFetcher {
+  /**
+   * A PendingInterest holds the arguments of expressInterest so that the test
+   * can answer or time out the Interest.
+   */
+  private static class PendingInterest {
+    public PendingInterest(Interest interest, OnData onData, OnTimeout onTimeout)
+    {
+      interest_ = interest;
+      onData_ = onData;
+      onTimeout_ = onTimeout;
+    }
+
+    public final Interest interest_;
+    public final OnData onData_;
+    public final OnTimeout onTimeout_;
+  }
+
+  /**
+   * A StubFace keeps each expressed Interest instead of sending it.
+   */
+  private static class StubFace extends Face {
+    public StubFace()
+    {
+      super(new StubTransport(), null);
+    }
+
+    public long
+    expressInterest
+      (Interest interest, OnData onData, OnTimeout onTimeout,
+       OnNetworkNack onNetworkNack, WireFormat wireFormat)
+    {
+      pending_.add(new PendingInterest(new Interest(interest), onData, onTimeout));
+      maxPending_ = Math.max(maxPending_, pending_.size());
+      return 0;
+    }
+
+    public final ArrayList<PendingInterest> pending_ =
+      new ArrayList<PendingInterest>();
+    public int maxPending_ = 0;
+  }
+
+  private static class Callbacks
+    implements SegmentFetcher.OnComplete, SegmentFetcher.OnError {
+    public void
+    onComplete(Blob content) { content_ = content; }
+
+    public void
+    onError(SegmentFetcher.ErrorCode errorCode, String message)
+    {
+      errorCode_ = errorCode;
+    }
+
+    public Blob content_ = null;
+    public SegmentFetcher.ErrorCode errorCode_ = null;
+  }
+
+  /**
+   * A ManualClock only advances when the test calls advance.
+   */
+  private static class ManualClock implements SegmentFetcher.Clock {
+    public double
+    getNowMilliseconds() { return nowMilliseconds_; }
+
+    public void
+    advance(double milliseconds) { nowMilliseconds_ += milliseconds; }
+
+    private double nowMilliseconds_ = 1000000.0;
+  }
+
+  private static final Name PREFIX = new Name("/test/file");
+  private static final int N_SEGMENTS = 20;
+
+  private StubFace face_;
+  private Callbacks callbacks_;
+  private String expectedContent_;
+
+  @Before
+  public void
+  setUp()
+  {
+    face_ = new StubFace();
+    callbacks_ = new Callbacks();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < N_SEGMENTS; ++i)
+      expected.append(segmentContent(i));
+    expectedContent_ = expected.toString();
+  }
+
+  private static String
+  segmentContent(long segment) { return "segment " + segment + ";"; }
+
+  /**
+   * Answer the Interest with the Data for its segment, or segment 0 if the
+   * Interest name does not have a segment.
+   */
+  private static void
+  answer(PendingInterest pending) throws EncodingException
+  {
+    Name interestName = pending.interest_.getName();
+    long segment = 0;
+    if (interestName.size() > PREFIX.size() + 1)
+      segment = interestName.get(-1).toSegment();
+
+    Data data = new Data
+      (new Name(PREFIX).appendVersion(1).appendSegment(segment));
+    data.setContent(new Blob(segmentContent(segment)));
+    data.getMetaInfo().setFinalBlockId
+      (Name.Component.fromSegment(N_SEGMENTS - 1));
+    pending.onData_.onData(pending.interest_, data);
+  }
+
+  private static long
+  getSegment(PendingInterest pending) throws EncodingException
+  {
+    Name interestName = pending.interest_.getName();
+    if (interestName.size() <= PREFIX.size() + 1)
+      return -1;
+    return interestName.get(-1).toSegment();
+  }
+
+  @Test
+  public void
+  testStopAndWait() throws Exception
+  {
+    SegmentFetcher.fetch
+      (face_, new Interest(PREFIX), SegmentFetcher.DontVerifySegment,
+       callbacks_, callbacks_);
+    while (!face_.pending_.isEmpty())
+      answer(face_.pending_.remove(0));
+
+    assertEquals(expectedContent_, callbacks_.content_.toString());
+    assertNull(callbacks_.errorCode_);
+    assertEquals(1, face_.maxPending_);
+  }
+
+  @Test
+  public void
+  testFirstDataStartsSlowStart() throws Exception
+  {
+    SegmentFetcher.fetch
+      (face_, new Interest(PREFIX), SegmentFetcher.DontVerifySegment,
+       callbacks_, callbacks_,
+       new SegmentFetcher.Options().setClock(new ManualClock()));
+
+    answer(face_.pending_.remove(0));
+    // The initial window of 1 grew to 2 with the first Data.
+    assertEquals(2, face_.pending_.size());
+  }
+
+  @Test
+  public void
+  testPipelinedOutOfOrderWithLoss() throws Exception
+  {
+    SegmentFetcher.fetch
+      (face_, new Interest(PREFIX), SegmentFetcher.DontVerifySegment,
+       callbacks_, callbacks_, new SegmentFetcher.Options());
+
+    int nSegment7Interests = 0;
+    while (!face_.pending_.isEmpty()) {
+      // Answer the most recent Interest first.
+      PendingInterest pending =
+        face_.pending_.remove(face_.pending_.size() - 1);
+      long segment = getSegment(pending);
+      if (segment == 7 && ++nSegment7Interests <= 2) {
+        pending.onTimeout_.onTimeout(pending.interest_);
+        continue;
+      }
+      if (segment > 0)
+        // The InterestLifetime is the retransmission timeout.
+        assertTrue(pending.interest_.getInterestLifetimeMilliseconds() >= 200);
+      answer(pending);
+    }
+
+    assertNull(callbacks_.errorCode_);
+    assertEquals(expectedContent_, callbacks_.content_.toString());
+    assertEquals(3, nSegment7Interests);
+    assertTrue("The window did not grow", face_.maxPending_ > 1);
+  }
+
+  @Test
+  public void
+  testPipelinedCubic() throws Exception
+  {
+    ManualClock clock = new ManualClock();
+    SegmentFetcher.fetch
+      (face_, new Interest(PREFIX), SegmentFetcher.DontVerifySegment,
+       callbacks_, callbacks_,
+       new SegmentFetcher.Options().setUseCubic(true).setMaxWindowSize(4)
+       .setClock(clock));
+
+    boolean timedOut = false;
+    while (!face_.pending_.isEmpty()) {
+      // A round-trip time much less than the CUBIC K, so that the window
+      // grows in the TCP-friendly region.
+      clock.advance(10);
+      PendingInterest pending = face_.pending_.remove(0);
+      if (!timedOut && getSegment(pending) == 3) {
+        timedOut = true;
+        pending.onTimeout_.onTimeout(pending.interest_);
+        // Check that the window grows back after the decrease.
+        face_.maxPending_ = face_.pending_.size();
+        continue;
+      }
+      answer(pending);
+      assertTrue(face_.pending_.size() <= 4);
+    }
+
+    assertNull(callbacks_.errorCode_);
+    assertEquals(expectedContent_, callbacks_.content_.toString());
+    assertEquals(4, face_.maxPending_);
+  }
+
+  @Test
+  public void
+  testPipelinedMaxRetries() throws Exception
+  {
+    SegmentFetcher.fetch
+      (face_, new Interest(PREFIX), SegmentFetcher.DontVerifySegment,
+       callbacks_, callbacks_, new SegmentFetcher.Options().setMaxRetries(2));
+
+    int nSegment5Interests = 0;
+    while (!face_.pending_.isEmpty()) {
+      PendingInterest pending = face_.pending_.remove(0);
+      if (getSegment(pending) == 5) {
+        ++nSegment5Interests;
+        pending.onTimeout_.onTimeout(pending.interest_);
+      }
+      else
+        answer(pending);
+    }
+
+    assertEquals
+      (SegmentFetcher.ErrorCode.INTEREST_TIMEOUT, callbacks_.errorCode_);
+    assertNull(callbacks_.content_);
+    // The first Interest and two retries.
+    assertEquals(3, nSegment5Interests);
+  }
+}
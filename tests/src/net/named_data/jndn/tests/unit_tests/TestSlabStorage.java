@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.SlabStorage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestSlabStorage {
+  private static final int SLAB_SIZE = 16;
+
+  private static ByteBuffer
+  makeBuffer(int size, int value)
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (int i = 0; i < size; ++i)
+      buffer.put((byte)value);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void
+  testStoreAndReuse() throws IOException
+  {
+    SlabStorage storage = new SlabStorage(SLAB_SIZE);
+    long position1 = storage.store(makeBuffer(10, 1));
+    // This doesn't fit in the first slab.
+    long position2 = storage.store(makeBuffer(10, 2));
+    assertEquals(2 * SLAB_SIZE, storage.getAllocatedSize());
+    assertEquals(20, storage.getUsedSize());
+    assertTrue(new Blob(storage.get(position1, 10), false).equals
+      (new Blob(makeBuffer(10, 1), false)));
+    assertTrue(new Blob(storage.get(position2, 10), false).equals
+      (new Blob(makeBuffer(10, 2), false)));
+
+    // A buffer larger than the slab size is not stored.
+    assertEquals(-1, storage.store(makeBuffer(SLAB_SIZE + 1, 3)));
+
+    // Free the first slab, which is not the current slab, and reuse it.
+    storage.free(position1, 10);
+    assertEquals(10, storage.getUsedSize());
+    long position3 = storage.store(makeBuffer(10, 3));
+    assertEquals(position1, position3);
+    assertEquals(2 * SLAB_SIZE, storage.getAllocatedSize());
+  }
+
+  @Test
+  public void
+  testEmptyBuffer() throws IOException
+  {
+    SlabStorage storage = new SlabStorage(SLAB_SIZE);
+    long position1 = storage.store(makeBuffer(10, 1));
+    // An empty buffer is not stored, so it can't be freed.
+    assertEquals(-1, storage.store(makeBuffer(0, 0)));
+
+    // Make the first slab empty and not current. Then each new slab must be
+    // different.
+    storage.store(makeBuffer(10, 2));
+    storage.free(position1, 10);
+    long position3 = storage.store(makeBuffer(10, 3));
+    long position4 = storage.store(makeBuffer(10, 4));
+    assertTrue(position3 / SLAB_SIZE != position4 / SLAB_SIZE);
+    assertTrue(new Blob(storage.get(position3, 10), false).equals
+      (new Blob(makeBuffer(10, 3), false)));
+  }
+}
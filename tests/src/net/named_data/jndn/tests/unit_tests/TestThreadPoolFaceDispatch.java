@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.ThreadPoolFace;
+import net.named_data.jndn.transport.Transport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestThreadPoolFaceDispatch {
+  @Test
+  public void
+  testDispatchOrder() throws Exception
+  {
+    ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(4);
+    try {
+      StubTransport transport = new StubTransport();
+      ThreadPoolFace face = new ThreadPoolFace
+        (threadPool, transport, new Transport.ConnectionInfo(), 4);
+
+      final int nPrefixes = 8;
+      final int nSegments = 50;
+      final HashMap<String, ArrayList<Long>> received =
+        new HashMap<String, ArrayList<Long>>();
+      for (int p = 0; p < nPrefixes; ++p) {
+        final String prefix = "P" + p;
+        received.put(prefix, new ArrayList<Long>());
+        for (int i = 0; i < nSegments; ++i) {
+          face.expressInterest
+            (new Name(prefix).appendSegment(i), new OnData() {
+               public void onData(Interest interest, Data data) {
+                 ArrayList<Long> segments = received.get(prefix);
+                 synchronized (segments) {
+                   try {
+                     segments.add(data.getName().get(-1).toSegment());
+                   } catch (Exception ex) {}
+                 }
+               }
+             }, (OnTimeout)null);
+        }
+      }
+
+      // Wait for expressInterest to add to the PIT and send.
+      int nInterests = nPrefixes * nSegments;
+      for (int i = 0; i < 400 && transport.getSentCount() < nInterests; ++i)
+        Thread.sleep(5);
+      assertEquals(nInterests, transport.getSentCount());
+
+      // Receive the Data for each segment in order, interleaving the prefixes.
+      for (int i = 0; i < nSegments; ++i) {
+        for (int p = 0; p < nPrefixes; ++p) {
+          Data data = new Data(new Name("P" + p).appendSegment(i));
+          transport.receive(data.wireEncode().buf());
+        }
+      }
+
+      for (int i = 0; i < 400; ++i) {
+        int nReceived = 0;
+        for (ArrayList<Long> segments : received.values()) {
+          synchronized (segments) {
+            nReceived += segments.size();
+          }
+        }
+        if (nReceived == nInterests)
+          break;
+        Thread.sleep(5);
+      }
+
+      // The Data for each prefix is delivered in the order received.
+      for (ArrayList<Long> segments : received.values()) {
+        synchronized (segments) {
+          assertEquals(nSegments, segments.size());
+          for (int i = 0; i < nSegments; ++i)
+            assertTrue(segments.get(i) == i);
+        }
+      }
+    }
+    finally {
+      threadPool.shutdownNow();
+    }
+  }
+}
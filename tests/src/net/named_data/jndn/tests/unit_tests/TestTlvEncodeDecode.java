@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class TestTlvEncodeDecode {
+  // The boundary of each VAR-NUMBER length and its encoding.
+  private static final long[] varNumbers = { 0, 252, 253, 0xffffL, 0x10000L,
+    0xffffffffL, 0x100000000L, Long.MAX_VALUE };
+  private static final String[] varNumberEncodings = {
+    "00", "fc", "fd00fd", "fdffff", "fe00010000", "feffffffff",
+    "ff0000000100000000", "ff7fffffffffffffff" };
+
+  @Test
+  public void
+  testLongVarNumber() throws EncodingException
+  {
+    for (int i = 0; i < varNumbers.length; ++i) {
+      TlvEncoder encoder = new TlvEncoder();
+      encoder.writeVarNumber(varNumbers[i]);
+      Blob encoding = new Blob(encoder.getOutput(), false);
+      assertEquals(varNumberEncodings[i], encoding.toHex());
+      assertEquals(encoding.size(), TlvEncoder.sizeOfVarNumber(varNumbers[i]));
+
+      TlvEncoder lengthEncoder = TlvEncoder.createLengthOnly();
+      lengthEncoder.writeVarNumber(varNumbers[i]);
+      assertEquals(encoding.size(), lengthEncoder.getLength());
+
+      TlvDecoder decoder = new TlvDecoder(encoding.buf());
+      assertEquals(varNumbers[i], decoder.readLongVarNumber());
+      assertEquals(encoding.size(), decoder.getOffset());
+    }
+
+    // The 32-bit readVarNumber still rejects the 8-byte form.
+    try {
+      new TlvDecoder(ByteBuffer.wrap(new byte[] { (byte)0xff, 0, 0, 0, 1, 0, 0,
+        0, 0 })).readVarNumber();
+      fail("readVarNumber did not throw an exception for a 64-bit VAR-NUMBER");
+    } catch (EncodingException ex) {}
+
+    // A VAR-NUMBER which doesn't fit in a signed long.
+    try {
+      new TlvDecoder(ByteBuffer.wrap(new byte[] { (byte)0xff, (byte)0x80, 0, 0,
+        0, 0, 0, 0, 0 })).readLongVarNumber();
+      fail("readLongVarNumber did not throw an exception for a 64-bit value");
+    } catch (EncodingException ex) {}
+
+    // Truncated input.
+    try {
+      new TlvDecoder(ByteBuffer.wrap(new byte[] { (byte)0xfe, 0, 0 }))
+        .readLongVarNumber();
+      fail("readLongVarNumber did not throw an exception for truncated input");
+    } catch (EncodingException ex) {}
+  }
+
+  @Test
+  public void
+  testNonNegativeInteger() throws EncodingException
+  {
+    long[] values = { 0, 0xffL, 0x100L, 0xffffL, 0x10000L, 0xffffffffL,
+      0x100000000L, Long.MAX_VALUE };
+    for (int i = 0; i < values.length; ++i) {
+      TlvEncoder encoder = new TlvEncoder();
+      encoder.writeNonNegativeInteger(values[i]);
+      Blob expected = new Blob(encoder.getOutput(), false);
+      int size = TlvEncoder.sizeOfNonNegativeInteger(values[i]);
+      assertEquals(expected.size(), size);
+
+      // putNonNegativeInteger writes the same bytes at the offset.
+      byte[] array = new byte[size + 2];
+      assertEquals(1 + size,
+                   TlvEncoder.putNonNegativeInteger(values[i], array, 1));
+      assertTrue(expected.equals
+        (new Blob(ByteBuffer.wrap(array, 1, size), false)));
+
+      assertEquals(values[i], new TlvDecoder(expected.buf())
+        .readNonNegativeInteger(size));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvStreamDecoder;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class TestTlvStreamDecoder {
+  /**
+   * An EventRecorder records each event as a string, and decodes the Data,
+   * Name and MetaInfo as nested TLVs.
+   */
+  private static class EventRecorder implements TlvStreamDecoder.Listener {
+    public boolean
+    onElementStart(int type, long length)
+    {
+      events_.add("start " + type + " " + length);
+      if (type == Tlv.Data || type == Tlv.Name || type == Tlv.MetaInfo)
+        return true;
+
+      value_ = ByteBuffer.allocate((int)length);
+      return false;
+    }
+
+    public void
+    onValueChunk(int type, ByteBuffer chunk)
+    {
+      value_.put(chunk);
+    }
+
+    public void
+    onElementEnd(int type)
+    {
+      if (value_ != null) {
+        value_.flip();
+        events_.add("value " + new Blob(value_, false).toHex());
+        value_ = null;
+      }
+      events_.add("end " + type);
+    }
+
+    public final ArrayList<String> events_ = new ArrayList<String>();
+    private ByteBuffer value_ = null;
+  }
+
+  private static Blob
+  makeData(int i)
+  {
+    Data data = new Data(new Name("/test/stream").appendSegment(i));
+    data.getMetaInfo().setFreshnessPeriod(1000);
+    data.setContent(new Blob(new byte[300 + i]));
+    return data.wireEncode();
+  }
+
+  private static ArrayList<String>
+  decode(ByteBuffer input, int chunkSize) throws EncodingException
+  {
+    EventRecorder recorder = new EventRecorder();
+    TlvStreamDecoder decoder = new TlvStreamDecoder(recorder);
+    for (int i = input.position(); i < input.limit(); i += chunkSize) {
+      ByteBuffer chunk = input.duplicate();
+      chunk.position(i);
+      chunk.limit(Math.min(i + chunkSize, input.limit()));
+      decoder.onReceivedData(chunk);
+    }
+
+    assertTrue(decoder.isBetweenElements());
+    assertEquals(input.remaining(), decoder.getPosition());
+    return recorder.events_;
+  }
+
+  @Test
+  public void
+  testChunkSizes() throws EncodingException
+  {
+    // Concatenate two Data packets, where the Content length needs 3 bytes.
+    Blob data1 = makeData(1);
+    Blob data2 = makeData(2);
+    ByteBuffer input = ByteBuffer.allocate(data1.size() + data2.size());
+    input.put(data1.buf());
+    input.put(data2.buf());
+    input.flip();
+
+    ArrayList<String> expected = decode(input, input.remaining());
+    assertEquals("start " + Tlv.Data + " " + (data1.size() - 4),
+                 expected.get(0));
+    assertEquals("start " + Tlv.Name + " 18", expected.get(1));
+    assertEquals("end " + Tlv.Data, expected.get(expected.size() - 1));
+
+    // The events are the same for any chunk size.
+    int[] chunkSizes = new int[] { 1, 2, 3, 7, 100 };
+    for (int i = 0; i < chunkSizes.length; ++i)
+      assertEquals("Chunk size " + chunkSizes[i], expected,
+                   decode(input, chunkSizes[i]));
+  }
+
+  @Test
+  public void
+  testLengthExceedsParent()
+  {
+    // The Name length 5 exceeds the Data length 3.
+    ByteBuffer input = ByteBuffer.wrap(new byte[] {
+      0x06, 0x03, 0x07, 0x05, 0x08, 0x01, 0x61 });
+    try {
+      decode(input, 1);
+      fail("Expected an EncodingException");
+    } catch (EncodingException ex) {}
+  }
+}
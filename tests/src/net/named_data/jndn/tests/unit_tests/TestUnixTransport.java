@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2017 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.transport.UnixTransport;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnixTransport {
+  File socketFile_;
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    socketFile_ = File.createTempFile("jndn-test", ".sock");
+    socketFile_.delete();
+  }
+
+  @After
+  public void
+  tearDown()
+  {
+    socketFile_.delete();
+  }
+
+  /**
+   * Open a ServerSocketChannel bound to socketFile_, using reflection since
+   * Unix domain sockets need Java 16 or later.
+   */
+  private ServerSocketChannel
+  openServer() throws Exception
+  {
+    SocketAddress address = (SocketAddress)Class.forName
+      ("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke
+      (null, socketFile_.getPath());
+    ServerSocketChannel server = (ServerSocketChannel)ServerSocketChannel.class
+      .getMethod("open", ProtocolFamily.class).invoke
+      (null, StandardProtocolFamily.valueOf("UNIX"));
+    server.bind(address);
+    return server;
+  }
+
+  @Test
+  public void
+  testIsLocal()
+  {
+    UnixTransport transport = new UnixTransport();
+    assertTrue(transport.isLocal
+      (new UnixTransport.ConnectionInfo(socketFile_.getPath())));
+  }
+
+  @Test
+  public void
+  testExpressInterest() throws Exception
+  {
+    assumeTrue(UnixTransport.isSupported());
+
+    ServerSocketChannel server = openServer();
+    try {
+      Face face = new Face
+        (new UnixTransport(),
+         new UnixTransport.ConnectionInfo(socketFile_.getPath()));
+      final ArrayList<Data> received = new ArrayList<Data>();
+      Name name = new Name("/test/unix");
+      face.expressInterest
+        (name, new OnData() {
+           public void onData(Interest interest, Data data) {
+             received.add(data);
+           }
+         },
+         new OnTimeout() {
+           public void onTimeout(Interest interest) {}
+         });
+
+      // Act as the forwarder: read the Interest and answer with a Data.
+      SocketChannel forwarder = server.accept();
+      ByteBuffer input = ByteBuffer.allocate(8800);
+      Interest interest = new Interest();
+      while (true) {
+        forwarder.read(input);
+        ByteBuffer element = input.duplicate();
+        element.flip();
+        try {
+          interest.wireDecode(element);
+          break;
+        } catch (Exception ex) {
+          // Wait for the rest of the Interest.
+        }
+      }
+      assertTrue(interest.getName().equals(name));
+
+      Data data = new Data(new Name(name).append("data"));
+      data.setContent(new Blob("hello"));
+      ByteBuffer encoding = data.wireEncode().buf();
+      while (encoding.hasRemaining())
+        forwarder.write(encoding);
+
+      for (int i = 0; i < 200 && received.size() == 0; ++i) {
+        face.processEvents();
+        Thread.sleep(5);
+      }
+
+      assertEquals(1, received.size());
+      assertTrue(received.get(0).getContent().equals(new Blob("hello")));
+      face.shutdown();
+      forwarder.close();
+    }
+    finally {
+      server.close();
+    }
+  }
+}